@@ -18,8 +18,14 @@
 
 package org.eclipse.jetty.client;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Destination;
@@ -28,6 +34,7 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -47,6 +54,10 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
     private final Destination destination;
     private final int maxConnections;
     private final Callback requester;
+    private final Set<Connection> preCreated = ConcurrentHashMap.newKeySet();
+    private final LongAdder preCreatedConnections = new LongAdder();
+    private final LongAdder handshakesAvoided = new LongAdder();
+    private volatile int minIdleConnections;
 
     protected AbstractConnectionPool(Destination destination, int maxConnections, Callback requester)
     {
@@ -73,6 +84,62 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
         return connections.getHi();
     }
 
+    /**
+     * <p>Returns the number of idle connections.</p>
+     * <p>Subclasses that track idle connections should override this method,
+     * which is used to maintain the {@link #getMinIdleConnectionCount() minimum
+     * number of idle connections}.</p>
+     *
+     * @return the number of idle connections, or -1 if this pool does not
+     * track idle connections, in which case no idle connection is opened
+     * in background
+     */
+    public int getIdleConnectionCount()
+    {
+        return -1;
+    }
+
+    @ManagedAttribute(value = "The min number of idle connections")
+    public int getMinIdleConnectionCount()
+    {
+        return minIdleConnections;
+    }
+
+    /**
+     * <p>Sets the minimum number of idle connections that this pool tries to maintain,
+     * within the {@link #getMaxConnectionCount() max number of connections}.</p>
+     * <p>Missing idle connections are opened in background when this value is set,
+     * when a connection is acquired and when a connection is removed from this pool,
+     * for example because it idle timed out, so that requests after a traffic lull
+     * do not pay the cost of opening new connections.</p>
+     *
+     * @param minIdleConnections the min number of idle connections, or 0 to disable
+     */
+    public void setMinIdleConnectionCount(int minIdleConnections)
+    {
+        this.minIdleConnections = minIdleConnections;
+        replenish();
+    }
+
+    @ManagedAttribute(value = "The number of connections opened before being needed", readonly = true)
+    public long getPreCreatedConnectionCount()
+    {
+        return preCreatedConnections.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of requests that used a connection opened before being needed", readonly = true)
+    public long getHandshakesAvoidedCount()
+    {
+        return handshakesAvoided.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        preCreatedConnections.reset();
+        handshakesAvoided.reset();
+    }
+
     @Override
     public boolean isEmpty()
     {
@@ -97,7 +164,52 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
         return connection;
     }
 
+    /**
+     * <p>Opens up to {@code connectionCount} connections in background,
+     * within the {@link #getMaxConnectionCount() max number of connections},
+     * so that they are ready to be used by subsequent requests.</p>
+     *
+     * @param connectionCount the number of connections to open
+     * @return a future completed when the connections have been opened
+     */
+    @Override
+    public CompletableFuture<Void> preCreateConnections(int connectionCount)
+    {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < connectionCount; ++i)
+        {
+            CompletableFuture<Void> future = tryCreate(-1, true);
+            if (future == null)
+                break;
+            futures.add(future);
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private void replenish()
+    {
+        int minIdle = minIdleConnections;
+        if (minIdle <= 0 || isClosed())
+            return;
+        int idle = getIdleConnectionCount();
+        if (idle < 0)
+            return;
+        int missing = minIdle - idle - getPendingCount();
+        if (LOG.isDebugEnabled() && missing > 0)
+            LOG.debug("Replenishing {} idle connections", missing);
+        while (missing-- > 0)
+        {
+            if (tryCreate(minIdle, true) == null)
+                break;
+        }
+    }
+
     protected void tryCreate(int maxPending)
+    {
+        tryCreate(maxPending, false);
+    }
+
+    private CompletableFuture<Void> tryCreate(int maxPending, boolean preCreate)
     {
         while (true)
         {
@@ -109,16 +221,17 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
                 LOG.debug("tryCreate {}/{} connections {}/{} pending",total,maxConnections,pending,maxPending);
             
             if (total >= maxConnections)
-                return;
+                return null;
 
             if (maxPending>=0 && pending>=maxPending)
-                return;
+                return null;
             
             if (connections.compareAndSet(encoded,pending+1,total+1))
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("newConnection {}/{} connections {}/{} pending", total+1, maxConnections, pending+1, maxPending);
 
+                CompletableFuture<Void> future = new CompletableFuture<>();
                 destination.newConnection(new Promise<Connection>()
                 {
                     @Override
@@ -127,8 +240,14 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
                         if (LOG.isDebugEnabled())
                             LOG.debug("Connection {}/{} creation succeeded {}", total+1, maxConnections, connection);
                         connections.add(-1,0);
+                        if (preCreate)
+                        {
+                            preCreated.add(connection);
+                            preCreatedConnections.increment();
+                        }
                         onCreated(connection);
                         proceed();
+                        future.complete(null);
                     }
 
                     @Override
@@ -137,11 +256,15 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
                         if (LOG.isDebugEnabled())
                             LOG.debug("Connection " + (total+1) + "/" + maxConnections + " creation failed", x);
                         connections.add(-1,-1);
-                        requester.failed(x);
+                        // Connections opened in advance do not fail queued requests,
+                        // that have scheduled the opening of their own connection.
+                        if (!preCreate)
+                            requester.failed(x);
+                        future.completeExceptionally(x);
                     }
                 });
 
-                return;
+                return future;
             }
         }
     }
@@ -160,6 +283,7 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
         if (LOG.isDebugEnabled())
             LOG.debug("Connection active {}", connection);
         acquired(connection);
+        replenish();
         return connection;
     }
 
@@ -167,6 +291,18 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
     {
     }
 
+    /**
+     * <p>Called when a request is about to be sent on the given connection,
+     * to account for the connections that were opened in advance.</p>
+     *
+     * @param connection the connection used to send a request
+     */
+    void used(Connection connection)
+    {
+        if (preCreated.remove(connection))
+            handshakesAvoided.increment();
+    }
+
     protected boolean idle(Connection connection, boolean close)
     {
         if (close)
@@ -192,6 +328,8 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
         int pooled = connections.addAndGetLo(-1);
         if (LOG.isDebugEnabled())
             LOG.debug("Connection removed {} - pooled: {}", connection, pooled);
+        preCreated.remove(connection);
+        replenish();
     }
 
     @Override
@@ -200,6 +338,7 @@ public abstract class AbstractConnectionPool implements ConnectionPool, Dumpable
         if (closed.compareAndSet(false, true))
         {
             connections.set(0,0);
+            preCreated.clear();
         }
     }
 
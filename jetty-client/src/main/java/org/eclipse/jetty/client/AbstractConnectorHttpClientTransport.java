@@ -28,6 +28,7 @@ import java.nio.channels.SocketChannel;
 import java.util.Map;
 
 import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.io.ClientResources;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ManagedSelector;
 import org.eclipse.jetty.io.SelectorManager;
@@ -42,6 +43,7 @@ public abstract class AbstractConnectorHttpClientTransport extends AbstractHttpC
 {
     private final int selectors;
     private SelectorManager selectorManager;
+    private ClientResources clientResources;
 
     protected AbstractConnectorHttpClientTransport(int selectors)
     {
@@ -58,9 +60,13 @@ public abstract class AbstractConnectorHttpClientTransport extends AbstractHttpC
     protected void doStart() throws Exception
     {
         HttpClient httpClient = getHttpClient();
-        selectorManager = newSelectorManager(httpClient);
-        selectorManager.setConnectTimeout(httpClient.getConnectTimeout());
-        addBean(selectorManager);
+        clientResources = isShareSelectors() ? httpClient.getClientResources() : null;
+        if (clientResources == null)
+        {
+            selectorManager = newSelectorManager(httpClient);
+            selectorManager.setConnectTimeout(httpClient.getConnectTimeout());
+            addBean(selectorManager);
+        }
         super.doStart();
     }
 
@@ -68,7 +74,10 @@ public abstract class AbstractConnectorHttpClientTransport extends AbstractHttpC
     protected void doStop() throws Exception
     {
         super.doStop();
-        removeBean(selectorManager);
+        if (selectorManager != null)
+            removeBean(selectorManager);
+        selectorManager = null;
+        clientResources = null;
     }
 
     @Override
@@ -99,10 +108,23 @@ public abstract class AbstractConnectorHttpClientTransport extends AbstractHttpC
                 channel.configureBlocking(false);
                 connected = channel.connect(address);
             }
-            if (connected)
+            if (clientResources != null)
+            {
+                // Use the selectors shared with other clients.
+                context.put(ClientResources.CLIENT_CONTEXT_KEY, new SharedClient(client));
+                if (connected)
+                    clientResources.accept(channel, context);
+                else
+                    clientResources.connect(channel, context);
+            }
+            else if (connected)
+            {
                 selectorManager.accept(channel, context);
+            }
             else
+            {
                 selectorManager.connect(channel, context);
+            }
         }
         // Must catch all exceptions, since some like
         // UnresolvedAddressException are not IOExceptions.
@@ -143,6 +165,20 @@ public abstract class AbstractConnectorHttpClientTransport extends AbstractHttpC
         channel.socket().setTcpNoDelay(client.isTCPNoDelay());
     }
 
+    /**
+     * <p>Returns whether this transport uses the selectors of the
+     * {@link HttpClient#getClientResources() resources shared} by the
+     * {@link HttpClient}, rather than its own {@link #newSelectorManager(HttpClient) selector manager}.</p>
+     * <p>Transports opt-in to share the selectors, as the shared selectors
+     * only support {@link SocketChannel}s and plain {@link SocketChannelEndPoint}s.</p>
+     *
+     * @return whether this transport shares the selectors, by default false
+     */
+    protected boolean isShareSelectors()
+    {
+        return false;
+    }
+
     protected SelectorManager newSelectorManager(HttpClient client)
     {
         return new ClientSelectorManager(client, getSelectors());
@@ -183,4 +219,35 @@ public abstract class AbstractConnectorHttpClientTransport extends AbstractHttpC
             connectFailed(context, x);
         }
     }
+
+    private class SharedClient implements ClientResources.Client
+    {
+        private final HttpClient client;
+
+        private SharedClient(HttpClient client)
+        {
+            this.client = client;
+        }
+
+        @Override
+        public EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey selectionKey)
+        {
+            SocketChannelEndPoint endp = new SocketChannelEndPoint(channel, selector, selectionKey, client.getScheduler());
+            endp.setIdleTimeout(client.getIdleTimeout());
+            return endp;
+        }
+
+        @Override
+        public org.eclipse.jetty.io.Connection newConnection(EndPoint endPoint, Map<String, Object> context) throws IOException
+        {
+            HttpDestination destination = (HttpDestination)context.get(HTTP_DESTINATION_CONTEXT_KEY);
+            return destination.getClientConnectionFactory().newConnection(endPoint, context);
+        }
+
+        @Override
+        public void connectionFailed(Map<String, Object> context, Throwable failure)
+        {
+            connectFailed(context, failure);
+        }
+    }
 }
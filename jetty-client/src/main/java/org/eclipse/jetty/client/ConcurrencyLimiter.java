@@ -0,0 +1,353 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
+
+/**
+ * <p>An adaptive limit of the number of concurrent requests of a {@link HttpDestination}.</p>
+ * <p>A request is dispatched to a connection only if the number of requests in flight
+ * is less than the current limit, otherwise it waits in the destination queue.
+ * The limit is adjusted with an additive increase, multiplicative decrease (AIMD) algorithm:</p>
+ * <ul>
+ * <li>when a request completes successfully while the limit is being used, the limit is
+ * increased by {@code 1/limit}, that is by one every {@code limit} requests;</li>
+ * <li>when a request fails, or it is rejected by the server with {@code 429} or {@code 503},
+ * or its round trip time is larger than {@link #getRttTolerance()} times the long term average
+ * round trip time, the limit is multiplied by {@link #getBackoffRatio()}, at most once per
+ * average round trip time.</li>
+ * </ul>
+ * <p>When the destination queue holds more than {@link #getQueueRatio()} times the current
+ * limit, new requests are rejected immediately rather than waiting in the queue until they
+ * time out.</p>
+ *
+ * @see HttpClient#setConcurrencyLimiterFactory(Factory)
+ */
+@ManagedObject("The adaptive concurrency limit of a destination")
+public class ConcurrencyLimiter
+{
+    private final SampleStatistic queueWait = new SampleStatistic();
+    private final LongAdder rejections = new LongAdder();
+    private int initialLimit = 20;
+    private int minLimit = 1;
+    private int maxLimit = 1000;
+    private double backoffRatio = 0.5D;
+    private double rttTolerance = 2.0D;
+    private double queueRatio = 4.0D;
+    private double limit = -1;
+    private int inFlight;
+    private double averageRtt;
+    private long lastBackoff;
+
+    /**
+     * @return the initial concurrency limit
+     */
+    @ManagedAttribute("The initial concurrency limit")
+    public int getInitialLimit()
+    {
+        return initialLimit;
+    }
+
+    /**
+     * @param initialLimit the initial concurrency limit
+     */
+    public void setInitialLimit(int initialLimit)
+    {
+        this.initialLimit = initialLimit;
+    }
+
+    /**
+     * @return the minimum concurrency limit
+     */
+    @ManagedAttribute("The minimum concurrency limit")
+    public int getMinLimit()
+    {
+        return minLimit;
+    }
+
+    /**
+     * @param minLimit the minimum concurrency limit
+     */
+    public void setMinLimit(int minLimit)
+    {
+        this.minLimit = minLimit;
+    }
+
+    /**
+     * @return the maximum concurrency limit
+     */
+    @ManagedAttribute("The maximum concurrency limit")
+    public int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    /**
+     * @param maxLimit the maximum concurrency limit
+     */
+    public void setMaxLimit(int maxLimit)
+    {
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @return the ratio the limit is multiplied by when the destination is congested
+     */
+    @ManagedAttribute("The ratio the limit is multiplied by when the destination is congested")
+    public double getBackoffRatio()
+    {
+        return backoffRatio;
+    }
+
+    /**
+     * @param backoffRatio the ratio the limit is multiplied by when the destination is congested
+     */
+    public void setBackoffRatio(double backoffRatio)
+    {
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * @return how many times the average round trip time a request may take before the destination is considered congested
+     */
+    @ManagedAttribute("How many times the average round trip time a request may take before the destination is considered congested")
+    public double getRttTolerance()
+    {
+        return rttTolerance;
+    }
+
+    /**
+     * @param rttTolerance how many times the average round trip time a request may take before the destination is considered congested
+     */
+    public void setRttTolerance(double rttTolerance)
+    {
+        this.rttTolerance = rttTolerance;
+    }
+
+    /**
+     * @return how many times the current limit requests may be queued, or a non-positive value to only use
+     * {@link HttpClient#getMaxRequestsQueuedPerDestination()}
+     */
+    @ManagedAttribute("How many times the current limit requests may be queued")
+    public double getQueueRatio()
+    {
+        return queueRatio;
+    }
+
+    /**
+     * @param queueRatio how many times the current limit requests may be queued, or a non-positive value to only use
+     * {@link HttpClient#getMaxRequestsQueuedPerDestination()}
+     */
+    public void setQueueRatio(double queueRatio)
+    {
+        this.queueRatio = queueRatio;
+    }
+
+    /**
+     * @return the current concurrency limit
+     */
+    @ManagedAttribute(value = "The current concurrency limit", readonly = true)
+    public int getLimit()
+    {
+        synchronized (this)
+        {
+            return (int)limit();
+        }
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    @ManagedAttribute(value = "The number of requests in flight", readonly = true)
+    public int getInFlight()
+    {
+        synchronized (this)
+        {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @return the long term average round trip time, in milliseconds
+     */
+    @ManagedAttribute(value = "The average round trip time in milliseconds", readonly = true)
+    public long getAverageRtt()
+    {
+        synchronized (this)
+        {
+            return TimeUnit.NANOSECONDS.toMillis((long)averageRtt);
+        }
+    }
+
+    /**
+     * @return the average time requests waited in the queue, in milliseconds
+     */
+    @ManagedAttribute(value = "The average time requests waited in the queue in milliseconds", readonly = true)
+    public long getQueueWaitAverage()
+    {
+        return TimeUnit.NANOSECONDS.toMillis((long)queueWait.getMean());
+    }
+
+    /**
+     * @return the max time requests waited in the queue, in milliseconds
+     */
+    @ManagedAttribute(value = "The max time requests waited in the queue in milliseconds", readonly = true)
+    public long getQueueWaitMax()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(queueWait.getMax());
+    }
+
+    /**
+     * @return the number of requests rejected because the queue was saturated
+     */
+    @ManagedAttribute(value = "The number of requests rejected because the queue was saturated", readonly = true)
+    public long getRejections()
+    {
+        return rejections.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        queueWait.reset();
+        rejections.reset();
+    }
+
+    /**
+     * @param queued the number of queued requests
+     * @return whether a new request can be queued
+     */
+    public boolean tryQueue(int queued)
+    {
+        double queueRatio = getQueueRatio();
+        if (queueRatio <= 0 || queued < queueRatio * getLimit())
+            return true;
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * <p>Acquires a permit to dispatch a request, if the number
+     * of requests in flight is less than the current limit.</p>
+     *
+     * @return whether the permit was acquired
+     */
+    public boolean tryAcquire()
+    {
+        synchronized (this)
+        {
+            if (inFlight >= (int)limit())
+                return false;
+            ++inFlight;
+            return true;
+        }
+    }
+
+    /**
+     * <p>Releases a permit without a sample, for example
+     * when no request could be dispatched with it.</p>
+     */
+    public void release()
+    {
+        synchronized (this)
+        {
+            --inFlight;
+        }
+    }
+
+    /**
+     * <p>Releases a permit, adjusting the limit based on the outcome of the request.</p>
+     *
+     * @param rtt the round trip time of the request, in nanoseconds
+     * @param dropped whether the request failed or was rejected by the server
+     */
+    public void release(long rtt, boolean dropped)
+    {
+        synchronized (this)
+        {
+            int inFlight = this.inFlight--;
+            double limit = limit();
+            boolean congested = dropped || (averageRtt > 0 && rtt > averageRtt * getRttTolerance());
+            // Smooth the round trip time over roughly the last 20 requests.
+            averageRtt = averageRtt == 0 ? rtt : averageRtt + (rtt - averageRtt) / 20;
+
+            if (congested)
+            {
+                // Back off at most once per round trip, as the requests
+                // in flight will likely experience the same congestion.
+                long now = System.nanoTime();
+                if (now - lastBackoff >= averageRtt)
+                {
+                    lastBackoff = now;
+                    this.limit = Math.max(getMinLimit(), limit * getBackoffRatio());
+                }
+            }
+            else if (2 * inFlight >= limit)
+            {
+                // Only grow the limit if it is being used.
+                this.limit = Math.min(getMaxLimit(), limit + 1 / limit);
+            }
+        }
+    }
+
+    /**
+     * <p>Records the time a request waited in the queue before being dispatched.</p>
+     *
+     * @param wait the queue wait time, in nanoseconds
+     */
+    public void recordQueueWait(long wait)
+    {
+        queueWait.record(wait);
+    }
+
+    private double limit()
+    {
+        if (limit < 0)
+            limit = Math.max(getMinLimit(), Math.min(getMaxLimit(), getInitialLimit()));
+        return limit;
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized (this)
+        {
+            return String.format("%s@%x[limit=%d,inFlight=%d,rtt=%dms]", getClass().getSimpleName(), hashCode(), (int)limit(), inFlight, getAverageRtt());
+        }
+    }
+
+    /**
+     * <p>Factory of {@link ConcurrencyLimiter}s, one for each {@link HttpDestination}.</p>
+     */
+    public interface Factory
+    {
+        /**
+         * @param destination the destination
+         * @return a new concurrency limiter for the given destination
+         */
+        public ConcurrencyLimiter newConcurrencyLimiter(HttpDestination destination);
+    }
+}
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.client;
 
 import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.jetty.client.api.Connection;
 
@@ -52,6 +53,18 @@ public interface ConnectionPool extends Closeable
      */
     Connection acquire();
 
+    /**
+     * <p>Optionally opens up to {@code connectionCount} connections in advance,
+     * so that they are ready to be used by subsequent requests.</p>
+     *
+     * @param connectionCount the number of connections to open
+     * @return a future completed when the connections have been opened
+     */
+    default CompletableFuture<Void> preCreateConnections(int connectionCount)
+    {
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * <p>Returns the given connection, previously obtained via {@link #acquire()},
      * back to this ConnectionPool.</p>
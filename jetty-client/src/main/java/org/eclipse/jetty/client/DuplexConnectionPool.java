@@ -68,6 +68,7 @@ public class DuplexConnectionPool extends AbstractConnectionPool implements Swee
     }
 
     @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    @Override
     public int getIdleConnectionCount()
     {
         lock();
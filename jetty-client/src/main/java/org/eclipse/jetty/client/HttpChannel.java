@@ -163,6 +163,7 @@ public abstract class HttpChannel
 
     public void exchangeTerminated(HttpExchange exchange, Result result)
     {
+        getHttpDestination().releasePermit(exchange, result);
         disassociate(exchange);
     }
 
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.CookieStore;
+import java.net.Inet6Address;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
@@ -44,6 +45,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jetty.client.api.AuthenticationStore;
 import org.eclipse.jetty.client.api.Connection;
@@ -61,6 +64,7 @@ import org.eclipse.jetty.http.HttpParser;
 import org.eclipse.jetty.http.HttpScheme;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.ClientConnectionFactory;
+import org.eclipse.jetty.io.ClientResources;
 import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.io.ssl.SslClientConnectionFactory;
 import org.eclipse.jetty.util.Fields;
@@ -129,8 +133,11 @@ public class HttpClient extends ContainerLifeCycle
     private final HttpClientTransport transport;
     private final SslContextFactory sslContextFactory;
     private AuthenticationStore authenticationStore = new HttpAuthenticationStore();
+    private RetryBudget retryBudget = new RetryBudget();
+    private ConcurrencyLimiter.Factory concurrencyLimiterFactory;
     private CookieManager cookieManager;
     private CookieStore cookieStore;
+    private ClientResources clientResources;
     private Executor executor;
     private ByteBufferPool byteBufferPool;
     private Scheduler scheduler;
@@ -138,6 +145,7 @@ public class HttpClient extends ContainerLifeCycle
     private HttpField agentField = new HttpField(HttpHeader.USER_AGENT, "Jetty/" + Jetty.VERSION);
     private boolean followRedirects = true;
     private int maxConnectionsPerDestination = 64;
+    private int minIdleConnectionsPerDestination;
     private int maxRequestsQueuedPerDestination = 1024;
     private int requestBufferSize = 4096;
     private int responseBufferSize = 16384;
@@ -151,6 +159,7 @@ public class HttpClient extends ContainerLifeCycle
     private HttpField encodingField;
     private boolean removeIdleDestinations = false;
     private boolean connectBlocking = false;
+    private long connectionAttemptDelay;
     private String name = getClass().getSimpleName() + "@" + Integer.toHexString(hashCode());
     private HttpCompliance httpCompliance = HttpCompliance.RFC7230;
     private String defaultRequestContentType = "application/octet-stream";
@@ -186,6 +195,7 @@ public class HttpClient extends ContainerLifeCycle
         addBean(sslContextFactory);
         addBean(handlers);
         addBean(decoderFactories);
+        addBean(retryBudget);
     }
 
     @Override
@@ -211,6 +221,17 @@ public class HttpClient extends ContainerLifeCycle
     @Override
     protected void doStart() throws Exception
     {
+        if (clientResources != null)
+        {
+            clientResources.retain();
+            if (executor == null)
+                setExecutor(clientResources.getExecutor());
+            if (byteBufferPool == null)
+                setByteBufferPool(clientResources.getByteBufferPool());
+            if (scheduler == null)
+                setScheduler(clientResources.getScheduler());
+        }
+
         if (executor == null)
         {
             QueuedThreadPool threadPool = new QueuedThreadPool();
@@ -264,6 +285,9 @@ public class HttpClient extends ContainerLifeCycle
         authenticationStore.clearAuthenticationResults();
 
         super.doStop();
+
+        if (clientResources != null)
+            clientResources.release();
     }
 
     /**
@@ -294,6 +318,47 @@ public class HttpClient extends ContainerLifeCycle
         this.cookieManager = newCookieManager();
     }
 
+    /**
+     * @return the budget of the requests retried or hedged by a {@link RetryPolicy}
+     */
+    public RetryBudget getRetryBudget()
+    {
+        return retryBudget;
+    }
+
+    /**
+     * @param retryBudget the budget of the requests retried or hedged by a {@link RetryPolicy}
+     */
+    public void setRetryBudget(RetryBudget retryBudget)
+    {
+        updateBean(this.retryBudget, retryBudget);
+        this.retryBudget = Objects.requireNonNull(retryBudget);
+    }
+
+    /**
+     * @return the factory of the adaptive concurrency limiters of destinations, or null
+     * if the concurrency of destinations is only limited by their connection pool
+     */
+    public ConcurrencyLimiter.Factory getConcurrencyLimiterFactory()
+    {
+        return concurrencyLimiterFactory;
+    }
+
+    /**
+     * <p>Sets the factory of the {@link ConcurrencyLimiter}s that adaptively limit
+     * the number of concurrent requests of each destination, for example:</p>
+     * <pre>
+     * httpClient.setConcurrencyLimiterFactory(destination -&gt; new ConcurrencyLimiter());
+     * </pre>
+     * <p>Only destinations created after this call are limited.</p>
+     *
+     * @param concurrencyLimiterFactory the factory of concurrency limiters, or null to disable adaptive limiting
+     */
+    public void setConcurrencyLimiterFactory(ConcurrencyLimiter.Factory concurrencyLimiterFactory)
+    {
+        this.concurrencyLimiterFactory = concurrencyLimiterFactory;
+    }
+
     /**
      * Keep this method package-private because its interface is so ugly
      * that we really don't want to expose it more than strictly needed.
@@ -587,7 +652,11 @@ public class HttpClient extends ContainerLifeCycle
                 Map<String, Object> context = new HashMap<>();
                 context.put(ClientConnectionFactory.CONNECTOR_CONTEXT_KEY, HttpClient.this);
                 context.put(HttpClientTransport.HTTP_DESTINATION_CONTEXT_KEY, destination);
-                connect(socketAddresses, 0, context);
+                long delay = getConnectionAttemptDelay();
+                if (delay > 0 && socketAddresses.size() > 1 && !isConnectBlocking())
+                    new ConnectionAttempts(socketAddresses, context, delay, promise).connect();
+                else
+                    connect(socketAddresses, 0, context);
             }
 
             @Override
@@ -615,6 +684,102 @@ public class HttpClient extends ContainerLifeCycle
         });
     }
 
+    /**
+     * <p>Connects to multiple addresses of the same host in parallel,
+     * starting a new connection attempt every {@code delay} milliseconds,
+     * or as soon as a previous connection attempt fails.</p>
+     */
+    private class ConnectionAttempts
+    {
+        private final AtomicBoolean complete = new AtomicBoolean();
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final List<InetSocketAddress> socketAddresses;
+        private final Map<String, Object> context;
+        private final long delay;
+        private final Promise<Connection> promise;
+
+        private ConnectionAttempts(List<InetSocketAddress> socketAddresses, Map<String, Object> context, long delay, Promise<Connection> promise)
+        {
+            this.socketAddresses = interleave(socketAddresses);
+            this.context = context;
+            this.delay = delay;
+            this.promise = promise;
+        }
+
+        private void connect()
+        {
+            if (complete.get())
+                return;
+            int index = attempts.getAndIncrement();
+            if (index >= socketAddresses.size())
+                return;
+
+            InetSocketAddress socketAddress = socketAddresses.get(index);
+            if (LOG.isDebugEnabled())
+                LOG.debug("Connection attempt {}/{} to {}", index + 1, socketAddresses.size(), socketAddress);
+            Scheduler.Task task = index + 1 < socketAddresses.size() ? getScheduler().schedule(this::connect, delay, TimeUnit.MILLISECONDS) : null;
+            Map<String, Object> attemptContext = new HashMap<>(context);
+            attemptContext.put(HttpClientTransport.HTTP_CONNECTION_PROMISE_CONTEXT_KEY, new Promise<Connection>()
+            {
+                @Override
+                public void succeeded(Connection connection)
+                {
+                    if (task != null)
+                        task.cancel();
+                    if (complete.compareAndSet(false, true))
+                    {
+                        promise.succeeded(connection);
+                    }
+                    else
+                    {
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("Closing redundant connection to {}: {}", socketAddress, connection);
+                        connection.close();
+                    }
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Connection attempt to " + socketAddress + " failed", x);
+                    // Do not wait for the delay to try the next address.
+                    if (task != null && task.cancel())
+                        connect();
+                    if (failures.incrementAndGet() == socketAddresses.size() && complete.compareAndSet(false, true))
+                        promise.failed(x);
+                }
+            });
+            transport.connect(socketAddress, attemptContext);
+        }
+
+        /**
+         * @param socketAddresses the addresses in the order returned by the resolver
+         * @return the addresses alternating the address families, starting with the family of the first address
+         */
+        private List<InetSocketAddress> interleave(List<InetSocketAddress> socketAddresses)
+        {
+            boolean firstIPv6 = socketAddresses.get(0).getAddress() instanceof Inet6Address;
+            List<InetSocketAddress> first = new ArrayList<>();
+            List<InetSocketAddress> second = new ArrayList<>();
+            for (InetSocketAddress socketAddress : socketAddresses)
+            {
+                boolean ipv6 = socketAddress.getAddress() instanceof Inet6Address;
+                (ipv6 == firstIPv6 ? first : second).add(socketAddress);
+            }
+            List<InetSocketAddress> result = new ArrayList<>(socketAddresses.size());
+            for (int i = 0; i < Math.max(first.size(), second.size()); ++i)
+            {
+                if (i < first.size())
+                    result.add(first.get(i));
+                if (i < second.size())
+                    result.add(second.get(i));
+            }
+            return result;
+        }
+    }
+
     private HttpConversation newConversation()
     {
         return new HttpConversation();
@@ -784,6 +949,34 @@ public class HttpClient extends ContainerLifeCycle
         this.followRedirects = follow;
     }
 
+    /**
+     * @return the {@link ClientResources} shared by this {@link HttpClient}, or null if this
+     * {@link HttpClient} does not share resources with other clients
+     */
+    public ClientResources getClientResources()
+    {
+        return clientResources;
+    }
+
+    /**
+     * <p>Sets the {@link ClientResources} that this {@link HttpClient} shares with other clients.</p>
+     * <p>The shared resources provide the {@link #getExecutor() executor}, the {@link #getScheduler() scheduler}
+     * and the {@link #getByteBufferPool() buffer pool}, unless they have been explicitly configured,
+     * and the selectors of {@link HttpClientTransport}s that support them, such as {@link HttpClientTransportOverHTTP}; in this case, the connect timeout
+     * is that of the shared resources.</p>
+     * <p>The shared resources are retained when this {@link HttpClient} starts and released when it stops.</p>
+     *
+     * @param clientResources the {@link ClientResources} shared by this {@link HttpClient}
+     */
+    public void setClientResources(ClientResources clientResources)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        // Unmanaged, as the lifecycle of the shared resources is reference counted.
+        updateBean(this.clientResources, clientResources, false);
+        this.clientResources = clientResources;
+    }
+
     /**
      * @return the {@link Executor} of this {@link HttpClient}
      */
@@ -831,7 +1024,15 @@ public class HttpClient extends ContainerLifeCycle
     }
 
     /**
+     * <p>Sets the {@link SocketAddressResolver} of this {@link HttpClient}.</p>
+     * <p>Address resolutions can be cached by wrapping the resolver, for example:</p>
+     * <pre>
+     * httpClient.setSocketAddressResolver(new SocketAddressResolver.Caching(
+     *         new SocketAddressResolver.Async(executor, scheduler, timeout)));
+     * </pre>
+     *
      * @param resolver the {@link SocketAddressResolver} of this {@link HttpClient}
+     * @see SocketAddressResolver.Caching
      */
     public void setSocketAddressResolver(SocketAddressResolver resolver)
     {
@@ -866,6 +1067,32 @@ public class HttpClient extends ContainerLifeCycle
         this.maxConnectionsPerDestination = maxConnectionsPerDestination;
     }
 
+    /**
+     * @return the min number of idle connections that this {@link HttpClient} keeps open to {@link Destination}s
+     */
+    @ManagedAttribute("The min number of idle connections per each destination")
+    public int getMinIdleConnectionsPerDestination()
+    {
+        return minIdleConnectionsPerDestination;
+    }
+
+    /**
+     * Sets the min number of idle connections to keep open to each destination.
+     * <p>
+     * Connections are opened in advance when a destination is created, and are
+     * opened again when they idle timeout, so that requests after a period of
+     * inactivity do not pay the latency of opening connections (and the TLS handshake).
+     * The value can be changed for a single destination via
+     * {@link AbstractConnectionPool#setMinIdleConnectionCount(int)}.
+     *
+     * @param minIdleConnectionsPerDestination the min number of idle connections per destination, or 0 to open connections only on demand
+     * @see ConnectionPool#preCreateConnections(int)
+     */
+    public void setMinIdleConnectionsPerDestination(int minIdleConnectionsPerDestination)
+    {
+        this.minIdleConnectionsPerDestination = minIdleConnectionsPerDestination;
+    }
+
     /**
      * @return the max number of requests that may be queued to a {@link Destination}.
      */
@@ -1105,6 +1332,33 @@ public class HttpClient extends ContainerLifeCycle
         this.connectBlocking = connectBlocking;
     }
 
+    /**
+     * @return the delay, in milliseconds, before attempting to connect to the next address of a host
+     */
+    @ManagedAttribute("The delay, in milliseconds, before attempting to connect to the next address of a host")
+    public long getConnectionAttemptDelay()
+    {
+        return connectionAttemptDelay;
+    }
+
+    /**
+     * <p>Sets the delay before attempting to connect to the next address of a host that resolves
+     * to multiple addresses, while the connection attempts to the previous addresses are still pending,
+     * as described by <a href="https://tools.ietf.org/html/rfc8305">RFC 8305</a> (Happy Eyeballs).</p>
+     * <p>The addresses are attempted alternating IPv6 and IPv4 addresses, and the first connection
+     * that succeeds is used, while the others are closed.</p>
+     * <p>When the delay is zero (the default), or when {@link #isConnectBlocking() connect operations
+     * are blocking}, the addresses are attempted sequentially, moving to the next address only when
+     * the connection attempt to the previous address fails.</p>
+     *
+     * @param connectionAttemptDelay the delay, in milliseconds, before attempting to connect to the next address,
+     * typically 250 ms, or 0 to attempt addresses sequentially
+     */
+    public void setConnectionAttemptDelay(long connectionAttemptDelay)
+    {
+        this.connectionAttemptDelay = connectionAttemptDelay;
+    }
+
     /**
      * @return the default content type for request content
      */
@@ -22,19 +22,23 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.AsynchronousCloseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.CyclicTimeout;
 import org.eclipse.jetty.util.BlockingArrayQueue;
@@ -65,6 +69,9 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
     private final ClientConnectionFactory connectionFactory;
     private final HttpField hostField;
     private final TimeoutTask timeout;
+    private final AtomicLongArray latencies = new AtomicLongArray(64);
+    private final AtomicLong latencyCount = new AtomicLong();
+    private final ConcurrencyLimiter concurrencyLimiter;
     private ConnectionPool connectionPool;
 
     public HttpDestination(HttpClient client, Origin origin)
@@ -99,6 +106,11 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
         if (!client.isDefaultPort(getScheme(), getPort()))
             host += ":" + getPort();
         hostField = new HttpField(HttpHeader.HOST, host);
+
+        ConcurrencyLimiter.Factory limiterFactory = client.getConcurrencyLimiterFactory();
+        concurrencyLimiter = limiterFactory == null ? null : limiterFactory.newConcurrencyLimiter(this);
+        if (concurrencyLimiter != null)
+            addBean(concurrencyLimiter);
     }
 
     @Override
@@ -110,6 +122,9 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
         Sweeper sweeper = client.getBean(Sweeper.class);
         if (sweeper != null && connectionPool instanceof Sweeper.Sweepable)
             sweeper.offer((Sweeper.Sweepable)connectionPool);
+        int minIdle = client.getMinIdleConnectionsPerDestination();
+        if (minIdle > 0 && connectionPool instanceof AbstractConnectionPool)
+            ((AbstractConnectionPool)connectionPool).setMinIdleConnectionCount(minIdle);
     }
 
     @Override
@@ -206,6 +221,74 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
         return exchanges.size();
     }
 
+    /**
+     * <p>Records the latency of a response, from when the request
+     * is sent to when the response begins.</p>
+     *
+     * @param latency the response latency, in nanoseconds
+     */
+    void recordResponseLatency(long latency)
+    {
+        long index = latencyCount.getAndIncrement();
+        latencies.set((int)(index % latencies.length()), latency);
+    }
+
+    /**
+     * <p>Returns the given percentile of the recent response latencies,
+     * as recorded for the requests sent with a {@link RetryPolicy}.</p>
+     *
+     * @param percentile the percentile, for example 0.95
+     * @return the latency percentile in nanoseconds, or -1 if not
+     * enough response latencies have been recorded
+     */
+    public long getResponseLatency(double percentile)
+    {
+        int count = (int)Math.min(latencyCount.get(), latencies.length());
+        if (count < latencies.length() / 4)
+            return -1;
+        long[] samples = new long[count];
+        for (int i = 0; i < count; ++i)
+            samples[i] = latencies.get(i);
+        Arrays.sort(samples);
+        int index = (int)Math.ceil(percentile * count) - 1;
+        return samples[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * @return the concurrency limiter of this destination, or null if the concurrency is not limited
+     * @see HttpClient#setConcurrencyLimiterFactory(ConcurrencyLimiter.Factory)
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter()
+    {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * <p>Releases the {@link ConcurrencyLimiter} permit held by the given exchange, if any.</p>
+     *
+     * @param exchange the exchange
+     * @param result the exchange result, or null if the exchange has not been completed
+     */
+    void releasePermit(HttpExchange exchange, Result result)
+    {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter == null)
+            return;
+        long rtt = exchange.releasePermit(System.nanoTime());
+        if (rtt < 0)
+            return;
+        if (result == null)
+        {
+            limiter.release();
+        }
+        else
+        {
+            int status = result.getResponse().getStatus();
+            boolean dropped = result.isFailed() || status == HttpStatus.TOO_MANY_REQUESTS_429 || status == HttpStatus.SERVICE_UNAVAILABLE_503;
+            limiter.release(rtt, dropped);
+        }
+    }
+
     public Origin.Address getConnectAddress()
     {
         return proxy == null ? origin.getAddress() : proxy.getAddress();
@@ -251,6 +334,21 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
         HttpRequest request = exchange.getRequest();
         if (client.isRunning())
         {
+            // An exchange that is sent again must not keep its permit.
+            releasePermit(exchange, null);
+            ConcurrencyLimiter limiter = concurrencyLimiter;
+            if (limiter != null)
+            {
+                if (!limiter.tryQueue(exchanges.size()))
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Concurrency limit {} saturated by {} for {}", limiter, request, this);
+                    request.abort(new RejectedExecutionException("Concurrency limit " + limiter.getLimit() + " saturated for " + this));
+                    return;
+                }
+                exchange.queued(System.nanoTime());
+            }
+
             if (enqueue(exchanges, exchange))
             {
                 long expiresAt = request.getTimeoutAt();
@@ -296,18 +394,30 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
 
     private void process()
     {
+        ConcurrencyLimiter limiter = concurrencyLimiter;
         while (true)
         {
+            if (limiter != null && !limiter.tryAcquire())
+                break;
             Connection connection = connectionPool.acquire();
             if (connection == null)
+            {
+                if (limiter != null)
+                    limiter.release();
                 break;
-            boolean proceed = process(connection);
+            }
+            boolean proceed = process(connection, limiter != null);
             if (!proceed)
                 break;
         }
     }
 
     public boolean process(final Connection connection)
+    {
+        return process(connection, false);
+    }
+
+    private boolean process(Connection connection, boolean permit)
     {
         HttpClient client = getHttpClient();
         final HttpExchange exchange = getHttpExchanges().poll();
@@ -315,6 +425,8 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
             LOG.debug("Processing exchange {} on {} of {}", exchange, connection, this);
         if (exchange == null)
         {
+            if (permit)
+                concurrencyLimiter.release();
             if (!connectionPool.release(connection))
                 connection.close();
             if (!client.isRunning())
@@ -334,6 +446,8 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
                 if (LOG.isDebugEnabled())
                     LOG.debug("Aborted before processing {}: {}", exchange, cause);
                 // Won't use this connection, release it back.
+                if (permit)
+                    concurrencyLimiter.release();
                 if (!connectionPool.release(connection))
                     connection.close();
                 // It may happen that the request is aborted before the exchange
@@ -343,15 +457,24 @@ public abstract class HttpDestination extends ContainerLifeCycle implements Dest
             }
             else
             {
+                if (connectionPool instanceof AbstractConnectionPool)
+                    ((AbstractConnectionPool)connectionPool).used(connection);
+                if (permit)
+                    concurrencyLimiter.recordQueueWait(exchange.acquirePermit(System.nanoTime()));
                 SendFailure result = send(connection, exchange);
                 if (result != null)
                 {
                     if (LOG.isDebugEnabled())
                         LOG.debug("Send failed {} for {}", result, exchange);
                     if (result.retry)
+                    {
                         send(exchange);
+                    }
                     else
+                    {
+                        releasePermit(exchange, null);
                         request.abort(result.failure);
+                    }
                 }
             }
             return getHttpExchanges().peek() != null;
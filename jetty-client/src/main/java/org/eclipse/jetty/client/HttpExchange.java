@@ -38,6 +38,9 @@ public class HttpExchange
     private HttpChannel _channel;
     private Throwable requestFailure;
     private Throwable responseFailure;
+    private long queueTime;
+    private long permitTime;
+    private boolean permit;
 
     public HttpExchange(HttpDestination destination, HttpRequest request, List<Response.ResponseListener> listeners)
     {
@@ -269,6 +272,78 @@ public class HttpExchange
         responseNotifier.notifyComplete(listeners, new Result(request, failure, response, failure));
     }
 
+    /**
+     * <p>Terminates this exchange without notifying its listeners, provided that
+     * its request has been sent and its response has not been received yet, and
+     * returns a new exchange for the same request and listeners, so that the
+     * request can be sent again on another connection.</p>
+     * <p>Only idempotent requests should be sent again, and the request
+     * listeners are notified again when the request is sent again.</p>
+     *
+     * @return a new exchange for the same request, or null if this exchange
+     * could not be terminated
+     */
+    public HttpExchange retry()
+    {
+        HttpChannel channel;
+        synchronized (this)
+        {
+            if (requestState != State.TERMINATED || requestFailure != null || responseState != State.PENDING)
+                return null;
+            responseState = State.TERMINATED;
+            channel = _channel;
+        }
+
+        destination.releasePermit(this, null);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Retrying {}", this);
+        if (channel != null)
+            channel.disassociate(this);
+        getConversation().getExchanges().remove(this);
+        return new HttpExchange(destination, request, listeners);
+    }
+
+    void queued(long nanoTime)
+    {
+        synchronized (this)
+        {
+            queueTime = nanoTime;
+        }
+    }
+
+    /**
+     * <p>Records that this exchange has been dispatched with a
+     * permit of the destination {@link ConcurrencyLimiter}.</p>
+     *
+     * @param nanoTime the dispatch time
+     * @return the time this exchange waited in the destination queue, in nanoseconds
+     */
+    long acquirePermit(long nanoTime)
+    {
+        synchronized (this)
+        {
+            permit = true;
+            permitTime = nanoTime;
+            return nanoTime - queueTime;
+        }
+    }
+
+    /**
+     * @param nanoTime the current time
+     * @return the time elapsed since this exchange has been dispatched with a permit,
+     * in nanoseconds, or -1 if this exchange does not hold a permit
+     */
+    long releasePermit(long nanoTime)
+    {
+        synchronized (this)
+        {
+            if (!permit)
+                return -1;
+            permit = false;
+            return nanoTime - permitTime;
+        }
+    }
+
     public void resetResponse()
     {
         synchronized (this)
@@ -86,6 +86,8 @@ public class HttpRequest implements Request
     private List<RequestListener> requestListeners;
     private BiFunction<Request, Request, Response.CompleteListener> pushListener;
     private Supplier<HttpFields> trailers;
+    private RetryPolicy retryPolicy;
+    private volatile HttpRetrier retrier;
 
     protected HttpRequest(HttpClient client, HttpConversation conversation, URI uri)
     {
@@ -446,7 +448,7 @@ public class HttpRequest implements Request
         });
     }
 
-    private Request requestListener(RequestListener listener)
+    Request requestListener(RequestListener listener)
     {
         if (requestListeners == null)
             requestListeners = new ArrayList<>();
@@ -633,6 +635,19 @@ public class HttpRequest implements Request
         return content(new PathContentProvider(contentType, file));
     }
 
+    @Override
+    public RetryPolicy getRetryPolicy()
+    {
+        return retryPolicy;
+    }
+
+    @Override
+    public Request retryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     @Override
     public boolean isFollowRedirects()
     {
@@ -723,7 +738,17 @@ public class HttpRequest implements Request
         if (listener != null)
             responseListeners.add(listener);
         sent();
-        client.send(request, responseListeners);
+        RetryPolicy retryPolicy = getRetryPolicy();
+        if (retryPolicy != null)
+        {
+            HttpRetrier retrier = new HttpRetrier(client, request, retryPolicy);
+            this.retrier = retrier;
+            retrier.send(responseListeners);
+        }
+        else
+        {
+            client.send(request, responseListeners);
+        }
     }
 
     void sent()
@@ -763,6 +788,9 @@ public class HttpRequest implements Request
         {
             if (content instanceof Callback)
                 ((Callback)content).failed(cause);
+            HttpRetrier retrier = this.retrier;
+            if (retrier != null)
+                return retrier.abort(cause);
             return conversation.abort(cause);
         }
         return false;
@@ -0,0 +1,409 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.net.HttpCookie;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>Sends a request that has a {@link RetryPolicy}.</p>
+ * <p>The request itself is never sent: copies of the request, each in its own
+ * conversation, are sent instead, one at a time when retrying, or concurrently
+ * when hedging.
+ * The response events of the copy whose response is taken are forwarded to the
+ * response listeners of the request, while the response events of the other
+ * copies are discarded.</p>
+ */
+class HttpRetrier
+{
+    private static final Logger LOG = Log.getLogger(HttpRetrier.class);
+
+    private final List<Attempt> attempts = new ArrayList<>();
+    private final ResponseNotifier notifier = new ResponseNotifier();
+    private final HttpClient client;
+    private final HttpRequest request;
+    private final RetryPolicy policy;
+    private final RetryBudget budget;
+    private final HttpDestination destination;
+    private List<Response.ResponseListener> listeners;
+    private Attempt winner;
+    private Throwable aborted;
+    private int retries;
+    private int hedges;
+    private boolean complete;
+    private Scheduler.Task retryTask;
+    private Scheduler.Task hedgeTask;
+
+    HttpRetrier(HttpClient client, HttpRequest request, RetryPolicy policy)
+    {
+        this.client = client;
+        this.request = request;
+        this.policy = policy;
+        this.budget = client.getRetryBudget();
+        this.destination = client.destinationFor(request.getScheme(), request.getHost(), request.getPort());
+    }
+
+    void send(List<Response.ResponseListener> listeners)
+    {
+        this.listeners = listeners;
+        budget.deposit();
+        attempt();
+        scheduleHedge();
+    }
+
+    boolean abort(Throwable cause)
+    {
+        List<Attempt> active;
+        synchronized (this)
+        {
+            if (complete)
+                return false;
+            aborted = cause;
+            cancel();
+            active = new ArrayList<>(attempts);
+            if (active.isEmpty())
+                complete = true;
+        }
+
+        if (active.isEmpty())
+        {
+            // Aborted while waiting to retry.
+            fail(null, cause);
+            return true;
+        }
+
+        boolean result = false;
+        for (Attempt attempt : active)
+            result |= attempt.request.abort(cause);
+        return result;
+    }
+
+    private void attempt()
+    {
+        Throwable failure = request.getAbortCause();
+        long timeout = 0;
+        if (failure == null)
+        {
+            long timeoutAt = request.getTimeoutAt();
+            if (timeoutAt >= 0)
+            {
+                // The request total timeout applies to all attempts.
+                timeout = TimeUnit.NANOSECONDS.toMillis(timeoutAt - System.nanoTime());
+                if (timeout <= 0)
+                    failure = new TimeoutException("Total timeout " + request.getTimeout() + " ms elapsed");
+            }
+        }
+
+        if (failure != null)
+        {
+            synchronized (this)
+            {
+                if (complete)
+                    return;
+                complete = true;
+            }
+            fail(null, failure);
+            return;
+        }
+
+        Attempt attempt = new Attempt(newRequest(timeout));
+        synchronized (this)
+        {
+            if (complete || winner != null)
+                return;
+            attempts.add(attempt);
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Sending {} for {}", attempt.request, this);
+        attempt.request.send(attempt);
+    }
+
+    private HttpRequest newRequest(long timeout)
+    {
+        HttpRequest copy = client.newHttpRequest(new HttpConversation(), request.getURI());
+        copy.method(request.getMethod())
+                .version(request.getVersion())
+                .content(request.getContent())
+                .idleTimeout(request.getIdleTimeout(), TimeUnit.MILLISECONDS)
+                .timeout(timeout, TimeUnit.MILLISECONDS)
+                .followRedirects(request.isFollowRedirects());
+        HttpFields headers = copy.getHeaders();
+        headers.clear();
+        headers.addAll(request.getHeaders());
+        for (HttpCookie cookie : request.getCookies())
+            copy.cookie(cookie);
+        request.getAttributes().forEach(copy::attribute);
+        for (Request.RequestListener listener : request.getRequestListeners(null))
+            copy.requestListener(listener);
+        copy.pushListener(request.getPushListener());
+        copy.trailers(request.getTrailers());
+        return copy;
+    }
+
+    private void scheduleHedge()
+    {
+        if (!policy.isHedging() || !policy.isRepeatable(request))
+            return;
+
+        long delay = -1;
+        if (policy.getHedgePercentile() > 0)
+        {
+            long latency = destination.getResponseLatency(policy.getHedgePercentile());
+            if (latency >= 0)
+                delay = Math.max(1, TimeUnit.NANOSECONDS.toMillis(latency));
+        }
+        if (delay < 0 && policy.getHedgeDelay() > 0)
+            delay = policy.getHedgeDelay();
+        if (delay < 0)
+            return;
+
+        synchronized (this)
+        {
+            if (complete || winner != null || hedges >= policy.getMaxHedges())
+                return;
+            hedgeTask = client.getScheduler().schedule(this::hedge, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void hedge()
+    {
+        synchronized (this)
+        {
+            hedgeTask = null;
+            if (complete || winner != null || attempts.isEmpty())
+                return;
+            // All the connections are busy, so the
+            // hedged request would only add load.
+            if (destination.getQueuedRequestCount() > 0)
+                return;
+            if (!budget.tryHedge())
+                return;
+            ++hedges;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Hedging {}", this);
+        attempt();
+        scheduleHedge();
+    }
+
+    private void retry()
+    {
+        long backoff;
+        synchronized (this)
+        {
+            backoff = policy.getBackoff(retries);
+            retryTask = client.getScheduler().schedule(this::attempt, backoff, TimeUnit.MILLISECONDS);
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Retrying in {} ms {}", backoff, this);
+    }
+
+    private void cancel()
+    {
+        if (retryTask != null)
+            retryTask.cancel();
+        retryTask = null;
+        if (hedgeTask != null)
+            hedgeTask.cancel();
+        hedgeTask = null;
+    }
+
+    private void fail(Response response, Throwable failure)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Failed " + this, failure);
+        if (response == null)
+            response = new HttpResponse(request, listeners);
+        notifier.notifyFailure(listeners, response, failure);
+        notifier.notifyComplete(listeners, new Result(request, failure, response, failure));
+    }
+
+    @Override
+    public String toString()
+    {
+        synchronized (this)
+        {
+            return String.format("%s@%x[%s,attempts=%d,retries=%d,hedges=%d]",
+                    getClass().getSimpleName(),
+                    hashCode(),
+                    request,
+                    attempts.size(),
+                    retries,
+                    hedges);
+        }
+    }
+
+    private class Attempt extends Response.Listener.Adapter
+    {
+        private final long start = System.nanoTime();
+        private final HttpRequest request;
+        private boolean taken;
+        private boolean retry;
+
+        private Attempt(HttpRequest request)
+        {
+            this.request = request;
+        }
+
+        @Override
+        public void onBegin(Response response)
+        {
+            List<Attempt> losers = null;
+            synchronized (HttpRetrier.this)
+            {
+                if (complete || winner != null)
+                    return;
+                if (policy.isRetry(HttpRetrier.this.request, response) &&
+                        retries < policy.getMaxRetries() && budget.tryRetry())
+                {
+                    // Discard this response, the request is retried when it completes.
+                    ++retries;
+                    retry = true;
+                }
+                else
+                {
+                    taken = true;
+                    winner = this;
+                    cancel();
+                    losers = new ArrayList<>(attempts);
+                    losers.remove(this);
+                }
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} response {} for {}", taken ? "Taking" : "Discarding", response, this);
+            if (!taken)
+                return;
+
+            destination.recordResponseLatency(System.nanoTime() - start);
+            for (Attempt loser : losers)
+                loser.request.abort(new CancellationException("Hedged request not taken"));
+            notifier.notifyBegin(listeners, response);
+        }
+
+        @Override
+        public boolean onHeader(Response response, HttpField field)
+        {
+            return !taken || notifier.notifyHeader(listeners, response, field);
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            if (taken)
+                notifier.notifyHeaders(listeners, response);
+        }
+
+        @Override
+        public void onContent(Response response, ByteBuffer content, Callback callback)
+        {
+            if (taken)
+                notifier.notifyContent(listeners, response, content, callback);
+            else
+                callback.succeeded();
+        }
+
+        @Override
+        public void onSuccess(Response response)
+        {
+            if (taken)
+                notifier.notifySuccess(listeners, response);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable failure)
+        {
+            if (taken)
+                notifier.notifyFailure(listeners, response, failure);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            Throwable failure = null;
+            boolean retry = false;
+            synchronized (HttpRetrier.this)
+            {
+                attempts.remove(this);
+                if (taken)
+                {
+                    complete = true;
+                }
+                else if (complete || winner != null)
+                {
+                    // Not taken, or already failed.
+                    return;
+                }
+                else if (attempts.isEmpty())
+                {
+                    // If there are other attempts, wait for them to complete.
+                    if (aborted != null)
+                    {
+                        failure = aborted;
+                    }
+                    else if (this.retry)
+                    {
+                        retry = true;
+                    }
+                    else if (policy.isRetry(HttpRetrier.this.request, result.getFailure()) &&
+                            retries < policy.getMaxRetries() && budget.tryRetry())
+                    {
+                        ++retries;
+                        retry = true;
+                    }
+                    else
+                    {
+                        failure = result.getFailure();
+                    }
+                    if (failure != null)
+                        complete = true;
+                }
+            }
+
+            if (taken)
+                notifier.notifyComplete(listeners, new Result(HttpRetrier.this.request, result.getRequestFailure(), result.getResponse(), result.getResponseFailure()));
+            else if (failure != null)
+                fail(result.getResponse(), failure);
+            else if (retry)
+                retry();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), HttpRetrier.this);
+        }
+    }
+}
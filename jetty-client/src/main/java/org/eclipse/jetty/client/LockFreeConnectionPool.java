@@ -0,0 +1,309 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Sweeper;
+
+/**
+ * <p>A {@link ConnectionPool} for non-multiplexed connections that does not
+ * use locks to acquire and release connections.</p>
+ * <p>Connections are held in a fixed array of slots, one per connection, and
+ * each connection has an atomic state (idle, active or removed).
+ * Acquiring a connection scans the slots from the first one, and activates the
+ * first idle connection with a compare-and-set of its state, so that the
+ * connections in the first slots ("hot" connections) are preferred, while the
+ * others may be closed by their idle timeout.</p>
+ * <p>With thread affinity enabled, each thread first tries to acquire the connection
+ * it has released last, which is likely to still be in the caches of that CPU.
+ * Threads only remember the slot of that connection, so that they do not retain
+ * connections that have been removed from the pool, or the pool itself.</p>
+ */
+@ManagedObject
+public class LockFreeConnectionPool extends AbstractConnectionPool implements Sweeper.Sweepable
+{
+    private static final Logger LOG = Log.getLogger(LockFreeConnectionPool.class);
+    private static final int IDLE = 0;
+    private static final int ACTIVE = 1;
+    private static final int REMOVED = -1;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final Map<Connection, Entry> entries;
+    private final ThreadLocal<Integer> lastReleased;
+
+    public LockFreeConnectionPool(Destination destination, int maxConnections, Callback requester)
+    {
+        this(destination, maxConnections, requester, false);
+    }
+
+    public LockFreeConnectionPool(Destination destination, int maxConnections, Callback requester, boolean threadAffinity)
+    {
+        super(destination, maxConnections, requester);
+        this.slots = new AtomicReferenceArray<>(maxConnections);
+        this.entries = new ConcurrentHashMap<>(maxConnections);
+        this.lastReleased = threadAffinity ? new ThreadLocal<>() : null;
+    }
+
+    @ManagedAttribute(value = "Whether threads prefer the connection they released last", readonly = true)
+    public boolean isThreadAffinity()
+    {
+        return lastReleased != null;
+    }
+
+    @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    @Override
+    public int getIdleConnectionCount()
+    {
+        return count(IDLE);
+    }
+
+    @ManagedAttribute(value = "The number of active connections", readonly = true)
+    public int getActiveConnectionCount()
+    {
+        return count(ACTIVE);
+    }
+
+    private int count(int state)
+    {
+        int result = 0;
+        for (Entry entry : entries.values())
+        {
+            if (entry.state.get() == state)
+                ++result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isActive(Connection connection)
+    {
+        Entry entry = entries.get(connection);
+        return entry != null && entry.state.get() == ACTIVE;
+    }
+
+    @Override
+    protected void onCreated(Connection connection)
+    {
+        Entry entry = new Entry(connection);
+        entries.put(connection, entry);
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            // Use "cold" new connections as last.
+            if (slots.compareAndSet(i, null, entry))
+            {
+                entry.slot = i;
+                idle(connection, false);
+                return;
+            }
+        }
+
+        // Cannot happen, as the connection count is bounded by the number of slots.
+        if (LOG.isDebugEnabled())
+            LOG.debug("No slot for connection {}", connection);
+        entries.remove(connection);
+        removed(connection);
+        connection.close();
+    }
+
+    @Override
+    protected Connection activate()
+    {
+        if (lastReleased != null)
+        {
+            // The slot may now hold another connection, or none.
+            Integer slot = lastReleased.get();
+            Entry entry = slot == null ? null : slots.get(slot);
+            if (entry != null && entry.state.compareAndSet(IDLE, ACTIVE))
+                return active(entry.connection);
+        }
+
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.state.get() == IDLE && entry.state.compareAndSet(IDLE, ACTIVE))
+                return active(entry.connection);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean release(Connection connection)
+    {
+        Entry entry = entries.get(connection);
+        if (entry == null)
+            return false;
+
+        boolean closed = isClosed();
+        if (closed)
+        {
+            if (!entry.state.compareAndSet(ACTIVE, REMOVED))
+                return false;
+            entries.remove(connection);
+            clear(entry);
+        }
+        else
+        {
+            if (!entry.state.compareAndSet(ACTIVE, IDLE))
+                return false;
+            int slot = entry.slot;
+            if (lastReleased != null && slot >= 0)
+                lastReleased.set(slot);
+        }
+
+        released(connection);
+        return idle(connection, closed);
+    }
+
+    @Override
+    public boolean remove(Connection connection)
+    {
+        return remove(connection, false);
+    }
+
+    protected boolean remove(Connection connection, boolean force)
+    {
+        boolean activeRemoved = false;
+        boolean idleRemoved = false;
+        Entry entry = entries.remove(connection);
+        if (entry != null)
+        {
+            int state = entry.state.getAndSet(REMOVED);
+            activeRemoved = state == ACTIVE;
+            idleRemoved = state == IDLE;
+            clear(entry);
+        }
+
+        if (activeRemoved || force)
+            released(connection);
+        boolean removed = activeRemoved || idleRemoved || force;
+        if (removed)
+            removed(connection);
+        return removed;
+    }
+
+    private void clear(Entry entry)
+    {
+        for (int i = 0; i < slots.length(); ++i)
+        {
+            if (slots.compareAndSet(i, entry, null))
+                return;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+
+        List<Connection> connections = new ArrayList<>();
+        for (Entry entry : entries.values())
+        {
+            entry.state.set(REMOVED);
+            connections.add(entry.connection);
+        }
+        entries.clear();
+        for (int i = 0; i < slots.length(); ++i)
+            slots.set(i, null);
+
+        close(connections);
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        List<Connection> active = new ArrayList<>();
+        List<Connection> idle = new ArrayList<>();
+        for (Entry entry : entries.values())
+        {
+            int state = entry.state.get();
+            if (state == ACTIVE)
+                active.add(entry.connection);
+            else if (state == IDLE)
+                idle.add(entry.connection);
+        }
+        Dumpable.dumpObjects(out, indent, this, new DumpableCollection("active", active), new DumpableCollection("idle", idle));
+    }
+
+    @Override
+    public boolean sweep()
+    {
+        List<Connection> toSweep = entries.values().stream()
+                .filter(entry -> entry.state.get() == ACTIVE)
+                .map(entry -> entry.connection)
+                .filter(connection -> connection instanceof Sweeper.Sweepable)
+                .collect(Collectors.toList());
+
+        for (Connection connection : toSweep)
+        {
+            if (((Sweeper.Sweepable)connection).sweep())
+            {
+                boolean removed = remove(connection, true);
+                LOG.warn("Connection swept: {}{}{} from active connections{}{}",
+                        connection,
+                        System.lineSeparator(),
+                        removed ? "Removed" : "Not removed",
+                        System.lineSeparator(),
+                        dump());
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[c=%d/%d,a=%d,i=%d]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getConnectionCount(),
+                getMaxConnectionCount(),
+                getActiveConnectionCount(),
+                getIdleConnectionCount());
+    }
+
+    private static class Entry
+    {
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+        private final Connection connection;
+        private volatile int slot = -1;
+
+        private Entry(Connection connection)
+        {
+            this.connection = connection;
+        }
+    }
+}
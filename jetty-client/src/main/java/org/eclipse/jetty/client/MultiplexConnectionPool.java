@@ -31,12 +31,15 @@ import java.util.stream.Collectors;
 
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.Dumpable;
 import org.eclipse.jetty.util.component.DumpableCollection;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Sweeper;
 
+@ManagedObject
 public class MultiplexConnectionPool extends AbstractConnectionPool implements ConnectionPool.Multiplexable, Sweeper.Sweepable
 {
     private static final Logger LOG = Log.getLogger(MultiplexConnectionPool.class);
@@ -109,6 +112,68 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
         }
     }
 
+    @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    @Override
+    public int getIdleConnectionCount()
+    {
+        lock();
+        try
+        {
+            return idleConnections.size();
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of active connections", readonly = true)
+    public int getActiveConnectionCount()
+    {
+        lock();
+        try
+        {
+            return muxedConnections.size() + busyConnections.size();
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of connections at max multiplex", readonly = true)
+    public int getBusyConnectionCount()
+    {
+        lock();
+        try
+        {
+            return busyConnections.size();
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
+    @ManagedAttribute(value = "The number of requests active on all connections", readonly = true)
+    public int getActiveRequestCount()
+    {
+        lock();
+        try
+        {
+            int result = 0;
+            for (Holder holder : muxedConnections.values())
+                result += holder.count;
+            for (Holder holder : busyConnections.values())
+                result += holder.count;
+            return result;
+        }
+        finally
+        {
+            unlock();
+        }
+    }
+
     @Override
     public boolean isActive(Connection connection)
     {
@@ -162,7 +227,7 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
                 }
                 else
                 {
-                    holder = muxedConnections.values().iterator().next();
+                    holder = leastActive();
                 }
 
                 if (holder.count < maxMultiplex)
@@ -185,6 +250,20 @@ public class MultiplexConnectionPool extends AbstractConnectionPool implements C
         return active(holder.connection);
     }
 
+    /**
+     * @return the multiplexed connection with the least active requests
+     */
+    private Holder leastActive()
+    {
+        Holder result = null;
+        for (Holder holder : muxedConnections.values())
+        {
+            if (result == null || holder.count < result.count)
+                result = holder;
+        }
+        return result;
+    }
+
     @Override
     public boolean release(Connection connection)
     {
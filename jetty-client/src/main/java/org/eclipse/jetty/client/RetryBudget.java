@@ -0,0 +1,219 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+
+/**
+ * <p>A client-wide budget for the requests that are retried or hedged
+ * by a {@link RetryPolicy}, to prevent retry storms.</p>
+ * <p>Every request sent with a {@link RetryPolicy} deposits {@link #getRetryRatio()}
+ * tokens into the budget, up to {@link #getMaxTokens()} tokens, and every retried or
+ * hedged request withdraws one token.
+ * A retry or a hedge is allowed if there is at least one token in the budget,
+ * or if less than {@link #getMinRetriesPerSecond()} retries or hedges have been
+ * allowed in the current second, so that the requests that are retried or hedged
+ * are at most a fraction of the requests sent, plus a small fixed rate.</p>
+ *
+ * @see HttpClient#getRetryBudget()
+ */
+@ManagedObject("The budget of retried and hedged requests")
+public class RetryBudget
+{
+    private final LongAdder deposits = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private double retryRatio = 0.2D;
+    private int maxTokens = 100;
+    private int minRetriesPerSecond = 10;
+    private double tokens;
+    private long second;
+    private int retriesInSecond;
+
+    /**
+     * @return the number of tokens deposited for every request
+     */
+    @ManagedAttribute("The number of tokens deposited for every request")
+    public double getRetryRatio()
+    {
+        return retryRatio;
+    }
+
+    /**
+     * @param retryRatio the number of tokens deposited for every request
+     */
+    public void setRetryRatio(double retryRatio)
+    {
+        this.retryRatio = retryRatio;
+    }
+
+    /**
+     * @return the max number of tokens in the budget
+     */
+    @ManagedAttribute("The max number of tokens in the budget")
+    public int getMaxTokens()
+    {
+        return maxTokens;
+    }
+
+    /**
+     * @param maxTokens the max number of tokens in the budget
+     */
+    public void setMaxTokens(int maxTokens)
+    {
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * @return the number of retries or hedges per second allowed regardless of the tokens
+     */
+    @ManagedAttribute("The number of retries per second allowed regardless of the tokens")
+    public int getMinRetriesPerSecond()
+    {
+        return minRetriesPerSecond;
+    }
+
+    /**
+     * @param minRetriesPerSecond the number of retries or hedges per second allowed regardless of the tokens
+     */
+    public void setMinRetriesPerSecond(int minRetriesPerSecond)
+    {
+        this.minRetriesPerSecond = minRetriesPerSecond;
+    }
+
+    @ManagedAttribute(value = "The number of tokens in the budget", readonly = true)
+    public double getTokens()
+    {
+        synchronized (this)
+        {
+            return tokens;
+        }
+    }
+
+    @ManagedAttribute(value = "The number of requests sent with a retry policy", readonly = true)
+    public long getRequests()
+    {
+        return deposits.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of requests retried", readonly = true)
+    public long getRetries()
+    {
+        return retries.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of requests hedged", readonly = true)
+    public long getHedges()
+    {
+        return hedges.longValue();
+    }
+
+    @ManagedAttribute(value = "The number of retries or hedges rejected by the budget", readonly = true)
+    public long getRejections()
+    {
+        return rejections.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        deposits.reset();
+        retries.reset();
+        hedges.reset();
+        rejections.reset();
+    }
+
+    /**
+     * <p>Deposits tokens for a request sent with a retry policy.</p>
+     */
+    public void deposit()
+    {
+        deposits.increment();
+        synchronized (this)
+        {
+            tokens = Math.min(maxTokens, tokens + retryRatio);
+        }
+    }
+
+    /**
+     * @return whether a request can be retried
+     */
+    public boolean tryRetry()
+    {
+        boolean result = withdraw();
+        if (result)
+            retries.increment();
+        return result;
+    }
+
+    /**
+     * @return whether a request can be hedged
+     */
+    public boolean tryHedge()
+    {
+        boolean result = withdraw();
+        if (result)
+            hedges.increment();
+        return result;
+    }
+
+    private boolean withdraw()
+    {
+        long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        synchronized (this)
+        {
+            if (now != second)
+            {
+                second = now;
+                retriesInSecond = 0;
+            }
+            if (retriesInSecond < minRetriesPerSecond)
+            {
+                ++retriesInSecond;
+                return true;
+            }
+            if (tokens >= 1)
+            {
+                tokens -= 1;
+                return true;
+            }
+        }
+        rejections.increment();
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[tokens=%.1f,retries=%d,hedges=%d,rejections=%d]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getTokens(),
+                getRetries(),
+                getHedges(),
+                getRejections());
+    }
+}
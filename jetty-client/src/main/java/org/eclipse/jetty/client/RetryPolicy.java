@@ -0,0 +1,292 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+
+/**
+ * <p>A policy to retry and hedge requests, set on a request via
+ * {@link Request#retryPolicy(RetryPolicy)}.</p>
+ * <p>A request that fails, or whose response has a status code in
+ * {@link #getRetryStatuses()}, is sent again up to {@link #getMaxRetries()}
+ * times, with an exponential backoff with jitter between
+ * {@link #getMinBackoff()} and {@link #getMaxBackoff()} milliseconds.</p>
+ * <p>With hedging, if the response does not begin within a delay, a duplicate
+ * of the request is sent, on another connection of the destination, and the
+ * response that begins first is taken, while the other requests are aborted.
+ * The delay is either fixed, see {@link #getHedgeDelay()}, or the
+ * {@link #getHedgePercentile() percentile} of the recent response latencies
+ * of the destination.
+ * A request is not hedged if the destination has queued requests, as all its
+ * connections are busy and the duplicate request would only add load.</p>
+ * <p>Only requests with an idempotent method and with reproducible content
+ * (see {@link ContentProvider#isReproducible()}) are retried or hedged,
+ * unless {@link #isRetryNonIdempotent()} is true.
+ * Retries and hedges are also limited by the client-wide {@link RetryBudget}.</p>
+ * <p>The request listeners are notified for every request sent, while the
+ * response listeners are notified only for the response that is taken.
+ * The {@link Request#getTimeout() total timeout} of the request applies to
+ * all the requests sent.</p>
+ * <p>A policy holds no state about the requests, so it may be shared by
+ * many requests.</p>
+ */
+public class RetryPolicy
+{
+    private final Set<Integer> retryStatuses = new HashSet<>();
+    private int maxRetries = 2;
+    private long minBackoff = 100;
+    private long maxBackoff = 2000;
+    private boolean retryNonIdempotent;
+    private long hedgeDelay;
+    private double hedgePercentile;
+    private int maxHedges = 1;
+
+    public RetryPolicy()
+    {
+        retryStatuses.add(HttpStatus.BAD_GATEWAY_502);
+        retryStatuses.add(HttpStatus.SERVICE_UNAVAILABLE_503);
+        retryStatuses.add(HttpStatus.GATEWAY_TIMEOUT_504);
+    }
+
+    /**
+     * @return the max number of times a request is retried
+     */
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+    /**
+     * @param maxRetries the max number of times a request is retried
+     */
+    public void setMaxRetries(int maxRetries)
+    {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @return the backoff, in milliseconds, before the first retry
+     */
+    public long getMinBackoff()
+    {
+        return minBackoff;
+    }
+
+    /**
+     * @param minBackoff the backoff, in milliseconds, before the first retry
+     */
+    public void setMinBackoff(long minBackoff)
+    {
+        this.minBackoff = minBackoff;
+    }
+
+    /**
+     * @return the max backoff, in milliseconds, before a retry
+     */
+    public long getMaxBackoff()
+    {
+        return maxBackoff;
+    }
+
+    /**
+     * @param maxBackoff the max backoff, in milliseconds, before a retry
+     */
+    public void setMaxBackoff(long maxBackoff)
+    {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @return the response status codes for which the request is retried
+     */
+    public Set<Integer> getRetryStatuses()
+    {
+        return retryStatuses;
+    }
+
+    /**
+     * @return whether requests with non idempotent methods are retried and hedged
+     */
+    public boolean isRetryNonIdempotent()
+    {
+        return retryNonIdempotent;
+    }
+
+    /**
+     * @param retryNonIdempotent whether requests with non idempotent methods are retried and hedged
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent)
+    {
+        this.retryNonIdempotent = retryNonIdempotent;
+    }
+
+    /**
+     * @return the delay, in milliseconds, after which a request is hedged,
+     * or a non-positive value to disable the fixed delay hedging
+     */
+    public long getHedgeDelay()
+    {
+        return hedgeDelay;
+    }
+
+    /**
+     * @param hedgeDelay the delay, in milliseconds, after which a request is hedged,
+     * or a non-positive value to disable the fixed delay hedging
+     */
+    public void setHedgeDelay(long hedgeDelay)
+    {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * @return the percentile (for example, 0.95) of the recent response latencies
+     * of the destination after which a request is hedged, or a non-positive value
+     * to use the fixed {@link #getHedgeDelay() hedge delay}
+     */
+    public double getHedgePercentile()
+    {
+        return hedgePercentile;
+    }
+
+    /**
+     * <p>When there are not enough response latencies for the destination,
+     * the fixed {@link #getHedgeDelay() hedge delay}, if any, is used.</p>
+     *
+     * @param hedgePercentile the percentile (for example, 0.95) of the recent response
+     * latencies of the destination after which a request is hedged, or a non-positive
+     * value to use the fixed {@link #getHedgeDelay() hedge delay}
+     */
+    public void setHedgePercentile(double hedgePercentile)
+    {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * @return the max number of duplicate requests sent when hedging
+     */
+    public int getMaxHedges()
+    {
+        return maxHedges;
+    }
+
+    /**
+     * @param maxHedges the max number of duplicate requests sent when hedging
+     */
+    public void setMaxHedges(int maxHedges)
+    {
+        this.maxHedges = maxHedges;
+    }
+
+    /**
+     * @return whether hedging is enabled
+     */
+    public boolean isHedging()
+    {
+        return maxHedges > 0 && (hedgeDelay > 0 || hedgePercentile > 0);
+    }
+
+    /**
+     * @param request the request to retry or hedge
+     * @return whether the given request can be sent more than once
+     */
+    public boolean isRepeatable(Request request)
+    {
+        ContentProvider content = request.getContent();
+        if (content != null && !content.isReproducible())
+            return false;
+        if (isRetryNonIdempotent())
+            return true;
+        HttpMethod method = HttpMethod.fromString(request.getMethod());
+        if (method == null)
+            return false;
+        switch (method)
+        {
+            case GET:
+            case HEAD:
+            case OPTIONS:
+            case TRACE:
+            case PUT:
+            case DELETE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param request the request that failed
+     * @param failure the request failure
+     * @return whether the given request is retried after the given failure
+     */
+    public boolean isRetry(Request request, Throwable failure)
+    {
+        return isRepeatable(request);
+    }
+
+    /**
+     * @param request the request
+     * @param response the response
+     * @return whether the given request is retried after the given response
+     */
+    public boolean isRetry(Request request, Response response)
+    {
+        return getRetryStatuses().contains(response.getStatus()) && isRepeatable(request);
+    }
+
+    /**
+     * <p>Returns the backoff before the given retry, that doubles at every retry,
+     * from {@link #getMinBackoff()} up to {@link #getMaxBackoff()}, with a random
+     * jitter of up to half of its value so that the requests retried by many
+     * clients are spread over time.</p>
+     *
+     * @param retry the retry number, starting from 1
+     * @return the backoff, in milliseconds, before the given retry
+     */
+    public long getBackoff(int retry)
+    {
+        long backoff = getMinBackoff() << Math.min(retry - 1, 30);
+        if (backoff <= 0 || backoff > getMaxBackoff())
+            backoff = getMaxBackoff();
+        long half = backoff / 2;
+        return backoff - half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[retries=%d,backoff=%d..%d,hedges=%d,delay=%d,percentile=%.2f]",
+                getClass().getSimpleName(),
+                hashCode(),
+                getMaxRetries(),
+                getMinBackoff(),
+                getMaxBackoff(),
+                getMaxHedges(),
+                getHedgeDelay(),
+                getHedgePercentile());
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.Dumpable;
 
@@ -67,6 +68,22 @@ public class RoundRobinConnectionPool extends AbstractConnectionPool implements
         }
     }
 
+    @ManagedAttribute(value = "The number of idle connections", readonly = true)
+    @Override
+    public int getIdleConnectionCount()
+    {
+        synchronized (this)
+        {
+            int idle = 0;
+            for (Entry entry : entries)
+            {
+                if (entry.connection != null && entry.active == 0)
+                    ++idle;
+            }
+            return idle;
+        }
+    }
+
     @Override
     protected void onCreated(Connection connection)
     {
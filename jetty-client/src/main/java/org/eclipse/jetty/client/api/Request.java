@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.RetryPolicy;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -283,6 +284,24 @@ public interface Request
      */
     Request followRedirects(boolean follow);
 
+    /**
+     * @return the policy to retry and hedge this request, or null if this request is not retried
+     */
+    default RetryPolicy getRetryPolicy()
+    {
+        return null;
+    }
+
+    /**
+     * @param retryPolicy the policy to retry and hedge this request, or null to not retry this request
+     * @return this request object
+     * @throws UnsupportedOperationException if this request does not support retries
+     */
+    default Request retryPolicy(RetryPolicy retryPolicy)
+    {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * @param listenerClass the class of the listener, or null for all listeners classes
      * @return the listeners for request events of the given class
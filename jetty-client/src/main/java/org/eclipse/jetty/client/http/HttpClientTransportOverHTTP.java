@@ -20,20 +20,28 @@ package org.eclipse.jetty.client.http;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.client.AbstractConnectorHttpClientTransport;
 import org.eclipse.jetty.client.DuplexConnectionPool;
 import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
 import org.eclipse.jetty.client.Origin;
 import org.eclipse.jetty.client.api.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.util.ProcessorUtils;
 import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 
 @ManagedObject("The HTTP/1.1 client transport")
 public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTransport
 {
+    private final LongAdder pipelinedRequests = new LongAdder();
+    private final LongAdder requeuedRequests = new LongAdder();
+    private int pipeliningDepth = 1;
+
     public HttpClientTransportOverHTTP()
     {
         this(Math.max( 1, ProcessorUtils.availableProcessors() / 2));
@@ -42,7 +50,77 @@ public class HttpClientTransportOverHTTP extends AbstractConnectorHttpClientTran
     public HttpClientTransportOverHTTP(int selectors)
     {
         super(selectors);
-        setConnectionPoolFactory(destination -> new DuplexConnectionPool(destination, getHttpClient().getMaxConnectionsPerDestination(), destination));
+        setConnectionPoolFactory(destination ->
+        {
+            int maxConnections = getHttpClient().getMaxConnectionsPerDestination();
+            int depth = getPipeliningDepth();
+            if (depth > 1)
+                return new MultiplexConnectionPool(destination, maxConnections, destination, depth);
+            return new DuplexConnectionPool(destination, maxConnections, destination);
+        });
+    }
+
+    @ManagedAttribute(value = "The max number of requests pipelined on a connection", readonly = true)
+    public int getPipeliningDepth()
+    {
+        return pipeliningDepth;
+    }
+
+    /**
+     * <p>Sets the max number of requests that are sent on a connection
+     * before their responses are received (HTTP/1.1 pipelining).</p>
+     * <p>Only idempotent requests are pipelined, see
+     * {@link HttpConnectionOverHTTP#isPipelinable(org.eclipse.jetty.client.api.Request)};
+     * other requests are sent when the connection has no outstanding request, and
+     * no other request is sent on the connection until their response is received.</p>
+     * <p>The requests that have been sent on a connection that is closed before
+     * their response begins are sent again on another connection.</p>
+     * <p>Pipelining must only be enabled for servers known to support it,
+     * and must be configured before the destinations are created, as it
+     * determines the connection pool of the destinations.</p>
+     *
+     * @param pipeliningDepth the pipelining depth, or 1 to disable pipelining
+     */
+    public void setPipeliningDepth(int pipeliningDepth)
+    {
+        if (pipeliningDepth < 1)
+            throw new IllegalArgumentException("Invalid pipelining depth " + pipeliningDepth);
+        this.pipeliningDepth = pipeliningDepth;
+    }
+
+    @ManagedAttribute(value = "The number of requests sent while a previous response was pending on the same connection", readonly = true)
+    public long getPipelinedRequestCount()
+    {
+        return pipelinedRequests.longValue();
+    }
+
+    void onPipelinedRequest()
+    {
+        pipelinedRequests.increment();
+    }
+
+    @ManagedAttribute(value = "The number of pipelined requests sent again after their connection was closed", readonly = true)
+    public long getRequeuedRequestCount()
+    {
+        return requeuedRequests.longValue();
+    }
+
+    void onRequeuedRequest()
+    {
+        requeuedRequests.increment();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        pipelinedRequests.reset();
+        requeuedRequests.reset();
+    }
+
+    @Override
+    protected boolean isShareSelectors()
+    {
+        return true;
     }
 
     @Override
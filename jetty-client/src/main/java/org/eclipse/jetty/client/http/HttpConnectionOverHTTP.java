@@ -20,6 +20,12 @@ package org.eclipse.jetty.client.http;
 
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -27,13 +33,19 @@ import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.client.HttpConnection;
 import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.HttpClientTransport;
 import org.eclipse.jetty.client.HttpExchange;
 import org.eclipse.jetty.client.SendFailure;
 import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -48,6 +60,7 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
     private final Promise<Connection> promise;
     private final Delegate delegate;
     private final HttpChannelOverHTTP channel;
+    private final Pipeline pipeline;
     private long idleTimeout;
 
     private final LongAdder bytesIn = new LongAdder();
@@ -59,6 +72,9 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
         this.promise = promise;
         this.delegate = new Delegate(destination);
         this.channel = newHttpChannel();
+        HttpClientTransport transport = destination.getHttpClient().getTransport();
+        int depth = transport instanceof HttpClientTransportOverHTTP ? ((HttpClientTransportOverHTTP)transport).getPipeliningDepth() : 1;
+        this.pipeline = depth > 1 ? new Pipeline(depth) : null;
     }
 
     protected HttpChannelOverHTTP newHttpChannel()
@@ -102,15 +118,61 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
     @Override
     public long getMessagesIn()
     {
+        if (pipeline != null)
+            return pipeline.channels.stream().mapToLong(HttpChannelOverHTTP::getMessagesIn).sum();
         return getHttpChannel().getMessagesIn();
     }
 
     @Override
     public long getMessagesOut()
     {
+        if (pipeline != null)
+            return pipeline.channels.stream().mapToLong(HttpChannelOverHTTP::getMessagesOut).sum();
         return getHttpChannel().getMessagesOut();
     }
 
+    /**
+     * @return whether requests may be pipelined on this connection
+     * @see HttpClientTransportOverHTTP#setPipeliningDepth(int)
+     */
+    public boolean isPipelining()
+    {
+        return pipeline != null;
+    }
+
+    /**
+     * <p>Returns whether the given request may be sent on a connection while
+     * the responses of previous requests have not been received.</p>
+     * <p>Only HTTP/1.1 requests with idempotent methods are pipelinable,
+     * unless they expect a 100 Continue response or upgrade the connection.</p>
+     *
+     * @param request the request to test
+     * @return whether the request can be pipelined
+     */
+    protected boolean isPipelinable(Request request)
+    {
+        if (request.getVersion() != HttpVersion.HTTP_1_1)
+            return false;
+        HttpMethod method = HttpMethod.fromString(request.getMethod());
+        if (method == null)
+            return false;
+        switch (method)
+        {
+            case GET:
+            case HEAD:
+            case OPTIONS:
+            case TRACE:
+            case PUT:
+            case DELETE:
+                break;
+            default:
+                return false;
+        }
+        if (request.getHeaders().contains(HttpHeader.EXPECT))
+            return false;
+        return !request.getHeaders().contains(HttpHeader.UPGRADE);
+    }
+
     @Override
     public void send(Request request, Response.CompleteListener listener)
     {
@@ -149,6 +211,12 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
     @Override
     public void onFillable()
     {
+        if (pipeline != null)
+        {
+            receive(true);
+            return;
+        }
+
         HttpExchange exchange = channel.getHttpExchange();
         if (exchange != null)
         {
@@ -162,11 +230,195 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
         }
     }
 
+    /**
+     * <p>Receives the response of the first request of the pipeline.</p>
+     *
+     * @param fillable whether this connection is fillable, rather than
+     * a previous response has been received
+     */
+    void receive(boolean fillable)
+    {
+        synchronized (pipeline)
+        {
+            if (pipeline.receiving)
+            {
+                // Called by the receiver invoked by the loop below.
+                pipeline.receiveAgain = true;
+                return;
+            }
+            pipeline.receiving = true;
+        }
+
+        while (true)
+        {
+            HttpChannelOverHTTP receiver;
+            ByteBuffer unexpected = null;
+            synchronized (pipeline)
+            {
+                receiver = pipeline.outstanding.peek();
+                if (receiver == null)
+                {
+                    unexpected = pipeline.received;
+                    pipeline.received = null;
+                }
+                else
+                {
+                    pipeline.receiver = receiver;
+                }
+            }
+
+            if (receiver != null)
+            {
+                receiver.receive();
+            }
+            else if (fillable || unexpected != null || isClosed())
+            {
+                // A remote close, or bytes that are not the response of a request.
+                if (unexpected != null)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Discarding unexpected content after response: {}", BufferUtil.toDetailString(unexpected));
+                    BufferUtil.clear(unexpected);
+                    getHttpDestination().getHttpClient().getByteBufferPool().release(unexpected);
+                }
+                close();
+            }
+            else
+            {
+                fillInterested();
+            }
+
+            synchronized (pipeline)
+            {
+                if (!pipeline.receiveAgain)
+                {
+                    pipeline.receiving = false;
+                    return;
+                }
+                pipeline.receiveAgain = false;
+            }
+            fillable = false;
+        }
+    }
+
+    /**
+     * @return the buffer with the bytes read after the previous pipelined
+     * response, or null if there are no such bytes
+     */
+    ByteBuffer takeReceivedBuffer()
+    {
+        if (pipeline == null)
+            return null;
+        synchronized (pipeline)
+        {
+            ByteBuffer buffer = pipeline.received;
+            pipeline.received = null;
+            return buffer;
+        }
+    }
+
+    /**
+     * <p>Called when a pipelined response has been parsed, with the buffer
+     * that may contain the bytes of the next pipelined response.</p>
+     *
+     * @param buffer the receive buffer
+     */
+    void responseReceived(ByteBuffer buffer)
+    {
+        if (BufferUtil.hasContent(buffer))
+        {
+            synchronized (pipeline)
+            {
+                pipeline.received = buffer;
+            }
+        }
+        else
+        {
+            getHttpDestination().getHttpClient().getByteBufferPool().release(buffer);
+        }
+    }
+
+    /**
+     * <p>Called when the response of the first request of the pipeline
+     * is complete, before its exchange is terminated.</p>
+     *
+     * @param channel the channel of the response
+     */
+    void responseComplete(HttpChannelOverHTTP channel)
+    {
+        synchronized (pipeline)
+        {
+            if (pipeline.outstanding.peek() == channel)
+                pipeline.outstanding.poll();
+            if (pipeline.outstanding.isEmpty())
+                pipeline.exclusive = false;
+        }
+        sendNext();
+    }
+
+    /**
+     * <p>Called when a request has been written, so that the
+     * next pipelined request can be written.</p>
+     *
+     * @param channel the channel of the request
+     */
+    void requestSent(HttpChannelOverHTTP channel)
+    {
+        if (pipeline == null)
+            return;
+        synchronized (pipeline)
+        {
+            if (pipeline.sending != channel)
+                return;
+            pipeline.sending = null;
+        }
+        sendNext();
+    }
+
+    private void sendNext()
+    {
+        Pending next = null;
+        synchronized (pipeline)
+        {
+            Pending pending = pipeline.waiting.peek();
+            if (pending != null && pipeline.canSend(pending.exchange.getRequest()))
+            {
+                next = pipeline.waiting.poll();
+                pipeline.start(next.channel, next.exchange.getRequest());
+            }
+        }
+        if (next != null)
+        {
+            SendFailure result = send(next.channel, next.exchange);
+            if (result != null)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Send failed {} for {}", result, next.exchange);
+                if (result.retry)
+                    getHttpDestination().send(next.exchange);
+                else
+                    next.exchange.getRequest().abort(result.failure);
+            }
+        }
+    }
+
+    private SendFailure send(HttpChannelOverHTTP channel, HttpExchange exchange)
+    {
+        return delegate.sendOn(channel, exchange);
+    }
+
     @Override
     public ByteBuffer onUpgradeFrom()
     {
-        HttpReceiverOverHTTP receiver = channel.getHttpReceiver();
-        return receiver.onUpgradeFrom();
+        HttpChannelOverHTTP receiver = channel;
+        if (pipeline != null)
+        {
+            synchronized (pipeline)
+            {
+                receiver = pipeline.receiver;
+            }
+        }
+        return receiver.getHttpReceiver().onUpgradeFrom();
     }
 
     public void release()
@@ -176,6 +428,27 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
         getHttpDestination().release(this);
     }
 
+    protected void release(HttpChannelOverHTTP channel)
+    {
+        if (pipeline == null)
+        {
+            release();
+            return;
+        }
+
+        synchronized (pipeline)
+        {
+            // The channel may not have been able to send its request.
+            if (pipeline.outstanding.remove(channel) && pipeline.outstanding.isEmpty())
+                pipeline.exclusive = false;
+            if (pipeline.sending == channel)
+                pipeline.sending = null;
+            pipeline.idle.offer(channel);
+        }
+        sendNext();
+        getHttpDestination().release(this);
+    }
+
     @Override
     public void close()
     {
@@ -186,9 +459,14 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
     {
         if (closed.compareAndSet(false, true))
         {
+            List<HttpExchange> retries = pipeline == null ? null : pipeline.close();
             getHttpDestination().close(this);
             abort(failure);
+            if (retries != null)
+                retry(retries, failure);
             channel.destroy();
+            if (pipeline != null)
+                pipeline.channels.forEach(HttpChannelOverHTTP::destroy);
             getEndPoint().shutdownOutput();
             if (LOG.isDebugEnabled())
                 LOG.debug("Shutdown {}", this);
@@ -200,10 +478,33 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
 
     protected boolean abort(Throwable failure)
     {
+        if (pipeline != null)
+        {
+            boolean aborted = false;
+            for (HttpChannelOverHTTP channel : pipeline.channels)
+            {
+                HttpExchange exchange = channel.getHttpExchange();
+                if (exchange != null && exchange.getRequest().abort(failure))
+                    aborted = true;
+            }
+            return aborted;
+        }
         HttpExchange exchange = channel.getHttpExchange();
         return exchange != null && exchange.getRequest().abort(failure);
     }
 
+    private void retry(List<HttpExchange> exchanges, Throwable failure)
+    {
+        HttpClientTransportOverHTTP transport = (HttpClientTransportOverHTTP)getHttpDestination().getHttpClient().getTransport();
+        for (HttpExchange exchange : exchanges)
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Requeuing {} after {}", exchange, failure.toString());
+            transport.onRequeuedRequest();
+            getHttpDestination().send(exchange);
+        }
+    }
+
     @Override
     public boolean sweep()
     {
@@ -231,6 +532,150 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
             channel);
     }
 
+    private static class Pending
+    {
+        private final HttpChannelOverHTTP channel;
+        private final HttpExchange exchange;
+
+        private Pending(HttpChannelOverHTTP channel, HttpExchange exchange)
+        {
+            this.channel = channel;
+            this.exchange = exchange;
+        }
+    }
+
+    /**
+     * <p>The state of the pipelined requests of this connection, guarded by itself.</p>
+     * <p>Requests are written one at a time, in the order they are sent, and each one
+     * is sent on its own channel. The channels of the requests whose response has not
+     * been received are outstanding, in the order their responses will be received.</p>
+     * <p>Requests that cannot be written yet wait, in order, until the previous request
+     * is written, and until the responses of previous requests have been received if
+     * they are not pipelinable.</p>
+     */
+    private class Pipeline
+    {
+        private final List<HttpChannelOverHTTP> channels = new CopyOnWriteArrayList<>();
+        private final Queue<HttpChannelOverHTTP> idle = new ArrayDeque<>();
+        private final Deque<HttpChannelOverHTTP> outstanding = new ArrayDeque<>();
+        private final Queue<Pending> waiting = new ArrayDeque<>();
+        private final int depth;
+        private HttpChannelOverHTTP sending;
+        private HttpChannelOverHTTP receiver;
+        private boolean exclusive;
+        private boolean receiving;
+        private boolean receiveAgain;
+        private ByteBuffer received;
+
+        private Pipeline(int depth)
+        {
+            this.depth = depth;
+            channels.add(channel);
+            idle.offer(channel);
+        }
+
+        private SendFailure send(HttpExchange exchange)
+        {
+            Request request = exchange.getRequest();
+            HttpChannelOverHTTP channel;
+            boolean send;
+            synchronized (this)
+            {
+                channel = idle.poll();
+                if (channel == null)
+                {
+                    channel = newHttpChannel();
+                    channels.add(channel);
+                }
+                send = waiting.isEmpty() && canSend(request);
+                if (send)
+                    start(channel, request);
+                else
+                    waiting.offer(new Pending(channel, exchange));
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("{} {} on {}", send ? "Sending" : "Queued", exchange, HttpConnectionOverHTTP.this);
+            return send ? HttpConnectionOverHTTP.this.send(channel, exchange) : null;
+        }
+
+        private boolean isResendable(Request request)
+        {
+            if (!isPipelinable(request))
+                return false;
+            ContentProvider content = request.getContent();
+            return content == null || content.isReproducible();
+        }
+
+        private boolean canSend(Request request)
+        {
+            if (sending != null || exclusive || outstanding.size() >= depth)
+                return false;
+            return outstanding.isEmpty() || isPipelinable(request);
+        }
+
+        private void start(HttpChannelOverHTTP channel, Request request)
+        {
+            if (!outstanding.isEmpty())
+                ((HttpClientTransportOverHTTP)getHttpDestination().getHttpClient().getTransport()).onPipelinedRequest();
+            sending = channel;
+            outstanding.offer(channel);
+            exclusive = !isPipelinable(request);
+        }
+
+        /**
+         * @return the exchanges to send again on another connection: those that have not
+         * been sent yet, and those that have been sent but whose response has not begun,
+         * provided that they can be sent twice
+         */
+        private List<HttpExchange> close()
+        {
+            List<HttpExchange> retries = new ArrayList<>();
+            List<HttpExchange> sent = new ArrayList<>();
+            synchronized (this)
+            {
+                for (Pending pending : waiting)
+                    retries.add(pending.exchange);
+                waiting.clear();
+
+                // The requests being written, whose response has begun,
+                // or that are not idempotent or whose content cannot be
+                // sent twice, cannot be sent again and will be aborted.
+                for (HttpChannelOverHTTP channel : outstanding)
+                {
+                    HttpExchange exchange = channel.getHttpExchange();
+                    if (channel != sending && exchange != null && !channel.getHttpReceiver().isResponseBegun() && isResendable(exchange.getRequest()))
+                        sent.add(exchange);
+                }
+                outstanding.clear();
+                sending = null;
+            }
+            for (HttpExchange exchange : sent)
+            {
+                HttpExchange retry = exchange.retry();
+                if (retry != null)
+                    retries.add(retry);
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Closed pipeline {}, retrying {}", this, retries);
+            return retries;
+        }
+
+        @Override
+        public String toString()
+        {
+            synchronized (this)
+            {
+                return String.format("%s@%x[depth=%d,outstanding=%d,waiting=%d,exclusive=%b]",
+                        getClass().getSimpleName(),
+                        hashCode(),
+                        depth,
+                        outstanding.size(),
+                        waiting.size(),
+                        exclusive);
+            }
+        }
+    }
+
     private class Delegate extends HttpConnection
     {
         private Delegate(HttpDestination destination)
@@ -244,6 +689,9 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
             Request request = exchange.getRequest();
             normalizeRequest(request);
 
+            if (pipeline != null)
+                return pipeline.send(exchange);
+
             // Save the old idle timeout to restore it.
             EndPoint endPoint = getEndPoint();
             idleTimeout = endPoint.getIdleTimeout();
@@ -255,6 +703,11 @@ public class HttpConnectionOverHTTP extends AbstractConnection implements Connec
             return send(channel, exchange);
         }
 
+        private SendFailure sendOn(HttpChannelOverHTTP channel, HttpExchange exchange)
+        {
+            return send(channel, exchange);
+        }
+
         @Override
         public void close()
         {
@@ -43,6 +43,7 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
     private ByteBuffer buffer;
     private boolean shutdown;
     private boolean complete;
+    private boolean handedOver;
 
     public HttpReceiverOverHTTP(HttpChannelOverHTTP channel)
     {
@@ -75,6 +76,11 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
 
     private void acquireBuffer()
     {
+        // With pipelining, the previous response may have left
+        // in its buffer some bytes of the response to receive.
+        buffer = getHttpConnection().takeReceivedBuffer();
+        if (buffer != null)
+            return;
         HttpClient client = getHttpDestination().getHttpClient();
         ByteBufferPool bufferPool = client.getByteBufferPool();
         buffer = bufferPool.acquire(client.getResponseBufferSize(), true);
@@ -123,7 +129,10 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 }
 
                 if (parse())
+                {
+                    receiveNext();
                     return;
+                }
 
                 int read = endPoint.fill(buffer);
                 if (LOG.isDebugEnabled())
@@ -133,7 +142,10 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 {
                     connection.addBytesIn(read);
                     if (parse())
+                    {
+                        receiveNext();
                         return;
+                    }
                 }
                 else if (read == 0)
                 {
@@ -176,6 +188,14 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
                 LOG.debug("Parsed {}, remaining {} {}", handle, buffer.remaining(), parser);
             if (handle)
                 return true;
+            if (complete && getHttpConnection().isPipelining())
+            {
+                // The rest of the buffer belongs to the next pipelined response.
+                getHttpConnection().responseReceived(buffer);
+                buffer = null;
+                handedOver = true;
+                return true;
+            }
             if (!buffer.hasRemaining())
                 return false;
             if (complete)
@@ -188,6 +208,15 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         }
     }
 
+    private void receiveNext()
+    {
+        if (handedOver)
+        {
+            handedOver = false;
+            getHttpConnection().receive(false);
+        }
+    }
+
     protected void fillInterested()
     {
         getHttpConnection().fillInterested();
@@ -214,6 +243,14 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         return shutdown;
     }
 
+    /**
+     * @return whether the parsing of the response has begun
+     */
+    protected boolean isResponseBegun()
+    {
+        return !parser.isStart();
+    }
+
     @Override
     public int getHeaderCacheSize()
     {
@@ -311,7 +348,12 @@ public class HttpReceiverOverHTTP extends HttpReceiver implements HttpParser.Res
         int status = exchange.getResponse().getStatus();
 
         if (status != HttpStatus.CONTINUE_100)
+        {
             complete = true;
+            // Before the exchange is terminated and the channel released.
+            if (getHttpConnection().isPipelining())
+                getHttpConnection().responseComplete(getHttpChannel());
+        }
 
         boolean proceed = responseSuccess(exchange);
         if (!proceed)
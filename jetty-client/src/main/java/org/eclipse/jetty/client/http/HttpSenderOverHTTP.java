@@ -153,6 +153,14 @@ public class HttpSenderOverHTTP extends HttpSender
         }
     }
 
+    @Override
+    protected boolean someToSuccess(HttpExchange exchange)
+    {
+        // The request has been written, so a pipelined request can be written.
+        getHttpChannel().getHttpConnection().requestSent(getHttpChannel());
+        return super.someToSuccess(exchange);
+    }
+
     @Override
     protected void reset()
     {
@@ -0,0 +1,328 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client.util;
+
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jetty.client.HttpResponseException;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Response.Listener;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.MultiPartParser;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IteratingCallback;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Implementation of {@link Listener} that parses multipart response content,
+ * for example {@code multipart/mixed} or {@code multipart/byteranges}, as it
+ * arrives, without buffering it.</p>
+ * <p>For each part, {@link #onPartBegin(Response, Part)} is invoked when the part
+ * headers have been parsed, then {@link #onPartContent(Response, Part, ByteBuffer, Callback)}
+ * is invoked for each chunk of the part content and finally {@link #onPartEnd(Response, Part)}
+ * is invoked when the part content is complete.</p>
+ * <p>The part content is delivered like {@link Response.AsyncContentListener} does:
+ * the callback must be completed when the content has been consumed, and more content
+ * is parsed only after that, so that the consumption of the parts applies backpressure
+ * to the response.
+ * A part content may therefore be streamed, for example, to a {@link DeferredContentProvider}
+ * via {@link DeferredContentProvider#offer(ByteBuffer, Callback)}.</p>
+ * <p>If the response is not multipart, it is aborted; if the response fails, or its
+ * content is truncated, {@link #onPartFailure(Response, Part, Throwable)} is invoked.</p>
+ * <p>Instances of this class are not reusable, so one must be allocated for each request.</p>
+ */
+public abstract class MultiPartResponseListener extends Listener.Adapter
+{
+    private static final Logger LOG = Log.getLogger(MultiPartResponseListener.class);
+
+    private MultiPartParser parser;
+    private Response response;
+    private HttpFields fields;
+    private Part part;
+    private ByteBuffer content;
+    private boolean last;
+    private boolean failed;
+
+    @Override
+    public void onHeaders(Response response)
+    {
+        super.onHeaders(response);
+
+        String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
+        Map<String, String> parameters = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String mediaType = HttpFields.valueParameters(contentType, parameters);
+        String boundary = parameters.get("boundary");
+        if (mediaType == null || !mediaType.toLowerCase(Locale.ENGLISH).startsWith("multipart/") || boundary == null)
+        {
+            response.abort(new HttpResponseException("Invalid multipart content type " + contentType, response));
+            return;
+        }
+
+        this.response = response;
+        this.parser = new MultiPartParser(new PartHandler(), boundary);
+    }
+
+    @Override
+    public void onContent(Response response, ByteBuffer content, Callback callback)
+    {
+        if (parser == null)
+        {
+            callback.succeeded();
+            return;
+        }
+
+        // The parser requires array backed buffers.
+        if (!content.hasArray())
+        {
+            ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+            copy.put(content).flip();
+            content = copy;
+        }
+        new ContentParser(content, callback).iterate();
+    }
+
+    @Override
+    public void onSuccess(Response response)
+    {
+        if (parser != null)
+            parser.parse(BufferUtil.EMPTY_BUFFER, true);
+    }
+
+    @Override
+    public void onFailure(Response response, Throwable failure)
+    {
+        fail(failure);
+    }
+
+    private void fail(Throwable failure)
+    {
+        if (failed)
+            return;
+        failed = true;
+        Part part = this.part;
+        this.part = null;
+        onPartFailure(response, part, failure);
+    }
+
+    /**
+     * <p>Callback method invoked when the headers of a part have been parsed.</p>
+     *
+     * @param response the multipart response
+     * @param part the part
+     */
+    protected void onPartBegin(Response response, Part part)
+    {
+    }
+
+    /**
+     * <p>Callback method invoked when a chunk of content of a part has been parsed.</p>
+     * <p>The default implementation discards the content.</p>
+     *
+     * @param response the multipart response
+     * @param part the part
+     * @param content the content of the part, only valid until the callback is completed
+     * @param callback the callback to complete when the content has been consumed
+     */
+    protected void onPartContent(Response response, Part part, ByteBuffer content, Callback callback)
+    {
+        callback.succeeded();
+    }
+
+    /**
+     * <p>Callback method invoked when the content of a part is complete.</p>
+     *
+     * @param response the multipart response
+     * @param part the part
+     */
+    protected void onPartEnd(Response response, Part part)
+    {
+    }
+
+    /**
+     * <p>Callback method invoked when the response fails, or its multipart content
+     * is invalid or truncated.</p>
+     *
+     * @param response the multipart response
+     * @param part the part being parsed, or null if the failure happened outside a part
+     * @param failure the failure
+     */
+    protected void onPartFailure(Response response, Part part, Throwable failure)
+    {
+    }
+
+    private class PartHandler implements MultiPartParser.Handler
+    {
+        @Override
+        public void startPart()
+        {
+            fields = new HttpFields();
+        }
+
+        @Override
+        public void parsedField(String name, String value)
+        {
+            fields.add(name, value);
+        }
+
+        @Override
+        public boolean headerComplete()
+        {
+            part = new Part(fields);
+            fields = null;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Part begin {}", part);
+            onPartBegin(response, part);
+            return false;
+        }
+
+        @Override
+        public boolean content(ByteBuffer item, boolean last)
+        {
+            // Stop parsing, so that the content is delivered.
+            MultiPartResponseListener.this.content = item;
+            MultiPartResponseListener.this.last = last;
+            return true;
+        }
+
+        @Override
+        public void earlyEOF()
+        {
+            fail(new EOFException("Incomplete multipart content"));
+        }
+    }
+
+    private class ContentParser extends IteratingCallback
+    {
+        private final ByteBuffer buffer;
+        private final Callback callback;
+
+        private ContentParser(ByteBuffer buffer, Callback callback)
+        {
+            this.buffer = buffer;
+            this.callback = callback;
+        }
+
+        @Override
+        protected Action process()
+        {
+            while (true)
+            {
+                if (last)
+                {
+                    last = false;
+                    Part part = MultiPartResponseListener.this.part;
+                    MultiPartResponseListener.this.part = null;
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Part end {}", part);
+                    onPartEnd(response, part);
+                }
+
+                if (!buffer.hasRemaining() || parser.isState(MultiPartParser.State.END))
+                    return Action.SUCCEEDED;
+
+                content = null;
+                parser.parse(buffer, false);
+                ByteBuffer content = MultiPartResponseListener.this.content;
+                MultiPartResponseListener.this.content = null;
+                if (content != null && content.hasRemaining())
+                {
+                    onPartContent(response, part, content, this);
+                    return Action.SCHEDULED;
+                }
+            }
+        }
+
+        @Override
+        protected void onCompleteSuccess()
+        {
+            callback.succeeded();
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable failure)
+        {
+            callback.failed(failure);
+        }
+    }
+
+    /**
+     * <p>A part of a multipart response.</p>
+     */
+    public static class Part
+    {
+        private final HttpFields headers;
+        private final String name;
+        private final String fileName;
+
+        public Part(HttpFields headers)
+        {
+            this.headers = headers;
+            Map<String, String> parameters = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            HttpFields.valueParameters(headers.get("Content-Disposition"), parameters);
+            this.name = parameters.get("name");
+            this.fileName = parameters.get("filename");
+        }
+
+        /**
+         * @return the headers of this part
+         */
+        public HttpFields getHeaders()
+        {
+            return headers;
+        }
+
+        /**
+         * @return the content type of this part, or null if not present
+         */
+        public String getContentType()
+        {
+            return headers.get(HttpHeader.CONTENT_TYPE);
+        }
+
+        /**
+         * @return the {@code name} parameter of the {@code Content-Disposition} header, or null if not present
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return the {@code filename} parameter of the {@code Content-Disposition} header, or null if not present
+         */
+        public String getFileName()
+        {
+            return fileName;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[name=%s,type=%s]", getClass().getSimpleName(), hashCode(), getName(), getContentType());
+        }
+    }
+}
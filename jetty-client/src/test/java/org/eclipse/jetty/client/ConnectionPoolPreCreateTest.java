@@ -0,0 +1,210 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.component.Dumpable;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class ConnectionPoolPreCreateTest extends AbstractHttpClientServerTest
+{
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPreCreateConnections(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler());
+
+        HttpDestination destination = (HttpDestination)client.getDestination(scenario.getScheme(), "localhost", connector.getLocalPort());
+        DuplexConnectionPool connectionPool = (DuplexConnectionPool)destination.getConnectionPool();
+        connectionPool.preCreateConnections(2).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, connectionPool.getConnectionCount());
+        assertEquals(2, connectionPool.getIdleConnectionCount());
+        assertEquals(2, connectionPool.getPreCreatedConnectionCount());
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(2, connectionPool.getConnectionCount());
+        assertEquals(1, connectionPool.getHandshakesAvoidedCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPreCreateConnectionsIsBoundedByMaxConnections(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+        startClient(scenario, new HttpClientTransportOverHTTP(1), client -> client.setMaxConnectionsPerDestination(2));
+
+        HttpDestination destination = (HttpDestination)client.getDestination(scenario.getScheme(), "localhost", connector.getLocalPort());
+        DuplexConnectionPool connectionPool = (DuplexConnectionPool)destination.getConnectionPool();
+        connectionPool.preCreateConnections(4).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, connectionPool.getConnectionCount());
+        assertEquals(2, connectionPool.getPreCreatedConnectionCount());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testMinIdleConnectionsAreReplenished(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+        long idleTimeout = 1000;
+        startClient(scenario, new HttpClientTransportOverHTTP(1), client ->
+        {
+            client.setMinIdleConnectionsPerDestination(2);
+            client.setIdleTimeout(idleTimeout);
+        });
+
+        HttpDestination destination = (HttpDestination)client.getDestination(scenario.getScheme(), "localhost", connector.getLocalPort());
+        DuplexConnectionPool connectionPool = (DuplexConnectionPool)destination.getConnectionPool();
+        assertTrue(await(() -> connectionPool.getIdleConnectionCount() == 2));
+
+        // A request uses an idle connection, and another one is opened in background.
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(1, connectionPool.getHandshakesAvoidedCount());
+        assertTrue(await(() -> connectionPool.getConnectionCount() == 3));
+
+        // Idle connections are replaced when they idle timeout.
+        Thread.sleep(2 * idleTimeout);
+        assertTrue(await(() -> connectionPool.getIdleConnectionCount() >= 2));
+        assertTrue(connectionPool.getPreCreatedConnectionCount() >= 5);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testMinIdleConnectionsNotReplenishedWithoutIdleCount(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(1);
+        transport.setConnectionPoolFactory(destination -> new UntrackedConnectionPool(destination, 8, destination));
+        startClient(scenario, transport, client -> client.setMinIdleConnectionsPerDestination(2));
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+
+        // The pool does not know how many connections are idle, so none is opened in background.
+        HttpDestination destination = (HttpDestination)client.getDestination(scenario.getScheme(), "localhost", connector.getLocalPort());
+        UntrackedConnectionPool connectionPool = (UntrackedConnectionPool)destination.getConnectionPool();
+        Thread.sleep(500);
+        assertTrue(connectionPool.getConnectionCount() <= 1);
+        assertEquals(0, connectionPool.getPreCreatedConnectionCount());
+    }
+
+    private boolean await(BooleanSupplier condition) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline)
+        {
+            if (condition.getAsBoolean())
+                return true;
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private static class UntrackedConnectionPool extends AbstractConnectionPool
+    {
+        private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+        private final Set<Connection> active = ConcurrentHashMap.newKeySet();
+
+        private UntrackedConnectionPool(Destination destination, int maxConnections, Callback requester)
+        {
+            super(destination, maxConnections, requester);
+        }
+
+        @Override
+        protected void onCreated(Connection connection)
+        {
+            idle.offer(connection);
+            idle(connection, false);
+        }
+
+        @Override
+        protected Connection activate()
+        {
+            Connection connection = idle.poll();
+            if (connection == null)
+                return null;
+            active.add(connection);
+            return active(connection);
+        }
+
+        @Override
+        public boolean isActive(Connection connection)
+        {
+            return active.contains(connection);
+        }
+
+        @Override
+        public boolean release(Connection connection)
+        {
+            if (!active.remove(connection))
+                return false;
+            released(connection);
+            idle.offer(connection);
+            return idle(connection, false);
+        }
+
+        @Override
+        public boolean remove(Connection connection)
+        {
+            boolean wasActive = active.remove(connection);
+            boolean removed = wasActive | idle.remove(connection);
+            if (wasActive)
+                released(connection);
+            if (removed)
+                removed(connection);
+            return removed;
+        }
+
+        @Override
+        public void dump(Appendable out, String indent) throws IOException
+        {
+            Dumpable.dumpObject(out, this);
+        }
+    }
+}
@@ -69,6 +69,9 @@ public class ConnectionPoolTest
         pools.add(new Object[] { RoundRobinConnectionPool.class,
                 (ConnectionPool.Factory)
                         destination -> new RoundRobinConnectionPool(destination, 8, destination)});
+        pools.add(new Object[] { LockFreeConnectionPool.class,
+                (ConnectionPool.Factory)
+                        destination -> new LockFreeConnectionPool(destination, 8, destination)});
         return pools.stream().map(Arguments::of);
     }
 
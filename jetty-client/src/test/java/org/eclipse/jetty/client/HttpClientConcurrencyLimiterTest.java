@@ -0,0 +1,254 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class HttpClientConcurrencyLimiterTest extends AbstractHttpClientServerTest
+{
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testConcurrencyIsLimited(Scenario scenario) throws Exception
+    {
+        int limit = 2;
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        CountDownLatch serverArrived = new CountDownLatch(limit);
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                serverArrived.countDown();
+                try
+                {
+                    serverLatch.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                finally
+                {
+                    concurrent.decrementAndGet();
+                }
+            }
+        });
+        startClient(scenario, null, httpClient -> httpClient.setConcurrencyLimiterFactory(destination ->
+        {
+            ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+            limiter.setInitialLimit(limit);
+            limiter.setMaxLimit(limit);
+            return limiter;
+        }));
+
+        int requests = 5;
+        CountDownLatch latch = new CountDownLatch(requests);
+        for (int i = 0; i < requests; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .send(result ->
+                    {
+                        if (result.isSucceeded() && result.getResponse().getStatus() == HttpStatus.OK_200)
+                            latch.countDown();
+                    });
+        }
+
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        ConcurrencyLimiter limiter = destination.getConcurrencyLimiter();
+        assertTrue(serverArrived.await(5, TimeUnit.SECONDS));
+        assertEquals(limit, limiter.getInFlight());
+        assertEquals(requests - limit, destination.getQueuedRequestCount());
+
+        serverLatch.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(limit, maxConcurrent.get());
+        assertTrue(awaitInFlight(limiter, 0));
+        assertThat(limiter.getQueueWaitMax(), greaterThan(0L));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testSaturatedQueueRejects(Scenario scenario) throws Exception
+    {
+        CountDownLatch serverArrived = new CountDownLatch(1);
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                serverArrived.countDown();
+                try
+                {
+                    serverLatch.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+            }
+        });
+        startClient(scenario, null, httpClient -> httpClient.setConcurrencyLimiterFactory(destination ->
+        {
+            ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+            limiter.setInitialLimit(1);
+            limiter.setMaxLimit(1);
+            limiter.setQueueRatio(2);
+            return limiter;
+        }));
+
+        // One request in flight and two queued.
+        CountDownLatch latch = new CountDownLatch(3);
+        for (int i = 0; i < 3; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .send(result ->
+                    {
+                        if (result.isSucceeded())
+                            latch.countDown();
+                    });
+            if (i == 0)
+                assertTrue(serverArrived.await(5, TimeUnit.SECONDS));
+        }
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        assertEquals(2, destination.getQueuedRequestCount());
+
+        CountDownLatch rejectLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .send(result ->
+                {
+                    assertThat(result.getFailure(), instanceOf(RejectedExecutionException.class));
+                    rejectLatch.countDown();
+                });
+        assertTrue(rejectLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, destination.getConcurrencyLimiter().getRejections());
+
+        serverLatch.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testLimitBacksOffOnServiceUnavailable(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+        int initialLimit = 16;
+        startClient(scenario, null, httpClient -> httpClient.setConcurrencyLimiterFactory(destination ->
+        {
+            ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+            limiter.setInitialLimit(initialLimit);
+            return limiter;
+        }));
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        }
+
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        assertThat(destination.getConcurrencyLimiter().getLimit(), lessThan(initialLimit));
+    }
+
+    @Test
+    public void testLimitGrowsWhenUsed()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+        limiter.setInitialLimit(4);
+        long rtt = TimeUnit.MILLISECONDS.toNanos(10);
+
+        // Requests that do not use the limit do not grow it.
+        for (int i = 0; i < 100; ++i)
+        {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(rtt, false);
+        }
+        assertEquals(4, limiter.getLimit());
+
+        // Requests that use the limit grow it.
+        for (int i = 0; i < 100; ++i)
+        {
+            while (limiter.tryAcquire())
+            {
+                // Fill the limit.
+            }
+            for (int j = limiter.getInFlight(); j > 0; --j)
+                limiter.release(rtt, false);
+        }
+        assertThat(limiter.getLimit(), greaterThan(4));
+
+        // A slow request backs off.
+        int limit = limiter.getLimit();
+        assertTrue(limiter.tryAcquire());
+        limiter.release(10 * rtt, false);
+        assertThat(limiter.getLimit(), lessThan(limit));
+        assertFalse(limiter.getInFlight() > 0);
+    }
+
+    private boolean awaitInFlight(ConcurrencyLimiter limiter, int inFlight) throws InterruptedException
+    {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < end)
+        {
+            if (limiter.getInFlight() == inFlight)
+                return true;
+            Thread.sleep(10);
+        }
+        return false;
+    }
+}
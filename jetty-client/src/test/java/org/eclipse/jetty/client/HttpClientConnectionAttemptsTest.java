@@ -0,0 +1,128 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.http.HttpStatus;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class HttpClientConnectionAttemptsTest extends AbstractHttpClientServerTest
+{
+    // A documentation address (RFC 5737) that never answers.
+    private static final String UNRESPONSIVE_HOST = "192.0.2.1";
+
+    private void startClient(Scenario scenario, InetSocketAddress first, long connectionAttemptDelay) throws Exception
+    {
+        // Simulates a connect that hangs, rather than relying on the network.
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP(1)
+        {
+            @Override
+            public void connect(InetSocketAddress address, Map<String, Object> context)
+            {
+                if (!UNRESPONSIVE_HOST.equals(address.getAddress().getHostAddress()))
+                    super.connect(address, context);
+            }
+        };
+        startClient(scenario, transport, client ->
+        {
+            client.setConnectTimeout(30000);
+            client.setConnectionAttemptDelay(connectionAttemptDelay);
+            client.setSocketAddressResolver((host, port, promise) ->
+            {
+                try
+                {
+                    InetAddress loopback = InetAddress.getByName("127.0.0.1");
+                    promise.succeeded(Arrays.asList(new InetSocketAddress(first.getAddress(), first.getPort() > 0 ? first.getPort() : port),
+                            new InetSocketAddress(loopback, port)));
+                }
+                catch (Throwable x)
+                {
+                    promise.failed(x);
+                }
+            });
+        });
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNextAddressIsAttemptedAfterDelay(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+        startClient(scenario, new InetSocketAddress(UNRESPONSIVE_HOST, 0), 100);
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNextAddressIsAttemptedWhenConnectFails(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            closedPort = socket.getLocalPort();
+        }
+        // The delay is longer than the request timeout, so the
+        // failure of the first attempt must start the next one.
+        startClient(scenario, new InetSocketAddress("127.0.0.1", closedPort), 30000);
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testAllAddressesFail(Scenario scenario) throws Exception
+    {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0))
+        {
+            closedPort = socket.getLocalPort();
+        }
+        startClient(scenario, new InetSocketAddress("127.0.0.1", closedPort), 100);
+
+        assertThrows(ExecutionException.class, () -> client.newRequest("localhost", closedPort)
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send());
+    }
+}
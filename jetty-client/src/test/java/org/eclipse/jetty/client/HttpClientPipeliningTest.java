@@ -0,0 +1,316 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class HttpClientPipeliningTest extends AbstractHttpClientServerTest
+{
+    private HttpClientTransportOverHTTP transport;
+
+    private void startClient(Scenario scenario, int depth) throws Exception
+    {
+        transport = new HttpClientTransportOverHTTP(1);
+        transport.setPipeliningDepth(depth);
+        startClient(scenario, transport, client -> client.setMaxConnectionsPerDestination(1));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testRequestsArePipelined(Scenario scenario) throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            startClient(scenario, 4);
+
+            List<FutureResponseListener> listeners = new ArrayList<>();
+            for (int i = 0; i < 3; ++i)
+            {
+                org.eclipse.jetty.client.api.Request request = client.newRequest("localhost", server.getLocalPort())
+                        .scheme(scenario.getScheme())
+                        .path("/" + i);
+                FutureResponseListener listener = new FutureResponseListener(request);
+                request.send(listener);
+                listeners.add(listener);
+            }
+
+            try (Socket socket = server.accept())
+            {
+                // All the requests are received before any response is sent.
+                List<String> requests = readRequests(socket.getInputStream(), 3);
+                for (int i = 0; i < 3; ++i)
+                    assertTrue(requests.get(i).startsWith("GET /" + i + " "));
+
+                // Write all the responses at once.
+                StringBuilder responses = new StringBuilder();
+                for (int i = 0; i < 3; ++i)
+                    responses.append(response(String.valueOf(i), false));
+                write(socket, responses.toString());
+
+                for (int i = 0; i < 3; ++i)
+                {
+                    ContentResponse response = listeners.get(i).get(5, TimeUnit.SECONDS);
+                    assertEquals(HttpStatus.OK_200, response.getStatus());
+                    assertEquals(String.valueOf(i), response.getContentAsString());
+                }
+            }
+
+            assertEquals(2, transport.getPipelinedRequestCount());
+            assertEquals(0, transport.getRequeuedRequestCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testNonIdempotentRequestIsNotPipelined(Scenario scenario) throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            startClient(scenario, 4);
+
+            List<FutureResponseListener> listeners = new ArrayList<>();
+            for (int i = 0; i < 3; ++i)
+            {
+                org.eclipse.jetty.client.api.Request request = client.newRequest("localhost", server.getLocalPort())
+                        .scheme(scenario.getScheme())
+                        .path("/" + i);
+                if (i == 1)
+                    request.method(HttpMethod.POST).content(new StringContentProvider("1"));
+                FutureResponseListener listener = new FutureResponseListener(request);
+                request.send(listener);
+                listeners.add(listener);
+            }
+
+            try (Socket socket = server.accept())
+            {
+                InputStream input = socket.getInputStream();
+                assertTrue(readRequests(input, 1).get(0).startsWith("GET /0 "));
+                // The POST must wait for the response to the GET.
+                Thread.sleep(500);
+                assertEquals(0, input.available());
+                write(socket, response("0", false));
+
+                assertTrue(readRequests(input, 1).get(0).startsWith("POST /1 "));
+                assertEquals('1', input.read());
+                // The last GET must wait for the response to the POST.
+                Thread.sleep(500);
+                assertEquals(0, input.available());
+                write(socket, response("1", false));
+
+                assertTrue(readRequests(input, 1).get(0).startsWith("GET /2 "));
+                write(socket, response("2", false));
+
+                for (int i = 0; i < 3; ++i)
+                    assertEquals(String.valueOf(i), listeners.get(i).get(5, TimeUnit.SECONDS).getContentAsString());
+            }
+
+            assertEquals(0, transport.getPipelinedRequestCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testUnansweredRequestsAreRequeuedOnClose(Scenario scenario) throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            startClient(scenario, 4);
+
+            List<FutureResponseListener> listeners = new ArrayList<>();
+            for (int i = 0; i < 3; ++i)
+            {
+                org.eclipse.jetty.client.api.Request request = client.newRequest("localhost", server.getLocalPort())
+                        .scheme(scenario.getScheme())
+                        .path("/" + i);
+                FutureResponseListener listener = new FutureResponseListener(request);
+                request.send(listener);
+                listeners.add(listener);
+            }
+
+            try (Socket socket = server.accept())
+            {
+                readRequests(socket.getInputStream(), 3);
+                // Answer only the first request, and close the connection.
+                write(socket, response("0", true));
+            }
+
+            assertEquals("0", listeners.get(0).get(5, TimeUnit.SECONDS).getContentAsString());
+
+            // The other requests are sent again on a new connection.
+            try (Socket socket = server.accept())
+            {
+                List<String> requests = readRequests(socket.getInputStream(), 2);
+                assertTrue(requests.get(0).startsWith("GET /1 "));
+                assertTrue(requests.get(1).startsWith("GET /2 "));
+                write(socket, response("1", false) + response("2", false));
+
+                assertEquals("1", listeners.get(1).get(5, TimeUnit.SECONDS).getContentAsString());
+                assertEquals("2", listeners.get(2).get(5, TimeUnit.SECONDS).getContentAsString());
+            }
+
+            assertEquals(2, transport.getRequeuedRequestCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testNonIdempotentRequestIsNotRequeuedOnClose(Scenario scenario) throws Exception
+    {
+        try (ServerSocket server = new ServerSocket(0))
+        {
+            transport = new HttpClientTransportOverHTTP(1);
+            transport.setPipeliningDepth(4);
+            startClient(scenario, transport, client ->
+            {
+                client.setMaxConnectionsPerDestination(1);
+                client.setIdleTimeout(500);
+            });
+
+            org.eclipse.jetty.client.api.Request request = client.newRequest("localhost", server.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .method(HttpMethod.POST)
+                    .path("/pay")
+                    .content(new StringContentProvider("1"));
+            FutureResponseListener listener = new FutureResponseListener(request);
+            request.send(listener);
+
+            try (Socket socket = server.accept())
+            {
+                InputStream input = socket.getInputStream();
+                assertTrue(readRequests(input, 1).get(0).startsWith("POST /pay "));
+                assertEquals('1', input.read());
+
+                // Do not answer, so that the connection is closed by the idle timeout.
+                ExecutionException x = assertThrows(ExecutionException.class, () -> listener.get(5, TimeUnit.SECONDS));
+                assertThat(x.getCause(), instanceOf(TimeoutException.class));
+            }
+
+            // The POST must not be sent again on another connection.
+            server.setSoTimeout(1000);
+            assertThrows(SocketTimeoutException.class, server::accept);
+            assertEquals(0, transport.getRequeuedRequestCount());
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testManyPipelinedRequests(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                response.getOutputStream().print(target);
+            }
+        });
+        startClient(scenario, 8);
+
+        int count = 100;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            String path = "/" + i;
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .method(i % 10 == 0 ? HttpMethod.POST : HttpMethod.GET)
+                    .path(path)
+                    .send(new BufferingResponseListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            if (result.isSucceeded() && path.equals(getContentAsString()))
+                                latch.countDown();
+                        }
+                    });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(transport.getPipelinedRequestCount() > 0);
+    }
+
+    private static String response(String content, boolean close)
+    {
+        return "HTTP/1.1 200 OK\r\n" +
+                "Content-Length: " + content.length() + "\r\n" +
+                (close ? "Connection: close\r\n" : "") +
+                "\r\n" +
+                content;
+    }
+
+    private static void write(Socket socket, String data) throws IOException
+    {
+        OutputStream output = socket.getOutputStream();
+        output.write(data.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    private static List<String> readRequests(InputStream input, int count) throws IOException
+    {
+        List<String> requests = new ArrayList<>();
+        StringBuilder request = new StringBuilder();
+        while (requests.size() < count)
+        {
+            int read = input.read();
+            if (read < 0)
+                throw new IOException("EOF");
+            request.append((char)read);
+            if (request.length() >= 4 && request.lastIndexOf("\r\n\r\n") == request.length() - 4)
+            {
+                requests.add(request.toString());
+                request.setLength(0);
+            }
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,344 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Request;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class HttpClientRetryTest extends AbstractHttpClientServerTest
+{
+    private RetryPolicy newRetryPolicy()
+    {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMinBackoff(10);
+        policy.setMaxBackoff(50);
+        return policy;
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetryOnStatus(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                if (requests.incrementAndGet() < 3)
+                    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+                else
+                    response.getOutputStream().print("ok");
+            }
+        });
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .retryPolicy(newRetryPolicy())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("ok", response.getContentAsString());
+        assertEquals(3, requests.get());
+        assertEquals(2, client.getRetryBudget().getRetries());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetriesExhausted(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setStatus(HttpStatus.BAD_GATEWAY_502);
+            }
+        });
+
+        RetryPolicy policy = newRetryPolicy();
+        policy.setMaxRetries(1);
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .retryPolicy(policy)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.BAD_GATEWAY_502, response.getStatus());
+        assertEquals(2, requests.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNonIdempotentRequestIsNotRetried(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .method(HttpMethod.POST)
+                .retryPolicy(newRetryPolicy())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        assertEquals(1, requests.get());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetryOnFailure(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                if (requests.incrementAndGet() == 1)
+                    jettyRequest.getHttpChannel().getEndPoint().close();
+                else
+                    response.getOutputStream().print("ok");
+            }
+        });
+
+        CountDownLatch beginLatch = new CountDownLatch(2);
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .retryPolicy(newRetryPolicy())
+                .onRequestBegin(r -> beginLatch.countDown())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals("ok", response.getContentAsString());
+        // The request listeners are notified for every request sent.
+        assertTrue(beginLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testRetryRejectedByBudget(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                requests.incrementAndGet();
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+        RetryBudget budget = client.getRetryBudget();
+        budget.setRetryRatio(0);
+        budget.setMinRetriesPerSecond(0);
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .retryPolicy(newRetryPolicy())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE_503, response.getStatus());
+        assertEquals(1, requests.get());
+        assertEquals(1, budget.getRejections());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testAbortWhileWaitingToRetry(Scenario scenario) throws Exception
+    {
+        CountDownLatch serverLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+                serverLatch.countDown();
+            }
+        });
+
+        RetryPolicy policy = newRetryPolicy();
+        policy.setMinBackoff(10000);
+        policy.setMaxBackoff(10000);
+        AtomicReference<Result> resultRef = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        org.eclipse.jetty.client.api.Request request = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .retryPolicy(policy);
+        request.send(result ->
+        {
+            resultRef.set(result);
+            latch.countDown();
+        });
+
+        assertTrue(serverLatch.await(5, TimeUnit.SECONDS));
+        // Wait for the first response to be discarded.
+        Thread.sleep(500);
+        Exception cause = new Exception();
+        assertTrue(request.abort(cause));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(resultRef.get().isFailed());
+        assertEquals(cause, resultRef.get().getFailure());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testHedging(Scenario scenario) throws Exception
+    {
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch slowLatch = new CountDownLatch(1);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                try
+                {
+                    if (requests.incrementAndGet() == 1)
+                    {
+                        slowLatch.await(5, TimeUnit.SECONDS);
+                        response.getOutputStream().print("slow");
+                    }
+                    else
+                    {
+                        response.getOutputStream().print("fast");
+                    }
+                }
+                catch (InterruptedException x)
+                {
+                    throw new ServletException(x);
+                }
+            }
+        });
+
+        try
+        {
+            RetryPolicy policy = newRetryPolicy();
+            policy.setHedgeDelay(100);
+            long start = System.nanoTime();
+            AtomicReference<Result> resultRef = new AtomicReference<>();
+            CountDownLatch latch = new CountDownLatch(1);
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .retryPolicy(policy)
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send(new BufferingResponseListener()
+                    {
+                        @Override
+                        public void onComplete(Result result)
+                        {
+                            resultRef.set(result);
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void onSuccess(Response response)
+                        {
+                            assertEquals("fast", getContentAsString());
+                        }
+                    });
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(2000L));
+            Result result = resultRef.get();
+            assertTrue(result.isSucceeded());
+            assertEquals(HttpStatus.OK_200, result.getResponse().getStatus());
+            assertEquals(2, requests.get());
+            assertEquals(1, client.getRetryBudget().getHedges());
+        }
+        finally
+        {
+            slowLatch.countDown();
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testTotalTimeoutAppliesToRetries(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response)
+            {
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE_503);
+            }
+        });
+
+        RetryPolicy policy = newRetryPolicy();
+        policy.setMaxRetries(100);
+        policy.setMinBackoff(200);
+        policy.setMaxBackoff(200);
+        AtomicReference<Result> resultRef = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .retryPolicy(policy)
+                .timeout(1, TimeUnit.SECONDS)
+                .send(result ->
+                {
+                    resultRef.set(result);
+                    latch.countDown();
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(resultRef.get().getFailure(), instanceOf(TimeoutException.class));
+    }
+}
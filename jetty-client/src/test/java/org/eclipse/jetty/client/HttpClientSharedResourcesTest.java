@@ -0,0 +1,175 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
+import org.eclipse.jetty.io.ClientResources;
+import org.eclipse.jetty.io.SelectorManager;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class HttpClientSharedResourcesTest extends AbstractHttpClientServerTest
+{
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testClientsShareResources(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+
+        ClientResources resources = new ClientResources();
+        resources.setSelectors(1);
+        HttpClient client1 = newHttpClient(scenario, new HttpClientTransportOverHTTP());
+        client1.setClientResources(resources);
+        HttpClient client2 = newHttpClient(scenario, new HttpClientTransportOverHTTP());
+        client2.setClientResources(resources);
+
+        client1.start();
+        assertTrue(resources.isStarted());
+        client2.start();
+        assertEquals(2, resources.getReferences());
+
+        assertSame(resources.getExecutor(), client1.getExecutor());
+        assertSame(resources.getExecutor(), client2.getExecutor());
+        assertSame(resources.getScheduler(), client1.getScheduler());
+        assertSame(resources.getByteBufferPool(), client2.getByteBufferPool());
+
+        for (HttpClient client : new HttpClient[]{client1, client2})
+        {
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            assertEquals(200, response.getStatus());
+        }
+
+        // Stopping a client must not stop the resources used by the other.
+        client1.stop();
+        assertTrue(resources.isStarted());
+        assertEquals(1, resources.getReferences());
+        ContentResponse response = client2.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals(200, response.getStatus());
+
+        client2.stop();
+        assertFalse(resources.isRunning());
+        assertEquals(0, resources.getReferences());
+
+        // Restarting a client restarts the resources.
+        client1.start();
+        assertTrue(resources.isStarted());
+        response = client1.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals(200, response.getStatus());
+        client1.stop();
+        assertFalse(resources.isRunning());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testExplicitlyStartedResourcesAreNotStopped(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+
+        ClientResources resources = new ClientResources();
+        QueuedThreadPool executor = new QueuedThreadPool();
+        resources.setExecutor(executor);
+        resources.start();
+
+        try
+        {
+            HttpClient client = newHttpClient(scenario, new HttpClientTransportOverHTTP());
+            client.setClientResources(resources);
+            client.start();
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            assertEquals(200, response.getStatus());
+            client.stop();
+
+            assertTrue(resources.isStarted());
+            assertTrue(executor.isStarted());
+        }
+        finally
+        {
+            resources.stop();
+        }
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(NonSslScenarioProvider.class)
+    public void testTransportNotSharingSelectors(Scenario scenario) throws Exception
+    {
+        startServer(scenario, new EmptyServerHandler());
+
+        AtomicInteger selectorManagers = new AtomicInteger();
+        HttpClientTransportOverHTTP transport = new HttpClientTransportOverHTTP()
+        {
+            @Override
+            protected boolean isShareSelectors()
+            {
+                return false;
+            }
+
+            @Override
+            protected SelectorManager newSelectorManager(HttpClient client)
+            {
+                selectorManagers.incrementAndGet();
+                return super.newSelectorManager(client);
+            }
+        };
+        ClientResources resources = new ClientResources();
+        HttpClient client = newHttpClient(scenario, transport);
+        client.setClientResources(resources);
+        client.start();
+
+        try
+        {
+            // The executor is shared, but the transport uses its own selectors.
+            assertSame(resources.getExecutor(), client.getExecutor());
+            assertEquals(1, selectorManagers.get());
+            assertEquals(1, transport.getBeans(SelectorManager.class).size());
+
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            assertEquals(200, response.getStatus());
+        }
+        finally
+        {
+            client.stop();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class LockFreeConnectionPoolTest extends AbstractHttpClientServerTest
+{
+    @Override
+    public HttpClient newHttpClient(Scenario scenario, HttpClientTransport transport)
+    {
+        transport.setConnectionPoolFactory(destination ->
+                new LockFreeConnectionPool(destination, destination.getHttpClient().getMaxConnectionsPerDestination(), destination, true));
+        return super.newHttpClient(scenario, transport);
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testConcurrentRequests(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler());
+        client.setMaxConnectionsPerDestination(4);
+
+        int count = 64;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            client.newRequest("localhost", connector.getLocalPort())
+                    .scheme(scenario.getScheme())
+                    .send(result ->
+                    {
+                        if (result.isSucceeded() && result.getResponse().getStatus() == HttpStatus.OK_200)
+                            latch.countDown();
+                    });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+
+        HttpDestination destination = (HttpDestination)client.getDestinations().get(0);
+        LockFreeConnectionPool pool = (LockFreeConnectionPool)destination.getConnectionPool();
+        assertTrue(pool.getConnectionCount() <= 4);
+        assertEquals(0, pool.getActiveConnectionCount());
+        assertEquals(pool.getConnectionCount(), pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void testHotConnectionsFirst()
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), 4, Callback.NOOP);
+
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            connections.add(pool.acquire());
+        assertEquals(3, pool.getActiveConnectionCount());
+        assertNull(findDuplicate(connections));
+
+        for (Connection connection : connections)
+            assertTrue(pool.release(connection));
+        assertEquals(3, pool.getIdleConnectionCount());
+        assertFalse(pool.release(connections.get(0)));
+
+        // Without thread affinity, the connection in the first slot is used.
+        assertSame(connections.get(0), pool.acquire());
+        assertEquals(3, pool.getConnectionCount());
+    }
+
+    @Test
+    public void testThreadAffinity()
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), 4, Callback.NOOP, true);
+
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            connections.add(pool.acquire());
+        for (Connection connection : connections)
+            pool.release(connection);
+
+        // The connection released last by this thread is used.
+        Connection connection = pool.acquire();
+        assertSame(connections.get(2), connection);
+
+        // If it is in use, another one is used.
+        Connection other = pool.acquire();
+        assertNotNull(other);
+        assertFalse(other == connection);
+
+        // If it has been removed, the first idle one is used.
+        assertSame(connections.get(0), other);
+        assertTrue(pool.release(connection));
+        assertTrue(pool.release(other));
+        assertTrue(pool.remove(other));
+        assertSame(connections.get(1), pool.acquire());
+    }
+
+    @Test
+    public void testRemoveAndClose()
+    {
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), 2, Callback.NOOP, true);
+
+        Connection connection1 = pool.acquire();
+        Connection connection2 = pool.acquire();
+        assertNull(pool.acquire());
+
+        assertTrue(pool.remove(connection1));
+        assertFalse(pool.remove(connection1));
+        assertFalse(pool.isActive(connection1));
+        assertEquals(1, pool.getConnectionCount());
+
+        // A slot is free for a new connection.
+        Connection connection3 = pool.acquire();
+        assertNotNull(connection3);
+        assertTrue(pool.isActive(connection3));
+
+        pool.close();
+        assertTrue(connection2.isClosed());
+        assertTrue(connection3.isClosed());
+        assertFalse(pool.release(connection2));
+        assertTrue(pool.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Exception
+    {
+        int maxConnections = 4;
+        LockFreeConnectionPool pool = new LockFreeConnectionPool(new TestDestination(), maxConnections, Callback.NOOP, true);
+
+        int threads = 8;
+        int iterations = 10000;
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; ++t)
+        {
+            new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < iterations; ++i)
+                    {
+                        TestConnection connection = (TestConnection)pool.acquire();
+                        if (connection == null)
+                            continue;
+                        // No other thread must be using the connection.
+                        if (!connection.inUse.compareAndSet(false, true))
+                            failures.incrementAndGet();
+                        connection.inUse.set(false);
+                        if (!pool.release(connection))
+                            failures.incrementAndGet();
+                    }
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            }).start();
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        assertEquals(0, failures.get());
+        assertEquals(maxConnections, pool.getConnectionCount());
+        assertEquals(0, pool.getActiveConnectionCount());
+        assertEquals(maxConnections, pool.getIdleConnectionCount());
+    }
+
+    private Connection findDuplicate(List<Connection> connections)
+    {
+        for (int i = 0; i < connections.size(); ++i)
+        {
+            if (connections.indexOf(connections.get(i)) != i)
+                return connections.get(i);
+        }
+        return null;
+    }
+
+    private static class TestDestination implements Destination
+    {
+        @Override
+        public String getScheme()
+        {
+            return "http";
+        }
+
+        @Override
+        public String getHost()
+        {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return 80;
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new TestConnection());
+        }
+    }
+
+    private static class TestConnection implements Connection
+    {
+        private final AtomicBoolean inUse = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+            closed.set(true);
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return closed.get();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.client.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.AbstractHttpClientServerTest;
+import org.eclipse.jetty.client.EmptyServerHandler;
+import org.eclipse.jetty.client.HttpResponseException;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ArgumentsSource;
+
+public class MultiPartResponseListenerTest extends AbstractHttpClientServerTest
+{
+    private static final String BOUNDARY = "JettyBoundary";
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testParts(Scenario scenario) throws Exception
+    {
+        byte[] file = new byte[64 * 1024];
+        for (int i = 0; i < file.length; ++i)
+            file[i] = (byte)('a' + i % 26);
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setContentType("multipart/mixed; boundary=\"" + BOUNDARY + "\"");
+                OutputStream output = response.getOutputStream();
+                output.write(("preamble\r\n" +
+                        "--" + BOUNDARY + "\r\n" +
+                        "Content-Disposition: form-data; name=\"field\"\r\n" +
+                        "\r\n" +
+                        "value\r\n" +
+                        "--" + BOUNDARY + "\r\n" +
+                        "Content-Disposition: form-data; name=\"file\"; filename=\"file.txt\"\r\n" +
+                        "Content-Type: text/plain\r\n" +
+                        "\r\n").getBytes(StandardCharsets.US_ASCII));
+                // Write the file in chunks, so that it arrives in multiple reads.
+                for (int i = 0; i < file.length; i += 4096)
+                {
+                    output.write(file, i, 4096);
+                    output.flush();
+                }
+                output.write(("\r\n--" + BOUNDARY + "--\r\nepilogue").getBytes(StandardCharsets.US_ASCII));
+            }
+        });
+
+        List<String> events = new ArrayList<>();
+        List<MultiPartResponseListener.Part> parts = new ArrayList<>();
+        List<ByteArrayOutputStream> contents = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .send(new MultiPartResponseListener()
+                {
+                    @Override
+                    protected void onPartBegin(Response response, Part part)
+                    {
+                        events.add("begin");
+                        parts.add(part);
+                        contents.add(new ByteArrayOutputStream());
+                    }
+
+                    @Override
+                    protected void onPartContent(Response response, Part part, ByteBuffer content, Callback callback)
+                    {
+                        if (!events.get(events.size() - 1).equals("content"))
+                            events.add("content");
+                        contents.get(contents.size() - 1).write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+                        callback.succeeded();
+                    }
+
+                    @Override
+                    protected void onPartEnd(Response response, Part part)
+                    {
+                        events.add("end");
+                    }
+
+                    @Override
+                    protected void onPartFailure(Response response, Part part, Throwable failure)
+                    {
+                        events.add("failure");
+                    }
+
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        assertTrue(result.isSucceeded());
+                        latch.countDown();
+                    }
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("begin", "content", "end", "begin", "content", "end"), events);
+        assertEquals(2, parts.size());
+        assertEquals("field", parts.get(0).getName());
+        assertNull(parts.get(0).getFileName());
+        assertEquals("value", contents.get(0).toString(StandardCharsets.US_ASCII.name()));
+        assertEquals("file", parts.get(1).getName());
+        assertEquals("file.txt", parts.get(1).getFileName());
+        assertEquals("text/plain", parts.get(1).getContentType());
+        assertArrayEquals(file, contents.get(1).toByteArray());
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testPartContentBackpressure(Scenario scenario) throws Exception
+    {
+        byte[] file = new byte[256 * 1024];
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setContentType("multipart/byteranges; boundary=" + BOUNDARY);
+                OutputStream output = response.getOutputStream();
+                output.write(("--" + BOUNDARY + "\r\n" +
+                        "Content-Type: application/octet-stream\r\n" +
+                        "\r\n").getBytes(StandardCharsets.US_ASCII));
+                output.write(file);
+                output.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+            }
+        });
+
+        AtomicReference<Runnable> consumer = new AtomicReference<>();
+        AtomicReference<CountDownLatch> contentLatch = new AtomicReference<>(new CountDownLatch(1));
+        CountDownLatch endLatch = new CountDownLatch(1);
+        CountDownLatch completeLatch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .send(new MultiPartResponseListener()
+                {
+                    @Override
+                    protected void onPartContent(Response response, Part part, ByteBuffer content, Callback callback)
+                    {
+                        // Do not consume the content until the test says so.
+                        consumer.set(() ->
+                        {
+                            BufferUtil.clear(content);
+                            callback.succeeded();
+                        });
+                        contentLatch.get().countDown();
+                    }
+
+                    @Override
+                    protected void onPartEnd(Response response, Part part)
+                    {
+                        endLatch.countDown();
+                    }
+
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        assertTrue(result.isSucceeded());
+                        completeLatch.countDown();
+                    }
+                });
+
+        int chunks = 0;
+        while (true)
+        {
+            assertTrue(contentLatch.get().await(5, TimeUnit.SECONDS));
+            // The part cannot be complete while its content is not consumed.
+            assertEquals(1, endLatch.getCount());
+            ++chunks;
+            contentLatch.set(new CountDownLatch(1));
+            consumer.get().run();
+            if (endLatch.await(100, TimeUnit.MILLISECONDS))
+                break;
+        }
+
+        assertTrue(chunks > 1);
+        assertTrue(completeLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testNotMultiPart(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setContentType("text/plain");
+                response.getOutputStream().print("hello");
+            }
+        });
+
+        CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .send(new MultiPartResponseListener()
+                {
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        assertThat(result.getResponseFailure(), instanceOf(HttpResponseException.class));
+                        latch.countDown();
+                    }
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testTruncatedPart(Scenario scenario) throws Exception
+    {
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setContentType("multipart/mixed; boundary=" + BOUNDARY);
+                response.getOutputStream().write(("--" + BOUNDARY + "\r\n" +
+                        "Content-Disposition: form-data; name=\"field\"\r\n" +
+                        "\r\n" +
+                        "truncated").getBytes(StandardCharsets.US_ASCII));
+            }
+        });
+
+        AtomicReference<MultiPartResponseListener.Part> failedPart = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .send(new MultiPartResponseListener()
+                {
+                    @Override
+                    protected void onPartFailure(Response response, Part part, Throwable x)
+                    {
+                        failedPart.set(part);
+                        failure.set(x);
+                    }
+
+                    @Override
+                    public void onComplete(Result result)
+                    {
+                        latch.countDown();
+                    }
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("field", failedPart.get().getName());
+        assertThat(failure.get(), instanceOf(EOFException.class));
+    }
+}
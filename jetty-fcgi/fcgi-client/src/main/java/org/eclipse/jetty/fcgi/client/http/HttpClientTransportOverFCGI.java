@@ -75,6 +75,12 @@ public class HttpClientTransportOverFCGI extends AbstractConnectorHttpClientTran
         return scriptRoot;
     }
 
+    @Override
+    protected boolean isShareSelectors()
+    {
+        return true;
+    }
+
     @Override
     public HttpDestination newHttpDestination(Origin origin)
     {
@@ -20,7 +20,7 @@
 package org.eclipse.jetty.gcloud.session;
 
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -29,7 +29,6 @@ import org.eclipse.jetty.server.session.SessionContext;
 import org.eclipse.jetty.server.session.SessionData;
 import org.eclipse.jetty.server.session.UnreadableSessionDataException;
 import org.eclipse.jetty.server.session.UnwriteableSessionDataException;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -869,10 +868,9 @@ public class GCloudSessionDataStore extends AbstractSessionDataStore
         Entity entity = null;
         
         //serialize the attribute map
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos))
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
         {
-            SessionData.serializeAttributes(session, oos);
+            getSerializer().serializeAttributes(session, baos);
 
             //turn a session into an entity         
             entity = Entity.newBuilder(key)
@@ -935,9 +933,9 @@ public class GCloudSessionDataStore extends AbstractSessionDataStore
         session.setLastNode(lastNode);
         session.setLastSaved(lastSaved);
         session.setExpiry(expiry);
-        try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(blob.asInputStream()))
+        try (InputStream is = blob.asInputStream())
         {
-            SessionData.deserializeAttributes(session, ois);
+            getSerializer().deserializeAttributes(session, is);
         }
         catch (Exception e)
         {
@@ -19,34 +19,50 @@
 package org.eclipse.jetty.hazelcast.session;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.server.session.AbstractSessionDataStore;
 import org.eclipse.jetty.server.session.SessionContext;
 import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.server.session.SessionDataNotifier;
 import org.eclipse.jetty.server.session.SessionDataStore;
 import org.eclipse.jetty.server.session.UnreadableSessionDataException;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
+import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.IMap;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
 
 /**
  * Session data stored in Hazelcast
+ * <p>
+ * When a {@link SessionDataNotifier.Listener} is added, the store listens for the
+ * updates, removals and evictions of the sessions of its context in the map that
+ * originate from other members of the cluster. When Hazelcast is used in client
+ * mode, no member is local, so the changes made by this node are notified too.
  */
 @ManagedObject
 public class HazelcastSessionDataStore
     extends AbstractSessionDataStore
-    implements SessionDataStore
+    implements SessionDataStore, SessionDataNotifier
 {
 
     private  final static Logger LOG = Log.getLogger( "org.eclipse.jetty.server.session");
 
     private IMap<String, SessionData> sessionDataMap;
 
+    private final List<SessionDataNotifier.Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private String entryListenerId;
+
     public HazelcastSessionDataStore()
     {
         // no op
@@ -100,6 +116,39 @@ public class HazelcastSessionDataStore
         _context = context;
     }
 
+    @Override
+    public void addSessionDataListener( SessionDataNotifier.Listener listener )
+    {
+        listeners.add( listener );
+    }
+
+    @Override
+    public void removeSessionDataListener( SessionDataNotifier.Listener listener )
+    {
+        listeners.remove( listener );
+    }
+
+    @Override
+    protected void doStart()
+        throws Exception
+    {
+        super.doStart();
+        if (!listeners.isEmpty())
+            entryListenerId = sessionDataMap.addEntryListener( new EntryChangedListener(), false );
+    }
+
+    @Override
+    protected void doStop()
+        throws Exception
+    {
+        if (entryListenerId != null)
+        {
+            sessionDataMap.removeEntryListener( entryListenerId );
+            entryListenerId = null;
+        }
+        super.doStop();
+    }
+
     @Override
     public void doStore( String id, SessionData data, long lastSaveTime )
         throws Exception
@@ -205,4 +254,51 @@ public class HazelcastSessionDataStore
     {
         return _context.getCanonicalContextPath() + "_" + _context.getVhost() + "_" + id;
     }
+
+    private class EntryChangedListener
+        implements EntryUpdatedListener<String, SessionData>, EntryRemovedListener<String, SessionData>, EntryEvictedListener<String, SessionData>
+    {
+        @Override
+        public void entryUpdated( EntryEvent<String, SessionData> event )
+        {
+            changed( event );
+        }
+
+        @Override
+        public void entryRemoved( EntryEvent<String, SessionData> event )
+        {
+            changed( event );
+        }
+
+        @Override
+        public void entryEvicted( EntryEvent<String, SessionData> event )
+        {
+            changed( event );
+        }
+
+        private void changed( EntryEvent<String, SessionData> event )
+        {
+            if (event.getMember() != null && event.getMember().localMember())
+                return;
+
+            //the map is shared by all contexts
+            String prefix = getCacheKey( "" );
+            String key = event.getKey();
+            if (key == null || !key.startsWith( prefix ))
+                return;
+
+            String id = key.substring( prefix.length() );
+            for (SessionDataNotifier.Listener listener : listeners)
+            {
+                try
+                {
+                    listener.onSessionDataChanged( id );
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn( x );
+                }
+            }
+        }
+    }
 }
@@ -72,7 +72,7 @@ public class HazelcastSessionDataStoreFactory
                     {
                         ClientConfig config = new ClientConfig();
                         SerializerConfig sc = new SerializerConfig().
-                                setImplementation(new SessionDataSerializer()).
+                                setImplementation(newSessionDataSerializer()).
                                 setTypeClass(SessionData.class);
                         config.getSerializationConfig().addSerializerConfig(sc);
                         hazelcastInstance = HazelcastClient.newHazelcastClient(config);
@@ -91,7 +91,7 @@ public class HazelcastSessionDataStoreFactory
                     {
                         
                         SerializerConfig sc = new SerializerConfig().
-                                setImplementation(new SessionDataSerializer()).
+                                setImplementation(newSessionDataSerializer()).
                                 setTypeClass(SessionData.class);
                         config = new Config();
                         config.getSerializationConfig().addSerializerConfig(sc);
@@ -128,6 +128,14 @@ public class HazelcastSessionDataStoreFactory
         return hazelcastSessionDataStore;
     }
 
+    private SessionDataSerializer newSessionDataSerializer()
+    {
+        // The attributes are serialized by hazelcast, not by the store
+        if ( getSerializer() == null )
+            return new SessionDataSerializer();
+        return new SessionDataSerializer( getSerializer() );
+    }
+
     public boolean isOnlyClient()
     {
         return onlyClient;
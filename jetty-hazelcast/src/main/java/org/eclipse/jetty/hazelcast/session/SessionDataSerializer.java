@@ -22,10 +22,10 @@ package org.eclipse.jetty.hazelcast.session;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 
+import org.eclipse.jetty.server.session.JavaSessionAttributeSerializer;
+import org.eclipse.jetty.server.session.SessionAttributeSerializer;
 import org.eclipse.jetty.server.session.SessionData;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
@@ -40,6 +40,22 @@ import com.hazelcast.nio.serialization.StreamSerializer;
 public class SessionDataSerializer implements StreamSerializer<SessionData>
 {
     public static final int __TYPEID = 99;
+    
+    private final SessionAttributeSerializer _serializer;
+    
+    public SessionDataSerializer()
+    {
+        this(new JavaSessionAttributeSerializer());
+    }
+    
+    /**
+     * @param serializer the serializer for the session attributes
+     */
+    public SessionDataSerializer(SessionAttributeSerializer serializer)
+    {
+        _serializer = serializer;
+    }
+    
     @Override
     public int getTypeId()
     {
@@ -67,12 +83,9 @@ public class SessionDataSerializer implements StreamSerializer<SessionData>
         out.writeLong(data.getExpiry()); 
         out.writeLong(data.getMaxInactiveMs());
 
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos))
-        {
-            SessionData.serializeAttributes(data, oos);
-            out.writeByteArray(baos.toByteArray());
-        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        _serializer.serializeAttributes(data, baos);
+        out.writeByteArray(baos.toByteArray());
     }
 
     @Override
@@ -92,10 +105,9 @@ public class SessionDataSerializer implements StreamSerializer<SessionData>
         
         SessionData sd = new SessionData(id, contextPath, vhost, created, accessed, lastAccessed, maxInactiveMs);
 
-        ByteArrayInputStream bais = new ByteArrayInputStream(in.readByteArray());
-        try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(bais))
+        try
         {
-            SessionData.deserializeAttributes(sd, ois);
+            _serializer.deserializeAttributes(sd, new ByteArrayInputStream(in.readByteArray()));
         }
         catch(ClassNotFoundException e)
         {
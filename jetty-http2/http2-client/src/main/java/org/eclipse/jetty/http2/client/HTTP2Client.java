@@ -33,11 +33,14 @@ import java.util.concurrent.Executor;
 import org.eclipse.jetty.alpn.client.ALPNClientConnectionFactory;
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.HTTP2Connection;
+import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.ClientConnectionFactory;
+import org.eclipse.jetty.io.ClientResources;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.io.ManagedSelector;
@@ -49,6 +52,8 @@ import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
@@ -117,10 +122,14 @@ import org.eclipse.jetty.util.thread.Scheduler;
 @ManagedObject
 public class HTTP2Client extends ContainerLifeCycle
 {
+    private static final Logger LOG = Log.getLogger(HTTP2Client.class);
+
+    private final ClientResources.Client sharedClient = new SharedClient();
     private Executor executor;
     private Scheduler scheduler;
     private ByteBufferPool bufferPool;
     private ClientConnectionFactory connectionFactory;
+    private ClientResources clientResources;
     private SelectorManager selector;
     private int selectors = 1;
     private long idleTimeout = 30000;
@@ -134,11 +143,24 @@ public class HTTP2Client extends ContainerLifeCycle
     private int maxFrameLength = Frame.DEFAULT_MAX_LENGTH;
     private int maxConcurrentPushedStreams = 32;
     private int maxSettingsKeys = SettingsFrame.DEFAULT_MAX_KEYS;
+    private int minRetainedDataSize = -1;
+    private int writeBatchSize;
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
 
     @Override
     protected void doStart() throws Exception
     {
+        if (clientResources != null)
+        {
+            clientResources.retain();
+            if (executor == null)
+                setExecutor(clientResources.getExecutor());
+            if (scheduler == null)
+                setScheduler(clientResources.getScheduler());
+            if (bufferPool == null)
+                setByteBufferPool(clientResources.getByteBufferPool());
+        }
+
         if (executor == null)
             setExecutor(new QueuedThreadPool());
 
@@ -164,16 +186,27 @@ public class HTTP2Client extends ContainerLifeCycle
             });
         }
 
-        if (selector == null)
+        if (clientResources == null)
         {
-            selector = newSelectorManager();
-            addBean(selector);
+            if (selector == null)
+            {
+                selector = newSelectorManager();
+                addBean(selector);
+            }
+            selector.setConnectTimeout(getConnectTimeout());
         }
-        selector.setConnectTimeout(getConnectTimeout());
 
         super.doStart();
     }
 
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        if (clientResources != null)
+            clientResources.release();
+    }
+
     protected SelectorManager newSelectorManager()
     {
         return new ClientSelectorManager(getExecutor(), getScheduler(), getSelectors());
@@ -184,6 +217,29 @@ public class HTTP2Client extends ContainerLifeCycle
         return new SslClientConnectionFactory(sslContextFactory, getByteBufferPool(), getExecutor(), connectionFactory);
     }
 
+    public ClientResources getClientResources()
+    {
+        return clientResources;
+    }
+
+    /**
+     * <p>Sets the {@link ClientResources} that this client shares with other clients.</p>
+     * <p>The shared resources provide the executor, the scheduler and the buffer pool,
+     * unless they have been explicitly configured, and the selectors, whose connect
+     * timeout applies instead of this client's connect timeout.</p>
+     * <p>The shared resources are retained when this client starts and released when it stops.</p>
+     *
+     * @param clientResources the resources shared by this client
+     */
+    public void setClientResources(ClientResources clientResources)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        // Unmanaged, as the lifecycle of the shared resources is reference counted.
+        updateBean(this.clientResources, clientResources, false);
+        this.clientResources = clientResources;
+    }
+
     public Executor getExecutor()
     {
         return executor;
@@ -372,6 +428,38 @@ public class HTTP2Client extends ContainerLifeCycle
         this.maxSettingsKeys = maxSettingsKeys;
     }
 
+    @ManagedAttribute("The min DATA frame content size that retains the network buffer, smaller content is copied")
+    public int getMinRetainedDataSize()
+    {
+        return minRetainedDataSize;
+    }
+
+    /**
+     * @param minRetainedDataSize the min DATA frame content size that retains the network buffer,
+     * or a negative value to use a quarter of the input buffer size
+     * @see HTTP2Connection#setMinRetainedDataSize(int)
+     */
+    public void setMinRetainedDataSize(int minRetainedDataSize)
+    {
+        this.minRetainedDataSize = minRetainedDataSize;
+    }
+
+    @ManagedAttribute("The size of the pooled buffer the frames of a write are generated into, 0 to disable")
+    public int getWriteBatchSize()
+    {
+        return writeBatchSize;
+    }
+
+    /**
+     * @param writeBatchSize the size of the pooled buffer the frames of a write are generated into,
+     * or zero to generate each frame into its own buffer
+     * @see HTTP2Session#setWriteBatchSize(int)
+     */
+    public void setWriteBatchSize(int writeBatchSize)
+    {
+        this.writeBatchSize = writeBatchSize;
+    }
+
     public void connect(InetSocketAddress address, Session.Listener listener, Promise<Session> promise)
     {
         connect(null, address, listener, promise);
@@ -404,9 +492,9 @@ public class HTTP2Client extends ContainerLifeCycle
             }
             context = contextFrom(sslContextFactory, address, listener, promise, context);
             if (connected)
-                selector.accept(channel, context);
+                accept(channel, context);
             else
-                selector.connect(channel, context);
+                connect(channel, context);
         }
         catch (Throwable x)
         {
@@ -422,7 +510,7 @@ public class HTTP2Client extends ContainerLifeCycle
                 throw new IllegalStateException("SocketChannel must be connected");
             channel.configureBlocking(false);
             Map<String, Object> context = contextFrom(sslContextFactory, (InetSocketAddress)channel.getRemoteAddress(), listener, promise, null);
-            selector.accept(channel, context);
+            accept(channel, context);
         }
         catch (Throwable x)
         {
@@ -442,9 +530,56 @@ public class HTTP2Client extends ContainerLifeCycle
         context.put(SslClientConnectionFactory.SSL_PEER_HOST_CONTEXT_KEY, address.getHostString());
         context.put(SslClientConnectionFactory.SSL_PEER_PORT_CONTEXT_KEY, address.getPort());
         context.putIfAbsent(ClientConnectionFactory.CONNECTOR_CONTEXT_KEY, this);
+        context.put(ClientResources.CLIENT_CONTEXT_KEY, sharedClient);
         return context;
     }
 
+    private void connect(SocketChannel channel, Map<String, Object> context)
+    {
+        ClientResources clientResources = this.clientResources;
+        if (clientResources == null)
+            selector.connect(channel, context);
+        else
+            clientResources.connect(channel, context);
+    }
+
+    private void accept(SocketChannel channel, Map<String, Object> context)
+    {
+        ClientResources clientResources = this.clientResources;
+        if (clientResources == null)
+            selector.accept(channel, context);
+        else
+            clientResources.accept(channel, context);
+    }
+
+    private EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey selectionKey)
+    {
+        SocketChannelEndPoint endp = new SocketChannelEndPoint(channel, selector, selectionKey, getScheduler());
+        endp.setIdleTimeout(getIdleTimeout());
+        return endp;
+    }
+
+    private Connection newConnection(EndPoint endpoint, Map<String, Object> context) throws IOException
+    {
+        context.put(HTTP2ClientConnectionFactory.BYTE_BUFFER_POOL_CONTEXT_KEY, getByteBufferPool());
+        context.put(HTTP2ClientConnectionFactory.EXECUTOR_CONTEXT_KEY, getExecutor());
+        context.put(HTTP2ClientConnectionFactory.SCHEDULER_CONTEXT_KEY, getScheduler());
+        return getClientConnectionFactory().newConnection(endpoint, context);
+    }
+
+    private void connectionFailed(Map<String, Object> context, Throwable failure)
+    {
+        if (LOG.isDebugEnabled())
+        {
+            Object host = context.get(SslClientConnectionFactory.SSL_PEER_HOST_CONTEXT_KEY);
+            Object port = context.get(SslClientConnectionFactory.SSL_PEER_PORT_CONTEXT_KEY);
+            LOG.debug("Could not connect to {}:{}", host, port);
+        }
+        @SuppressWarnings("unchecked")
+        Promise<Session> promise = (Promise<Session>)context.get(HTTP2ClientConnectionFactory.SESSION_PROMISE_CONTEXT_KEY);
+        promise.failed(failure);
+    }
+
     protected void configure(SocketChannel channel) throws IOException
     {
         channel.socket().setTcpNoDelay(true);
@@ -460,9 +595,7 @@ public class HTTP2Client extends ContainerLifeCycle
         @Override
         protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey selectionKey) throws IOException
         {
-            SocketChannelEndPoint endp = new SocketChannelEndPoint(channel, selector, selectionKey, getScheduler());
-            endp.setIdleTimeout(getIdleTimeout());
-            return endp;
+            return HTTP2Client.this.newEndPoint(channel, selector, selectionKey);
         }
 
         @Override
@@ -470,10 +603,7 @@ public class HTTP2Client extends ContainerLifeCycle
         {
             @SuppressWarnings("unchecked")
             Map<String, Object> context = (Map<String, Object>)attachment;
-            context.put(HTTP2ClientConnectionFactory.BYTE_BUFFER_POOL_CONTEXT_KEY, getByteBufferPool());
-            context.put(HTTP2ClientConnectionFactory.EXECUTOR_CONTEXT_KEY, getExecutor());
-            context.put(HTTP2ClientConnectionFactory.SCHEDULER_CONTEXT_KEY, getScheduler());
-            return getClientConnectionFactory().newConnection(endpoint, context);
+            return HTTP2Client.this.newConnection(endpoint, context);
         }
 
         @Override
@@ -481,15 +611,28 @@ public class HTTP2Client extends ContainerLifeCycle
         {
             @SuppressWarnings("unchecked")
             Map<String, Object> context = (Map<String, Object>)attachment;
-            if (LOG.isDebugEnabled())
-            {
-                Object host = context.get(SslClientConnectionFactory.SSL_PEER_HOST_CONTEXT_KEY);
-                Object port = context.get(SslClientConnectionFactory.SSL_PEER_PORT_CONTEXT_KEY);
-                LOG.debug("Could not connect to {}:{}", host, port);
-            }
-            @SuppressWarnings("unchecked")
-            Promise<Session> promise = (Promise<Session>)context.get(HTTP2ClientConnectionFactory.SESSION_PROMISE_CONTEXT_KEY);
-            promise.failed(failure);
+            HTTP2Client.this.connectionFailed(context, failure);
+        }
+    }
+
+    private class SharedClient implements ClientResources.Client
+    {
+        @Override
+        public EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey selectionKey)
+        {
+            return HTTP2Client.this.newEndPoint(channel, selector, selectionKey);
+        }
+
+        @Override
+        public Connection newConnection(EndPoint endPoint, Map<String, Object> context) throws IOException
+        {
+            return HTTP2Client.this.newConnection(endPoint, context);
+        }
+
+        @Override
+        public void connectionFailed(Map<String, Object> context, Throwable failure)
+        {
+            HTTP2Client.this.connectionFailed(context, failure);
         }
     }
 }
@@ -66,6 +66,7 @@ public class HTTP2ClientConnectionFactory implements ClientConnectionFactory
         FlowControlStrategy flowControl = client.getFlowControlStrategyFactory().newFlowControlStrategy();
         HTTP2ClientSession session = new HTTP2ClientSession(scheduler, endPoint, generator, listener, flowControl);
         session.setMaxRemoteStreams(client.getMaxConcurrentPushedStreams());
+        session.setWriteBatchSize(client.getWriteBatchSize());
 
         Parser parser = new Parser(byteBufferPool, session, 4096, 8192);
         parser.setMaxFrameLength(client.getMaxFrameLength());
@@ -73,6 +74,8 @@ public class HTTP2ClientConnectionFactory implements ClientConnectionFactory
 
         HTTP2ClientConnection connection = new HTTP2ClientConnection(client, byteBufferPool, executor, endPoint,
                 parser, session, client.getInputBufferSize(), promise, listener);
+        if (client.getMinRetainedDataSize() >= 0)
+            connection.setMinRetainedDataSize(client.getMinRetainedDataSize());
         connection.addListener(connectionListener);
         return customize(connection, context);
     }
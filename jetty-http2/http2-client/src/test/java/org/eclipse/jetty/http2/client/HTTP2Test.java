@@ -20,6 +20,7 @@ package org.eclipse.jetty.http2.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
@@ -29,7 +30,9 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
@@ -63,6 +66,8 @@ import org.eclipse.jetty.util.Jetty;
 import org.eclipse.jetty.util.Promise;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 public class HTTP2Test extends AbstractTest
 {
@@ -794,6 +799,52 @@ public class HTTP2Test extends AbstractTest
         assertTrue(goAwayLatch.await(5, TimeUnit.SECONDS));
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {-1, 0})
+    public void testSmallDataFrameDoesNotRetainNetworkBuffer(int minRetainedDataSize) throws Exception
+    {
+        BlockingQueue<ByteBuffer> serverData = new LinkedBlockingQueue<>();
+        RawHTTP2ServerConnectionFactory connectionFactory = new RawHTTP2ServerConnectionFactory(new HttpConfiguration(), new ServerSessionListener.Adapter()
+        {
+            @Override
+            public Stream.Listener onNewStream(Stream stream, HeadersFrame frame)
+            {
+                return new Stream.Listener.Adapter()
+                {
+                    @Override
+                    public void onData(Stream stream, DataFrame frame, Callback callback)
+                    {
+                        serverData.offer(frame.getData());
+                        callback.succeeded();
+                    }
+                };
+            }
+        });
+        connectionFactory.setMinRetainedDataSize(minRetainedDataSize);
+        prepareServer(connectionFactory);
+        server.start();
+
+        prepareClient();
+        client.start();
+
+        Session session = newClient(new Session.Listener.Adapter());
+        MetaData.Request metaData = newRequest("POST", new HttpFields());
+        HeadersFrame frame = new HeadersFrame(metaData, null, false);
+        FuturePromise<Stream> promise = new FuturePromise<>();
+        session.newStream(frame, promise, new Stream.Listener.Adapter());
+        Stream stream = promise.get(5, TimeUnit.SECONDS);
+        stream.data(new DataFrame(stream.getId(), ByteBuffer.allocate(16), true), Callback.NOOP);
+
+        ByteBuffer data = serverData.poll(5, TimeUnit.SECONDS);
+        assertNotNull(data);
+        assertEquals(16, data.remaining());
+        // The network buffer is at least as large as the input buffer size.
+        if (minRetainedDataSize == 0)
+            assertTrue(data.array().length >= connectionFactory.getInputBufferSize());
+        else
+            assertTrue(data.array().length < connectionFactory.getInputBufferSize());
+    }
+
     private static void sleep(long time)
     {
         try
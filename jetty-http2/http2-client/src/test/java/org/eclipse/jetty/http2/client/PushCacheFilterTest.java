@@ -23,12 +23,14 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
@@ -52,6 +54,8 @@ import org.eclipse.jetty.http2.frames.HeadersFrame;
 import org.eclipse.jetty.http2.frames.PushPromiseFrame;
 import org.eclipse.jetty.http2.frames.ResetFrame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlets.PushCacheFilter;
 import org.eclipse.jetty.util.Callback;
@@ -62,12 +66,15 @@ import org.junit.jupiter.api.Test;
 public class PushCacheFilterTest extends AbstractTest
 {
     private String contextPath = "/push";
+    private final Map<String, String> filterParams = new HashMap<>();
+    private FilterHolder filterHolder;
 
     @Override
     protected void customizeContext(ServletContextHandler context)
     {
         context.setContextPath(contextPath);
-        context.addFilter(PushCacheFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
+        filterHolder = context.addFilter(PushCacheFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST));
+        filterHolder.setInitParameters(filterParams);
     }
 
     @Override
@@ -605,10 +612,12 @@ public class PushCacheFilterTest extends AbstractTest
         assertTrue(primaryResponseLatch.await(5, TimeUnit.SECONDS));
 
         // Make sure that explicitly requesting a secondary resource, we get the tertiary pushed.
+        // Use a different connection, as the tertiary resource has already been pushed on this one.
+        Session secondarySession = newClient(new Session.Listener.Adapter());
         CountDownLatch secondaryResponseLatch = new CountDownLatch(1);
         CountDownLatch secondaryPushLatch = new CountDownLatch(1);
         MetaData.Request secondaryRequest = newRequest("GET", secondaryResource1, new HttpFields());
-        session.newStream(new HeadersFrame(secondaryRequest, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        secondarySession.newStream(new HeadersFrame(secondaryRequest, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
         {
             @Override
             public void onData(Stream stream, DataFrame frame, Callback callback)
@@ -1012,4 +1021,196 @@ public class PushCacheFilterTest extends AbstractTest
         assertFalse(pushLatch.await(1, TimeUnit.SECONDS));
         assertTrue(primaryResponseLatch.await(5, TimeUnit.SECONDS));
     }
+
+    @Test
+    public void testPushOncePerConnection() throws Exception
+    {
+        final String primaryResource = "/primary.html";
+        final String secondaryResource = "/secondary.png";
+        startPrimarySecondary(primaryResource, secondaryResource, "SECONDARY".getBytes(StandardCharsets.UTF_8));
+
+        Session session = newClient(new Session.Listener.Adapter());
+        warmup(session, primaryResource, secondaryResource);
+
+        // The first request for the primary resource pushes the secondary resource.
+        assertEquals(1, requestPrimary(session, primaryResource));
+        // The browser has now the secondary resource, it must not be pushed again.
+        assertEquals(0, requestPrimary(session, primaryResource));
+
+        PushCacheFilter filter = (PushCacheFilter)filterHolder.getFilter();
+        assertEquals(1, filter.getPushes());
+        assertEquals(1, filter.getPushesSkippedPushed());
+
+        // A different connection gets the secondary resource pushed.
+        Session session2 = newClient(new Session.Listener.Adapter());
+        assertEquals(1, requestPrimary(session2, primaryResource));
+    }
+
+    @Test
+    public void testPushBudget() throws Exception
+    {
+        filterParams.put("maxPushBytes", "16");
+
+        final String primaryResource = "/primary.html";
+        final String secondaryResource = "/secondary.png";
+        startPrimarySecondary(primaryResource, secondaryResource, new byte[32]);
+
+        Session session = newClient(new Session.Listener.Adapter());
+        warmup(session, primaryResource, secondaryResource);
+
+        // The secondary resource is larger than the push budget,
+        // but it is pushed because no other push is in progress.
+        assertEquals(1, requestPrimary(session, primaryResource));
+
+        PushCacheFilter filter = (PushCacheFilter)filterHolder.getFilter();
+        assertEquals(1, filter.getPushes());
+        assertEquals(0, filter.getPushesSkippedBudget());
+    }
+
+    @Test
+    public void testPushCancelledByClient() throws Exception
+    {
+        final String primaryResource = "/primary.html";
+        final String secondaryResource = "/secondary.png";
+        final CountDownLatch resetLatch = new CountDownLatch(1);
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                String requestURI = req.getRequestURI();
+                ServletOutputStream output = resp.getOutputStream();
+                if (requestURI.endsWith(primaryResource))
+                {
+                    output.print("<html><head></head><body>PRIMARY</body></html>");
+                }
+                else if (requestURI.endsWith(secondaryResource))
+                {
+                    if (Request.getBaseRequest(req).isPush())
+                    {
+                        // Serve the pushed resource after the client reset it.
+                        try
+                        {
+                            assertTrue(resetLatch.await(5, TimeUnit.SECONDS));
+                            Thread.sleep(500);
+                        }
+                        catch (InterruptedException x)
+                        {
+                            throw new InterruptedIOException();
+                        }
+                    }
+                    // The content is buffered, so the failure happens after the filter returns.
+                    output.write("SECONDARY".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+
+        Session session = newClient(new Session.Listener.Adapter());
+        warmup(session, primaryResource, secondaryResource);
+
+        MetaData.Request primaryRequest = newRequest("GET", primaryResource, new HttpFields());
+        CountDownLatch responseLatch = new CountDownLatch(1);
+        session.newStream(new HeadersFrame(primaryRequest, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public Stream.Listener onPush(Stream stream, PushPromiseFrame frame)
+            {
+                stream.reset(new ResetFrame(stream.getId(), ErrorCode.CANCEL_STREAM_ERROR.code), Callback.NOOP);
+                resetLatch.countDown();
+                return null;
+            }
+
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    responseLatch.countDown();
+            }
+        });
+        assertTrue(responseLatch.await(5, TimeUnit.SECONDS));
+
+        PushCacheFilter filter = (PushCacheFilter)filterHolder.getFilter();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (filter.getPushesCancelled() == 0 && System.nanoTime() < end)
+            Thread.sleep(10);
+        assertEquals(1, filter.getPushes());
+        assertEquals(1, filter.getPushesCancelled());
+    }
+
+    private void startPrimarySecondary(String primaryResource, String secondaryResource, byte[] secondaryData) throws Exception
+    {
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+            {
+                String requestURI = req.getRequestURI();
+                ServletOutputStream output = resp.getOutputStream();
+                if (requestURI.endsWith(primaryResource))
+                    output.print("<html><head></head><body>PRIMARY</body></html>");
+                else if (requestURI.endsWith(secondaryResource))
+                    output.write(secondaryData);
+            }
+        });
+    }
+
+    private void warmup(Session session, String primaryResource, String secondaryResource) throws Exception
+    {
+        // Request for the primary and secondary resource to build the cache.
+        assertEquals(0, requestPrimary(session, primaryResource));
+        HttpFields secondaryFields = new HttpFields();
+        secondaryFields.put(HttpHeader.REFERER, newURI(primaryResource));
+        MetaData.Request secondaryRequest = newRequest("GET", secondaryResource, secondaryFields);
+        CountDownLatch latch = new CountDownLatch(1);
+        session.newStream(new HeadersFrame(secondaryRequest, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private int requestPrimary(Session session, String primaryResource) throws Exception
+    {
+        AtomicInteger pushes = new AtomicInteger();
+        CountDownLatch pushLatch = new CountDownLatch(1);
+        CountDownLatch responseLatch = new CountDownLatch(1);
+        MetaData.Request request = newRequest("GET", primaryResource, new HttpFields());
+        session.newStream(new HeadersFrame(request, null, true), new Promise.Adapter<>(), new Stream.Listener.Adapter()
+        {
+            @Override
+            public void onData(Stream stream, DataFrame frame, Callback callback)
+            {
+                callback.succeeded();
+                if (frame.isEndStream())
+                    responseLatch.countDown();
+            }
+
+            @Override
+            public Stream.Listener onPush(Stream stream, PushPromiseFrame frame)
+            {
+                pushes.incrementAndGet();
+                return new Adapter()
+                {
+                    @Override
+                    public void onData(Stream stream, DataFrame frame, Callback callback)
+                    {
+                        callback.succeeded();
+                        if (frame.isEndStream())
+                            pushLatch.countDown();
+                    }
+                };
+            }
+        });
+        assertTrue(responseLatch.await(5, TimeUnit.SECONDS));
+        if (pushes.get() > 0)
+            assertTrue(pushLatch.await(5, TimeUnit.SECONDS));
+        return pushes.get();
+    }
 }
@@ -56,6 +56,7 @@ public class HTTP2Connection extends AbstractConnection implements WriteFlusher.
     private final ISession session;
     private final int bufferSize;
     private final ExecutionStrategy strategy;
+    private int minRetainedDataSize;
 
     public HTTP2Connection(ByteBufferPool byteBufferPool, Executor executor, EndPoint endPoint, Parser parser, ISession session, int bufferSize)
     {
@@ -64,6 +65,7 @@ public class HTTP2Connection extends AbstractConnection implements WriteFlusher.
         this.parser = parser;
         this.session = session;
         this.bufferSize = bufferSize;
+        this.minRetainedDataSize = bufferSize / 4;
         if (PEC_MODE)
             executor = new TryExecutor.NoTryExecutor(executor);
         this.strategy = new EatWhatYouKill(producer, executor);
@@ -83,6 +85,31 @@ public class HTTP2Connection extends AbstractConnection implements WriteFlusher.
         return session.getBytesWritten();
     }
 
+    /**
+     * @return the minimum DATA frame content size that retains the network buffer
+     * @see #setMinRetainedDataSize(int)
+     */
+    public int getMinRetainedDataSize()
+    {
+        return minRetainedDataSize;
+    }
+
+    /**
+     * <p>Sets the minimum DATA frame content size that retains the network buffer.</p>
+     * <p>DATA frames are passed to the application as slices of the network buffer,
+     * which is retained until all the slices are consumed. Applications that read
+     * slowly may therefore retain many network buffers for little content, so the
+     * content of DATA frames smaller than this size is instead copied into a buffer
+     * of its own, allowing the network buffer to be recycled.</p>
+     *
+     * @param minRetainedDataSize the minimum DATA frame content size that retains
+     * the network buffer, or 0 to always retain the network buffer
+     */
+    public void setMinRetainedDataSize(int minRetainedDataSize)
+    {
+        this.minRetainedDataSize = minRetainedDataSize;
+    }
+
     public ISession getSession()
     {
         return session;
@@ -371,10 +398,23 @@ public class HTTP2Connection extends AbstractConnection implements WriteFlusher.
         @Override
         public void onData(DataFrame frame)
         {
-            NetworkBuffer networkBuffer = producer.networkBuffer;
-            networkBuffer.retain();
-            Callback callback = networkBuffer;
-            session.onData(frame, callback);
+            ByteBuffer data = frame.getData();
+            int length = data.remaining();
+            if (length > 0 && length < minRetainedDataSize)
+            {
+                // Copy small content so that it does not retain the whole network buffer.
+                ByteBuffer copy = byteBufferPool.acquire(length, false);
+                BufferUtil.append(copy, data);
+                DataFrame copyFrame = new DataFrame(frame.getStreamId(), copy, frame.isEndStream(), frame.padding());
+                session.onData(copyFrame, new DataCopyCallback(copy));
+            }
+            else
+            {
+                NetworkBuffer networkBuffer = producer.networkBuffer;
+                networkBuffer.retain();
+                Callback callback = networkBuffer;
+                session.onData(frame, callback);
+            }
         }
 
         @Override
@@ -424,4 +464,32 @@ public class HTTP2Connection extends AbstractConnection implements WriteFlusher.
             return InvocationType.NON_BLOCKING;
         }
     }
+
+    private class DataCopyCallback implements Callback
+    {
+        private final ByteBuffer buffer;
+
+        private DataCopyCallback(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void succeeded()
+        {
+            byteBufferPool.release(buffer);
+        }
+
+        @Override
+        public void failed(Throwable failure)
+        {
+            byteBufferPool.release(buffer);
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return InvocationType.NON_BLOCKING;
+        }
+    }
 }
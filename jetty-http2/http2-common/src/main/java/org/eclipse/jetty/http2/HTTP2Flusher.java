@@ -30,6 +30,7 @@ import java.util.Set;
 
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.http2.generator.BatchLease;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.Callback;
@@ -48,14 +49,14 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private final Queue<Entry> pendingEntries = new ArrayDeque<>();
     private final Set<Entry> processedEntries = new HashSet<>();
     private final HTTP2Session session;
-    private final ByteBufferPool.Lease lease;
+    private final BatchLease lease;
     private Throwable terminated;
     private Entry stalledEntry;
 
     public HTTP2Flusher(HTTP2Session session)
     {
         this.session = session;
-        this.lease = new ByteBufferPool.Lease(session.getGenerator().getByteBufferPool());
+        this.lease = new BatchLease(session.getGenerator().getByteBufferPool());
     }
 
     public void window(IStream stream, WindowUpdateFrame frame)
@@ -153,6 +154,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             return Action.IDLE;
         }
 
+        // The lease has been recycled, so the batch size can be changed.
+        lease.setBatchSize(session.getWriteBatchSize());
+
         while (true)
         {
             boolean progress = false;
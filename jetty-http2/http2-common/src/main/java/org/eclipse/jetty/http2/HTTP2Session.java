@@ -48,6 +48,7 @@ import org.eclipse.jetty.http2.frames.PushPromiseFrame;
 import org.eclipse.jetty.http2.frames.ResetFrame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.http2.generator.BatchLease;
 import org.eclipse.jetty.http2.generator.Generator;
 import org.eclipse.jetty.http2.parser.Parser;
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -92,6 +93,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     private long streamIdleTimeout;
     private int initialSessionRecvWindow;
     private int writeThreshold;
+    private int writeBatchSize;
     private boolean pushEnabled;
     private long idleTime;
     private GoAwayFrame closeFrame;
@@ -202,6 +204,21 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         this.writeThreshold = writeThreshold;
     }
 
+    public int getWriteBatchSize()
+    {
+        return writeBatchSize;
+    }
+
+    /**
+     * @param writeBatchSize the size of the pooled buffer the frames of a write are generated into,
+     * or zero to generate each frame into its own buffer
+     * @see BatchLease
+     */
+    public void setWriteBatchSize(int writeBatchSize)
+    {
+        this.writeBatchSize = writeBatchSize;
+    }
+
     public EndPoint getEndPoint()
     {
         return endPoint;
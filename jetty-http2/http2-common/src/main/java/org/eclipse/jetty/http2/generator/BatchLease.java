@@ -0,0 +1,194 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.generator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>A {@link ByteBufferPool.Lease} that batches the generated frames into a single pooled buffer.</p>
+ * <p>When the batch size is positive, a buffer of that size is acquired from the pool at
+ * the first use, and it is released when this lease is {@link #recycle() recycled}.</p>
+ * <p>Small appended buffers, such as frame headers, HPACK encoded header blocks and
+ * small DATA frame payloads, are copied into the batch buffer, while large ones
+ * (typically DATA frame payloads) are appended by reference.</p>
+ * <p>The result is that a burst of small frames is written with a single buffer, rather
+ * than with a gathering write of many small buffers.</p>
+ * <p>When the batch size is zero, this lease behaves like a plain {@link ByteBufferPool.Lease}.</p>
+ */
+public class BatchLease extends ByteBufferPool.Lease
+{
+    private final List<ByteBuffer> deferred = new ArrayList<>();
+    private final ByteBufferPool byteBufferPool;
+    private int batchSize;
+    private ByteBuffer batch;
+    private int start;
+    private boolean referenced;
+
+    public BatchLease(ByteBufferPool byteBufferPool)
+    {
+        this(byteBufferPool, 0);
+    }
+
+    public BatchLease(ByteBufferPool byteBufferPool, int batchSize)
+    {
+        super(byteBufferPool);
+        this.byteBufferPool = byteBufferPool;
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the size of the batch buffer, or zero to disable batching;
+     * the new value takes effect after this lease is recycled
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void append(ByteBuffer buffer, boolean recycle)
+    {
+        int length = buffer.remaining();
+        if (length <= getMaxCopySize())
+        {
+            ByteBuffer batch = getBatch();
+            if (batch != null && length <= batch.capacity() - batch.limit())
+            {
+                // Cannot use BufferUtil.append(), as it may compact the batch
+                // buffer, overwriting bytes already referenced by slices.
+                int limit = batch.limit();
+                batch.limit(limit + length);
+                batch.position(limit);
+                // Copy from a slice, so that the buffer is left untouched,
+                // as it would be if it was appended by reference.
+                batch.put(buffer.slice());
+                batch.position(start);
+                if (recycle)
+                {
+                    // A buffer may have been appended by reference as a slice of this
+                    // buffer (for example, a header block fragment), so it must not be
+                    // released until the write is complete.
+                    if (referenced)
+                        deferred.add(buffer);
+                    else
+                        byteBufferPool.release(buffer);
+                }
+                return;
+            }
+        }
+
+        // Large buffers are passed by reference, after the bytes batched so far.
+        flushBatch();
+        if (!recycle)
+            referenced = true;
+        super.append(buffer, recycle);
+    }
+
+    @Override
+    public void insert(int index, ByteBuffer buffer, boolean recycle)
+    {
+        flushBatch();
+        super.insert(index, buffer, recycle);
+    }
+
+    @Override
+    public List<ByteBuffer> getByteBuffers()
+    {
+        flushBatch();
+        return super.getByteBuffers();
+    }
+
+    @Override
+    public long getTotalLength()
+    {
+        long length = super.getTotalLength();
+        if (batch != null)
+            length += batch.limit() - start;
+        return length;
+    }
+
+    @Override
+    public int getSize()
+    {
+        int size = super.getSize();
+        if (batch != null && batch.limit() > start)
+            ++size;
+        return size;
+    }
+
+    @Override
+    public void recycle()
+    {
+        super.recycle();
+        for (ByteBuffer buffer : deferred)
+            byteBufferPool.release(buffer);
+        deferred.clear();
+        if (batch != null)
+            byteBufferPool.release(batch);
+        batch = null;
+        start = 0;
+        referenced = false;
+    }
+
+    private int getMaxCopySize()
+    {
+        return batchSize / 4;
+    }
+
+    private ByteBuffer getBatch()
+    {
+        if (batch == null && batchSize > 0)
+        {
+            batch = byteBufferPool.acquire(batchSize, true);
+            BufferUtil.clear(batch);
+            start = 0;
+        }
+        return batch;
+    }
+
+    private void flushBatch()
+    {
+        if (batch == null)
+            return;
+        int limit = batch.limit();
+        if (limit > start)
+        {
+            batch.position(start);
+            super.append(batch.slice(), false);
+            batch.position(limit);
+            start = limit;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[batch=%s]", getClass().getSimpleName(), hashCode(), BufferUtil.toDetailString(batch));
+    }
+}
@@ -107,11 +107,12 @@ public class HeadersGenerator extends FrameGenerator
             }
 
             hpacked.position(position).limit(hpackedLength);
-            header = generateHeader(lease, FrameType.CONTINUATION, hpacked.remaining(), Flags.END_HEADERS, streamId);
+            int remaining = hpacked.remaining();
+            header = generateHeader(lease, FrameType.CONTINUATION, remaining, Flags.END_HEADERS, streamId);
             BufferUtil.flipToFlush(header, 0);
             lease.append(header, true);
             lease.append(hpacked, true);
-            totalLength += Frame.HEADER_LENGTH + hpacked.remaining();
+            totalLength += Frame.HEADER_LENGTH + remaining;
 
             return totalLength;
         }
@@ -0,0 +1,233 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.frames;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.generator.BatchLease;
+import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.http2.parser.Parser;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+import org.junit.jupiter.api.Test;
+
+public class BatchGenerateParseTest
+{
+    private final ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+
+    @Test
+    public void testSmallFramesAreBatched() throws Exception
+    {
+        Generator generator = new Generator(byteBufferPool);
+        byte[] content = new byte[256];
+        new Random().nextBytes(content);
+
+        List<Frame> frames = new ArrayList<>();
+        Parser parser = newParser(frames);
+
+        // Iterate a few times to be sure the lease is properly recycled.
+        BatchLease lease = new BatchLease(byteBufferPool, 32 * 1024);
+        for (int i = 0; i < 2; ++i)
+        {
+            int count = 10;
+            for (int streamId = 1; streamId < 2 * count; streamId += 2)
+            {
+                generator.control(lease, new HeadersFrame(streamId, newResponse(), null, false));
+                generator.data(lease, new DataFrame(streamId, ByteBuffer.wrap(content), true), content.length);
+                generator.control(lease, new WindowUpdateFrame(streamId, 1024));
+            }
+
+            assertEquals(1, lease.getSize());
+            List<ByteBuffer> buffers = lease.getByteBuffers();
+            assertEquals(1, buffers.size());
+            assertEquals(lease.getTotalLength(), buffers.get(0).remaining());
+
+            frames.clear();
+            for (ByteBuffer buffer : buffers)
+            {
+                while (buffer.hasRemaining())
+                    parser.parse(buffer);
+            }
+            lease.recycle();
+
+            assertEquals(3 * count, frames.size());
+            for (int j = 0; j < count; ++j)
+            {
+                int streamId = 2 * j + 1;
+                HeadersFrame headers = (HeadersFrame)frames.get(3 * j);
+                assertEquals(streamId, headers.getStreamId());
+                assertEquals(HttpStatus.OK_200, ((MetaData.Response)headers.getMetaData()).getStatus());
+                DataFrame data = (DataFrame)frames.get(3 * j + 1);
+                assertEquals(streamId, data.getStreamId());
+                assertTrue(data.isEndStream());
+                assertEquals(ByteBuffer.wrap(content), data.getData());
+                WindowUpdateFrame windowUpdate = (WindowUpdateFrame)frames.get(3 * j + 2);
+                assertEquals(streamId, windowUpdate.getStreamId());
+                assertEquals(1024, windowUpdate.getWindowDelta());
+            }
+        }
+    }
+
+    @Test
+    public void testLargeDataIsPassedByReference() throws Exception
+    {
+        Generator generator = new Generator(byteBufferPool);
+        byte[] content = new byte[Frame.DEFAULT_MAX_LENGTH];
+        new Random().nextBytes(content);
+
+        List<Frame> frames = new ArrayList<>();
+        Parser parser = newParser(frames);
+
+        BatchLease lease = new BatchLease(byteBufferPool, 32 * 1024);
+        ByteBuffer data = ByteBuffer.wrap(content);
+        generator.control(lease, new HeadersFrame(1, newResponse(), null, false));
+        generator.data(lease, new DataFrame(1, data, false), content.length);
+        generator.control(lease, new WindowUpdateFrame(0, 1024));
+        generator.data(lease, new DataFrame(1, BufferUtil.EMPTY_BUFFER, true), 0);
+
+        // Batched HEADERS and DATA header, DATA payload, batched WINDOW_UPDATE and DATA.
+        List<ByteBuffer> buffers = lease.getByteBuffers();
+        assertEquals(3, buffers.size());
+        assertSame(data, buffers.get(1));
+
+        for (ByteBuffer buffer : buffers)
+        {
+            while (buffer.hasRemaining())
+                parser.parse(buffer);
+        }
+        lease.recycle();
+
+        assertEquals(4, frames.size());
+        assertEquals(ByteBuffer.wrap(content), ((DataFrame)frames.get(1)).getData());
+        assertEquals(0, ((WindowUpdateFrame)frames.get(2)).getStreamId());
+        assertTrue(((DataFrame)frames.get(3)).isEndStream());
+    }
+
+    @Test
+    public void testHeadersWithContinuationsAreBatched() throws Exception
+    {
+        Generator generator = new Generator(byteBufferPool, 4096, 32);
+
+        List<Frame> frames = new ArrayList<>();
+        Parser parser = newParser(frames);
+
+        BatchLease lease = new BatchLease(byteBufferPool, 32 * 1024);
+        HttpFields fields = new HttpFields();
+        for (int i = 0; i < 16; ++i)
+            fields.put("X-Header-" + i, "value-" + i);
+        generator.control(lease, new HeadersFrame(1, new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, fields), null, true));
+
+        List<ByteBuffer> buffers = lease.getByteBuffers();
+        assertEquals(1, buffers.size());
+
+        for (ByteBuffer buffer : buffers)
+        {
+            while (buffer.hasRemaining())
+                parser.parse(buffer);
+        }
+        lease.recycle();
+
+        assertEquals(1, frames.size());
+        HeadersFrame headers = (HeadersFrame)frames.get(0);
+        assertTrue(headers.isEndStream());
+        assertEquals(fields.size(), headers.getMetaData().getFields().size());
+    }
+
+    @Test
+    public void testHeadersWithContinuationsLength() throws Exception
+    {
+        HttpFields fields = new HttpFields();
+        for (int i = 0; i < 16; ++i)
+            fields.put("X-Header-" + i, "value-" + i);
+
+        // Use a new generator each time, as the HPACK encoder is stateful.
+        ByteBufferPool.Lease plainLease = new ByteBufferPool.Lease(byteBufferPool);
+        int plainLength = new Generator(byteBufferPool, 4096, 32).control(plainLease, new HeadersFrame(1, new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, fields), null, true));
+        assertEquals(plainLease.getTotalLength(), plainLength);
+        plainLease.recycle();
+
+        BatchLease lease = new BatchLease(byteBufferPool, 32 * 1024);
+        int length = new Generator(byteBufferPool, 4096, 32).control(lease, new HeadersFrame(1, new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, fields), null, true));
+        assertEquals(plainLength, length);
+        assertEquals(lease.getTotalLength(), length);
+        assertEquals(length, lease.getByteBuffers().get(0).remaining());
+        lease.recycle();
+    }
+
+    @Test
+    public void testNoBatchSize() throws Exception
+    {
+        Generator generator = new Generator(byteBufferPool);
+
+        BatchLease lease = new BatchLease(byteBufferPool);
+        generator.control(lease, new HeadersFrame(1, newResponse(), null, false));
+        generator.data(lease, new DataFrame(1, ByteBuffer.allocate(16), true), 16);
+
+        // HEADERS header, HPACK bytes, DATA header, DATA payload.
+        assertEquals(4, lease.getByteBuffers().size());
+        lease.recycle();
+    }
+
+    private MetaData.Response newResponse()
+    {
+        HttpFields fields = new HttpFields();
+        fields.put("Content-Type", "text/plain");
+        return new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, fields);
+    }
+
+    private Parser newParser(List<Frame> frames)
+    {
+        Parser parser = new Parser(byteBufferPool, new Parser.Listener.Adapter()
+        {
+            @Override
+            public void onHeaders(HeadersFrame frame)
+            {
+                frames.add(frame);
+            }
+
+            @Override
+            public void onData(DataFrame frame)
+            {
+                frames.add(frame);
+            }
+
+            @Override
+            public void onWindowUpdate(WindowUpdateFrame frame)
+            {
+                frames.add(frame);
+            }
+        }, 4096, 8192);
+        parser.init(UnaryOperator.identity());
+        return parser;
+    }
+}
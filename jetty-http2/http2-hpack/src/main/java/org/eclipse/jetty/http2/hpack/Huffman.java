@@ -288,60 +288,115 @@ public class Huffman
 
     static final int[][] LCCODES = new int[CODES.length][];
     static final char EOS = 256;
-    
-    // Huffman decode tree stored in a flattened char array for good 
-    // locality of reference.
-    static final char[] tree;
-    static final char[] rowsym;
-    static final byte[] rowbits;
 
-    // Build the Huffman lookup tree and LC TABLE
-    static 
+    // Encode tables indexed by character, with each entry packing
+    // the code in the high bits and the code length in the low byte,
+    // so that the encoder does a single lookup per character.
+    private static final long[] ENCODE = new long[128];
+    private static final long[] ENCODE_LC = new long[128];
+
+    // Huffman decode state machine stored in a flattened int array for good
+    // locality of reference. Each state is an internal node of the Huffman
+    // tree (root is state 0) and is consumed an octet at a time.
+    // Each transition packs the next state (bits 0-7), up to two emitted
+    // symbols (bits 8-15 and 16-23), the count of emitted symbols
+    // (bits 24-25) and whether the EOS symbol was decoded (bit 26).
+    private static final int DECODE_SYMBOLS_SHIFT = 24;
+    private static final int DECODE_EOS = 1 << 26;
+    private static final int[] DECODE = new int[256 * 256];
+
+    // Termination of a string in each state of the decode state machine.
+    private static final byte TERMINATION_OK = 0;
+    private static final byte TERMINATION_PADDING = 1;
+    private static final byte TERMINATION_BAD = 2;
+    private static final byte[] TERMINATION = new byte[256];
+
+    // Build the Huffman decode state machine and encode tables
+    static
     {
         System.arraycopy(CODES,0,LCCODES,0,CODES.length);
         for (int i='A';i<='Z';i++)
             LCCODES[i]=LCCODES['a'+i-'A'];
-        
-        int r=0;
-        for (int i=0;i<CODES.length;i++)
-            r+=(CODES[i][1]+7)/8;
-        tree=new char[r*256];
-        rowsym=new char[r];
-        rowbits=new byte[r];
 
-        r=0;
-        for (int sym = 0; sym < CODES.length; sym++) 
+        for (int i=0;i<ENCODE.length;i++)
+        {
+            ENCODE[i]=((long)CODES[i][0]<<8)|CODES[i][1];
+            ENCODE_LC[i]=((long)LCCODES[i][0]<<8)|LCCODES[i][1];
+        }
+
+        // Build the binary tree: internal nodes are numbered in order of
+        // creation from the root, while leaves are stored as -1-symbol.
+        int[][] children = new int[256][2];
+        int[] depth = new int[256];
+        int[] path = new int[256];
+        int nodes = 1;
+        for (int sym = 0; sym < CODES.length; sym++)
         {
             int code = CODES[sym][0];
             int len = CODES[sym][1];
 
-            int current = 0;
-
-            while (len > 8) 
+            int node = 0;
+            for (int bit = len - 1; bit > 0; bit--)
             {
-                len -= 8;
-                int i = ((code >>> len) & 0xFF);
-
-                int t=current*256+i;
-                current = tree[t];
-                if (current == 0)
+                int b = (code >>> bit) & 1;
+                int next = children[node][b];
+                if (next == 0)
                 {
-                    tree[t] = (char)++r;
-                    current=r;
+                    next = nodes++;
+                    children[node][b] = next;
+                    depth[next] = depth[node] + 1;
+                    path[next] = (path[node] << 1) | b;
                 }
+                node = next;
             }
+            children[node][code & 1] = -1 - sym;
+        }
+        if (nodes != 256)
+            throw new IllegalStateException("Bad huffman tree " + nodes);
 
-            int terminal = ++r;
-            rowsym[r]=(char)sym;
-            int b = len & 0x07;
-            int terminalBits = b == 0?8:b;
+        // A string may only end in the root or within the first 7 bits
+        // of the EOS code, which is all ones. Otherwise the bits after the
+        // last whole octet of the partial code are checked as padding.
+        for (int node = 0; node < 256; node++)
+        {
+            int bits = depth[node] % 8;
+            int padding = (1 << bits) - 1;
+            if ((path[node] & padding) != padding)
+                TERMINATION[node] = TERMINATION_PADDING;
+            else if (depth[node] >= 8)
+                TERMINATION[node] = TERMINATION_BAD;
+            else
+                TERMINATION[node] = TERMINATION_OK;
+        }
 
-            rowbits[r]=(byte)terminalBits;
-            int shift = 8 - len;
-            int start = current*256 + ((code << shift) & 0xFF);
-            int end = start + (1<<shift);
-            for (int i = start; i < end; i++)
-                tree[i]=(char)terminal;
+        for (int state = 0; state < 256; state++)
+        {
+            for (int octet = 0; octet < 256; octet++)
+            {
+                int node = state;
+                int emitted = 0;
+                int transition = 0;
+                for (int bit = 7; bit >= 0; bit--)
+                {
+                    int next = children[node][(octet >>> bit) & 1];
+                    if (next < 0)
+                    {
+                        int sym = -1 - next;
+                        if (sym == EOS)
+                        {
+                            transition |= DECODE_EOS;
+                            break;
+                        }
+                        transition |= sym << (8 + 8 * emitted++);
+                        node = 0;
+                    }
+                    else
+                    {
+                        node = next;
+                    }
+                }
+                DECODE[state << 8 | octet] = transition | (emitted << DECODE_SYMBOLS_SHIFT) | node;
+            }
         }
     }
 
@@ -351,90 +406,65 @@ public class Huffman
     }
 
     public static String decode(ByteBuffer buffer, int length) throws HpackException.CompressionException
-    {        
-        StringBuilder out = new StringBuilder(length*2);
-        int node = 0;
-        int current = 0;
-        int bits = 0;
+    {
+        // Every symbol is at least 5 bits long.
+        char[] out = new char[length * 8 / 5];
+        int n = 0;
+        int state = 0;
 
         for (int i=0; i<length; i++)
         {
-            int b = buffer.get()&0xFF;
-            current = (current << 8) | b;
-            bits += 8;
-            while (bits >= 8) 
-            {
-                int c = (current >>> (bits - 8)) & 0xFF;
-                node = tree[node*256+c];
-                if (rowbits[node]!=0) 
-                {
-                    if(rowsym[node] == EOS)
-                        throw new HpackException.CompressionException("EOS in content");
+            int transition = DECODE[state << 8 | (buffer.get() & 0xFF)];
+            if ((transition & DECODE_EOS) != 0)
+                throw new HpackException.CompressionException("EOS in content");
 
-                    // terminal node
-                    out.append(rowsym[node]);
-                    bits -= rowbits[node];
-                    node = 0;
-                } 
-                else 
-                {
-                    // non-terminal node
-                    bits -= 8;
-                }
+            switch (transition >>> DECODE_SYMBOLS_SHIFT)
+            {
+                case 2:
+                    out[n++] = (char)((transition >>> 8) & 0xFF);
+                    out[n++] = (char)((transition >>> 16) & 0xFF);
+                    break;
+                case 1:
+                    out[n++] = (char)((transition >>> 8) & 0xFF);
+                    break;
+                default:
+                    break;
             }
+            state = transition & 0xFF;
         }
 
-        while (bits > 0) 
+        switch (TERMINATION[state])
         {
-            int c = (current << (8 - bits)) & 0xFF;
-            int lastNode = node;
-            node = tree[node*256+c];
-
-            if (rowbits[node]==0 || rowbits[node] > bits)
-            {
-                int requiredPadding = 0;
-                for(int i=0; i<bits; i++)
-                    requiredPadding = (requiredPadding << 1) | 1;
-
-                if((c>>(8-bits)) != requiredPadding)
-                    throw new HpackException.CompressionException("Incorrect padding");
-
-                node = lastNode;
-                break;
-            }
-
-            out.append(rowsym[node]);
-            bits -= rowbits[node];
-            node = 0;
+            case TERMINATION_OK:
+                return new String(out,0,n);
+            case TERMINATION_PADDING:
+                throw new HpackException.CompressionException("Incorrect padding");
+            default:
+                throw new HpackException.CompressionException("Bad termination");
         }
-
-        if(node != 0)
-            throw new HpackException.CompressionException("Bad termination");
-
-        return out.toString();
     }
 
     public static int octetsNeeded(String s)
     {   
-        return octetsNeeded(CODES,s);
+        return octetsNeeded(ENCODE,s);
     }
     
     public static void encode(ByteBuffer buffer,String s)
     {
-        encode(CODES,buffer,s);
+        encode(ENCODE,buffer,s);
     }
     
     public static int octetsNeededLC(String s)
     {
-        return octetsNeeded(LCCODES,s);
+        return octetsNeeded(ENCODE_LC,s);
     }
 
     public static void encodeLC(ByteBuffer buffer, String s)
     {
-        encode(LCCODES,buffer,s);
+        encode(ENCODE_LC,buffer,s);
     }
     
-    private static int octetsNeeded(final int[][] table,String s)
+    private static int octetsNeeded(final long[] table,String s)
     {   
         int needed=0;
         int len = s.length();
@@ -443,14 +473,17 @@ public class Huffman
             char c=s.charAt(i);
             if (c>=128 || c<' ')
                 throw new IllegalArgumentException();
-            needed += table[c][1];
+            needed += (int)(table[c] & 0xFF);
         }
 
         return (needed+7) / 8;
     }
 
-    private static void encode(final int[][] table,ByteBuffer buffer,String s)
+    private static void encode(final long[] table,ByteBuffer buffer,String s)
     {
+        // Codes are at most 28 bits long for the encodable characters, so at
+        // most 31 pending bits plus a code always fit in the 64 bit accumulator,
+        // which is flushed as an int whenever at least 32 bits are pending.
         long current = 0;
         int n = 0;
         int len = s.length();
@@ -459,27 +492,30 @@ public class Huffman
             char c=s.charAt(i);
             if (c>=128 || c<' ')
                 throw new IllegalArgumentException();
-            int code = table[c][0];
-            int bits = table[c][1];
+            long entry = table[c];
+            int bits = (int)(entry & 0xFF);
 
-            current <<= bits;
-            current |= code;
+            current = (current << bits) | (entry >>> 8);
             n += bits;
 
-            while (n >= 8) 
+            if (n >= 32)
             {
-                n -= 8;
-                buffer.put((byte)(current >> n));
+                n -= 32;
+                buffer.putInt((int)(current >>> n));
             }
         }
 
+        while (n >= 8)
+        {
+            n -= 8;
+            buffer.put((byte)(current >>> n));
+        }
+
         if (n > 0)
         {
             current <<= (8 - n);
             current |= (0xFF >>> n);
             buffer.put((byte)(current));
         }
-
     }
-
 }
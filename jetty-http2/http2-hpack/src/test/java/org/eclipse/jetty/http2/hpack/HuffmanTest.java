@@ -19,15 +19,20 @@
 package org.eclipse.jetty.http2.hpack;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.TypeUtil;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -83,4 +88,146 @@ public class HuffmanTest
         assertThrows(BufferOverflowException.class,
                 () -> Huffman.encode(BufferUtil.allocate(32), s));
     }
+
+    @Test
+    public void testEncodeDecodeAllCharacters() throws Exception
+    {
+        for (char c = ' '; c < 128; c++)
+        {
+            String s = "x" + c + c + "y";
+            assertEquals(s, Huffman.decode(referenceEncode(Huffman.CODES, s)));
+            assertEquals(referenceEncode(Huffman.CODES, s), encode(s, false));
+            assertEquals(referenceEncode(Huffman.LCCODES, s), encode(s, true));
+        }
+    }
+
+    @Test
+    public void testEncodeDecodeRandom() throws Exception
+    {
+        Random random = new Random(0xB00B);
+        for (int i = 0; i < 10000; i++)
+        {
+            char[] chars = new char[random.nextInt(256)];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char)(' ' + random.nextInt(128 - ' '));
+            String s = new String(chars);
+
+            ByteBuffer encoded = encode(s, false);
+            assertEquals(referenceEncode(Huffman.CODES, s), encoded, s);
+            assertEquals(encoded.remaining(), Huffman.octetsNeeded(s), s);
+            assertEquals(s, Huffman.decode(encoded), s);
+
+            ByteBuffer encodedLC = encode(s, true);
+            assertEquals(referenceEncode(Huffman.LCCODES, s), encodedLC, s);
+            assertEquals(encodedLC.remaining(), Huffman.octetsNeededLC(s), s);
+            assertEquals(s.toLowerCase(Locale.ENGLISH), Huffman.decode(encodedLC), s);
+        }
+    }
+
+    @Test
+    public void testDecodeAllTwoOctetInputs()
+    {
+        for (int length = 1; length <= 2; length++)
+        {
+            for (int value = 0; value < 1 << (8 * length); value++)
+            {
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++)
+                    bytes[i] = (byte)(value >>> (8 * (length - 1 - i)));
+
+                String expected = referenceDecode(bytes);
+                String decoded;
+                try
+                {
+                    decoded = Huffman.decode(ByteBuffer.wrap(bytes));
+                }
+                catch (HpackException.CompressionException e)
+                {
+                    decoded = null;
+                }
+
+                if (expected == null)
+                    assertNull(decoded, TypeUtil.toHexString(bytes));
+                else
+                    assertEquals(expected, decoded, TypeUtil.toHexString(bytes));
+            }
+        }
+    }
+
+    private static ByteBuffer encode(String s, boolean lowerCase)
+    {
+        ByteBuffer buffer = BufferUtil.allocate(1024);
+        int pos = BufferUtil.flipToFill(buffer);
+        if (lowerCase)
+            Huffman.encodeLC(buffer, s);
+        else
+            Huffman.encode(buffer, s);
+        BufferUtil.flipToFlush(buffer, pos);
+        return buffer;
+    }
+
+    /**
+     * Encodes a bit at a time, as a reference for the table driven encoder.
+     */
+    private static ByteBuffer referenceEncode(int[][] table, String s)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        int current = 0;
+        int n = 0;
+        for (int i = 0; i < s.length(); i++)
+        {
+            int code = table[s.charAt(i)][0];
+            for (int bit = table[s.charAt(i)][1] - 1; bit >= 0; bit--)
+            {
+                current = (current << 1) | ((code >>> bit) & 1);
+                if (++n == 8)
+                {
+                    buffer.put((byte)current);
+                    current = 0;
+                    n = 0;
+                }
+            }
+        }
+        if (n > 0)
+            buffer.put((byte)((current << (8 - n)) | (0xFF >>> n)));
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes a bit at a time, as a reference for the table driven decoder.
+     * @return the decoded string or null if the input is not valid
+     */
+    private static String referenceDecode(byte[] bytes)
+    {
+        Map<Long, Integer> symbols = new HashMap<>();
+        for (int sym = 0; sym < Huffman.CODES.length; sym++)
+            symbols.put(((long)Huffman.CODES[sym][1] << 32) | Huffman.CODES[sym][0], sym);
+
+        StringBuilder out = new StringBuilder();
+        int code = 0;
+        int length = 0;
+        for (byte b : bytes)
+        {
+            for (int bit = 7; bit >= 0; bit--)
+            {
+                code = (code << 1) | ((b >>> bit) & 1);
+                length++;
+                Integer sym = symbols.get(((long)length << 32) | code);
+                if (sym != null)
+                {
+                    if (sym == Huffman.EOS)
+                        return null;
+                    out.append((char)sym.intValue());
+                    code = 0;
+                    length = 0;
+                }
+            }
+        }
+
+        // Padding must be shorter than an octet and a prefix of EOS.
+        if (length >= 8 || code != (1 << length) - 1)
+            return null;
+        return out.toString();
+    }
 }
@@ -21,10 +21,19 @@ package org.eclipse.jetty.http2.client.http;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicMarkableReference;
 
+import javax.net.ssl.SSLSession;
+
 import org.eclipse.jetty.alpn.client.ALPNClientConnectionFactory;
 import org.eclipse.jetty.client.AbstractHttpClientTransport;
 import org.eclipse.jetty.client.HttpClient;
@@ -42,17 +51,26 @@ import org.eclipse.jetty.http2.frames.GoAwayFrame;
 import org.eclipse.jetty.http2.frames.SettingsFrame;
 import org.eclipse.jetty.io.ClientConnectionFactory;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.io.ssl.SslConnection;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.ssl.X509;
 
 @ManagedObject("The HTTP/2 client transport")
 public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
 {
+    private static final Logger LOG = Log.getLogger(HttpClientTransportOverHTTP2.class);
+
+    private final Set<SessionListenerPromise> sessions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong coalescedConnections = new AtomicLong();
     private final HTTP2Client client;
     private ClientConnectionFactory connectionFactory;
     private boolean useALPN = true;
+    private boolean coalescing;
 
     public HttpClientTransportOverHTTP2(HTTP2Client client)
     {
@@ -86,12 +104,50 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         this.useALPN = useALPN;
     }
 
+    @ManagedAttribute(value = "Whether connections to different origins may share the same session")
+    public boolean isCoalescing()
+    {
+        return coalescing;
+    }
+
+    /**
+     * <p>Sets whether connections to different origins may share the same session,
+     * as described in <a href="https://tools.ietf.org/html/rfc7540#section-9.1.1">RFC 7540 section 9.1.1</a>.</p>
+     * <p>When coalescing is enabled, a new connection to an {@code https} origin reuses
+     * an existing session, opened for another origin, that is connected to the same
+     * IP address and port and whose server certificate is valid for the new origin's host.</p>
+     * <p>Requests for all the coalesced origins count towards the max concurrent streams
+     * of the shared session, but are limited independently by each destination's
+     * {@link org.eclipse.jetty.client.MultiplexHttpDestination#getMaxRequestsPerConnection()
+     * max requests per connection}, so excess requests may be refused by the server.</p>
+     *
+     * @param coalescing whether connections to different origins may share the same session
+     */
+    public void setCoalescing(boolean coalescing)
+    {
+        this.coalescing = coalescing;
+    }
+
+    @ManagedAttribute(value = "The number of connections that reused an existing session", readonly = true)
+    public long getCoalescedConnections()
+    {
+        return coalescedConnections.get();
+    }
+
+    @ManagedAttribute(value = "The number of sessions available for coalescing", readonly = true)
+    public int getCoalescableSessions()
+    {
+        return sessions.size();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
         if (!client.isStarted())
         {
             HttpClient httpClient = getHttpClient();
+            if (client.getClientResources() == null)
+                client.setClientResources(httpClient.getClientResources());
             client.setExecutor(httpClient.getExecutor());
             client.setScheduler(httpClient.getScheduler());
             client.setByteBufferPool(httpClient.getByteBufferPool());
@@ -114,6 +170,7 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
     protected void doStop() throws Exception
     {
         super.doStop();
+        sessions.clear();
         removeBean(client);
     }
 
@@ -131,9 +188,22 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         client.setConnectBlocking(httpClient.isConnectBlocking());
         client.setBindAddress(httpClient.getBindAddress());
 
-        SessionListenerPromise listenerPromise = new SessionListenerPromise(context);
-
         HttpDestinationOverHTTP2 destination = (HttpDestinationOverHTTP2)context.get(HTTP_DESTINATION_CONTEXT_KEY);
+        if (isCoalescing() && HttpScheme.HTTPS.is(destination.getScheme()) && destination.getProxy() == null)
+        {
+            HttpConnectionOverHTTP2 connection = coalesce(destination, address);
+            if (connection != null)
+            {
+                @SuppressWarnings("unchecked")
+                Promise<Connection> promise = (Promise<Connection>)context.get(HTTP_CONNECTION_PROMISE_CONTEXT_KEY);
+                // Do not succeed the promise from within the connection pool.
+                httpClient.getExecutor().execute(() -> promise.succeeded(connection));
+                return;
+            }
+        }
+
+        SessionListenerPromise listenerPromise = new SessionListenerPromise(address, context);
+
         SslContextFactory sslContextFactory = null;
         if (HttpScheme.HTTPS.is(destination.getScheme()))
             sslContextFactory = httpClient.getSslContextFactory();
@@ -141,6 +211,22 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         connect(sslContextFactory, address, listenerPromise, listenerPromise, context);
     }
 
+    private HttpConnectionOverHTTP2 coalesce(HttpDestinationOverHTTP2 destination, InetSocketAddress address)
+    {
+        for (SessionListenerPromise listenerPromise : sessions)
+        {
+            HttpConnectionOverHTTP2 connection = listenerPromise.coalesce(destination, address);
+            if (connection != null)
+            {
+                coalescedConnections.incrementAndGet();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Coalesced {} for {}", connection, destination);
+                return connection;
+            }
+        }
+        return null;
+    }
+
     protected void connect(SslContextFactory sslContextFactory, InetSocketAddress address, Session.Listener listener, Promise<Session> promise, Map<String, Object> context)
     {
         getHTTP2Client().connect(sslContextFactory, address, listener, promise, context);
@@ -173,10 +259,14 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
     private class SessionListenerPromise extends Session.Listener.Adapter implements Promise<Session>
     {
         private final AtomicMarkableReference<HttpConnectionOverHTTP2> connection = new AtomicMarkableReference<>(null, false);
+        private final Set<HttpConnectionOverHTTP2> coalesced = ConcurrentHashMap.newKeySet();
+        private final InetSocketAddress address;
         private final Map<String, Object> context;
+        private X509 certificate;
 
-        private SessionListenerPromise(Map<String, Object> context)
+        private SessionListenerPromise(InetSocketAddress address, Map<String, Object> context)
         {
+            this.address = address;
             this.context = context;
         }
 
@@ -210,7 +300,12 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         {
             Map<Integer, Integer> settings = frame.getSettings();
             if (settings.containsKey(SettingsFrame.MAX_CONCURRENT_STREAMS))
-                destination().setMaxRequestsPerConnection(settings.get(SettingsFrame.MAX_CONCURRENT_STREAMS));
+            {
+                int maxConcurrentStreams = settings.get(SettingsFrame.MAX_CONCURRENT_STREAMS);
+                destination().setMaxRequestsPerConnection(maxConcurrentStreams);
+                for (HttpConnectionOverHTTP2 connection : coalesced)
+                    ((HttpDestinationOverHTTP2)connection.getHttpDestination()).setMaxRequestsPerConnection(maxConcurrentStreams);
+            }
             if (!connection.isMarked())
                 onServerPreface(session);
         }
@@ -219,16 +314,85 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
         {
             HttpConnectionOverHTTP2 connection = newHttpConnection(destination(), session);
             if (this.connection.compareAndSet(null, connection, false, true))
+            {
+                if (isCoalescing())
+                {
+                    certificate = certificate(session);
+                    if (certificate != null)
+                        sessions.add(this);
+                }
                 connectionPromise().succeeded(connection);
+            }
+        }
+
+        private X509 certificate(Session session)
+        {
+            try
+            {
+                EndPoint endPoint = ((HTTP2Session)session).getEndPoint();
+                if (endPoint instanceof SslConnection.DecryptedEndPoint)
+                {
+                    SSLSession sslSession = ((SslConnection.DecryptedEndPoint)endPoint).getSslConnection().getSSLEngine().getSession();
+                    Certificate[] certificates = sslSession.getPeerCertificates();
+                    if (certificates.length > 0 && certificates[0] instanceof X509Certificate)
+                        return new X509(null, (X509Certificate)certificates[0]);
+                }
+            }
+            catch (Throwable x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not obtain server certificate for " + session, x);
+            }
+            return null;
+        }
+
+        /**
+         * @param destination the destination that needs a new connection
+         * @param address the address the destination resolved to
+         * @return a new connection for the given destination that uses this session,
+         * or null if this session cannot be used for the given destination
+         */
+        private synchronized HttpConnectionOverHTTP2 coalesce(HttpDestinationOverHTTP2 destination, InetSocketAddress address)
+        {
+            HttpConnectionOverHTTP2 connection = this.connection.getReference();
+            if (connection == null || connection.isClosed())
+                return null;
+            if (!this.address.equals(address) || !certificate.matches(destination.getHost()))
+                return null;
+            // The destination's own connection pool decides whether to open more connections.
+            if (connection.getHttpDestination() == destination)
+                return null;
+            coalesced.removeIf(HttpConnectionOverHTTP2::isClosed);
+            for (HttpConnectionOverHTTP2 c : coalesced)
+            {
+                if (c.getHttpDestination() == destination)
+                    return null;
+            }
+
+            HttpConnectionOverHTTP2 result = newHttpConnection(destination, connection.getSession());
+            if (!result.coalesce(connection))
+                return null;
+            destination.setMaxRequestsPerConnection(destination().getMaxRequestsPerConnection());
+            coalesced.add(result);
+            return result;
+        }
+
+        private List<HttpConnectionOverHTTP2> connections()
+        {
+            List<HttpConnectionOverHTTP2> result = new ArrayList<>(coalesced);
+            HttpConnectionOverHTTP2 connection = this.connection.getReference();
+            if (connection != null)
+                result.add(0, connection);
+            return result;
         }
 
         @Override
         public void onClose(Session session, GoAwayFrame frame)
         {
+            sessions.remove(this);
             if (failConnectionPromise(new ClosedChannelException()))
                 return;
-            HttpConnectionOverHTTP2 connection = this.connection.getReference();
-            if (connection != null)
+            for (HttpConnectionOverHTTP2 connection : connections())
                 HttpClientTransportOverHTTP2.this.onClose(connection, frame);
         }
 
@@ -238,19 +402,22 @@ public class HttpClientTransportOverHTTP2 extends AbstractHttpClientTransport
             long idleTimeout = ((HTTP2Session)session).getEndPoint().getIdleTimeout();
             if (failConnectionPromise(new TimeoutException("Idle timeout expired: " + idleTimeout + " ms")))
                 return true;
-            HttpConnectionOverHTTP2 connection = this.connection.getReference();
-            if (connection != null)
-                return connection.onIdleTimeout(idleTimeout);
-            return true;
+            List<HttpConnectionOverHTTP2> connections = connections();
+            if (connections.isEmpty())
+                return true;
+            boolean result = true;
+            for (HttpConnectionOverHTTP2 connection : connections)
+                result &= connection.onIdleTimeout(idleTimeout);
+            return result;
         }
 
         @Override
         public void onFailure(Session session, Throwable failure)
         {
+            sessions.remove(this);
             if (failConnectionPromise(failure))
                 return;
-            HttpConnectionOverHTTP2 connection = this.connection.getReference();
-            if (connection != null)
+            for (HttpConnectionOverHTTP2 connection : connections())
                 connection.close(failure);
         }
 
@@ -51,6 +51,8 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
     private final AtomicBoolean closed = new AtomicBoolean();
     private final AtomicInteger sweeps = new AtomicInteger();
     private final Session session;
+    // Shared by the connections coalesced on the same session.
+    private volatile AtomicInteger sessionConnections = new AtomicInteger(1);
 
     public HttpConnectionOverHTTP2(HttpDestination destination, Session session)
     {
@@ -63,6 +65,32 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
         return session;
     }
 
+    /**
+     * <p>Coalesces this connection with the given connection, that uses the same
+     * session but for another destination, so that the session is only closed when
+     * all the connections using it are closed.</p>
+     *
+     * @param connection the connection that uses the same session
+     * @return whether this connection has been coalesced, false if the session
+     * has been closed already
+     */
+    boolean coalesce(HttpConnectionOverHTTP2 connection)
+    {
+        if (connection.getSession() != session)
+            throw new IllegalArgumentException();
+        AtomicInteger connections = connection.sessionConnections;
+        while (true)
+        {
+            int count = connections.get();
+            if (count == 0)
+                return false;
+            if (connections.compareAndSet(count, count + 1))
+                break;
+        }
+        this.sessionConnections = connections;
+        return true;
+    }
+
     @Override
     protected SendFailure send(HttpExchange exchange)
     {
@@ -141,7 +169,8 @@ public class HttpConnectionOverHTTP2 extends HttpConnection implements Sweeper.S
 
             abort(failure);
 
-            session.close(ErrorCode.NO_ERROR.code, failure.getMessage(), Callback.NOOP);
+            if (sessionConnections.decrementAndGet() == 0)
+                session.close(ErrorCode.NO_ERROR.code, failure.getMessage(), Callback.NOOP);
             
             HttpChannel channel = idleChannels.poll();
             while (channel!=null)
@@ -0,0 +1,183 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+package org.eclipse.jetty.http2.client.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoalescingTest
+{
+    private final Set<String> serverNames = ConcurrentHashMap.newKeySet();
+    private Server server;
+    private ServerConnector connector;
+    private HttpClientTransportOverHTTP2 transport;
+    private HttpClient client;
+
+    private void start(boolean coalescing) throws Exception
+    {
+        QueuedThreadPool serverThreads = new QueuedThreadPool();
+        serverThreads.setName("server");
+        server = new Server(serverThreads);
+        HttpConfiguration httpsConfig = new HttpConfiguration();
+        httpsConfig.addCustomizer(new SecureRequestCustomizer());
+        ConnectionFactory h2 = new HTTP2ServerConnectionFactory(httpsConfig);
+        ConnectionFactory ssl = new SslConnectionFactory(newSslContextFactory(), h2.getProtocol());
+        connector = new ServerConnector(server, 1, 1, ssl, h2);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+            {
+                baseRequest.setHandled(true);
+                serverNames.add(request.getServerName());
+            }
+        });
+        server.start();
+
+        QueuedThreadPool clientThreads = new QueuedThreadPool();
+        clientThreads.setName("client");
+        transport = new HttpClientTransportOverHTTP2(new HTTP2Client());
+        transport.setUseALPN(false);
+        transport.setCoalescing(coalescing);
+        SslContextFactory sslContextFactory = newSslContextFactory();
+        sslContextFactory.setEndpointIdentificationAlgorithm(null);
+        client = new HttpClient(transport, sslContextFactory);
+        client.setExecutor(clientThreads);
+        // All hosts resolve to the same address.
+        client.setSocketAddressResolver((host, port, promise) ->
+                promise.succeeded(Collections.singletonList(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))));
+        client.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private SslContextFactory newSslContextFactory()
+    {
+        // The certificate is valid for localhost and *.localhost.
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath("src/test/resources/coalescing_keystore.jks");
+        sslContextFactory.setKeyStorePassword("storepwd");
+        sslContextFactory.setUseCipherSuitesOrder(true);
+        sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+        return sslContextFactory;
+    }
+
+    private ContentResponse send(String host) throws Exception
+    {
+        return client.newRequest(host, connector.getLocalPort())
+                .scheme(HttpScheme.HTTPS.asString())
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+    }
+
+    @Test
+    public void testCoalescedOrigins() throws Exception
+    {
+        start(true);
+
+        assertEquals(HttpStatus.OK_200, send("a.localhost").getStatus());
+        assertEquals(HttpStatus.OK_200, send("b.localhost").getStatus());
+        assertEquals(HttpStatus.OK_200, send("localhost").getStatus());
+
+        assertEquals(2, transport.getCoalescedConnections());
+        assertEquals(1, connector.getConnectedEndPoints().size());
+        assertEquals(3, client.getDestinations().size());
+        assertTrue(serverNames.containsAll(Arrays.asList("a.localhost", "b.localhost", "localhost")));
+    }
+
+    @Test
+    public void testCertificateMismatchNotCoalesced() throws Exception
+    {
+        start(true);
+
+        assertEquals(HttpStatus.OK_200, send("localhost").getStatus());
+        assertEquals(HttpStatus.OK_200, send("example.com").getStatus());
+
+        assertEquals(0, transport.getCoalescedConnections());
+        assertEquals(2, connector.getConnectedEndPoints().size());
+    }
+
+    @Test
+    public void testCoalescingDisabled() throws Exception
+    {
+        start(false);
+
+        assertEquals(HttpStatus.OK_200, send("a.localhost").getStatus());
+        assertEquals(HttpStatus.OK_200, send("b.localhost").getStatus());
+
+        assertEquals(0, transport.getCoalescedConnections());
+        assertEquals(2, connector.getConnectedEndPoints().size());
+    }
+
+    @Test
+    public void testSessionClosedWithLastConnection() throws Exception
+    {
+        start(true);
+
+        assertEquals(HttpStatus.OK_200, send("a.localhost").getStatus());
+        assertEquals(HttpStatus.OK_200, send("b.localhost").getStatus());
+        assertEquals(1, connector.getConnectedEndPoints().size());
+
+        // Closing the destination that opened the session does not close the coalesced connection.
+        HttpDestinationOverHTTP2 destinationA = (HttpDestinationOverHTTP2)client.getDestination(HttpScheme.HTTPS.asString(), "a.localhost", connector.getLocalPort());
+        destinationA.close();
+        assertEquals(HttpStatus.OK_200, send("b.localhost").getStatus());
+        assertEquals(1, connector.getConnectedEndPoints().size());
+    }
+}
@@ -29,6 +29,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
 import org.eclipse.jetty.http2.HTTP2Connection;
+import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
 import org.eclipse.jetty.http2.frames.Frame;
@@ -58,6 +59,8 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private int maxHeaderBlockFragment = 0;
     private int maxFrameLength = Frame.DEFAULT_MAX_LENGTH;
     private int maxSettingsKeys = SettingsFrame.DEFAULT_MAX_KEYS;
+    private int minRetainedDataSize = -1;
+    private int writeBatchSize;
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
     private long streamIdleTimeout;
 
@@ -176,6 +179,38 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.maxSettingsKeys = maxSettingsKeys;
     }
 
+    @ManagedAttribute("The min DATA frame content size that retains the network buffer, smaller content is copied")
+    public int getMinRetainedDataSize()
+    {
+        return minRetainedDataSize;
+    }
+
+    /**
+     * @param minRetainedDataSize the min DATA frame content size that retains the network buffer,
+     * or a negative value to use a quarter of the input buffer size
+     * @see HTTP2Connection#setMinRetainedDataSize(int)
+     */
+    public void setMinRetainedDataSize(int minRetainedDataSize)
+    {
+        this.minRetainedDataSize = minRetainedDataSize;
+    }
+
+    @ManagedAttribute("The size of the pooled buffer the frames of a write are generated into, 0 to disable")
+    public int getWriteBatchSize()
+    {
+        return writeBatchSize;
+    }
+
+    /**
+     * @param writeBatchSize the size of the pooled buffer the frames of a write are generated into,
+     * or zero to generate each frame into its own buffer
+     * @see HTTP2Session#setWriteBatchSize(int)
+     */
+    public void setWriteBatchSize(int writeBatchSize)
+    {
+        this.writeBatchSize = writeBatchSize;
+    }
+
     /**
      * @return -1
      * @deprecated feature removed, no replacement
@@ -234,6 +269,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         session.setStreamIdleTimeout(streamIdleTimeout);
         session.setInitialSessionRecvWindow(getInitialSessionRecvWindow());
         session.setWriteThreshold(getHttpConfiguration().getOutputBufferSize());
+        session.setWriteBatchSize(getWriteBatchSize());
 
         ServerParser parser = newServerParser(connector, session);
         parser.setMaxFrameLength(getMaxFrameLength());
@@ -241,6 +277,8 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
 
         HTTP2Connection connection = new HTTP2ServerConnection(connector.getByteBufferPool(), connector.getExecutor(),
                         endPoint, httpConfiguration, parser, session, getInputBufferSize(), listener);
+        if (getMinRetainedDataSize() >= 0)
+            connection.setMinRetainedDataSize(getMinRetainedDataSize());
         connection.addListener(sessionContainer);
         return configure(connection, connector, endPoint);
     }
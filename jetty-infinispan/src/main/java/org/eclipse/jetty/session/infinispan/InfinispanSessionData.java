@@ -3,11 +3,11 @@ package org.eclipse.jetty.session.infinispan;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.Map;
 
+import org.eclipse.jetty.server.session.JavaSessionAttributeSerializer;
+import org.eclipse.jetty.server.session.SessionAttributeSerializer;
 import org.eclipse.jetty.server.session.SessionData;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 
 /**
  * InfinispanSessionData
@@ -22,7 +22,10 @@ import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
  */
 public class InfinispanSessionData extends SessionData
 {
+    private static final SessionAttributeSerializer __defaultSerializer = new JavaSessionAttributeSerializer();
+
     protected byte[] _serializedAttributes;
+    protected transient SessionAttributeSerializer _serializer;
 
     public InfinispanSessionData(String id, String cpath, String vhost, long created, long accessed, long lastAccessed, long maxInactiveMs)
     {
@@ -45,24 +48,35 @@ public class InfinispanSessionData extends SessionData
         _serializedAttributes = serializedAttributes;
     }
 
+    public SessionAttributeSerializer getSerializer()
+    {
+        return _serializer == null ? __defaultSerializer : _serializer;
+    }
+
+    /**
+     * @param serializer the serializer for the attributes, usually that of the store
+     */
+    public void setSerializer(SessionAttributeSerializer serializer)
+    {
+        _serializer = serializer;
+    }
+
     public void deserializeAttributes() throws ClassNotFoundException, IOException
     {
         if (_serializedAttributes == null) return;
 
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(_serializedAttributes);
-             ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(bais))
+        try (ByteArrayInputStream bais = new ByteArrayInputStream(_serializedAttributes))
         {
-            SessionData.deserializeAttributes(this, ois);
+            getSerializer().deserializeAttributes(this, bais);
             _serializedAttributes = null;
         }
     }
 
     public void serializeAttributes() throws IOException
     {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos))
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
         {
-            SessionData.serializeAttributes(this, oos);
+            getSerializer().serializeAttributes(this, baos);
             _serializedAttributes = baos.toByteArray();
         }
     }
@@ -20,27 +20,38 @@
 package org.eclipse.jetty.session.infinispan;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.jetty.server.session.AbstractSessionDataStore;
 import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.server.session.SessionDataNotifier;
 import org.eclipse.jetty.server.session.UnreadableSessionDataException;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.infinispan.commons.api.BasicCache;
+import org.infinispan.notifications.Listenable;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
 
 /**
  * InfinispanSessionDataStore
  *
- *
+ * When a {@link SessionDataNotifier.Listener} is added, the store registers a
+ * clustered listener with the cache, and notifies the modifications, removals
+ * and expirations of the sessions of its context that originate from other nodes.
+ * This is only supported with an embedded cache, not with a remote (hotrod) cache.
  */
 @ManagedObject
-public class InfinispanSessionDataStore extends AbstractSessionDataStore
+public class InfinispanSessionDataStore extends AbstractSessionDataStore implements SessionDataNotifier
 {
     private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
 
@@ -55,6 +66,10 @@ public class InfinispanSessionDataStore extends AbstractSessionDataStore
     
     private boolean _passivating;
     
+    private final List<SessionDataNotifier.Listener> _listeners = new CopyOnWriteArrayList<>();
+    
+    private CacheEntryChangedListener _cacheListener;
+    
 
     /**
      * Get the clustered cache instance.
@@ -98,6 +113,40 @@ public class InfinispanSessionDataStore extends AbstractSessionDataStore
         {
             //expected if not running with remote cache
         }
+        
+        if (!_listeners.isEmpty())
+        {
+            if (!(_cache instanceof Listenable))
+                throw new IllegalStateException ("Cache does not support change notification: "+_cache.getName());
+            _cacheListener = new CacheEntryChangedListener();
+            ((Listenable)_cache).addListener(_cacheListener);
+        }
+    }
+
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        if (_cacheListener != null)
+        {
+            ((Listenable)_cache).removeListener(_cacheListener);
+            _cacheListener = null;
+        }
+        super.doStop();
+    }
+
+
+    @Override
+    public void addSessionDataListener(SessionDataNotifier.Listener listener)
+    {
+        _listeners.add(listener);
+    }
+
+
+    @Override
+    public void removeSessionDataListener(SessionDataNotifier.Listener listener)
+    {
+        _listeners.remove(listener);
     }
 
 
@@ -115,6 +164,7 @@ public class InfinispanSessionDataStore extends AbstractSessionDataStore
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("Deserializing session attributes for {}", id);
+                sd.setSerializer(getSerializer());
                 sd.deserializeAttributes();
             }
 
@@ -211,6 +261,7 @@ public class InfinispanSessionDataStore extends AbstractSessionDataStore
         //if no requests arrive at any node before this timeout occurs, or no node 
         //scavenges the session before this timeout occurs, the session will be removed.
         //NOTE: that no session listeners can be called for this.
+        ((InfinispanSessionData)data).setSerializer(getSerializer());
         if (data.getMaxInactiveMs() > 0 && getInfinispanIdleTimeoutSec() > 0)
             _cache.put(getCacheKey(id), (InfinispanSessionData)data, -1, TimeUnit.MILLISECONDS, getInfinispanIdleTimeoutSec(), TimeUnit.SECONDS);
         else
@@ -284,7 +335,9 @@ public class InfinispanSessionDataStore extends AbstractSessionDataStore
     @Override
     public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs)
     {
-        return new InfinispanSessionData(id, _context.getCanonicalContextPath(), _context.getVhost(), created, accessed, lastAccessed, maxInactiveMs);
+        InfinispanSessionData data = new InfinispanSessionData(id, _context.getCanonicalContextPath(), _context.getVhost(), created, accessed, lastAccessed, maxInactiveMs);
+        data.setSerializer(getSerializer());
+        return data;
     }
 
 
@@ -309,4 +362,42 @@ public class InfinispanSessionDataStore extends AbstractSessionDataStore
     {
         return String.format("%s[cache=%s,idleTimeoutSec=%d]",super.toString(), (_cache==null?"":_cache.getName()),_infinispanIdleTimeoutSec);
     }
+
+
+    /**
+     * CacheEntryChangedListener
+     *
+     * Notifies the changes made to the sessions of this context by other nodes.
+     */
+    @org.infinispan.notifications.Listener(clustered=true)
+    public class CacheEntryChangedListener
+    {
+        @CacheEntryModified
+        @CacheEntryRemoved
+        @CacheEntryExpired
+        public void onCacheEntryChanged(CacheEntryEvent<String, Object> event)
+        {
+            if (event.isPre() || event.isOriginLocal())
+                return;
+            
+            //the cache is shared by all contexts
+            String prefix = getCacheKey("");
+            String key = event.getKey();
+            if (key == null || !key.startsWith(prefix))
+                return;
+            
+            String id = key.substring(prefix.length());
+            for (SessionDataNotifier.Listener listener : _listeners)
+            {
+                try
+                {
+                    listener.onSessionDataChanged(id);
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn(x);
+                }
+            }
+        }
+    }
 }
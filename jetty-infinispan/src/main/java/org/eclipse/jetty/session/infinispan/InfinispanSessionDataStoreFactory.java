@@ -62,6 +62,8 @@ public class InfinispanSessionDataStoreFactory extends AbstractSessionDataStoreF
         store.setInfinispanIdleTimeoutSec(getInfinispanIdleTimeoutSec());
         store.setCache(getCache());
         store.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            store.setSerializer(getSerializer());
         return store;
     }
     
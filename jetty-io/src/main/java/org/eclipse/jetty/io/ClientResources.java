@@ -0,0 +1,323 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.io;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>The resources that can be shared by many client instances, such as
+ * {@code HttpClient} and {@code HTTP2Client}: an {@link Executor}, a
+ * {@link Scheduler}, a {@link ByteBufferPool} and the NIO selectors.</p>
+ * <p>Sharing the same resources reduces the number of threads and the
+ * memory used when an application creates many clients.</p>
+ * <p>Clients {@link #retain() retain} the resources when they start and
+ * {@link #release() release} them when they stop; the resources are started
+ * by the first client that retains them, and stopped when the last client
+ * releases them, unless they have been started explicitly, in which case
+ * they must be stopped explicitly.</p>
+ * <p>Connections are established via {@link #connect(SelectableChannel, Map)}
+ * or {@link #accept(SelectableChannel, Map)}; the context must contain, under
+ * the {@link #CLIENT_CONTEXT_KEY} key, the {@link Client} that creates the
+ * {@link EndPoint} and the {@link Connection} for the channel.</p>
+ * <p>The selectors are shared, and so is the {@link #getConnectTimeout() connect timeout}.</p>
+ */
+@ManagedObject("Resources shared by clients")
+public class ClientResources extends ContainerLifeCycle
+{
+    public static final String CLIENT_CONTEXT_KEY = "org.eclipse.jetty.io.clientResources.client";
+    private static final Logger LOG = Log.getLogger(ClientResources.class);
+
+    private Executor executor;
+    private Scheduler scheduler;
+    private ByteBufferPool byteBufferPool;
+    private int selectors = -1;
+    private long connectTimeout = SelectorManager.DEFAULT_CONNECT_TIMEOUT;
+    private SelectorManager selectorManager;
+    private int references;
+    private boolean retainStarted;
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        String name = String.format("%s@%x", getClass().getSimpleName(), hashCode());
+        if (executor == null)
+        {
+            QueuedThreadPool threadPool = new QueuedThreadPool();
+            threadPool.setName(name);
+            setExecutor(threadPool);
+        }
+        if (scheduler == null)
+            setScheduler(new ScheduledExecutorScheduler(name + "-scheduler", false));
+        if (byteBufferPool == null)
+            setByteBufferPool(new MappedByteBufferPool());
+
+        selectorManager = new SharedSelectorManager(executor, scheduler, selectors);
+        selectorManager.setConnectTimeout(connectTimeout);
+        addBean(selectorManager);
+
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        removeBean(selectorManager);
+        selectorManager = null;
+    }
+
+    /**
+     * <p>Retains these resources, starting them if this is the first reference.</p>
+     *
+     * @throws Exception if these resources cannot be started
+     */
+    public void retain() throws Exception
+    {
+        synchronized (this)
+        {
+            if (references++ == 0 && !isStarted())
+            {
+                retainStarted = true;
+                start();
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Retained {}", this);
+        }
+    }
+
+    /**
+     * <p>Releases these resources, stopping them if this is the last reference
+     * and they have been started by {@link #retain()}.</p>
+     *
+     * @throws Exception if these resources cannot be stopped
+     */
+    public void release() throws Exception
+    {
+        synchronized (this)
+        {
+            if (references == 0)
+                throw new IllegalStateException("Not retained " + this);
+            if (--references == 0 && retainStarted)
+            {
+                retainStarted = false;
+                stop();
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Released {}", this);
+        }
+    }
+
+    @ManagedAttribute("The number of clients that retain these resources")
+    public int getReferences()
+    {
+        synchronized (this)
+        {
+            return references;
+        }
+    }
+
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        updateBean(this.executor, executor);
+        this.executor = executor;
+    }
+
+    public Scheduler getScheduler()
+    {
+        return scheduler;
+    }
+
+    public void setScheduler(Scheduler scheduler)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        updateBean(this.scheduler, scheduler);
+        this.scheduler = scheduler;
+    }
+
+    public ByteBufferPool getByteBufferPool()
+    {
+        return byteBufferPool;
+    }
+
+    public void setByteBufferPool(ByteBufferPool byteBufferPool)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        updateBean(this.byteBufferPool, byteBufferPool);
+        this.byteBufferPool = byteBufferPool;
+    }
+
+    @ManagedAttribute("The number of selectors")
+    public int getSelectors()
+    {
+        return selectors;
+    }
+
+    /**
+     * @param selectors the number of selectors, or -1 for a default
+     * derived from the number of CPUs and the executor size
+     */
+    public void setSelectors(int selectors)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        this.selectors = selectors;
+    }
+
+    @ManagedAttribute("The connect timeout in milliseconds")
+    public long getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(long connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+        SelectorManager selectorManager = this.selectorManager;
+        if (selectorManager != null)
+            selectorManager.setConnectTimeout(connectTimeout);
+    }
+
+    /**
+     * <p>Registers a channel whose connection is pending with the shared selectors.</p>
+     *
+     * @param channel the channel to register
+     * @param context the context, containing the {@link Client} under {@link #CLIENT_CONTEXT_KEY}
+     * @see SelectorManager#connect(SelectableChannel, Object)
+     */
+    public void connect(SelectableChannel channel, Map<String, Object> context)
+    {
+        getSelectorManager().connect(channel, context);
+    }
+
+    /**
+     * <p>Registers an already connected channel with the shared selectors.</p>
+     *
+     * @param channel the channel to register
+     * @param context the context, containing the {@link Client} under {@link #CLIENT_CONTEXT_KEY}
+     * @see SelectorManager#accept(SelectableChannel, Object)
+     */
+    public void accept(SelectableChannel channel, Map<String, Object> context)
+    {
+        getSelectorManager().accept(channel, context);
+    }
+
+    private SelectorManager getSelectorManager()
+    {
+        SelectorManager selectorManager = this.selectorManager;
+        if (selectorManager == null)
+            throw new IllegalStateException("Not started " + this);
+        return selectorManager;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[references=%d]", getClass().getSimpleName(), hashCode(), getReferences());
+    }
+
+    /**
+     * <p>The client that owns the channels registered with the shared selectors.</p>
+     */
+    public interface Client
+    {
+        /**
+         * @param channel the channel
+         * @param selector the selector the channel is registered with
+         * @param selectionKey the selection key of the channel
+         * @return a new endpoint for the channel
+         * @throws IOException if the endpoint cannot be created
+         * @see SelectorManager#newEndPoint(SelectableChannel, ManagedSelector, SelectionKey)
+         */
+        public EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey selectionKey) throws IOException;
+
+        /**
+         * @param endPoint the endpoint
+         * @param context the context passed to {@link #connect(SelectableChannel, Map)} or {@link #accept(SelectableChannel, Map)}
+         * @return a new connection for the endpoint
+         * @throws IOException if the connection cannot be created
+         */
+        public Connection newConnection(EndPoint endPoint, Map<String, Object> context) throws IOException;
+
+        /**
+         * @param context the context passed to {@link #connect(SelectableChannel, Map)}
+         * @param failure the reason of the connect failure
+         */
+        public void connectionFailed(Map<String, Object> context, Throwable failure);
+    }
+
+    private static class SharedSelectorManager extends SelectorManager
+    {
+        private SharedSelectorManager(Executor executor, Scheduler scheduler, int selectors)
+        {
+            super(executor, scheduler, selectors);
+        }
+
+        @Override
+        protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey selectionKey) throws IOException
+        {
+            return clientFrom(selectionKey.attachment()).newEndPoint(channel, selector, selectionKey);
+        }
+
+        @Override
+        public Connection newConnection(SelectableChannel channel, EndPoint endPoint, Object attachment) throws IOException
+        {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> context = (Map<String, Object>)attachment;
+            return clientFrom(context).newConnection(endPoint, context);
+        }
+
+        @Override
+        protected void connectionFailed(SelectableChannel channel, Throwable failure, Object attachment)
+        {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> context = (Map<String, Object>)attachment;
+            clientFrom(context).connectionFailed(context, failure);
+        }
+
+        private Client clientFrom(Object attachment)
+        {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> context = (Map<String, Object>)attachment;
+            return (Client)context.get(CLIENT_CONTEXT_KEY);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.DuplexConnectionPool;
+import org.eclipse.jetty.client.LockFreeConnectionPool;
+import org.eclipse.jetty.client.RoundRobinConnectionPool;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Acquires and releases connections concurrently from a connection pool, to
+ * compare the contention of the {@link DuplexConnectionPool} and of the
+ * {@link RoundRobinConnectionPool}, which use locks, with the contention of the
+ * {@link LockFreeConnectionPool}, with and without thread affinity.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+@Fork(value = 1)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class ConnectionPoolBenchmark
+{
+    @Param({"duplex", "round-robin", "lock-free", "lock-free-affinity"})
+    String poolType;
+
+    @Param({"16"})
+    int maxConnections;
+
+    AbstractConnectionPool pool;
+
+    @Setup
+    public void setUp()
+    {
+        Destination destination = new BenchmarkDestination();
+        switch (poolType)
+        {
+            case "duplex":
+                pool = new DuplexConnectionPool(destination, maxConnections, Callback.NOOP);
+                break;
+            case "round-robin":
+                pool = new RoundRobinConnectionPool(destination, maxConnections, Callback.NOOP);
+                break;
+            case "lock-free":
+                pool = new LockFreeConnectionPool(destination, maxConnections, Callback.NOOP, false);
+                break;
+            case "lock-free-affinity":
+                pool = new LockFreeConnectionPool(destination, maxConnections, Callback.NOOP, true);
+                break;
+            default:
+                throw new IllegalStateException(poolType);
+        }
+
+        // Open all the connections.
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < maxConnections; ++i)
+            connections.add(pool.acquire());
+        connections.forEach(pool::release);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public void testAcquireRelease(Blackhole blackhole)
+    {
+        Connection connection = pool.acquire();
+        if (connection != null)
+        {
+            blackhole.consume(connection);
+            pool.release(connection);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(ConnectionPoolBenchmark.class.getSimpleName())
+            .warmupIterations(20)
+            .measurementIterations(10)
+            .forks(1)
+            .threads(8)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    private static class BenchmarkDestination implements Destination
+    {
+        @Override
+        public String getScheme()
+        {
+            return "http";
+        }
+
+        @Override
+        public String getHost()
+        {
+            return "localhost";
+        }
+
+        @Override
+        public int getPort()
+        {
+            return 8080;
+        }
+
+        @Override
+        public void newConnection(Promise<Connection> promise)
+        {
+            promise.succeeded(new BenchmarkConnection());
+        }
+    }
+
+    private static class BenchmarkConnection implements Connection
+    {
+        private volatile boolean closed;
+
+        @Override
+        public void send(Request request, Response.CompleteListener listener)
+        {
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return closed;
+        }
+    }
+}
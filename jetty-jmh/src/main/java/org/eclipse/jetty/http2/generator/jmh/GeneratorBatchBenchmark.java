@@ -0,0 +1,167 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.generator.jmh;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http.MetaData;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
+import org.eclipse.jetty.http2.generator.BatchLease;
+import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Generates the frames of 100 small responses like {@code HTTP2Flusher} does, writing
+ * when the write threshold is exceeded, with and without a write batch size.</p>
+ * <p>Each write would be a (gathering) write system call: the aux counters report the
+ * writes and the buffers written, while the GC profiler reports the bytes allocated.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class GeneratorBatchBenchmark
+{
+    private static final int RESPONSES = 100;
+    private static final int WRITE_THRESHOLD = 32 * 1024;
+
+    @Param({"0", "32768"})
+    int batchSize;
+
+    @Param({"64", "1024", "16384"})
+    int contentLength;
+
+    ByteBufferPool byteBufferPool;
+
+    @Setup
+    public void setUp()
+    {
+        byteBufferPool = new ArrayByteBufferPool();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState
+    {
+        Generator generator;
+        BatchLease lease;
+        ByteBuffer content;
+        MetaData.Response response;
+
+        @Setup(Level.Trial)
+        public void setUp(GeneratorBatchBenchmark benchmark)
+        {
+            generator = new Generator(benchmark.byteBufferPool);
+            lease = new BatchLease(benchmark.byteBufferPool, benchmark.batchSize);
+            content = ByteBuffer.allocateDirect(benchmark.contentLength);
+            HttpFields fields = new HttpFields();
+            fields.put(HttpHeader.CONTENT_TYPE, "text/plain;charset=utf-8");
+            fields.putLongField(HttpHeader.CONTENT_LENGTH, benchmark.contentLength);
+            response = new MetaData.Response(HttpVersion.HTTP_2, HttpStatus.OK_200, fields);
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WriteCounters
+    {
+        public long writes;
+        public long buffers;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            writes = 0;
+            buffers = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public long testGenerate(ThreadState state, WriteCounters counters)
+    {
+        Generator generator = state.generator;
+        BatchLease lease = state.lease;
+        long bytes = 0;
+        for (int i = 0; i < RESPONSES; ++i)
+        {
+            int streamId = 2 * i + 1;
+            generator.control(lease, new HeadersFrame(streamId, state.response, null, false));
+            generator.data(lease, new DataFrame(streamId, state.content.slice(), true), state.content.remaining());
+            if (i % 10 == 0)
+                generator.control(lease, new WindowUpdateFrame(0, 64 * 1024));
+            if (lease.getTotalLength() >= WRITE_THRESHOLD)
+                bytes += write(lease, counters);
+        }
+        bytes += write(lease, counters);
+        return bytes;
+    }
+
+    private long write(BatchLease lease, WriteCounters counters)
+    {
+        long bytes = 0;
+        int size = lease.getByteBuffers().size();
+        if (size > 0)
+        {
+            ++counters.writes;
+            counters.buffers += size;
+            bytes = lease.getTotalLength();
+        }
+        lease.recycle();
+        return bytes;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(GeneratorBatchBenchmark.class.getSimpleName())
+            .warmupIterations(20)
+            .measurementIterations(10)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
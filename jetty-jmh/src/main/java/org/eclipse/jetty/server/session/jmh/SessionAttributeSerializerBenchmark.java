@@ -0,0 +1,175 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.session.CompactSessionAttributeSerializer;
+import org.eclipse.jetty.server.session.JavaSessionAttributeSerializer;
+import org.eclipse.jetty.server.session.SessionAttributeSerializer;
+import org.eclipse.jetty.server.session.SessionData;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Serializes and deserializes the attributes of a typical session, made of strings,
+ * numbers and small collections of them, with java serialization and with the
+ * compact format, optionally compressed.</p>
+ * <p>The aux counter reports the serialized size, while the GC profiler reports the
+ * bytes allocated.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class SessionAttributeSerializerBenchmark
+{
+    @Param({"java", "compact", "compressed"})
+    String serializerType;
+
+    @Param({"4", "64"})
+    int attributes;
+
+    SessionAttributeSerializer serializer;
+    SessionData data;
+    byte[] serialized;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        switch (serializerType)
+        {
+            case "java":
+                serializer = new JavaSessionAttributeSerializer();
+                break;
+            case "compact":
+                serializer = new CompactSessionAttributeSerializer();
+                break;
+            case "compressed":
+                CompactSessionAttributeSerializer compressed = new CompactSessionAttributeSerializer();
+                compressed.setCompressionThreshold(512);
+                serializer = compressed;
+                break;
+            default:
+                throw new IllegalStateException(serializerType);
+        }
+
+        data = newSessionData();
+        for (int i = 0; i < attributes; ++i)
+        {
+            switch (i % 4)
+            {
+                case 0:
+                    data.setAttribute("user." + i, "user" + i + "@example.com");
+                    break;
+                case 1:
+                    data.setAttribute("time." + i, System.currentTimeMillis());
+                    break;
+                case 2:
+                    List<Object> list = new ArrayList<>();
+                    for (int j = 0; j < 8; ++j)
+                        list.add("item-" + j);
+                    data.setAttribute("list." + i, list);
+                    break;
+                default:
+                    Map<String, Object> map = new HashMap<>();
+                    map.put("count", i);
+                    map.put("enabled", Boolean.TRUE);
+                    map.put("locale", "en_US");
+                    data.setAttribute("map." + i, map);
+                    break;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttributes(data, out);
+        serialized = out.toByteArray();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class SizeCounters
+    {
+        public long serializedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset(SessionAttributeSerializerBenchmark benchmark)
+        {
+            serializedBytes = benchmark.serialized.length;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public byte[] testSerialize(SizeCounters counters) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        serializer.serializeAttributes(data, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public SessionData testDeserialize(SizeCounters counters) throws Exception
+    {
+        SessionData result = newSessionData();
+        serializer.deserializeAttributes(result, new ByteArrayInputStream(serialized));
+        return result;
+    }
+
+    private static SessionData newSessionData()
+    {
+        return new SessionData("node0abcdefghijklmnop", "/context", "0.0.0.0", 0, 0, 0, 1800000);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(SessionAttributeSerializerBenchmark.class.getSimpleName())
+            .warmupIterations(20)
+            .measurementIterations(10)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,141 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session.jmh;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpSession;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.server.session.DefaultSessionCache;
+import org.eclipse.jetty.server.session.NullSessionDataStore;
+import org.eclipse.jetty.server.session.Session;
+import org.eclipse.jetty.server.session.SessionHandler;
+import org.eclipse.jetty.server.session.TimingWheelSessionCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Accesses random sessions among a large number of in-memory sessions, with the
+ * {@link DefaultSessionCache}, where each session has a timer in the Scheduler, and
+ * with the {@link TimingWheelSessionCache}, where the timers are buckets of a wheel.</p>
+ * <p>Each access cancels and restarts the inactivity timer of the session, which
+ * is also scheduled to evict the session from the cache after the eviction period.</p>
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 7, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+public class SessionCacheBenchmark
+{
+    @Param({"default", "wheel"})
+    String cacheType;
+
+    @Param({"1000000"})
+    int sessions;
+
+    Server server;
+    SessionHandler handler;
+    String[] ids;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        server = new Server();
+        ContextHandler context = new ContextHandler("/");
+        handler = new SessionHandler();
+        context.setHandler(handler);
+        server.setHandler(context);
+
+        DefaultSessionCache cache;
+        switch (cacheType)
+        {
+            case "default":
+                cache = new DefaultSessionCache(handler);
+                break;
+            case "wheel":
+                cache = new TimingWheelSessionCache(handler);
+                break;
+            default:
+                throw new IllegalStateException(cacheType);
+        }
+        cache.setEvictionPolicy((int)TimeUnit.HOURS.toSeconds(1));
+        cache.setSessionDataStore(new NullSessionDataStore());
+        handler.setSessionCache(cache);
+        handler.setMaxInactiveInterval((int)TimeUnit.DAYS.toSeconds(1));
+        server.start();
+
+        ids = new String[sessions];
+        for (int i = 0; i < sessions; ++i)
+        {
+            HttpSession session = handler.newHttpSession(null);
+            ids[i] = session.getId();
+            handler.complete(session);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        server.stop();
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput})
+    public Session testAccess() throws Exception
+    {
+        String id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        Session session = handler.getSession(id);
+        handler.access(session, false);
+        handler.complete(session);
+        return session;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(SessionCacheBenchmark.class.getSimpleName())
+            .warmupIterations(20)
+            .measurementIterations(10)
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .threads(4)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
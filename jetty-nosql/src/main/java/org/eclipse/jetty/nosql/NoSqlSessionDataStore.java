@@ -37,7 +37,6 @@ public abstract class NoSqlSessionDataStore extends AbstractSessionDataStore
     public class NoSqlSessionData extends SessionData
     {
         private Object _version;
-        private Set<String> _dirtyAttributes = new HashSet<>();
         
 
         public NoSqlSessionData(String id, String cpath, String vhost, long created, long accessed, long lastAccessed, long maxInactiveMs)
@@ -55,15 +54,15 @@ public abstract class NoSqlSessionDataStore extends AbstractSessionDataStore
         {
             return _version;
         }
-
+        
         @Override
-        public void setDirty(String name)
+        public void copy (SessionData data)
         {
-            super.setDirty(name);
-            _dirtyAttributes.add(name);
+            super.copy(data);
+            if (data instanceof NoSqlSessionData)
+                setVersion(((NoSqlSessionData)data).getVersion());
         }
-        
-        
+
         public Set<String> takeDirtyAttributes()
         {
             Set<String> copy = new HashSet<>(_dirtyAttributes);
@@ -21,7 +21,7 @@ package org.eclipse.jetty.nosql.mongodb;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -31,7 +31,6 @@ import org.eclipse.jetty.nosql.NoSqlSessionDataStore;
 import org.eclipse.jetty.server.session.SessionContext;
 import org.eclipse.jetty.server.session.SessionData;
 import org.eclipse.jetty.server.session.UnreadableSessionDataException;
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.log.Log;
@@ -40,6 +39,9 @@ import org.eclipse.jetty.util.log.Logger;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.BulkWriteResult;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -171,6 +173,11 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
      */
     private DBCollection _dbSessions;
     
+    /**
+     * Whether the attributes are stored as a nested document so that only the changed ones are written
+     */
+    private boolean _writeAttributeDeltas;
+    
     
     public void setDBCollection (DBCollection collection)
     {
@@ -184,6 +191,31 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
     }
     
   
+    /**
+     * @return true if only the attributes that changed are written when a session is updated
+     */
+    @ManagedAttribute(value="only write changed attributes", readonly=true)
+    public boolean isWriteAttributeDeltas()
+    {
+        return _writeAttributeDeltas;
+    }
+    
+    /**
+     * Store the attributes of a session as a nested document with one field
+     * per attribute, so that only the attributes that changed are written 
+     * when the session is updated, rather than all of them.
+     * <p>
+     * Sessions stored in the other formats are read, and converted
+     * at their next save.
+     * 
+     * @param writeAttributeDeltas true to only write the attributes that changed
+     */
+    public void setWriteAttributeDeltas(boolean writeAttributeDeltas)
+    {
+        checkStarted();
+        _writeAttributeDeltas = writeAttributeDeltas;
+    }
+    
     @Override
     public SessionData doLoad(String id) throws Exception
     {
@@ -207,7 +239,7 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
             Object version = MongoUtils.getNestedValue(sessionDocument, getContextSubfield(__VERSION));
             Long lastSaved = (Long)MongoUtils.getNestedValue(sessionDocument, getContextSubfield(__LASTSAVED));
             String lastNode = (String)MongoUtils.getNestedValue(sessionDocument, getContextSubfield(__LASTNODE));
-            byte[] attributes = (byte[])MongoUtils.getNestedValue(sessionDocument, getContextSubfield(__ATTRIBUTES));
+            Object attributes = MongoUtils.getNestedValue(sessionDocument, getContextSubfield(__ATTRIBUTES));
 
             Long created = (Long)sessionDocument.get(__CREATED);
             Long accessed = (Long)sessionDocument.get(__ACCESSED);
@@ -250,15 +282,29 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
                         map.put(attr,value);
                     }
                     data.putAllAttributes(map);
+                    if (isWriteAttributeDeltas())
+                        data.setAllAttributesDirty();
+                }
+                else if (attributes instanceof DBObject)
+                {
+                    //attributes are individually serialized fields of a nested document
+                    DBObject attributesDocument = (DBObject)attributes;
+                    Map<String, Object> map = new HashMap<>();
+                    for (String name : attributesDocument.keySet())
+                    {
+                        map.putAll(deserializeAttributes(data, (byte[])attributesDocument.get(name)));
+                    }
+                    data.putAllAttributes(map);
                 }
                 else
                 {
                     //attributes have special serialized format
-                    try (ByteArrayInputStream bais = new ByteArrayInputStream(attributes);
-                         ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(bais);)
+                    try (ByteArrayInputStream bais = new ByteArrayInputStream((byte[])attributes))
                     {
-                        SessionData.deserializeAttributes(data, ois);
+                        getSerializer().deserializeAttributes(data, bais);
                     }
+                    if (isWriteAttributeDeltas())
+                        data.setAllAttributesDirty();
                 }
             }
             else
@@ -465,10 +511,52 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
     {   
         // Form query for upsert
         BasicDBObject key = new BasicDBObject(__ID, id);
-
+        BasicDBObject update = newUpdate(id, data, lastSaveTime);
+        
+        WriteResult res = _dbSessions.update(key,update,lastSaveTime <= 0,false,WriteConcern.SAFE);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Save:db.sessions.update( {}, {},{} )", key, update, res); 
+    }
+    
+    
+    /**
+     * Write several sessions with a single unordered bulk write.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStoreAll(java.util.Map, java.util.Map)
+     */
+    @Override
+    public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+    {
+        BulkWriteOperation bulk = _dbSessions.initializeUnorderedBulkOperation();
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            String id = entry.getKey();
+            long lastSaveTime = lastSaveTimes.get(id);
+            BasicDBObject update = newUpdate(id, entry.getValue(), lastSaveTime);
+            BulkWriteRequestBuilder request = bulk.find(new BasicDBObject(__ID, id));
+            if (lastSaveTime <= 0)
+                request.upsert().updateOne(update);
+            else
+                request.updateOne(update);
+        }
+        
+        BulkWriteResult res = bulk.execute(WriteConcern.SAFE);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Save:db.sessions.bulk( {} sessions ) {}", sessions.size(), res); 
+    }
+    
+    
+    /**
+     * @param id the session id
+     * @param data the session
+     * @param lastSaveTime the time of previous save or 0 if never saved
+     * @return the update of the session document
+     * @throws Exception if the session cannot be serialized
+     */
+    private BasicDBObject newUpdate(String id, SessionData data, long lastSaveTime) throws Exception
+    {
         // Form updates
         BasicDBObject update = new BasicDBObject();
-        boolean upsert = false;
         BasicDBObject sets = new BasicDBObject();
        
         
@@ -477,7 +565,6 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         // New session
         if (lastSaveTime <= 0)
         {
-            upsert = true;
             version = new Long(1);
             sets.put(__CREATED,data.getCreated());
             sets.put(__VALID,true);
@@ -520,20 +607,47 @@ public class MongoSessionDataStore extends NoSqlSessionDataStore
         sets.put(__ACCESSED, data.getAccessed());
         sets.put(__LAST_ACCESSED, data.getLastAccessed());
         
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             ObjectOutputStream oos = new ObjectOutputStream(baos);)
+        BasicDBObject unsets = new BasicDBObject();
+        if (isWriteAttributeDeltas())
         {
-            SessionData.serializeAttributes(data, oos);       
-            sets.put(getContextSubfield(__ATTRIBUTES), baos.toByteArray());
+            if (lastSaveTime <= 0 || data.isAllAttributesDirty())
+            {
+                //write the whole nested document of attributes
+                BasicDBObject attributes = new BasicDBObject();
+                for (Map.Entry<String, Object> entry : data.getAllAttributes().entrySet())
+                {
+                    attributes.put(MongoUtils.encodeName(entry.getKey()), serializeAttributes(data, Collections.singletonMap(entry.getKey(), entry.getValue())));
+                }
+                sets.put(getContextSubfield(__ATTRIBUTES), attributes);
+            }
+            else
+            {
+                //only write the fields of the attributes that changed
+                for (String name : new HashSet<>(data.getDirtyAttributes()))
+                {
+                    String field = getContextSubfield(__ATTRIBUTES) + "." + MongoUtils.encodeName(name);
+                    Object value = data.getAttribute(name);
+                    if (value == null)
+                        unsets.put(field, 1);
+                    else
+                        sets.put(field, serializeAttributes(data, Collections.singletonMap(name, value)));
+                }
+            }
+        }
+        else
+        {
+            try (ByteArrayOutputStream baos = new ByteArrayOutputStream())
+            {
+                getSerializer().serializeAttributes(data, baos);
+                sets.put(getContextSubfield(__ATTRIBUTES), baos.toByteArray());
+            }
         }
 
-        // Do the upsert
         if (!sets.isEmpty())
             update.put("$set",sets);
-
-        WriteResult res = _dbSessions.update(key,update,upsert,false,WriteConcern.SAFE);
-        if (LOG.isDebugEnabled())
-            LOG.debug("Save:db.sessions.update( {}, {},{} )", key, update, res); 
+        if (!unsets.isEmpty())
+            update.put("$unset",unsets);
+        return update;
     }
 
     protected void ensureIndexes() throws MongoException
@@ -43,6 +43,7 @@ public class MongoSessionDataStoreFactory extends AbstractSessionDataStoreFactor
     String _host;
     String _connectionString;
     int _port = -1;
+    boolean _writeAttributeDeltas;
 
     /**
      * @return the host
@@ -125,6 +126,24 @@ public class MongoSessionDataStoreFactory extends AbstractSessionDataStoreFactor
     }
 
 
+    /**
+     * @return true if only the attributes that changed are written when a session is updated
+     */
+    public boolean isWriteAttributeDeltas()
+    {
+        return _writeAttributeDeltas;
+    }
+
+    /**
+     * @param writeAttributeDeltas true to only write the attributes that changed
+     * @see MongoSessionDataStore#setWriteAttributeDeltas(boolean)
+     */
+    public void setWriteAttributeDeltas(boolean writeAttributeDeltas)
+    {
+        _writeAttributeDeltas = writeAttributeDeltas;
+    }
+
+
     /**
      * @throws Exception  {@link UnknownHostException} if any issue while resolving MongoDB Host
      * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
@@ -135,6 +154,9 @@ public class MongoSessionDataStoreFactory extends AbstractSessionDataStoreFactor
         MongoSessionDataStore store = new MongoSessionDataStore();
         store.setGracePeriodSec(getGracePeriodSec());
         store.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            store.setSerializer(getSerializer());
+        store.setWriteAttributeDeltas(isWriteAttributeDeltas());
         Mongo mongo;
 
         if (!StringUtil.isBlank(getConnectionString()))
@@ -60,6 +60,13 @@ import org.eclipse.jetty.util.log.Logger;
  * <p>Servlet 3.1 asynchronous proxy servlet with capability
  * to intercept and modify request/response content.</p>
  * <p>Both the request processing and the I/O are asynchronous.</p>
+ * <p>In addition to the init parameters of {@link AbstractProxyServlet},
+ * the {@code flushContent} init parameter enables the flushing of the
+ * transformed content to the client as soon as it has been written,
+ * rather than aggregating it, so that streaming transformers such as
+ * {@link StreamingContentTransformer} reduce the time to first byte;
+ * note that a flush commits the client response, which cannot be
+ * reset anymore if the proxying fails.</p>
  *
  * @see ProxyServlet
  * @see AsyncProxyServlet
@@ -72,6 +79,33 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
     private static final String SERVER_TRANSFORMER_ATTRIBUTE = AsyncMiddleManServlet.class.getName() + ".serverTransformer";
     private static final String CONTINUE_ACTION_ATTRIBUTE = AsyncMiddleManServlet.class.getName() + ".continueAction";
 
+    private boolean flushContent;
+
+    @Override
+    public void init() throws ServletException
+    {
+        super.init();
+        String value = getServletConfig().getInitParameter("flushContent");
+        if (value != null)
+            flushContent = Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return whether the content is flushed to the client as soon as it is written
+     */
+    public boolean isFlushContent()
+    {
+        return flushContent;
+    }
+
+    /**
+     * @param flushContent whether the content is flushed to the client as soon as it is written
+     */
+    public void setFlushContent(boolean flushContent)
+    {
+        this.flushContent = flushContent;
+    }
+
     @Override
     protected void service(HttpServletRequest clientRequest, HttpServletResponse proxyResponse) throws ServletException, IOException
     {
@@ -648,7 +682,14 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
 
                 length = chunk.buffer.remaining();
                 if (length > 0)
+                {
                     writeProxyResponseContent(output, chunk.buffer);
+                    // Small writes are aggregated by the output, so flush when
+                    // there is nothing else to write, to stream the content as
+                    // it arrives; the chunk callback is succeeded after the flush.
+                    if (isFlushContent() && chunks.isEmpty() && output.isReady())
+                        output.flush();
+                }
             }
 
             if (_log.isDebugEnabled())
@@ -757,6 +798,15 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
         }
     }
 
+    /**
+     * <p>A transformer that gunzips the content, transforms it with another transformer,
+     * and gzips the transformed content.</p>
+     * <p>By default, the deflater buffers the compressed content, so that the gzipped
+     * content is mostly emitted when the content is finished.
+     * With {@code syncFlush}, the compressed content is flushed for every chunk, so that
+     * a {@link StreamingContentTransformer} streams the content to the client, at the
+     * cost of a slightly worse compression ratio.</p>
+     */
     public static class GZIPContentTransformer implements ContentTransformer
     {
         private static final Logger logger = Log.getLogger(GZIPContentTransformer.class);
@@ -766,14 +816,25 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
         private final ContentTransformer transformer;
         private final ByteArrayOutputStream out;
         private final GZIPOutputStream gzipOut;
+        private final boolean syncFlush;
 
         public GZIPContentTransformer(ContentTransformer transformer)
+        {
+            this(transformer, false);
+        }
+
+        /**
+         * @param transformer the transformer of the gunzipped content
+         * @param syncFlush whether the gzipped content is flushed for every chunk
+         */
+        public GZIPContentTransformer(ContentTransformer transformer, boolean syncFlush)
         {
             try
             {
                 this.transformer = transformer;
+                this.syncFlush = syncFlush;
                 this.out = new ByteArrayOutputStream();
-                this.gzipOut = new GZIPOutputStream(out);
+                this.gzipOut = new GZIPOutputStream(out, syncFlush);
             }
             catch (IOException x)
             {
@@ -819,6 +880,8 @@ public class AsyncMiddleManServlet extends AbstractProxyServlet
                 write(gzipOut, buffer);
             if (finished)
                 gzipOut.close();
+            else if (syncFlush)
+                gzipOut.flush();
             byte[] gzipBytes = out.toByteArray();
             out.reset();
             return ByteBuffer.wrap(gzipBytes);
@@ -21,6 +21,7 @@ package org.eclipse.jetty.proxy;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
+import java.util.function.Consumer;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletConfig;
@@ -35,6 +36,8 @@ import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 
@@ -66,11 +69,39 @@ public class AsyncProxyServlet extends ProxyServlet
 
     @Override
     protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, byte[] buffer, int offset, int length, Callback callback)
+    {
+        if (_log.isDebugEnabled())
+            _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), length);
+        writeResponseContent(request, response, proxyResponse, writeListener -> writeListener.data(buffer, offset, length, callback), callback);
+    }
+
+    @Override
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, ByteBuffer content, Callback callback)
     {
         try
         {
+            if (!(response.getOutputStream() instanceof HttpOutput) || !response.isCommitted())
+            {
+                // Wrapped output cannot write the ByteBuffer, and content
+                // before the commit is copied so that it is aggregated.
+                super.onResponseContent(request, response, proxyResponse, content, callback);
+                return;
+            }
             if (_log.isDebugEnabled())
-                _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), length);
+                _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), content.remaining());
+            writeResponseContent(request, response, proxyResponse, writeListener -> writeListener.data(content, callback), callback);
+        }
+        catch (Throwable x)
+        {
+            callback.failed(x);
+            proxyResponse.abort(x);
+        }
+    }
+
+    private void writeResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, Consumer<StreamWriter> data, Callback callback)
+    {
+        try
+        {
             StreamWriter writeListener = (StreamWriter)request.getAttribute(WRITE_LISTENER_ATTRIBUTE);
             if (writeListener == null)
             {
@@ -80,14 +111,14 @@ public class AsyncProxyServlet extends ProxyServlet
                 // Set the data to write before calling setWriteListener(), because
                 // setWriteListener() may trigger the call to onWritePossible() on
                 // a different thread and we would have a race.
-                writeListener.data(buffer, offset, length, callback);
+                data.accept(writeListener);
 
                 // Setting the WriteListener triggers an invocation to onWritePossible().
                 response.getOutputStream().setWriteListener(writeListener);
             }
             else
             {
-                writeListener.data(buffer, offset, length, callback);
+                data.accept(writeListener);
                 writeListener.onWritePossible();
             }
         }
@@ -171,6 +202,40 @@ public class AsyncProxyServlet extends ProxyServlet
 
             while (input.isReady())
             {
+                if (isZeroCopy() && input instanceof HttpInput)
+                {
+                    HttpInput.Content content = ((HttpInput)input).readContent();
+                    if (content != null)
+                    {
+                        if (_log.isDebugEnabled())
+                            _log.debug("{} proxying content to upstream: {} bytes", requestId, content.remaining());
+                        onRequestContent(request, proxyRequest, provider, content.getByteBuffer(), new Callback.Nested(this)
+                        {
+                            @Override
+                            public void succeeded()
+                            {
+                                content.succeeded();
+                                super.succeeded();
+                            }
+
+                            @Override
+                            public void failed(Throwable x)
+                            {
+                                content.failed(x);
+                                super.failed(x);
+                            }
+                        });
+                        return Action.SCHEDULED;
+                    }
+                    if (input.isFinished())
+                    {
+                        if (_log.isDebugEnabled())
+                            _log.debug("{} asynchronous read complete on {}", requestId, input);
+                        return Action.SUCCEEDED;
+                    }
+                    continue;
+                }
+
                 int read = input.read(buffer);
                 if (_log.isDebugEnabled())
                     _log.debug("{} asynchronous read {} bytes on {}", requestId, read, input);
@@ -199,6 +264,21 @@ public class AsyncProxyServlet extends ProxyServlet
             provider.offer(ByteBuffer.wrap(buffer, offset, length), callback);
         }
 
+        /**
+         * <p>Offers the given client request content to the proxy request, in
+         * {@link #isZeroCopy() zero copy} mode.</p>
+         *
+         * @param request the client request
+         * @param proxyRequest the proxy request
+         * @param provider the proxy request content provider
+         * @param content the client request content, valid until the callback is completed
+         * @param callback the callback to complete when the content has been written
+         */
+        protected void onRequestContent(HttpServletRequest request, Request proxyRequest, DeferredContentProvider provider, ByteBuffer content, Callback callback)
+        {
+            provider.offer(content, callback);
+        }
+
         @Override
         public void failed(Throwable x)
         {
@@ -212,6 +292,7 @@ public class AsyncProxyServlet extends ProxyServlet
         private final HttpServletRequest request;
         private final Response proxyResponse;
         private WriteState state;
+        private ByteBuffer content;
         private byte[] buffer;
         private int offset;
         private int length;
@@ -235,6 +316,16 @@ public class AsyncProxyServlet extends ProxyServlet
             this.callback = callback;
         }
 
+        protected void data(ByteBuffer content, Callback callback)
+        {
+            if (state != WriteState.IDLE)
+                throw new WritePendingException();
+            this.state = WriteState.READY;
+            this.content = content;
+            this.length = content.remaining();
+            this.callback = callback;
+        }
+
         @Override
         public void onWritePossible() throws IOException
         {
@@ -245,7 +336,10 @@ public class AsyncProxyServlet extends ProxyServlet
                 // There is data to write.
                 if (_log.isDebugEnabled())
                     _log.debug("{} asynchronous write start of {} bytes on {}", requestId, length, output);
-                output.write(buffer, offset, length);
+                if (content != null)
+                    ((HttpOutput)output).write(content);
+                else
+                    output.write(buffer, offset, length);
                 state = WriteState.PENDING;
                 if (output.isReady())
                 {
@@ -274,6 +368,7 @@ public class AsyncProxyServlet extends ProxyServlet
 
         protected void complete()
         {
+            content = null;
             buffer = null;
             offset = 0;
             length = 0;
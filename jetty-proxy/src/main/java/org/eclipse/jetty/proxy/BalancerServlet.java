@@ -18,25 +18,81 @@
 
 package org.eclipse.jetty.proxy;
 
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.nio.channels.UnresolvedAddressException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import javax.servlet.ServletException;
 import javax.servlet.UnavailableException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.Loader;
 import org.eclipse.jetty.util.URIUtil;
-
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * <p>A {@link ProxyServlet} that balances the requests among a set of backend servers,
+ * the balancer members.</p>
+ * <p>The following init parameters may be used to configure the servlet,
+ * in addition to those of {@link ProxyServlet}:</p>
+ * <ul>
+ * <li>balancerMember.&lt;name&gt;.proxyTo - the URI of the balancer member with the given name</li>
+ * <li>stickySessions - whether requests with a session are sent to the balancer member
+ * whose name is the session id suffix, when that member is available</li>
+ * <li>proxyPassReverse - whether the redirect headers pointing to balancer members are rewritten</li>
+ * <li>strategy - the {@link Strategy} that selects a balancer member, either one of
+ * {@code roundRobin} (the default), {@code leastRequests}, {@code peakEwma} and
+ * {@code powerOfTwoChoices}, or the name of a class implementing {@link Strategy}</li>
+ * <li>latencyDecayTime - the time, in milliseconds, over which the latency samples
+ * of balancer members decay, defaults to 10000</li>
+ * <li>maxConsecutiveFailures - the number of consecutive failures (connect failures,
+ * timeouts, or 502, 503 and 504 responses) after which a balancer member is ejected,
+ * defaults to 0 (disabled)</li>
+ * <li>maxLatency - the average latency, in milliseconds, above which a balancer
+ * member is ejected, defaults to 0 (disabled)</li>
+ * <li>ejectionTime - the time, in milliseconds, an ejected balancer member is not
+ * selected for, defaults to 30000</li>
+ * <li>healthCheckPath - the path to periodically request to each balancer member to
+ * verify that it is healthy, defaults to none (no active health checks)</li>
+ * <li>healthCheckInterval - the interval, in milliseconds, between health checks,
+ * defaults to 10000</li>
+ * <li>healthCheckTimeout - the timeout, in milliseconds, of health check requests,
+ * defaults to 5000</li>
+ * </ul>
+ * <p>Balancer members that are ejected or that failed their last health check are not
+ * selected, unless no balancer member is available, in which case all of them are
+ * candidates for selection.</p>
+ * <p>The {@link BalancerMember}s are added as beans to the {@link HttpClient} (see
+ * {@link #getHttpClient()}), so their statistics are available via JMX when the
+ * {@link HttpClient} is exported.</p>
+ */
 public class BalancerServlet extends ProxyServlet
 {
     private static final String BALANCER_MEMBER_PREFIX = "balancerMember.";
+    private static final String BALANCER_MEMBER_ATTRIBUTE = BalancerServlet.class.getName() + ".balancerMember";
     private static final List<String> FORBIDDEN_CONFIG_PARAMETERS;
 
     static
@@ -63,9 +119,13 @@ public class BalancerServlet extends ProxyServlet
     private static final String JSESSIONID_URL_PREFIX = JSESSIONID + "=";
 
     private final List<BalancerMember> _balancerMembers = new ArrayList<>();
-    private final AtomicLong counter = new AtomicLong();
+    private final List<HealthCheck> _healthChecks = new ArrayList<>();
     private boolean _stickySessions;
     private boolean _proxyPassReverse;
+    private Strategy _strategy;
+    private int _maxConsecutiveFailures;
+    private long _maxLatency;
+    private long _ejectionTime;
 
     @Override
     public void init() throws ServletException
@@ -75,6 +135,18 @@ public class BalancerServlet extends ProxyServlet
         initStickySessions();
         initBalancers();
         initProxyPassReverse();
+        initStrategy();
+        initOutlierEjection();
+        initHealthChecks();
+    }
+
+    @Override
+    public void destroy()
+    {
+        for (HealthCheck healthCheck : _healthChecks)
+            healthCheck.cancel();
+        _healthChecks.clear();
+        super.destroy();
     }
 
     private void validateConfig() throws ServletException
@@ -95,6 +167,8 @@ public class BalancerServlet extends ProxyServlet
 
     private void initBalancers() throws ServletException
     {
+        String value = getServletConfig().getInitParameter("latencyDecayTime");
+        long latencyDecayTime = value == null ? 10000 : Long.parseLong(value);
         Set<BalancerMember> members = new HashSet<>();
         for (String balancerName : getBalancerNames())
         {
@@ -102,9 +176,11 @@ public class BalancerServlet extends ProxyServlet
             String proxyTo = getServletConfig().getInitParameter(memberProxyToParam);
             if (proxyTo == null || proxyTo.trim().length() == 0)
                 throw new UnavailableException(memberProxyToParam + " parameter is empty.");
-            members.add(new BalancerMember(balancerName, proxyTo));
+            members.add(new BalancerMember(balancerName, proxyTo, latencyDecayTime));
         }
         _balancerMembers.addAll(members);
+        for (BalancerMember member : _balancerMembers)
+            getHttpClient().addBean(member);
     }
 
     private void initProxyPassReverse()
@@ -112,6 +188,90 @@ public class BalancerServlet extends ProxyServlet
         _proxyPassReverse = Boolean.parseBoolean(getServletConfig().getInitParameter("proxyPassReverse"));
     }
 
+    private void initStrategy() throws ServletException
+    {
+        String value = getServletConfig().getInitParameter("strategy");
+        _strategy = newStrategy(value == null ? "roundRobin" : value.trim());
+    }
+
+    /**
+     * <p>Creates the {@link Strategy} that selects the balancer members.</p>
+     *
+     * @param name the value of the {@code strategy} init parameter
+     * @return a new strategy
+     * @throws ServletException if the strategy cannot be created
+     */
+    protected Strategy newStrategy(String name) throws ServletException
+    {
+        switch (name)
+        {
+            case "roundRobin":
+                return new RoundRobinStrategy();
+            case "leastRequests":
+                return new LeastRequestsStrategy();
+            case "peakEwma":
+                return new PeakEwmaStrategy();
+            case "powerOfTwoChoices":
+                return new PowerOfTwoChoicesStrategy();
+            default:
+            {
+                try
+                {
+                    Class<?> strategyClass = Loader.loadClass(BalancerServlet.class, name);
+                    return strategyClass.asSubclass(Strategy.class).getDeclaredConstructor().newInstance();
+                }
+                catch (Exception x)
+                {
+                    throw new UnavailableException("Invalid strategy " + name + ": " + x);
+                }
+            }
+        }
+    }
+
+    private void initOutlierEjection()
+    {
+        String value = getServletConfig().getInitParameter("maxConsecutiveFailures");
+        _maxConsecutiveFailures = value == null ? 0 : Integer.parseInt(value);
+        value = getServletConfig().getInitParameter("maxLatency");
+        _maxLatency = value == null ? 0 : Long.parseLong(value);
+        value = getServletConfig().getInitParameter("ejectionTime");
+        _ejectionTime = value == null ? 30000 : Long.parseLong(value);
+    }
+
+    private void initHealthChecks()
+    {
+        String path = getServletConfig().getInitParameter("healthCheckPath");
+        if (path == null)
+            return;
+        String value = getServletConfig().getInitParameter("healthCheckInterval");
+        long interval = value == null ? 10000 : Long.parseLong(value);
+        value = getServletConfig().getInitParameter("healthCheckTimeout");
+        long timeout = value == null ? 5000 : Long.parseLong(value);
+        for (BalancerMember member : _balancerMembers)
+        {
+            URI uri = URI.create(member.getProxyTo() + "/" + path).normalize();
+            HealthCheck healthCheck = new HealthCheck(member, uri, interval, timeout);
+            _healthChecks.add(healthCheck);
+            healthCheck.schedule();
+        }
+    }
+
+    /**
+     * @return the balancer members
+     */
+    public List<BalancerMember> getBalancerMembers()
+    {
+        return Collections.unmodifiableList(_balancerMembers);
+    }
+
+    /**
+     * @return the strategy that selects the balancer members
+     */
+    public Strategy getStrategy()
+    {
+        return _strategy;
+    }
+
     private Set<String> getBalancerNames() throws ServletException
     {
         Set<String> names = new HashSet<>();
@@ -135,6 +295,7 @@ public class BalancerServlet extends ProxyServlet
         BalancerMember balancerMember = selectBalancerMember(request);
         if (_log.isDebugEnabled())
             _log.debug("Selected {}", balancerMember);
+        request.setAttribute(BALANCER_MEMBER_ATTRIBUTE, balancerMember);
         String path = request.getRequestURI();
         String query = request.getQueryString();
         if (query != null)
@@ -144,18 +305,68 @@ public class BalancerServlet extends ProxyServlet
 
     private BalancerMember selectBalancerMember(HttpServletRequest request)
     {
+        long now = System.nanoTime();
         if (_stickySessions)
         {
             String name = getBalancerMemberNameFromSessionId(request);
             if (name != null)
             {
                 BalancerMember balancerMember = findBalancerMemberByName(name);
-                if (balancerMember != null)
+                if (balancerMember != null && balancerMember.isAvailable(now))
                     return balancerMember;
             }
         }
-        int index = (int)(counter.getAndIncrement() % _balancerMembers.size());
-        return _balancerMembers.get(index);
+        return _strategy.select(getAvailableBalancerMembers(now));
+    }
+
+    private List<BalancerMember> getAvailableBalancerMembers(long now)
+    {
+        List<BalancerMember> available = null;
+        for (int i = 0; i < _balancerMembers.size(); ++i)
+        {
+            BalancerMember balancerMember = _balancerMembers.get(i);
+            if (balancerMember.isAvailable(now))
+            {
+                if (available != null)
+                    available.add(balancerMember);
+            }
+            else if (available == null)
+            {
+                available = new ArrayList<>(_balancerMembers.subList(0, i));
+            }
+        }
+        // If no member is available, it is better to
+        // try any of them rather than to fail all requests.
+        if (available == null || available.isEmpty())
+            return _balancerMembers;
+        return available;
+    }
+
+    @Override
+    protected void sendProxyRequest(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Request proxyRequest)
+    {
+        BalancerMember balancerMember = (BalancerMember)clientRequest.getAttribute(BALANCER_MEMBER_ATTRIBUTE);
+        if (balancerMember != null)
+        {
+            MemberExchange exchange = new MemberExchange(balancerMember);
+            proxyRequest.onResponseHeaders(exchange).onComplete(exchange);
+        }
+        super.sendProxyRequest(clientRequest, proxyResponse, proxyRequest);
+    }
+
+    private void onBalancerMemberComplete(BalancerMember balancerMember, boolean failed)
+    {
+        if (balancerMember.isEjected(System.nanoTime()))
+            return;
+        boolean eject = _maxConsecutiveFailures > 0 && balancerMember.getConsecutiveFailures() >= _maxConsecutiveFailures;
+        if (!eject && !failed)
+            eject = _maxLatency > 0 && balancerMember.getLatency() >= _maxLatency;
+        if (eject)
+        {
+            if (_log.isDebugEnabled())
+                _log.debug("Ejecting {} for {} ms", balancerMember, _ejectionTime);
+            balancerMember.eject(_ejectionTime);
+        }
     }
 
     private BalancerMember findBalancerMemberByName(String name)
@@ -259,24 +470,164 @@ public class BalancerServlet extends ProxyServlet
         return true;
     }
 
-    private static class BalancerMember
+    /**
+     * <p>The strategy that selects the balancer member a request is proxied to.</p>
+     */
+    public interface Strategy
+    {
+        /**
+         * @param balancerMembers the non empty list of candidate balancer members
+         * @return the selected balancer member
+         */
+        BalancerMember select(List<BalancerMember> balancerMembers);
+    }
+
+    /**
+     * <p>Selects the balancer members in turn.</p>
+     */
+    public static class RoundRobinStrategy implements Strategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            int index = (int)(counter.getAndIncrement() % balancerMembers.size());
+            return balancerMembers.get(index);
+        }
+    }
+
+    /**
+     * <p>Selects the balancer member with the least cost, as defined by a {@link Comparator}.</p>
+     * <p>The balancer members are compared starting at a rotating offset, so that
+     * members with the same cost are selected in turn.</p>
+     */
+    public static class LeastCostStrategy implements Strategy
+    {
+        private final AtomicLong counter = new AtomicLong();
+        private final Comparator<BalancerMember> comparator;
+
+        public LeastCostStrategy(Comparator<BalancerMember> comparator)
+        {
+            this.comparator = comparator;
+        }
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            int size = balancerMembers.size();
+            int offset = (int)(counter.getAndIncrement() % size);
+            BalancerMember result = balancerMembers.get(offset);
+            for (int i = 1; i < size; ++i)
+            {
+                BalancerMember balancerMember = balancerMembers.get((offset + i) % size);
+                if (comparator.compare(balancerMember, result) < 0)
+                    result = balancerMember;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * <p>Selects the balancer member with the least outstanding requests.</p>
+     */
+    public static class LeastRequestsStrategy extends LeastCostStrategy
     {
+        public LeastRequestsStrategy()
+        {
+            super(Comparator.comparingInt(BalancerMember::getOutstandingRequests));
+        }
+    }
+
+    /**
+     * <p>Selects the balancer member with the least {@link BalancerMember#getCost() cost},
+     * that is the peak exponentially weighted moving average of the latency multiplied
+     * by the number of outstanding requests.</p>
+     */
+    public static class PeakEwmaStrategy extends LeastCostStrategy
+    {
+        public PeakEwmaStrategy()
+        {
+            super(Comparator.comparingDouble(BalancerMember::getCost));
+        }
+    }
+
+    /**
+     * <p>Selects two random balancer members and picks the one with the least cost,
+     * by default the one with the least outstanding requests.</p>
+     * <p>This strategy avoids the herd behavior of always selecting the least loaded
+     * member, since the load information may be stale.</p>
+     */
+    public static class PowerOfTwoChoicesStrategy implements Strategy
+    {
+        private final Comparator<BalancerMember> comparator;
+
+        public PowerOfTwoChoicesStrategy()
+        {
+            this(Comparator.comparingInt(BalancerMember::getOutstandingRequests));
+        }
+
+        public PowerOfTwoChoicesStrategy(Comparator<BalancerMember> comparator)
+        {
+            this.comparator = comparator;
+        }
+
+        @Override
+        public BalancerMember select(List<BalancerMember> balancerMembers)
+        {
+            int size = balancerMembers.size();
+            if (size == 1)
+                return balancerMembers.get(0);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int index1 = random.nextInt(size);
+            int index2 = random.nextInt(size - 1);
+            if (index2 >= index1)
+                ++index2;
+            BalancerMember member1 = balancerMembers.get(index1);
+            BalancerMember member2 = balancerMembers.get(index2);
+            return comparator.compare(member2, member1) < 0 ? member2 : member1;
+        }
+    }
+
+    @ManagedObject("A balancer member")
+    public static class BalancerMember
+    {
+        private final AtomicInteger _outstandingRequests = new AtomicInteger();
+        private final AtomicInteger _consecutiveFailures = new AtomicInteger();
+        private final LongAdder _requests = new LongAdder();
+        private final LongAdder _failures = new LongAdder();
+        private final LongAdder _ejections = new LongAdder();
         private final String _name;
         private final String _proxyTo;
         private final URI _backendURI;
+        private final long _latencyDecayTime;
+        private long _latencyTime;
+        private double _latency;
+        private volatile boolean _ejected;
+        private volatile long _ejectedUntil;
+        private volatile boolean _healthy = true;
 
         public BalancerMember(String name, String proxyTo)
+        {
+            this(name, proxyTo, 10000);
+        }
+
+        public BalancerMember(String name, String proxyTo, long latencyDecayTime)
         {
             _name = name;
             _proxyTo = proxyTo;
             _backendURI = URI.create(_proxyTo).normalize();
+            _latencyDecayTime = TimeUnit.MILLISECONDS.toNanos(latencyDecayTime);
+            _latencyTime = System.nanoTime();
         }
 
+        @ManagedAttribute("The balancer member name")
         public String getName()
         {
             return _name;
         }
 
+        @ManagedAttribute("The URI requests are proxied to")
         public String getProxyTo()
         {
             return _proxyTo;
@@ -287,10 +638,166 @@ public class BalancerServlet extends ProxyServlet
             return _backendURI;
         }
 
+        @ManagedAttribute("The number of outstanding requests")
+        public int getOutstandingRequests()
+        {
+            return _outstandingRequests.get();
+        }
+
+        @ManagedAttribute("The number of requests")
+        public long getRequests()
+        {
+            return _requests.longValue();
+        }
+
+        @ManagedAttribute("The number of failed requests")
+        public long getFailures()
+        {
+            return _failures.longValue();
+        }
+
+        @ManagedAttribute("The number of consecutive failed requests")
+        public int getConsecutiveFailures()
+        {
+            return _consecutiveFailures.get();
+        }
+
+        @ManagedAttribute("The number of times this member has been ejected")
+        public long getEjections()
+        {
+            return _ejections.longValue();
+        }
+
+        /**
+         * @return the peak exponentially weighted moving average of the latency, in milliseconds
+         */
+        @ManagedAttribute("The peak EWMA of the latency in ms")
+        public double getLatency()
+        {
+            synchronized (this)
+            {
+                return _latency;
+            }
+        }
+
+        /**
+         * @return the latency multiplied by the number of outstanding requests plus one
+         */
+        @ManagedAttribute("The cost of selecting this member")
+        public double getCost()
+        {
+            return (getLatency() + 1) * (getOutstandingRequests() + 1);
+        }
+
+        @ManagedAttribute("Whether the last health check succeeded")
+        public boolean isHealthy()
+        {
+            return _healthy;
+        }
+
+        public void setHealthy(boolean healthy)
+        {
+            _healthy = healthy;
+        }
+
+        @ManagedAttribute("Whether this member is ejected")
+        public boolean isEjected()
+        {
+            return isEjected(System.nanoTime());
+        }
+
+        boolean isEjected(long now)
+        {
+            if (!_ejected)
+                return false;
+            if (now - _ejectedUntil < 0)
+                return true;
+            _ejected = false;
+            return false;
+        }
+
+        /**
+         * @param now the current time in nanoseconds
+         * @return whether this member is healthy and not ejected
+         */
+        public boolean isAvailable(long now)
+        {
+            return isHealthy() && !isEjected(now);
+        }
+
+        /**
+         * <p>Ejects this member for the given time.</p>
+         *
+         * @param time the ejection time in milliseconds
+         */
+        public void eject(long time)
+        {
+            _ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(time);
+            _ejected = true;
+            _consecutiveFailures.set(0);
+            _ejections.increment();
+        }
+
+        @ManagedOperation(value = "Reinstates this member if ejected", impact = "ACTION")
+        public void reinstate()
+        {
+            _ejected = false;
+        }
+
+        @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+        public void resetStats()
+        {
+            _requests.reset();
+            _failures.reset();
+            _ejections.reset();
+        }
+
+        void onRequestBegin()
+        {
+            _outstandingRequests.incrementAndGet();
+            _requests.increment();
+        }
+
+        void onLatency(long latency)
+        {
+            double sample = (double)latency / TimeUnit.MILLISECONDS.toNanos(1);
+            long now = System.nanoTime();
+            synchronized (this)
+            {
+                // Peak EWMA: latency spikes are taken immediately,
+                // while lower latencies decay the average with time.
+                if (sample > _latency)
+                {
+                    _latency = sample;
+                }
+                else
+                {
+                    double weight = Math.exp(-(double)Math.max(0, now - _latencyTime) / _latencyDecayTime);
+                    _latency = _latency * weight + sample * (1 - weight);
+                }
+                _latencyTime = now;
+            }
+        }
+
+        void onRequestComplete(boolean failed)
+        {
+            _outstandingRequests.decrementAndGet();
+            if (failed)
+            {
+                _failures.increment();
+                _consecutiveFailures.incrementAndGet();
+            }
+            else
+            {
+                _consecutiveFailures.set(0);
+            }
+        }
+
         @Override
         public String toString()
         {
-            return String.format("%s[name=%s,proxyTo=%s]", getClass().getSimpleName(), _name, _proxyTo);
+            return String.format("%s[name=%s,proxyTo=%s,outstanding=%d,latency=%.3f,healthy=%b,ejected=%b]",
+                    getClass().getSimpleName(), _name, _proxyTo, getOutstandingRequests(), getLatency(), isHealthy(), isEjected());
         }
 
         @Override
@@ -312,4 +819,114 @@ public class BalancerServlet extends ProxyServlet
             return _name.equals(that._name);
         }
     }
+
+    private class MemberExchange implements Response.HeadersListener, Response.CompleteListener
+    {
+        private final BalancerMember balancerMember;
+        private final long begin;
+        private boolean latency;
+
+        private MemberExchange(BalancerMember balancerMember)
+        {
+            this.balancerMember = balancerMember;
+            this.begin = System.nanoTime();
+            balancerMember.onRequestBegin();
+        }
+
+        @Override
+        public void onHeaders(Response response)
+        {
+            latency = true;
+            balancerMember.onLatency(System.nanoTime() - begin);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            // Failures without a response, such as timeouts, count as latency.
+            if (!latency)
+                balancerMember.onLatency(System.nanoTime() - begin);
+            boolean failed = isBalancerMemberFailure(result);
+            balancerMember.onRequestComplete(failed);
+            onBalancerMemberComplete(balancerMember, failed);
+        }
+
+        private boolean isBalancerMemberFailure(Result result)
+        {
+            // Other failures, such as aborts because the client went
+            // away, and other 5xx responses, such as application errors,
+            // do not tell whether the balancer member is healthy.
+            if (result.isFailed())
+            {
+                Throwable failure = result.getFailure();
+                return failure instanceof ConnectException ||
+                        failure instanceof UnresolvedAddressException ||
+                        failure instanceof SocketTimeoutException ||
+                        failure instanceof TimeoutException;
+            }
+            switch (result.getResponse().getStatus())
+            {
+                case HttpStatus.BAD_GATEWAY_502:
+                case HttpStatus.SERVICE_UNAVAILABLE_503:
+                case HttpStatus.GATEWAY_TIMEOUT_504:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    private class HealthCheck implements Runnable, Response.CompleteListener
+    {
+        private final BalancerMember balancerMember;
+        private final URI uri;
+        private final long interval;
+        private final long timeout;
+        private volatile Scheduler.Task task;
+        private volatile boolean cancelled;
+
+        private HealthCheck(BalancerMember balancerMember, URI uri, long interval, long timeout)
+        {
+            this.balancerMember = balancerMember;
+            this.uri = uri;
+            this.interval = interval;
+            this.timeout = timeout;
+        }
+
+        private void schedule()
+        {
+            HttpClient client = getHttpClient();
+            if (!cancelled && client.isRunning())
+                task = client.getScheduler().schedule(this, interval, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancel()
+        {
+            cancelled = true;
+            Scheduler.Task task = this.task;
+            if (task != null)
+                task.cancel();
+        }
+
+        @Override
+        public void run()
+        {
+            getHttpClient().newRequest(uri)
+                    .timeout(timeout, TimeUnit.MILLISECONDS)
+                    .send(this);
+        }
+
+        @Override
+        public void onComplete(Result result)
+        {
+            boolean healthy = result.isSucceeded() && result.getResponse().getStatus() / 100 == 2;
+            if (healthy != balancerMember.isHealthy())
+            {
+                if (_log.isDebugEnabled())
+                    _log.debug("Health check {} for {}", healthy ? "succeeded" : "failed", balancerMember);
+                balancerMember.setHealthy(healthy);
+            }
+            schedule();
+        }
+    }
 }
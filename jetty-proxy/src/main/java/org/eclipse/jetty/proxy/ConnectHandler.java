@@ -30,6 +30,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
@@ -57,20 +58,37 @@ import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.HostPort;
 import org.eclipse.jetty.util.Promise;
 import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.CounterStatistic;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * <p>Implementation of a {@link Handler} that supports HTTP CONNECT.</p>
+ * <p>The tunnel between the client and the server is made of a
+ * {@link DownstreamConnection} and an {@link UpstreamConnection}, that
+ * pipe the bytes between the two endpoints without retaining buffers
+ * while the tunnel is idle.</p>
+ * <p>This handler tracks the number of tunnels and the number of bytes
+ * tunneled; {@link Connection.Listener} beans added to this handler,
+ * such as {@link org.eclipse.jetty.io.ConnectionStatistics}, are added
+ * to the tunnel connections, for example to track the throughput of
+ * the tunnels.</p>
  */
+@ManagedObject("HTTP CONNECT proxy handler")
 public class ConnectHandler extends HandlerWrapper
 {
     protected static final Logger LOG = Log.getLogger(ConnectHandler.class);
 
     private final Set<String> whiteList = new HashSet<>();
     private final Set<String> blackList = new HashSet<>();
+    private final CounterStatistic tunnels = new CounterStatistic();
+    private final LongAdder upstreamBytes = new LongAdder();
+    private final LongAdder downstreamBytes = new LongAdder();
     private Executor executor;
     private Scheduler scheduler;
     private ByteBufferPool bufferPool;
@@ -161,6 +179,44 @@ public class ConnectHandler extends HandlerWrapper
         this.bufferSize = bufferSize;
     }
 
+    @ManagedAttribute("The number of open tunnels")
+    public long getTunnels()
+    {
+        return tunnels.getCurrent();
+    }
+
+    @ManagedAttribute("The max number of open tunnels")
+    public long getTunnelsMax()
+    {
+        return tunnels.getMax();
+    }
+
+    @ManagedAttribute("The total number of tunnels opened")
+    public long getTunnelsTotal()
+    {
+        return tunnels.getTotal();
+    }
+
+    @ManagedAttribute("The number of bytes tunneled from the clients to the servers")
+    public long getUpstreamBytes()
+    {
+        return upstreamBytes.longValue();
+    }
+
+    @ManagedAttribute("The number of bytes tunneled from the servers to the clients")
+    public long getDownstreamBytes()
+    {
+        return downstreamBytes.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        tunnels.reset();
+        upstreamBytes.reset();
+        downstreamBytes.reset();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -332,6 +388,7 @@ public class ConnectHandler extends HandlerWrapper
         EndPoint downstreamEndPoint = httpConnection.getEndPoint();
         DownstreamConnection downstreamConnection = newDownstreamConnection(downstreamEndPoint, context);
         downstreamConnection.setInputBufferSize(getBufferSize());
+        addConnectionListeners(downstreamConnection);
 
         upstreamConnection.setConnection(downstreamConnection);
         downstreamConnection.setConnection(upstreamConnection);
@@ -402,6 +459,12 @@ public class ConnectHandler extends HandlerWrapper
     {
     }
 
+    private void addConnectionListeners(Connection connection)
+    {
+        for (Connection.Listener listener : getBeans(Connection.Listener.class))
+            connection.addListener(listener);
+    }
+
     private void upgradeConnection(HttpServletRequest request, HttpServletResponse response, Connection connection)
     {
         // Set the new connection as request attribute and change the status to 101
@@ -509,6 +572,7 @@ public class ConnectHandler extends HandlerWrapper
             ConnectContext connectContext = (ConnectContext)attachment;
             UpstreamConnection connection = newUpstreamConnection(endpoint, connectContext);
             connection.setInputBufferSize(getBufferSize());
+            addConnectionListeners(connection);
             return connection;
         }
 
@@ -577,14 +641,25 @@ public class ConnectHandler extends HandlerWrapper
         public void onOpen()
         {
             super.onOpen();
+            tunnels.increment();
             onConnectSuccess(connectContext, UpstreamConnection.this);
             fillInterested();
         }
 
+        @Override
+        public void onClose()
+        {
+            tunnels.decrement();
+            super.onClose();
+        }
+
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
-            return ConnectHandler.this.read(endPoint, buffer, getContext());
+            int read = ConnectHandler.this.read(endPoint, buffer, getContext());
+            if (read > 0)
+                downstreamBytes.add(read);
+            return read;
         }
 
         @Override
@@ -613,7 +688,12 @@ public class ConnectHandler extends HandlerWrapper
         public void onOpen()
         {
             super.onOpen();
+            ByteBuffer buffer = this.buffer;
+            // Do not retain the buffer for the lifetime of the connection.
+            this.buffer = null;
             final int remaining = buffer.remaining();
+            if (remaining > 0)
+                upstreamBytes.add(remaining);
             write(getConnection().getEndPoint(), buffer, new Callback()
             {
                 @Override
@@ -638,7 +718,10 @@ public class ConnectHandler extends HandlerWrapper
         @Override
         protected int read(EndPoint endPoint, ByteBuffer buffer) throws IOException
         {
-            return ConnectHandler.this.read(endPoint, buffer, getContext());
+            int read = ConnectHandler.this.read(endPoint, buffer, getContext());
+            if (read > 0)
+                upstreamBytes.add(read);
+            return read;
         }
 
         @Override
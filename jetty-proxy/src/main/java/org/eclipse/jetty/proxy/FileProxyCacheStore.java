@@ -0,0 +1,297 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.util.TypeUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link ProxyCacheStore} that keeps the entries in files of a directory,
+ * bounded by their total size.</p>
+ * <p>The least recently used entries are evicted when the maximum size is exceeded.
+ * The entries found in the directory when this store is started are reused.</p>
+ * <p>This store is typically used as the overflow store of a {@link MemoryProxyCacheStore}.</p>
+ */
+@ManagedObject("A file proxy cache store")
+public class FileProxyCacheStore extends AbstractLifeCycle implements ProxyCacheStore
+{
+    private static final Logger LOG = Log.getLogger(FileProxyCacheStore.class);
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".cache";
+
+    private final Map<String, Long> files = new LinkedHashMap<>(16, 0.75F, true);
+    private final Path directory;
+    private long maxSize;
+    private long size;
+
+    public FileProxyCacheStore(Path directory)
+    {
+        this(directory, 1024 * 1024 * 1024);
+    }
+
+    public FileProxyCacheStore(Path directory, long maxSize)
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    @ManagedAttribute("The directory where the entries are stored")
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    @ManagedAttribute("The max total size of the entries, in bytes")
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    @ManagedAttribute("The total size of the entries, in bytes")
+    public long getSize()
+    {
+        synchronized (this)
+        {
+            return size;
+        }
+    }
+
+    @ManagedAttribute("The number of entries")
+    public int getEntryCount()
+    {
+        synchronized (this)
+        {
+            return files.size();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX))
+        {
+            for (Path path : stream)
+            {
+                try (DataInputStream input = new DataInputStream(Files.newInputStream(path)))
+                {
+                    if (input.readInt() != VERSION)
+                        throw new IOException("Invalid version");
+                    String key = input.readUTF();
+                    if (!path.equals(toPath(key)))
+                        throw new IOException("Invalid key");
+                    long length = Files.size(path);
+                    synchronized (this)
+                    {
+                        files.put(key, length);
+                        size += length;
+                    }
+                }
+                catch (IOException x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Discarding " + path, x);
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        synchronized (this)
+        {
+            files.clear();
+            size = 0;
+        }
+    }
+
+    @Override
+    public ProxyCacheEntry get(String key)
+    {
+        synchronized (this)
+        {
+            if (!files.containsKey(key))
+                return null;
+        }
+
+        Path path = toPath(key);
+        try (InputStream stream = Files.newInputStream(path))
+        {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+            if (input.readInt() != VERSION)
+                throw new IOException("Invalid version");
+            ProxyCacheEntry entry = ProxyCacheEntry.readFrom(input);
+            if (!key.equals(entry.getKey()))
+                throw new IOException("Invalid key");
+            return entry;
+        }
+        catch (IOException x)
+        {
+            LOG.warn("Could not read " + path, x);
+            remove(key);
+            return null;
+        }
+    }
+
+    @Override
+    public void put(ProxyCacheEntry entry)
+    {
+        String key = entry.getKey();
+        Path path = toPath(key);
+        long length;
+        try
+        {
+            Path temp = Files.createTempFile(directory, null, ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temp))
+            {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+                output.writeInt(VERSION);
+                entry.writeTo(output);
+                output.flush();
+            }
+            length = Files.size(temp);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException x)
+        {
+            LOG.warn("Could not write " + path, x);
+            remove(key);
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (this)
+        {
+            Long existing = files.put(key, length);
+            if (existing != null)
+                size -= existing;
+            size += length;
+
+            Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+            while (size > maxSize && iterator.hasNext())
+            {
+                Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                size -= eldest.getValue();
+                evicted.add(eldest.getKey());
+            }
+        }
+
+        for (String eldest : evicted)
+            delete(eldest);
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        boolean removed;
+        synchronized (this)
+        {
+            Long existing = files.remove(key);
+            removed = existing != null;
+            if (removed)
+                size -= existing;
+        }
+        if (removed)
+            delete(key);
+    }
+
+    @Override
+    @ManagedOperation(value = "Removes all the entries", impact = "ACTION")
+    public void clear()
+    {
+        List<String> keys;
+        synchronized (this)
+        {
+            keys = new ArrayList<>(files.keySet());
+            files.clear();
+            size = 0;
+        }
+        for (String key : keys)
+            delete(key);
+    }
+
+    private void delete(String key)
+    {
+        Path path = toPath(key);
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException x)
+        {
+            LOG.warn("Could not delete " + path, x);
+        }
+    }
+
+    private Path toPath(String key)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(TypeUtil.toHexString(hash) + SUFFIX);
+        }
+        catch (NoSuchAlgorithmException x)
+        {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,entries=%d,size=%d/%d]", getClass().getSimpleName(), hashCode(), directory, getEntryCount(), getSize(), getMaxSize());
+    }
+}
@@ -0,0 +1,224 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+
+/**
+ * <p>A {@link ProxyCacheStore} that keeps the entries in memory, bounded by their total size.</p>
+ * <p>The least recently used entries are evicted when the maximum size is exceeded;
+ * if an overflow store is configured, the evicted entries are moved to it, and
+ * they are moved back to memory when they are used again.
+ * For example, a {@link FileProxyCacheStore} may be used as overflow store to
+ * implement a two tiers cache.</p>
+ * <p>The content of the entries may be stored in direct buffers, off the Java heap.</p>
+ */
+@ManagedObject("A memory proxy cache store")
+public class MemoryProxyCacheStore extends ContainerLifeCycle implements ProxyCacheStore
+{
+    private final Map<String, ProxyCacheEntry> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private long maxSize;
+    private boolean directBuffers;
+    private ProxyCacheStore overflowStore;
+    private long size;
+
+    public MemoryProxyCacheStore()
+    {
+        this(64 * 1024 * 1024);
+    }
+
+    public MemoryProxyCacheStore(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    @ManagedAttribute("The max total size of the entries, in bytes")
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    @ManagedAttribute("Whether the content is stored in direct buffers")
+    public boolean isDirectBuffers()
+    {
+        return directBuffers;
+    }
+
+    /**
+     * @param directBuffers whether the content of the entries is stored off-heap, in direct buffers
+     */
+    public void setDirectBuffers(boolean directBuffers)
+    {
+        this.directBuffers = directBuffers;
+    }
+
+    public ProxyCacheStore getOverflowStore()
+    {
+        return overflowStore;
+    }
+
+    /**
+     * @param overflowStore the store where evicted entries are moved to, or null to discard them
+     */
+    public void setOverflowStore(ProxyCacheStore overflowStore)
+    {
+        updateBean(this.overflowStore, overflowStore);
+        this.overflowStore = overflowStore;
+    }
+
+    @ManagedAttribute("The total size of the entries, in bytes")
+    public long getSize()
+    {
+        synchronized (this)
+        {
+            return size;
+        }
+    }
+
+    @ManagedAttribute("The number of entries")
+    public int getEntryCount()
+    {
+        synchronized (this)
+        {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public ProxyCacheEntry get(String key)
+    {
+        ProxyCacheEntry entry;
+        synchronized (this)
+        {
+            entry = entries.get(key);
+        }
+        if (entry != null)
+            return entry;
+
+        ProxyCacheStore overflow = overflowStore;
+        if (overflow == null)
+            return null;
+        entry = overflow.get(key);
+        return entry == null ? null : store(entry);
+    }
+
+    @Override
+    public void put(ProxyCacheEntry entry)
+    {
+        store(entry);
+    }
+
+    private ProxyCacheEntry store(ProxyCacheEntry entry)
+    {
+        long entrySize = entry.getSize();
+        if (entrySize > maxSize)
+        {
+            remove(entry.getKey());
+            ProxyCacheStore overflow = overflowStore;
+            if (overflow != null)
+                overflow.put(entry);
+            return entry;
+        }
+
+        if (directBuffers && !entry.getContent().isDirect())
+        {
+            ByteBuffer content = entry.getContent();
+            ByteBuffer direct = BufferUtil.allocateDirect(content.remaining());
+            BufferUtil.append(direct, content);
+            entry = entry.withContent(direct);
+        }
+
+        List<ProxyCacheEntry> evicted = new ArrayList<>();
+        synchronized (this)
+        {
+            ProxyCacheEntry existing = entries.put(entry.getKey(), entry);
+            if (existing != null)
+                size -= existing.getSize();
+            size += entrySize;
+
+            Iterator<ProxyCacheEntry> iterator = entries.values().iterator();
+            while (size > maxSize && iterator.hasNext())
+            {
+                ProxyCacheEntry eldest = iterator.next();
+                iterator.remove();
+                size -= eldest.getSize();
+                evicted.add(eldest);
+            }
+        }
+
+        ProxyCacheStore overflow = overflowStore;
+        if (overflow != null)
+        {
+            for (ProxyCacheEntry eldest : evicted)
+                overflow.put(eldest);
+        }
+        return entry;
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        synchronized (this)
+        {
+            ProxyCacheEntry existing = entries.remove(key);
+            if (existing != null)
+                size -= existing.getSize();
+        }
+        ProxyCacheStore overflow = overflowStore;
+        if (overflow != null)
+            overflow.remove(key);
+    }
+
+    @Override
+    @ManagedOperation(value = "Removes all the entries", impact = "ACTION")
+    public void clear()
+    {
+        synchronized (this)
+        {
+            entries.clear();
+            size = 0;
+        }
+        ProxyCacheStore overflow = overflowStore;
+        if (overflow != null)
+            overflow.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[entries=%d,size=%d/%d]", getClass().getSimpleName(), hashCode(), getEntryCount(), getSize(), getMaxSize());
+    }
+}
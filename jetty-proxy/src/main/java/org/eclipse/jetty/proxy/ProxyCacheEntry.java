@@ -0,0 +1,464 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.QuotedCSV;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>A response stored by a {@link ProxyCacheHandler}.</p>
+ * <p>A cache entry is immutable; it holds the response status, headers and content,
+ * along with the values of the request headers nominated by the {@code Vary}
+ * response header, and computes the freshness of the response as specified by
+ * RFC 9111.</p>
+ */
+public class ProxyCacheEntry
+{
+    private static final int HEURISTIC_FRESHNESS_PERCENT = 10;
+    private static final long MAX_HEURISTIC_FRESHNESS = TimeUnit.DAYS.toMillis(1);
+
+    private final String key;
+    private final int status;
+    private final HttpFields fields;
+    private final Map<String, String> vary;
+    private final ByteBuffer content;
+    private final long requestTime;
+    private final long responseTime;
+    private final long freshnessLifetime;
+    private final long staleWhileRevalidate;
+    private final boolean noCache;
+    private final boolean mustRevalidate;
+    private final long initialAge;
+
+    /**
+     * @param key the cache key
+     * @param status the response status
+     * @param fields the response headers
+     * @param vary the request header values nominated by the {@code Vary} response header
+     * @param content the response content
+     * @param requestTime the time, in milliseconds since the epoch, the request was sent
+     * @param responseTime the time, in milliseconds since the epoch, the response was received
+     */
+    public ProxyCacheEntry(String key, int status, HttpFields fields, Map<String, String> vary, ByteBuffer content, long requestTime, long responseTime)
+    {
+        this.key = key;
+        this.status = status;
+        this.fields = fields;
+        this.vary = Collections.unmodifiableMap(vary);
+        this.content = content;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+
+        Map<String, String> directives = parseCacheControl(fields);
+        long date = getDate(fields, HttpHeader.DATE);
+        this.freshnessLifetime = computeFreshnessLifetime(status, fields, directives, date == -1 ? responseTime : date);
+        this.staleWhileRevalidate = TimeUnit.SECONDS.toMillis(parseSeconds(directives.get("stale-while-revalidate")));
+        this.noCache = directives.containsKey("no-cache");
+        this.mustRevalidate = noCache || directives.containsKey("must-revalidate") || directives.containsKey("proxy-revalidate");
+
+        // RFC 9111, section 4.2.3.
+        long apparentAge = date == -1 ? 0 : Math.max(0, responseTime - date);
+        long ageValue = TimeUnit.SECONDS.toMillis(Math.max(0, parseSeconds(fields.get(HttpHeader.AGE))));
+        long correctedAgeValue = ageValue + Math.max(0, responseTime - requestTime);
+        this.initialAge = Math.max(apparentAge, correctedAgeValue);
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return the stored response headers, which must not be modified
+     */
+    public HttpFields getHttpFields()
+    {
+        return fields;
+    }
+
+    /**
+     * @return a read-only view of the response content
+     */
+    public ByteBuffer getContent()
+    {
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the request header values nominated by the {@code Vary} response header
+     */
+    public Map<String, String> getVary()
+    {
+        return vary;
+    }
+
+    public long getRequestTime()
+    {
+        return requestTime;
+    }
+
+    public long getResponseTime()
+    {
+        return responseTime;
+    }
+
+    /**
+     * @return the approximate memory size of this entry, in bytes
+     */
+    public long getSize()
+    {
+        long size = content.remaining() + key.length();
+        for (HttpField field : fields)
+            size += field.getName().length() + field.getValue().length();
+        return size;
+    }
+
+    /**
+     * @return the freshness lifetime of the response, in milliseconds
+     */
+    public long getFreshnessLifetime()
+    {
+        return freshnessLifetime;
+    }
+
+    /**
+     * @param now the current time, in milliseconds since the epoch
+     * @return the current age of the response, in milliseconds
+     */
+    public long getAge(long now)
+    {
+        return initialAge + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * @param now the current time, in milliseconds since the epoch
+     * @return whether the response can be served without revalidation
+     */
+    public boolean isFresh(long now)
+    {
+        return !noCache && getAge(now) < freshnessLifetime;
+    }
+
+    /**
+     * @param now the current time, in milliseconds since the epoch
+     * @return whether the response is stale but may be served while it is revalidated
+     */
+    public boolean isStaleWhileRevalidate(long now)
+    {
+        return !mustRevalidate && getAge(now) < freshnessLifetime + staleWhileRevalidate;
+    }
+
+    public String getETag()
+    {
+        return fields.get(HttpHeader.ETAG);
+    }
+
+    public String getLastModified()
+    {
+        return fields.get(HttpHeader.LAST_MODIFIED);
+    }
+
+    /**
+     * @return whether the response can be revalidated with a conditional request
+     */
+    public boolean hasValidator()
+    {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    /**
+     * @param requestFields the headers of a request
+     * @return whether this entry can be used for the given request, according to the {@code Vary} response header
+     */
+    public boolean matches(HttpFields requestFields)
+    {
+        for (Map.Entry<String, String> entry : vary.entrySet())
+        {
+            if (!entry.getValue().equals(getVaryValue(requestFields, entry.getKey())))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Returns a new entry with the headers updated from a {@code 304 Not Modified} response,
+     * as specified by RFC 9111, section 4.3.4.</p>
+     *
+     * @param notModifiedFields the headers of the 304 response
+     * @param requestTime the time, in milliseconds since the epoch, the validation request was sent
+     * @param responseTime the time, in milliseconds since the epoch, the 304 response was received
+     * @return a new, updated, entry
+     */
+    public ProxyCacheEntry update(HttpFields notModifiedFields, long requestTime, long responseTime)
+    {
+        HttpFields updated = new HttpFields(fields.size() + notModifiedFields.size());
+        for (HttpField field : fields)
+        {
+            if (!notModifiedFields.containsKey(field.getName()))
+                updated.add(field);
+        }
+        for (HttpField field : notModifiedFields)
+        {
+            if (!isStorable(field))
+                continue;
+            // A proxied Date header is added after the server Date header.
+            if (field.getHeader() == HttpHeader.DATE)
+                updated.put(field);
+            else
+                updated.add(field);
+        }
+        return new ProxyCacheEntry(key, status, updated, vary, content, requestTime, responseTime);
+    }
+
+    /**
+     * @param content the new content
+     * @return a new entry with the same metadata and the given content
+     */
+    public ProxyCacheEntry withContent(ByteBuffer content)
+    {
+        return new ProxyCacheEntry(key, status, fields, vary, content, requestTime, responseTime);
+    }
+
+    void writeTo(DataOutput output) throws IOException
+    {
+        output.writeUTF(key);
+        output.writeInt(status);
+        output.writeLong(requestTime);
+        output.writeLong(responseTime);
+        output.writeInt(fields.size());
+        for (HttpField field : fields)
+        {
+            output.writeUTF(field.getName());
+            output.writeUTF(field.getValue());
+        }
+        output.writeInt(vary.size());
+        for (Map.Entry<String, String> entry : vary.entrySet())
+        {
+            output.writeUTF(entry.getKey());
+            output.writeUTF(entry.getValue());
+        }
+        output.writeInt(content.remaining());
+        output.write(BufferUtil.toArray(content));
+    }
+
+    static ProxyCacheEntry readFrom(DataInput input) throws IOException
+    {
+        String key = input.readUTF();
+        int status = input.readInt();
+        long requestTime = input.readLong();
+        long responseTime = input.readLong();
+        int count = input.readInt();
+        HttpFields fields = new HttpFields(count);
+        for (int i = 0; i < count; ++i)
+            fields.add(input.readUTF(), input.readUTF());
+        count = input.readInt();
+        Map<String, String> vary = new HashMap<>();
+        for (int i = 0; i < count; ++i)
+            vary.put(input.readUTF(), input.readUTF());
+        byte[] content = new byte[input.readInt()];
+        input.readFully(content);
+        return new ProxyCacheEntry(key, status, fields, vary, ByteBuffer.wrap(content), requestTime, responseTime);
+    }
+
+    /**
+     * <p>Returns whether a response to a {@code GET} request may be stored by a shared cache,
+     * as specified by RFC 9111, section 3.</p>
+     *
+     * @param status the response status
+     * @param requestFields the request headers
+     * @param responseFields the response headers
+     * @return whether the response may be stored
+     */
+    public static boolean isStorable(int status, HttpFields requestFields, HttpFields responseFields)
+    {
+        if (!isHeuristicallyCacheable(status))
+            return false;
+        Map<String, String> directives = parseCacheControl(responseFields);
+        if (directives.containsKey("no-store") || directives.containsKey("private"))
+            return false;
+        if (parseCacheControl(requestFields).containsKey("no-store"))
+            return false;
+        if (requestFields.containsKey(HttpHeader.AUTHORIZATION.asString()) &&
+                !directives.containsKey("public") &&
+                !directives.containsKey("s-maxage") &&
+                !directives.containsKey("must-revalidate"))
+            return false;
+        if (responseFields.getCSV(HttpHeader.VARY, false).contains("*"))
+            return false;
+        // Do not share responses that set cookies, even if it is allowed.
+        if (responseFields.containsKey(HttpHeader.SET_COOKIE.asString()))
+            return false;
+        return directives.containsKey("public") ||
+                directives.containsKey("max-age") ||
+                directives.containsKey("s-maxage") ||
+                responseFields.containsKey(HttpHeader.EXPIRES.asString()) ||
+                responseFields.containsKey(HttpHeader.ETAG.asString()) ||
+                responseFields.containsKey(HttpHeader.LAST_MODIFIED.asString());
+    }
+
+    /**
+     * @param field a response header
+     * @return whether the header is stored in a cache entry
+     */
+    public static boolean isStorable(HttpField field)
+    {
+        HttpHeader header = field.getHeader();
+        if (header == HttpHeader.CONTENT_LENGTH)
+            return false;
+        return !AbstractProxyServlet.HOP_HEADERS.contains(field.getName().toLowerCase());
+    }
+
+    /**
+     * @param requestFields the request headers
+     * @param responseFields the response headers
+     * @return the request header values nominated by the {@code Vary} response header
+     */
+    public static Map<String, String> getVary(HttpFields requestFields, HttpFields responseFields)
+    {
+        List<String> names = responseFields.getCSV(HttpHeader.VARY, false);
+        if (names.isEmpty())
+            return Collections.emptyMap();
+        Map<String, String> result = new HashMap<>();
+        for (String name : names)
+            result.put(name.toLowerCase(), getVaryValue(requestFields, name));
+        return result;
+    }
+
+    /**
+     * @param fields the request or response headers
+     * @return the {@code Cache-Control} directives, with a null value for directives without arguments
+     */
+    public static Map<String, String> parseCacheControl(HttpFields fields)
+    {
+        List<String> values = fields.getCSV(HttpHeader.CACHE_CONTROL, false);
+        if (values.isEmpty())
+            return Collections.emptyMap();
+        Map<String, String> result = new HashMap<>();
+        for (String value : values)
+        {
+            int equals = value.indexOf('=');
+            if (equals < 0)
+                result.put(value.trim().toLowerCase(), null);
+            else
+                result.put(value.substring(0, equals).trim().toLowerCase(), QuotedCSV.unquote(value.substring(equals + 1).trim()));
+        }
+        return result;
+    }
+
+    private static String getVaryValue(HttpFields requestFields, String name)
+    {
+        return String.join(",", requestFields.getValuesList(name));
+    }
+
+    private static boolean isHeuristicallyCacheable(int status)
+    {
+        switch (status)
+        {
+            case HttpStatus.OK_200:
+            case HttpStatus.NON_AUTHORITATIVE_INFORMATION_203:
+            case HttpStatus.NO_CONTENT_204:
+            case HttpStatus.MULTIPLE_CHOICES_300:
+            case HttpStatus.MOVED_PERMANENTLY_301:
+            case HttpStatus.PERMANENT_REDIRECT_308:
+            case HttpStatus.NOT_FOUND_404:
+            case HttpStatus.METHOD_NOT_ALLOWED_405:
+            case HttpStatus.GONE_410:
+            case HttpStatus.URI_TOO_LONG_414:
+            case HttpStatus.NOT_IMPLEMENTED_501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long computeFreshnessLifetime(int status, HttpFields fields, Map<String, String> directives, long date)
+    {
+        // RFC 9111, section 4.2.1.
+        long seconds = parseSeconds(directives.get("s-maxage"));
+        if (seconds < 0)
+            seconds = parseSeconds(directives.get("max-age"));
+        if (seconds >= 0)
+            return TimeUnit.SECONDS.toMillis(seconds);
+        if (fields.containsKey(HttpHeader.EXPIRES.asString()))
+        {
+            // Invalid dates, such as "0", mean already expired.
+            long expires = getDate(fields, HttpHeader.EXPIRES);
+            return expires == -1 ? 0 : Math.max(0, expires - date);
+        }
+        // RFC 9111, section 4.2.2.
+        long lastModified = getDate(fields, HttpHeader.LAST_MODIFIED);
+        if (lastModified != -1 && lastModified < date && isHeuristicallyCacheable(status))
+            return Math.min(MAX_HEURISTIC_FRESHNESS, (date - lastModified) * HEURISTIC_FRESHNESS_PERCENT / 100);
+        return 0;
+    }
+
+    private static long getDate(HttpFields fields, HttpHeader header)
+    {
+        try
+        {
+            return fields.getDateField(header.asString());
+        }
+        catch (IllegalArgumentException x)
+        {
+            return -1;
+        }
+    }
+
+    private static long parseSeconds(String value)
+    {
+        if (value == null)
+            return -1;
+        try
+        {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException x)
+        {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s,status=%d,lifetime=%d,size=%d]",
+                getClass().getSimpleName(), hashCode(), key, status, freshnessLifetime, content.remaining());
+    }
+}
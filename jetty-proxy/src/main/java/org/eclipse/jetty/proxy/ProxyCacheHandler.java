@@ -0,0 +1,668 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.QuotedCSV;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A shared HTTP cache, as specified by RFC 9111, for the responses of the wrapped
+ * handler, typically a context with a {@link ProxyServlet} or an {@link AsyncMiddleManServlet}
+ * that makes Jetty a caching reverse proxy.</p>
+ * <p>Storable responses to {@code GET} requests are captured while they are written
+ * to the client, and stored in a {@link ProxyCacheStore}, by default in memory.
+ * Fresh stored responses are served without invoking the wrapped handler, also for
+ * {@code HEAD} requests.</p>
+ * <p>Stale stored responses that have validators are revalidated: the request is
+ * forwarded with {@code If-None-Match} and {@code If-Modified-Since} headers and,
+ * if the wrapped handler responds with {@code 304 Not Modified}, the stored response
+ * is updated and served.</p>
+ * <p>Concurrent requests for the same resource are collapsed: while a request fetches
+ * or revalidates a resource, the other requests for that resource wait for at most
+ * the {@link #getCollapseTimeout() collapse timeout} before being served by the cache,
+ * or being forwarded if the response could not be stored. However, if the stored
+ * response allows it with the {@code stale-while-revalidate} directive, the other
+ * requests are immediately served the stale response.</p>
+ * <p>Requests with unsafe methods invalidate the stored response for their URI.</p>
+ */
+@ManagedObject("Proxy cache handler")
+public class ProxyCacheHandler extends HandlerWrapper
+{
+    private static final Logger LOG = Log.getLogger(ProxyCacheHandler.class);
+    private static final String COLLAPSED_ATTRIBUTE = ProxyCacheHandler.class.getName() + ".collapsed";
+
+    private final ConcurrentMap<String, CompletableFuture<Void>> fetches = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private ProxyCacheStore store;
+    private int maxEntrySize = 1024 * 1024;
+    private long collapseTimeout = 10000;
+
+    public ProxyCacheHandler()
+    {
+        this(new MemoryProxyCacheStore());
+    }
+
+    public ProxyCacheHandler(ProxyCacheStore store)
+    {
+        setStore(store);
+    }
+
+    public ProxyCacheStore getStore()
+    {
+        return store;
+    }
+
+    public void setStore(ProxyCacheStore store)
+    {
+        updateBean(this.store, store);
+        this.store = store;
+    }
+
+    @ManagedAttribute("The max size of a stored response content, in bytes")
+    public int getMaxEntrySize()
+    {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize)
+    {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @ManagedAttribute("The max time collapsed requests wait for the response, in ms")
+    public long getCollapseTimeout()
+    {
+        return collapseTimeout;
+    }
+
+    /**
+     * @param collapseTimeout the max time, in milliseconds, requests wait for a concurrent
+     * request for the same resource to complete, before being forwarded
+     */
+    public void setCollapseTimeout(long collapseTimeout)
+    {
+        this.collapseTimeout = collapseTimeout;
+    }
+
+    @ManagedAttribute("The number of requests served with fresh stored responses")
+    public long getHits()
+    {
+        return hits.longValue();
+    }
+
+    @ManagedAttribute("The number of requests served with stale stored responses")
+    public long getStaleHits()
+    {
+        return staleHits.longValue();
+    }
+
+    @ManagedAttribute("The number of requests forwarded without a stored response")
+    public long getMisses()
+    {
+        return misses.longValue();
+    }
+
+    @ManagedAttribute("The number of requests forwarded to revalidate a stored response")
+    public long getRevalidations()
+    {
+        return revalidations.longValue();
+    }
+
+    @ManagedAttribute("The number of revalidations that confirmed the stored response")
+    public long getNotModified()
+    {
+        return notModified.longValue();
+    }
+
+    @ManagedAttribute("The number of requests that waited for a concurrent request")
+    public long getCollapsed()
+    {
+        return collapsed.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStats()
+    {
+        hits.reset();
+        staleHits.reset();
+        misses.reset();
+        revalidations.reset();
+        notModified.reset();
+        collapsed.reset();
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String method = request.getMethod();
+        boolean head = HttpMethod.HEAD.is(method);
+        if (!head && !HttpMethod.GET.is(method))
+        {
+            // RFC 9111, section 4.4.
+            if (!HttpMethod.OPTIONS.is(method) && !HttpMethod.TRACE.is(method))
+                store.remove(getKey(baseRequest));
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        boolean dispatched = false;
+        if (baseRequest.getDispatcherType() == DispatcherType.ASYNC)
+        {
+            dispatched = request.getAttribute(COLLAPSED_ATTRIBUTE) != null;
+            if (!dispatched)
+            {
+                super.handle(target, baseRequest, request, response);
+                return;
+            }
+            request.removeAttribute(COLLAPSED_ATTRIBUTE);
+        }
+
+        HttpFields requestFields = baseRequest.getHttpFields();
+        Map<String, String> directives = ProxyCacheEntry.parseCacheControl(requestFields);
+        if (directives.containsKey("no-store"))
+        {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        boolean noCache = directives.containsKey("no-cache") ||
+                "0".equals(directives.get("max-age")) ||
+                (directives.isEmpty() && requestFields.getCSV(HttpHeader.PRAGMA, false).contains("no-cache"));
+
+        String key = getKey(baseRequest);
+        long now = System.currentTimeMillis();
+        ProxyCacheEntry entry = store.get(key);
+        if (entry != null && !entry.matches(requestFields))
+            entry = null;
+
+        if (entry != null && !noCache && entry.isFresh(now))
+        {
+            hits.increment();
+            serve(entry, baseRequest, now);
+            return;
+        }
+
+        if (directives.containsKey("only-if-cached"))
+        {
+            misses.increment();
+            baseRequest.setHandled(true);
+            response.sendError(HttpStatus.GATEWAY_TIMEOUT_504);
+            return;
+        }
+
+        // Responses to HEAD requests have no content to store.
+        if (head)
+        {
+            misses.increment();
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+
+        // Requests already collapsed once are forwarded without collapsing again.
+        CompletableFuture<Void> fetch = null;
+        if (!dispatched)
+        {
+            fetch = new CompletableFuture<>();
+            CompletableFuture<Void> existing = fetches.putIfAbsent(key, fetch);
+            if (existing != null)
+            {
+                if (entry != null && !noCache && entry.isStaleWhileRevalidate(now))
+                {
+                    staleHits.increment();
+                    serve(entry, baseRequest, now);
+                }
+                else
+                {
+                    collapse(baseRequest, key, existing);
+                }
+                return;
+            }
+        }
+
+        forward(target, baseRequest, request, response, key, entry, fetch, now);
+    }
+
+    /**
+     * @param request the request
+     * @return the key of the stored response for the given request
+     */
+    protected String getKey(Request request)
+    {
+        StringBuffer url = request.getRequestURL();
+        String query = request.getQueryString();
+        if (query != null)
+            url.append('?').append(query);
+        return url.toString();
+    }
+
+    private void collapse(Request baseRequest, String key, CompletableFuture<Void> fetch)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Collapsing {}", key);
+        collapsed.increment();
+        baseRequest.setHandled(true);
+        baseRequest.setAttribute(COLLAPSED_ATTRIBUTE, Boolean.TRUE);
+        AsyncContext asyncContext = baseRequest.startAsync();
+        asyncContext.setTimeout(collapseTimeout);
+        AtomicBoolean dispatched = new AtomicBoolean();
+        Runnable dispatch = () ->
+        {
+            if (dispatched.compareAndSet(false, true))
+                asyncContext.dispatch();
+        };
+        asyncContext.addListener(new AsyncListener()
+        {
+            @Override
+            public void onTimeout(AsyncEvent event)
+            {
+                // The fetching request may have been lost, let another request fetch.
+                fetches.remove(key, fetch);
+                dispatch.run();
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event)
+            {
+            }
+
+            @Override
+            public void onError(AsyncEvent event)
+            {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event)
+            {
+            }
+        });
+        fetch.whenComplete((r, x) -> dispatch.run());
+    }
+
+    private void forward(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response, String key, ProxyCacheEntry entry, CompletableFuture<Void> fetch, long requestTime) throws IOException, ServletException
+    {
+        HttpFields requestFields = baseRequest.getHttpFields();
+        String ifNoneMatch = requestFields.get(HttpHeader.IF_NONE_MATCH);
+        String ifModifiedSince = requestFields.get(HttpHeader.IF_MODIFIED_SINCE);
+        if (entry != null && entry.hasValidator())
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Revalidating {}", entry);
+            revalidations.increment();
+            requestFields.remove(HttpHeader.IF_NONE_MATCH);
+            requestFields.remove(HttpHeader.IF_MODIFIED_SINCE);
+            String etag = entry.getETag();
+            if (etag != null)
+                requestFields.put(HttpHeader.IF_NONE_MATCH, etag);
+            String lastModified = entry.getLastModified();
+            if (lastModified != null)
+                requestFields.put(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+        }
+        else
+        {
+            misses.increment();
+            entry = null;
+        }
+
+        HttpOutput output = baseRequest.getResponse().getHttpOutput();
+        HttpOutput.Interceptor next = output.getInterceptor();
+        CacheInterceptor interceptor = new CacheInterceptor(next, baseRequest, key, entry, ifNoneMatch, ifModifiedSince, fetch, requestTime);
+        output.setInterceptor(interceptor);
+        if (fetch != null)
+        {
+            // The last write may never happen, for example if the response
+            // is aborted, so also release the collapsed requests on completion.
+            baseRequest.getHttpChannelState().addListener(new AsyncListener()
+            {
+                @Override
+                public void onTimeout(AsyncEvent event)
+                {
+                }
+
+                @Override
+                public void onComplete(AsyncEvent event)
+                {
+                    interceptor.release();
+                }
+
+                @Override
+                public void onError(AsyncEvent event)
+                {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event)
+                {
+                    event.getAsyncContext().addListener(this);
+                }
+            });
+        }
+        try
+        {
+            super.handle(target, baseRequest, request, response);
+        }
+        finally
+        {
+            if (!baseRequest.isHandled() && !baseRequest.isAsyncStarted())
+            {
+                output.setInterceptor(next);
+                interceptor.release();
+            }
+        }
+    }
+
+    private void serve(ProxyCacheEntry entry, Request baseRequest, long now) throws IOException
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Serving {}", entry);
+        baseRequest.setHandled(true);
+        HttpFields requestFields = baseRequest.getHttpFields();
+        Response response = baseRequest.getResponse();
+        boolean notModified = prepare(entry, requestFields.get(HttpHeader.IF_NONE_MATCH), requestFields.get(HttpHeader.IF_MODIFIED_SINCE), response, now);
+        if (!notModified && !HttpMethod.HEAD.is(baseRequest.getMethod()))
+            response.getHttpOutput().sendContent(entry.getContent());
+    }
+
+    /**
+     * <p>Sets the status and headers of the given response from the given stored response.</p>
+     *
+     * @return whether the response is a {@code 304 Not Modified} to the client conditional request
+     */
+    private static boolean prepare(ProxyCacheEntry entry, String ifNoneMatch, String ifModifiedSince, Response response, long now)
+    {
+        boolean notModified = isNotModified(entry, ifNoneMatch, ifModifiedSince);
+        response.setStatus(notModified ? HttpStatus.NOT_MODIFIED_304 : entry.getStatus());
+        HttpFields fields = response.getHttpFields();
+        Set<String> names = new HashSet<>();
+        for (HttpField field : entry.getHttpFields())
+        {
+            if (field.getHeader() == HttpHeader.CONTENT_TYPE)
+            {
+                if (!notModified)
+                    response.setContentType(field.getValue());
+            }
+            else if (names.add(field.getName().toLowerCase()))
+            {
+                fields.put(field);
+            }
+            else
+            {
+                fields.add(field);
+            }
+        }
+        fields.put(HttpHeader.AGE, Long.toString(TimeUnit.MILLISECONDS.toSeconds(entry.getAge(now))));
+        if (!notModified)
+            response.setContentLengthLong(entry.getContent().remaining());
+        return notModified;
+    }
+
+    private static boolean isNotModified(ProxyCacheEntry entry, String ifNoneMatch, String ifModifiedSince)
+    {
+        if (entry.getStatus() != HttpStatus.OK_200)
+            return false;
+        // RFC 9110, section 13.1.2, uses the weak comparison.
+        if (ifNoneMatch != null)
+        {
+            String etag = entry.getETag();
+            if (etag == null)
+                return false;
+            List<String> values = new QuotedCSV(true, ifNoneMatch).getValues();
+            for (String value : values)
+            {
+                if ("*".equals(value) || weak(value).equals(weak(etag)))
+                    return true;
+            }
+            return false;
+        }
+        if (ifModifiedSince != null)
+        {
+            HttpFields fields = new HttpFields(2);
+            fields.put(HttpHeader.IF_MODIFIED_SINCE, ifModifiedSince);
+            fields.put(HttpHeader.LAST_MODIFIED, entry.getLastModified() == null ? "" : entry.getLastModified());
+            try
+            {
+                long lastModified = fields.getDateField(HttpHeader.LAST_MODIFIED.asString());
+                long since = fields.getDateField(HttpHeader.IF_MODIFIED_SINCE.asString());
+                return lastModified != -1 && since != -1 && lastModified <= since;
+            }
+            catch (IllegalArgumentException x)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String weak(String etag)
+    {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), store);
+    }
+
+    private enum State
+    {
+        CAPTURE, PASS, REPLACE
+    }
+
+    /**
+     * <p>Captures the response content to store it, or replaces
+     * a {@code 304 Not Modified} response with the stored response.</p>
+     */
+    private class CacheInterceptor implements HttpOutput.Interceptor
+    {
+        private final HttpOutput.Interceptor next;
+        private final Request request;
+        private final String key;
+        private final String ifNoneMatch;
+        private final String ifModifiedSince;
+        private final CompletableFuture<Void> fetch;
+        private final long requestTime;
+        private ProxyCacheEntry entry;
+        private State state;
+        private HttpFields fields;
+        private Map<String, String> vary;
+        private ByteArrayOutputStream content;
+        private boolean replaced;
+
+        private CacheInterceptor(HttpOutput.Interceptor next, Request request, String key, ProxyCacheEntry entry, String ifNoneMatch, String ifModifiedSince, CompletableFuture<Void> fetch, long requestTime)
+        {
+            this.next = next;
+            this.request = request;
+            this.key = key;
+            this.entry = entry;
+            this.ifNoneMatch = ifNoneMatch;
+            this.ifModifiedSince = ifModifiedSince;
+            this.fetch = fetch;
+            this.requestTime = requestTime;
+        }
+
+        @Override
+        public HttpOutput.Interceptor getNextInterceptor()
+        {
+            return next;
+        }
+
+        @Override
+        public boolean isOptimizedForDirectBuffers()
+        {
+            return next.isOptimizedForDirectBuffers();
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, boolean last, Callback callback)
+        {
+            if (state == null)
+                state = commit();
+
+            switch (state)
+            {
+                case REPLACE:
+                {
+                    if (last)
+                        release();
+                    if (replaced)
+                    {
+                        callback.succeeded();
+                    }
+                    else
+                    {
+                        // The 304 response has no content, replace it with the stored content.
+                        replaced = true;
+                        boolean noContent = request.getResponse().getStatus() == HttpStatus.NOT_MODIFIED_304;
+                        next.write(noContent ? BufferUtil.EMPTY_BUFFER : entry.getContent(), true, callback);
+                    }
+                    break;
+                }
+                case CAPTURE:
+                {
+                    if (content != null)
+                    {
+                        if (content.size() + buffer.remaining() > maxEntrySize)
+                            content = null;
+                        else if (buffer.hasArray())
+                            content.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                        else
+                            content.write(BufferUtil.toArray(buffer), 0, buffer.remaining());
+                    }
+                    if (last)
+                    {
+                        if (content != null)
+                            store();
+                        release();
+                    }
+                    next.write(buffer, last, callback);
+                    break;
+                }
+                default:
+                {
+                    if (last)
+                        release();
+                    next.write(buffer, last, callback);
+                    break;
+                }
+            }
+        }
+
+        private State commit()
+        {
+            Response response = request.getResponse();
+            int status = response.getStatus();
+            HttpFields responseFields = response.getHttpFields();
+            long responseTime = System.currentTimeMillis();
+
+            if (entry != null && status == HttpStatus.NOT_MODIFIED_304)
+            {
+                notModified.increment();
+                entry = entry.update(responseFields, requestTime, responseTime);
+                store.put(entry);
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Revalidated {}", entry);
+                responseFields.clear();
+                prepare(entry, ifNoneMatch, ifModifiedSince, response, responseTime);
+                return State.REPLACE;
+            }
+
+            if (ProxyCacheEntry.isStorable(status, request.getHttpFields(), responseFields))
+            {
+                fields = new HttpFields(responseFields.size());
+                for (HttpField field : responseFields)
+                {
+                    if (!ProxyCacheEntry.isStorable(field))
+                        continue;
+                    // The proxied Date header is added after the server Date header.
+                    if (field.getHeader() == HttpHeader.DATE)
+                        fields.put(field);
+                    else
+                        fields.add(field);
+                }
+                vary = ProxyCacheEntry.getVary(request.getHttpFields(), responseFields);
+                content = new ByteArrayOutputStream();
+                return State.CAPTURE;
+            }
+
+            // Server errors preserve the stored response, that may still be served.
+            if (entry != null && status < HttpStatus.INTERNAL_SERVER_ERROR_500)
+                store.remove(key);
+            return State.PASS;
+        }
+
+        private void store()
+        {
+            ProxyCacheEntry stored = new ProxyCacheEntry(key, request.getResponse().getStatus(), fields, vary,
+                    ByteBuffer.wrap(content.toByteArray()), requestTime, System.currentTimeMillis());
+            if (LOG.isDebugEnabled())
+                LOG.debug("Storing {}", stored);
+            store.put(stored);
+        }
+
+        private void release()
+        {
+            if (fetch != null)
+            {
+                fetches.remove(key, fetch);
+                fetch.complete(null);
+            }
+        }
+    }
+}
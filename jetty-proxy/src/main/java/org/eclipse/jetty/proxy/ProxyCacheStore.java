@@ -0,0 +1,54 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+/**
+ * <p>The storage of the {@link ProxyCacheEntry cache entries} of a {@link ProxyCacheHandler}.</p>
+ * <p>Implementations must be thread safe, and may bound the number or size of
+ * the stored entries, evicting entries as necessary.</p>
+ *
+ * @see MemoryProxyCacheStore
+ * @see FileProxyCacheStore
+ */
+public interface ProxyCacheStore
+{
+    /**
+     * @param key the cache key
+     * @return the entry with the given key, or null if there is no such entry
+     */
+    ProxyCacheEntry get(String key);
+
+    /**
+     * <p>Stores the given entry, replacing the entry with the same key, if any.</p>
+     *
+     * @param entry the entry to store
+     */
+    void put(ProxyCacheEntry entry);
+
+    /**
+     * @param key the key of the entry to remove
+     */
+    void remove(String key);
+
+    /**
+     * <p>Removes all the entries.</p>
+     */
+    void clear();
+}
@@ -22,19 +22,34 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.io.AbstractConnection;
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * <p>A connection that pipes the bytes read from its endpoint to the endpoint
+ * of another {@link #getConnection() connection}.</p>
+ * <p>A buffer is acquired from the pool only when there are bytes to read,
+ * and it is released as soon as they are written, so that idle connections
+ * do not retain buffers.
+ * Reads are batched: bytes are read until the buffer is full or there are
+ * no more bytes to read, and then written with a single write.</p>
+ * <p>The number of bytes read from and written to the endpoint are
+ * reported by {@link #getBytesIn()} and {@link #getBytesOut()}.</p>
+ */
 public abstract class ProxyConnection extends AbstractConnection
 {
     protected static final Logger LOG = ConnectHandler.LOG;
     private final IteratingCallback pipe = new ProxyIteratingCallback();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
     private final ByteBufferPool bufferPool;
     private final ConcurrentMap<String, Object> context;
     private Connection connection;
@@ -72,6 +87,18 @@ public abstract class ProxyConnection extends AbstractConnection
         pipe.iterate();
     }
 
+    @Override
+    public long getBytesIn()
+    {
+        return bytesIn.longValue();
+    }
+
+    @Override
+    public long getBytesOut()
+    {
+        return bytesOut.longValue();
+    }
+
     protected abstract int read(EndPoint endPoint, ByteBuffer buffer) throws IOException;
 
     protected abstract void write(EndPoint endPoint, ByteBuffer buffer, Callback callback);
@@ -90,10 +117,20 @@ public abstract class ProxyConnection extends AbstractConnection
     {
         private ByteBuffer buffer;
         private int filled;
+        private boolean drained;
 
         @Override
         protected Action process() throws Exception
         {
+            if (drained)
+            {
+                // The last read returned 0 bytes, so rather than
+                // reading again just wait for more bytes to arrive.
+                drained = false;
+                fillInterested();
+                return Action.IDLE;
+            }
+
             buffer = bufferPool.acquire(getInputBufferSize(), true);
             try
             {
@@ -102,6 +139,23 @@ public abstract class ProxyConnection extends AbstractConnection
                     LOG.debug("{} filled {} bytes", ProxyConnection.this, filled);
                 if (filled > 0)
                 {
+                    // Batch the reads, so that more bytes are written at once.
+                    while (BufferUtil.space(buffer) > 0)
+                    {
+                        int read = read(getEndPoint(), buffer);
+                        if (LOG.isDebugEnabled())
+                            LOG.debug("{} filled {} more bytes", ProxyConnection.this, read);
+                        if (read > 0)
+                        {
+                            filled += read;
+                            continue;
+                        }
+                        // If the read returned -1, the next read returns -1 too.
+                        drained = read == 0;
+                        break;
+                    }
+                    this.filled = filled;
+                    bytesIn.add(filled);
                     write(connection.getEndPoint(), buffer, this);
                     return Action.SCHEDULED;
                 }
@@ -122,7 +176,6 @@ public abstract class ProxyConnection extends AbstractConnection
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug(ProxyConnection.this + " could not fill", x);
-                bufferPool.release(buffer);
                 disconnect();
                 return Action.SUCCEEDED;
             }
@@ -133,7 +186,10 @@ public abstract class ProxyConnection extends AbstractConnection
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("{} wrote {} bytes", ProxyConnection.this, filled);
+            if (connection instanceof ProxyConnection)
+                ((ProxyConnection)connection).bytesOut.add(filled);
             bufferPool.release(buffer);
+            buffer = null;
             super.succeeded();
         }
 
@@ -153,6 +209,7 @@ public abstract class ProxyConnection extends AbstractConnection
         private void disconnect()
         {
             bufferPool.release(buffer);
+            buffer = null;
             ProxyConnection.this.close();
             connection.close();
         }
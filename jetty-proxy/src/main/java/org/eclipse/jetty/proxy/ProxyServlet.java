@@ -23,12 +23,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -40,12 +43,25 @@ import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.DeferredContentProvider;
 import org.eclipse.jetty.client.util.InputStreamContentProvider;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.HttpInput;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.IteratingCallback;
 
 /**
  * <p>Servlet 3.0 asynchronous proxy servlet.</p>
  * <p>The request processing is asynchronous, but the I/O is blocking.</p>
+ * <p>In addition to the init parameters of {@link AbstractProxyServlet},
+ * the {@code zeroCopy} init parameter enables the proxying of the content
+ * without copying it into intermediate byte arrays: the network buffers
+ * of the client request are passed to the proxy request, and the network
+ * buffers of the proxy response are passed to the client response, and
+ * are released when they have been written; the response content received
+ * before the client response is committed is still copied, so that it is
+ * aggregated and the client response can be reset if the proxying fails.
+ * In this mode, the methods that receive the content as byte arrays are
+ * not invoked, unless the client request or response are wrapped.</p>
  *
  * @see AsyncProxyServlet
  * @see AsyncMiddleManServlet
@@ -55,6 +71,33 @@ public class ProxyServlet extends AbstractProxyServlet
 {
     private static final String CONTINUE_ACTION_ATTRIBUTE = ProxyServlet.class.getName() + ".continueAction";
 
+    private boolean zeroCopy;
+
+    @Override
+    public void init() throws ServletException
+    {
+        super.init();
+        String value = getServletConfig().getInitParameter("zeroCopy");
+        if (value != null)
+            zeroCopy = Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @return whether the content is proxied without copying it
+     */
+    public boolean isZeroCopy()
+    {
+        return zeroCopy;
+    }
+
+    /**
+     * @param zeroCopy whether the content is proxied without copying it
+     */
+    public void setZeroCopy(boolean zeroCopy)
+    {
+        this.zeroCopy = zeroCopy;
+    }
+
     @Override
     protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException
     {
@@ -121,7 +164,10 @@ public class ProxyServlet extends AbstractProxyServlet
 
     protected ContentProvider proxyRequestContent(HttpServletRequest request, HttpServletResponse response, Request proxyRequest) throws IOException
     {
-        return new ProxyInputStreamContentProvider(request, response, proxyRequest, request.getInputStream());
+        ServletInputStream input = request.getInputStream();
+        if (isZeroCopy() && input instanceof HttpInput)
+            return new ProxyHttpInputContentProvider(request, response, proxyRequest, (HttpInput)input);
+        return new ProxyInputStreamContentProvider(request, response, proxyRequest, input);
     }
 
     @Override
@@ -145,6 +191,45 @@ public class ProxyServlet extends AbstractProxyServlet
         }
     }
 
+    /**
+     * <p>Writes the given proxy response content to the client response, without copying it
+     * when possible, and completes the callback when the content has been written.</p>
+     * <p>This method is invoked in {@link #isZeroCopy() zero copy} mode instead of
+     * {@link #onResponseContent(HttpServletRequest, HttpServletResponse, Response, byte[], int, int, Callback)},
+     * that is however invoked if the client response output stream is wrapped.</p>
+     *
+     * @param request the client request
+     * @param response the client response
+     * @param proxyResponse the proxy response
+     * @param content the proxy response content, valid until the callback is completed
+     * @param callback the callback to complete when the content has been written
+     */
+    protected void onResponseContent(HttpServletRequest request, HttpServletResponse response, Response proxyResponse, ByteBuffer content, Callback callback)
+    {
+        try
+        {
+            // Content before the commit is copied, so that it is aggregated
+            // and the response can still be reset if the proxying fails.
+            ServletOutputStream output = response.getOutputStream();
+            if (output instanceof HttpOutput && response.isCommitted())
+            {
+                if (_log.isDebugEnabled())
+                    _log.debug("{} proxying content to downstream: {} bytes", getRequestId(request), content.remaining());
+                ((HttpOutput)output).write(content);
+                callback.succeeded();
+            }
+            else
+            {
+                byte[] bytes = BufferUtil.toArray(content);
+                onResponseContent(request, response, proxyResponse, bytes, 0, bytes.length, callback);
+            }
+        }
+        catch (Throwable x)
+        {
+            callback.failed(x);
+        }
+    }
+
     @Override
     protected void onContinue(HttpServletRequest clientRequest, Request proxyRequest)
     {
@@ -203,6 +288,22 @@ public class ProxyServlet extends AbstractProxyServlet
         @Override
         public void onContent(final Response proxyResponse, ByteBuffer content, final Callback callback)
         {
+            Callback nested = new Callback.Nested(callback)
+            {
+                @Override
+                public void failed(Throwable x)
+                {
+                    super.failed(x);
+                    proxyResponse.abort(x);
+                }
+            };
+
+            if (isZeroCopy())
+            {
+                onResponseContent(request, response, proxyResponse, content, nested);
+                return;
+            }
+
             byte[] buffer;
             int offset;
             int length = content.remaining();
@@ -218,15 +319,7 @@ public class ProxyServlet extends AbstractProxyServlet
                 offset = 0;
             }
 
-            onResponseContent(request, response, proxyResponse, buffer, offset, length, new Callback.Nested(callback)
-            {
-                @Override
-                public void failed(Throwable x)
-                {
-                    super.failed(x);
-                    proxyResponse.abort(x);
-                }
-            });
+            onResponseContent(request, response, proxyResponse, buffer, offset, length, nested);
         }
 
         @Override
@@ -281,6 +374,147 @@ public class ProxyServlet extends AbstractProxyServlet
         }
     }
 
+    /**
+     * <p>A {@link ContentProvider} that passes the client request content buffers
+     * read from {@link HttpInput#readContent()} to the proxy request, releasing
+     * each buffer when it has been written.</p>
+     */
+    protected class ProxyHttpInputContentProvider implements ContentProvider
+    {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final Request proxyRequest;
+        private final HttpInput input;
+        private final Iterator<ByteBuffer> iterator = new HttpInputIterator();
+
+        protected ProxyHttpInputContentProvider(HttpServletRequest request, HttpServletResponse response, Request proxyRequest, HttpInput input)
+        {
+            this.request = request;
+            this.response = response;
+            this.proxyRequest = proxyRequest;
+            this.input = input;
+        }
+
+        @Override
+        public long getLength()
+        {
+            return request.getContentLength();
+        }
+
+        @Override
+        public Iterator<ByteBuffer> iterator()
+        {
+            return iterator;
+        }
+
+        protected void onReadFailure(Throwable failure)
+        {
+            onClientRequestFailure(request, proxyRequest, response, failure);
+        }
+
+        /**
+         * <p>The content of the request cannot be read while the buffer previously
+         * read is being written, so {@link #hasNext()} assumes that there is more
+         * content while a write is pending, and {@link #next()} may return an
+         * empty buffer if the content turns out to be finished.</p>
+         */
+        private class HttpInputIterator implements Iterator<ByteBuffer>, Callback, Closeable
+        {
+            private HttpInput.Content next;
+            private HttpInput.Content pending;
+            private Throwable failure;
+            private boolean finished;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (next != null || failure != null)
+                    return true;
+                if (finished)
+                    return false;
+                if (pending != null)
+                    return true;
+                read();
+                return next != null || failure != null;
+            }
+
+            @Override
+            public ByteBuffer next()
+            {
+                if (next == null && failure == null && !finished && pending == null)
+                    read();
+                if (failure != null)
+                {
+                    finished = true;
+                    Throwable x = failure;
+                    failure = null;
+                    throw (NoSuchElementException)new NoSuchElementException().initCause(x);
+                }
+                if (next == null)
+                {
+                    if (finished)
+                        return BufferUtil.EMPTY_BUFFER;
+                    throw new NoSuchElementException();
+                }
+                pending = next;
+                next = null;
+                if (_log.isDebugEnabled())
+                    _log.debug("{} proxying content to upstream: {} bytes", getRequestId(request), pending.remaining());
+                return pending.getByteBuffer();
+            }
+
+            private void read()
+            {
+                try
+                {
+                    next = input.readContent();
+                    if (next == null)
+                        finished = true;
+                }
+                catch (Throwable x)
+                {
+                    failure = x;
+                    onReadFailure(x);
+                }
+            }
+
+            @Override
+            public void succeeded()
+            {
+                HttpInput.Content content = pending;
+                pending = null;
+                if (content != null)
+                    content.succeeded();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                HttpInput.Content content = pending;
+                pending = null;
+                if (content != null)
+                    content.failed(x);
+            }
+
+            @Override
+            public InvocationType getInvocationType()
+            {
+                return InvocationType.NON_BLOCKING;
+            }
+
+            @Override
+            public void close()
+            {
+                succeeded();
+                if (next != null)
+                {
+                    next.succeeded();
+                    next = null;
+                }
+            }
+        }
+    }
+
     private class DelegatingContentProvider extends IteratingCallback implements AsyncContentProvider.Listener
     {
         private final HttpServletRequest clientRequest;
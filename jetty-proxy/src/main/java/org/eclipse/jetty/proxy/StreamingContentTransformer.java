@@ -0,0 +1,107 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>A {@link AsyncMiddleManServlet.ContentTransformer} that transforms the content
+ * as it arrives, chunk by chunk, with a bounded amount of memory.</p>
+ * <p>Unlike {@link AfterContentTransformer}, that buffers the whole content before
+ * transforming it, this transformer emits the transformed content of each chunk as
+ * soon as the chunk arrives, so that the transformed content is written to the client
+ * while the server is still sending the rest of the content, and the backpressure of
+ * the client is applied to the server.</p>
+ * <p>Subclasses implement {@link #process(ByteBuffer, boolean, List)} and consume
+ * from the input buffer the bytes they can transform; the bytes they do not consume,
+ * for example the beginning of a token that continues in the next chunk, are retained
+ * and prepended to the next input.
+ * The number of retained bytes cannot exceed {@link #getMaxRetainedSize()}, so that
+ * the memory used is bounded.</p>
+ */
+public abstract class StreamingContentTransformer implements AsyncMiddleManServlet.ContentTransformer
+{
+    private int maxRetainedSize = 8 * 1024;
+    private ByteBuffer retained;
+
+    /**
+     * @return the max number of bytes that may be retained between chunks
+     */
+    public int getMaxRetainedSize()
+    {
+        return maxRetainedSize;
+    }
+
+    /**
+     * @param maxRetainedSize the max number of bytes that may be retained between chunks
+     */
+    public void setMaxRetainedSize(int maxRetainedSize)
+    {
+        this.maxRetainedSize = maxRetainedSize;
+    }
+
+    @Override
+    public final void transform(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException
+    {
+        ByteBuffer buffer = input;
+        if (BufferUtil.hasContent(retained))
+        {
+            buffer = ByteBuffer.allocate(retained.remaining() + input.remaining());
+            buffer.put(retained).put(input).flip();
+            input.position(input.limit());
+        }
+        retained = null;
+
+        process(buffer, finished, output);
+
+        if (!buffer.hasRemaining())
+            return;
+        if (finished)
+        {
+            // Nothing more will arrive, emit the bytes as they are.
+            output.add(buffer);
+            return;
+        }
+        int length = buffer.remaining();
+        if (length > maxRetainedSize)
+            throw new IOException("Retained content exceeds " + maxRetainedSize + " bytes: " + length);
+        // The input buffer is reused after this call, so the bytes must be copied.
+        retained = ByteBuffer.allocate(length);
+        retained.put(buffer).flip();
+    }
+
+    /**
+     * <p>Transforms the given input, adding the transformed content to the given output.</p>
+     * <p>The bytes of the input that are not consumed by this method are retained
+     * and prepended to the input of the next call.
+     * The output buffers may be slices of the input buffer, since they are written
+     * before the input buffer is reused.</p>
+     *
+     * @param input the input content, including the bytes retained by the previous call
+     * @param finished whether the input content is finished or more will come
+     * @param output where to put the transformed output content
+     * @throws IOException in case of transformation failures
+     */
+    protected abstract void process(ByteBuffer input, boolean finished, List<ByteBuffer> output) throws IOException;
+}
@@ -0,0 +1,137 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A {@link StreamingContentTransformer} that replaces occurrences of strings
+ * with other strings, for example to rewrite URLs in HTML or JSON content.</p>
+ * <p>The search is performed on the encoded bytes, so the charset must be one
+ * where the encoding of a string cannot match across character boundaries,
+ * such as UTF-8 or ISO-8859-1.
+ * Occurrences that span chunks are replaced, since only the bytes that may be the
+ * beginning of an occurrence are retained, and at most as many bytes as the
+ * longest searched string minus one.</p>
+ * <p>When more than one string occurs at the same position, the first one
+ * in the iteration order of the substitutions map is replaced.</p>
+ */
+public class SubstitutionContentTransformer extends StreamingContentTransformer
+{
+    private final List<byte[]> targets = new ArrayList<>();
+    private final List<ByteBuffer> replacements = new ArrayList<>();
+
+    public SubstitutionContentTransformer(String target, String replacement)
+    {
+        this(target, replacement, StandardCharsets.UTF_8);
+    }
+
+    public SubstitutionContentTransformer(String target, String replacement, Charset charset)
+    {
+        this(Collections.singletonMap(target, replacement), charset);
+    }
+
+    /**
+     * @param substitutions the strings to search, mapped to their replacements
+     * @param charset the charset of the content
+     */
+    public SubstitutionContentTransformer(Map<String, String> substitutions, Charset charset)
+    {
+        int maxLength = 0;
+        for (Map.Entry<String, String> entry : substitutions.entrySet())
+        {
+            byte[] target = entry.getKey().getBytes(charset);
+            if (target.length == 0)
+                throw new IllegalArgumentException("Empty target string");
+            targets.add(target);
+            replacements.add(ByteBuffer.wrap(entry.getValue().getBytes(charset)).asReadOnlyBuffer());
+            maxLength = Math.max(maxLength, target.length);
+        }
+        setMaxRetainedSize(Math.max(getMaxRetainedSize(), maxLength));
+    }
+
+    @Override
+    protected void process(ByteBuffer input, boolean finished, List<ByteBuffer> output)
+    {
+        int limit = input.limit();
+        int from = input.position();
+        int index = from;
+        while (index < limit)
+        {
+            int match = match(input, index, limit);
+            if (match >= 0)
+            {
+                if (index > from)
+                    output.add(slice(input, from, index));
+                output.add(replacements.get(match).slice());
+                index += targets.get(match).length;
+                from = index;
+            }
+            else if (match == -1 || finished)
+            {
+                ++index;
+            }
+            else
+            {
+                // Partial match at the end of the input, wait for more.
+                break;
+            }
+        }
+        if (index > from)
+            output.add(slice(input, from, index));
+        input.position(index);
+    }
+
+    /**
+     * @return the index of the target that matches at the given position,
+     * or -1 if no target matches, or -2 if a target partially matches up to the limit
+     */
+    private int match(ByteBuffer input, int index, int limit)
+    {
+        int result = -1;
+        for (int t = 0; t < targets.size(); ++t)
+        {
+            byte[] target = targets.get(t);
+            int length = Math.min(target.length, limit - index);
+            int i = 0;
+            while (i < length && input.get(index + i) == target[i])
+                ++i;
+            if (i == target.length)
+                return t;
+            if (i == length)
+                result = -2;
+        }
+        return result;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to);
+        slice.position(from);
+        return slice.slice();
+    }
+}
@@ -29,6 +29,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -1523,6 +1524,72 @@ public class AsyncMiddleManServletTest
         assertTrue(response.getHeaders().containsKey(PROXIED_HEADER));
     }
 
+    @Test
+    public void testStreamingSubstitutionTransformer() throws Exception
+    {
+        testStreamingTransformer(false);
+    }
+
+    @Test
+    public void testStreamingSubstitutionTransformerGzipped() throws Exception
+    {
+        testStreamingTransformer(true);
+    }
+
+    private void testStreamingTransformer(boolean gzipped) throws Exception
+    {
+        CountDownLatch firstChunkLatch = new CountDownLatch(1);
+        AtomicBoolean streamed = new AtomicBoolean();
+        startServer(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                OutputStream output = response.getOutputStream();
+                if (gzipped)
+                {
+                    response.setHeader(HttpHeader.CONTENT_ENCODING.asString(), "gzip");
+                    output = new GZIPOutputStream(output, true);
+                }
+                // The target string spans the two chunks.
+                output.write("hello wor".getBytes(StandardCharsets.UTF_8));
+                output.flush();
+                // The client must receive the first chunk before the server sends the rest.
+                try
+                {
+                    streamed.set(firstChunkLatch.await(5, TimeUnit.SECONDS));
+                }
+                catch (InterruptedException x)
+                {
+                    throw new InterruptedIOException();
+                }
+                output.write("ld, hello world".getBytes(StandardCharsets.UTF_8));
+                output.close();
+            }
+        });
+        Map<String, String> params = new HashMap<>();
+        params.put("flushContent", "true");
+        startProxy(new AsyncMiddleManServlet()
+        {
+            @Override
+            protected ContentTransformer newServerResponseContentTransformer(HttpServletRequest clientRequest, HttpServletResponse proxyResponse, Response serverResponse)
+            {
+                ContentTransformer transformer = new SubstitutionContentTransformer("world", "jetty");
+                return gzipped ? new GZIPContentTransformer(transformer, true) : transformer;
+            }
+        }, params);
+        startClient();
+
+        ContentResponse response = client.newRequest("localhost", serverConnector.getLocalPort())
+                .onResponseContent((r, content) -> firstChunkLatch.countDown())
+                .timeout(10, TimeUnit.SECONDS)
+                .send();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("hello jetty, hello jetty", response.getContentAsString());
+        assertTrue(streamed.get());
+    }
+
     private Path prepareTargetTestsDir() throws IOException
     {
         final Path targetTestsDir = MavenTestingUtils.getTargetTestingDir().toPath();
@@ -19,11 +19,19 @@
 package org.eclipse.jetty.proxy;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -53,6 +61,7 @@ public class BalancerServletTest
     private Server server1;
     private Server server2;
     private Server balancer;
+    private ServletHolder balancerServletHolder;
     private HttpClient client;
 
     @BeforeEach
@@ -65,13 +74,21 @@ public class BalancerServletTest
     @AfterEach
     public void dispose() throws Exception
     {
-        server1.stop();
-        server2.stop();
-        balancer.stop();
+        if (server1 != null)
+            server1.stop();
+        if (server2 != null)
+            server2.stop();
+        if (balancer != null)
+            balancer.stop();
         client.stop();
     }
 
     protected void startBalancer(Class<? extends HttpServlet> servletClass) throws Exception
+    {
+        startBalancer(servletClass, Collections.emptyMap());
+    }
+
+    protected void startBalancer(Class<? extends HttpServlet> servletClass, Map<String, String> initParams) throws Exception
     {
         server1 = createServer(new ServletHolder(servletClass), "node1");
         server1.start();
@@ -79,7 +96,8 @@ public class BalancerServletTest
         server2 = createServer(new ServletHolder(servletClass), "node2");
         server2.start();
 
-        ServletHolder balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServletHolder = new ServletHolder(BalancerServlet.class);
+        balancerServletHolder.setInitParameters(initParams);
         balancerServletHolder.setInitParameter("stickySessions", String.valueOf(stickySessions));
         balancerServletHolder.setInitParameter("proxyPassReverse", "true");
         balancerServletHolder.setInitParameter("balancerMember." + "node1" + ".proxyTo", "http://localhost:" + getServerPort(server1));
@@ -100,6 +118,7 @@ public class BalancerServletTest
 
         if (nodeName != null)
         {
+            servletHolder.setInitParameter("node", nodeName);
             DefaultSessionIdManager sessionIdManager = new DefaultSessionIdManager(server);
             sessionIdManager.setWorkerName(nodeName);
             server.setSessionIdManager(sessionIdManager);
@@ -115,11 +134,24 @@ public class BalancerServletTest
 
     protected byte[] sendRequestToBalancer(String path) throws Exception
     {
-        ContentResponse response = client.newRequest("localhost", getServerPort(balancer))
+        return sendToBalancer(path).getContent();
+    }
+
+    protected ContentResponse sendToBalancer(String path) throws Exception
+    {
+        return client.newRequest("localhost", getServerPort(balancer))
                 .path(CONTEXT_PATH + SERVLET_PATH + path)
                 .timeout(5, TimeUnit.SECONDS)
                 .send();
-        return response.getContent();
+    }
+
+    private BalancerServlet.BalancerMember getBalancerMember(String name) throws Exception
+    {
+        BalancerServlet servlet = (BalancerServlet)balancerServletHolder.getServlet();
+        return servlet.getBalancerMembers().stream()
+                .filter(member -> member.getName().equals(name))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
     }
 
     @Test
@@ -162,6 +194,119 @@ public class BalancerServletTest
         assertEquals("success", msg);
     }
 
+    @Test
+    public void testFailingMemberIsEjected() throws Exception
+    {
+        stickySessions = false;
+        Map<String, String> params = new HashMap<>();
+        params.put("maxConsecutiveFailures", "2");
+        params.put("ejectionTime", "60000");
+        startBalancer(NodeServlet.class, params);
+
+        int failures = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            ContentResponse response = sendToBalancer("/fail/node1");
+            if (response.getStatus() == HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+                ++failures;
+            else
+                assertEquals("node2", readFirstLine(response.getContent()));
+        }
+
+        assertEquals(2, failures);
+        BalancerServlet.BalancerMember member = getBalancerMember("node1");
+        assertTrue(member.isEjected());
+        assertEquals(1, member.getEjections());
+        assertEquals(2, member.getFailures());
+        assertEquals(0, member.getOutstandingRequests());
+
+        member.reinstate();
+        assertFalse(member.isEjected());
+    }
+
+    @Test
+    public void testMemberIsNotEjectedByDefault() throws Exception
+    {
+        stickySessions = false;
+        startBalancer(NodeServlet.class);
+
+        for (int i = 0; i < 10; i++)
+            sendToBalancer("/fail/node1");
+
+        BalancerServlet.BalancerMember member = getBalancerMember("node1");
+        assertFalse(member.isEjected());
+        assertEquals(5, member.getFailures());
+    }
+
+    @Test
+    public void testApplicationErrorsDoNotEjectMember() throws Exception
+    {
+        stickySessions = false;
+        Map<String, String> params = new HashMap<>();
+        params.put("maxConsecutiveFailures", "2");
+        startBalancer(NodeServlet.class, params);
+
+        int errors = 0;
+        for (int i = 0; i < 10; i++)
+        {
+            if (sendToBalancer("/error/node1").getStatus() == HttpServletResponse.SC_INTERNAL_SERVER_ERROR)
+                ++errors;
+        }
+
+        assertEquals(5, errors);
+        BalancerServlet.BalancerMember member = getBalancerMember("node1");
+        assertFalse(member.isEjected());
+        assertEquals(0, member.getFailures());
+    }
+
+    @Test
+    public void testUnhealthyMemberIsNotSelected() throws Exception
+    {
+        stickySessions = false;
+        Map<String, String> params = new HashMap<>();
+        params.put("strategy", "leastRequests");
+        params.put("healthCheckPath", CONTEXT_PATH + SERVLET_PATH + "/fail/node1");
+        params.put("healthCheckInterval", "100");
+        startBalancer(NodeServlet.class, params);
+
+        BalancerServlet.BalancerMember member = getBalancerMember("node1");
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (member.isHealthy() && System.nanoTime() < end)
+            Thread.sleep(50);
+        assertFalse(member.isHealthy());
+        assertTrue(getBalancerMember("node2").isHealthy());
+
+        for (int i = 0; i < 4; i++)
+            assertEquals("node2", readFirstLine(sendRequestToBalancer("/index.html")));
+        assertEquals(0, member.getRequests());
+    }
+
+    @Test
+    public void testStrategies() throws Exception
+    {
+        BalancerServlet.BalancerMember fast = new BalancerServlet.BalancerMember("fast", "http://localhost:8080");
+        BalancerServlet.BalancerMember slow = new BalancerServlet.BalancerMember("slow", "http://localhost:8081");
+        List<BalancerServlet.BalancerMember> members = Arrays.asList(slow, fast);
+        fast.onLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        slow.onLatency(TimeUnit.MILLISECONDS.toNanos(100));
+
+        BalancerServlet.Strategy peakEwma = new BalancerServlet.PeakEwmaStrategy();
+        BalancerServlet.Strategy powerOfTwoChoices = new BalancerServlet.PowerOfTwoChoicesStrategy();
+        for (int i = 0; i < 4; i++)
+            assertSame(fast, peakEwma.select(members));
+
+        // The fast member has so many outstanding requests that it is more costly.
+        for (int i = 0; i < 200; i++)
+            fast.onRequestBegin();
+        BalancerServlet.Strategy leastRequests = new BalancerServlet.LeastRequestsStrategy();
+        for (int i = 0; i < 4; i++)
+        {
+            assertSame(slow, leastRequests.select(members));
+            assertSame(slow, peakEwma.select(members));
+            assertSame(slow, powerOfTwoChoices.select(members));
+        }
+    }
+
     private String readFirstLine(byte[] responseBytes) throws IOException
     {
         BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(responseBytes)));
@@ -182,6 +327,28 @@ public class BalancerServletTest
         }
     }
 
+    public static final class NodeServlet extends HttpServlet
+    {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+        {
+            String node = getInitParameter("node");
+            if (req.getRequestURI().endsWith("/fail/" + node))
+            {
+                resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            }
+            else if (req.getRequestURI().endsWith("/error/" + node))
+            {
+                resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            else
+            {
+                resp.setContentType("text/plain");
+                resp.getWriter().println(node);
+            }
+        }
+    }
+
     public static final class RelocationServlet extends HttpServlet
     {
         @Override
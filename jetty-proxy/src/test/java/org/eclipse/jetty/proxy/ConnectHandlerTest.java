@@ -18,6 +18,8 @@
 
 package org.eclipse.jetty.proxy;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -32,8 +34,10 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -42,6 +46,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.io.ConnectionStatistics;
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
@@ -143,6 +148,65 @@ public class ConnectHandlerTest extends AbstractConnectHandlerTest
         }
     }
 
+    @Test
+    public void testTunnelStatistics() throws Exception
+    {
+        ConnectionStatistics statistics = new ConnectionStatistics();
+        connectHandler.addBean(statistics);
+        statistics.start();
+
+        String hostPort = "localhost:" + serverConnector.getLocalPort();
+        String request = "" +
+                "CONNECT " + hostPort + " HTTP/1.1\r\n" +
+                "Host: " + hostPort + "\r\n" +
+                "\r\n";
+        long upstreamBytes;
+        try (Socket socket = newSocket())
+        {
+            OutputStream output = socket.getOutputStream();
+            InputStream input = socket.getInputStream();
+
+            output.write(request.getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            // Expect 200 OK from the CONNECT request
+            HttpTester.Input in = HttpTester.from(input);
+            HttpTester.Response response = HttpTester.parseResponse(in);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals(1, connectHandler.getTunnels());
+
+            char[] chars = new char[128 * 1024];
+            Arrays.fill(chars, 'x');
+            String content = new String(chars);
+            request = "" +
+                    "POST /echo HTTP/1.1\r\n" +
+                    "Host: " + hostPort + "\r\n" +
+                    "Content-Length: " + content.length() + "\r\n" +
+                    "\r\n" +
+                    content;
+            byte[] requestBytes = request.getBytes(StandardCharsets.UTF_8);
+            upstreamBytes = requestBytes.length;
+            output.write(requestBytes);
+            output.flush();
+
+            response = HttpTester.parseResponse(in);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals("POST /echo\r\n" + content, response.getContent());
+        }
+
+        long start = System.nanoTime();
+        while (connectHandler.getTunnels() > 0 && TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5)
+            Thread.sleep(10);
+
+        assertEquals(0, connectHandler.getTunnels());
+        assertEquals(1, connectHandler.getTunnelsTotal());
+        assertEquals(upstreamBytes, connectHandler.getUpstreamBytes());
+        assertThat(connectHandler.getDownstreamBytes(), greaterThan(upstreamBytes));
+        // The downstream and the upstream connections.
+        assertEquals(2, statistics.getConnectionsTotal());
+        assertThat(statistics.getReceivedBytes(), greaterThan(2 * upstreamBytes));
+    }
+
     @Test
     public void testProxyWhiteList() throws Exception
     {
@@ -0,0 +1,487 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ProxyCacheHandlerTest
+{
+    private final AtomicInteger requests = new AtomicInteger();
+    private Server server;
+    private ServerConnector serverConnector;
+    private Server proxy;
+    private ServerConnector proxyConnector;
+    private ProxyCacheHandler cacheHandler;
+    private HttpClient client;
+
+    private void start(HttpServlet servlet) throws Exception
+    {
+        server = new Server();
+        serverConnector = new ServerConnector(server);
+        server.addConnector(serverConnector);
+        ServletContextHandler appContext = new ServletContextHandler(server, "/");
+        appContext.addServlet(new ServletHolder(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException
+            {
+                requests.incrementAndGet();
+                servlet.service(request, response);
+            }
+        }), "/*");
+        server.start();
+
+        proxy = new Server();
+        proxyConnector = new ServerConnector(proxy);
+        proxy.addConnector(proxyConnector);
+        cacheHandler = new ProxyCacheHandler();
+        proxy.setHandler(cacheHandler);
+        ServletContextHandler proxyContext = new ServletContextHandler(cacheHandler, "/");
+        ServletHolder proxyServletHolder = new ServletHolder(ProxyServlet.Transparent.class);
+        proxyServletHolder.setInitParameter("proxyTo", "http://localhost:" + serverConnector.getLocalPort());
+        proxyContext.addServlet(proxyServletHolder, "/*");
+        proxy.start();
+
+        client = new HttpClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (client != null)
+            client.stop();
+        if (proxy != null)
+            proxy.stop();
+        if (server != null)
+            server.stop();
+    }
+
+    private ContentResponse send(String path) throws Exception
+    {
+        return client.newRequest("localhost", proxyConnector.getLocalPort())
+                .path(path)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception
+    {
+        String content = "hello";
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                response.setContentType("text/plain");
+                response.getWriter().print(content);
+            }
+        });
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = send("/fresh");
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals(content, response.getContentAsString());
+            assertTrue(response.getMediaType().startsWith("text/plain"));
+            if (i > 0)
+                assertNotNull(response.getHeaders().get(HttpHeader.AGE));
+        }
+
+        // HEAD requests are served from the stored GET response.
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .method(HttpMethod.HEAD)
+                .path("/fresh")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(content.length(), response.getHeaders().getLongField(HttpHeader.CONTENT_LENGTH.asString()));
+
+        assertEquals(1, requests.get());
+        assertEquals(3, cacheHandler.getHits());
+        assertEquals(1, cacheHandler.getMisses());
+    }
+
+    @Test
+    public void testNotStorableResponseIsForwarded() throws Exception
+    {
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            {
+                if (request.getRequestURI().endsWith("/nostore"))
+                    response.setHeader("Cache-Control", "no-store");
+                else if (request.getRequestURI().endsWith("/private"))
+                    response.setHeader("Cache-Control", "private, max-age=60");
+            }
+        });
+
+        send("/nostore");
+        send("/nostore");
+        send("/private");
+        send("/private");
+        send("/none");
+        send("/none");
+
+        assertEquals(6, requests.get());
+        assertEquals(0, cacheHandler.getHits());
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception
+    {
+        String etag = "\"v1\"";
+        String content = "hello";
+        List<String> conditions = Collections.synchronizedList(new ArrayList<>());
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=0");
+                response.setHeader("ETag", etag);
+                String ifNoneMatch = request.getHeader("If-None-Match");
+                conditions.add(String.valueOf(ifNoneMatch));
+                if (etag.equals(ifNoneMatch))
+                    response.setStatus(HttpStatus.NOT_MODIFIED_304);
+                else
+                    response.getWriter().print(content);
+            }
+        });
+
+        for (int i = 0; i < 3; ++i)
+        {
+            ContentResponse response = send("/etag");
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals(content, response.getContentAsString());
+            assertEquals(etag, response.getHeaders().get(HttpHeader.ETAG));
+        }
+
+        assertEquals(3, requests.get());
+        assertEquals("null", conditions.get(0));
+        assertEquals(etag, conditions.get(1));
+        assertEquals(2, cacheHandler.getRevalidations());
+        assertEquals(2, cacheHandler.getNotModified());
+
+        // A conditional request from the client is answered by the cache.
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .path("/etag")
+                .header(HttpHeader.IF_NONE_MATCH, etag)
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals(HttpStatus.NOT_MODIFIED_304, response.getStatus());
+        assertEquals(0, response.getContent().length);
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void testConcurrentMissesAreCollapsed() throws Exception
+    {
+        String content = "collapsed";
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                sleep(1000);
+                response.setHeader("Cache-Control", "max-age=60");
+                response.getWriter().print(content);
+            }
+        });
+
+        int count = 5;
+        List<FutureResponseListener> listeners = new ArrayList<>();
+        for (int i = 0; i < count; ++i)
+        {
+            FutureResponseListener listener = new FutureResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort()).path("/slow"));
+            listener.getRequest().send(listener);
+            listeners.add(listener);
+        }
+
+        for (FutureResponseListener listener : listeners)
+        {
+            ContentResponse response = listener.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpStatus.OK_200, response.getStatus());
+            assertEquals(content, response.getContentAsString());
+        }
+
+        assertEquals(1, requests.get());
+        assertEquals(count - 1, cacheHandler.getCollapsed());
+    }
+
+    @Test
+    public void testAbortedFetchReleasesCollapsedRequests() throws Exception
+    {
+        String content = "released";
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                if (requests.get() == 1)
+                {
+                    // Stream slowly, so the client aborts in the middle of the response.
+                    for (int i = 0; i < 20; ++i)
+                    {
+                        response.getOutputStream().write(new byte[64 * 1024]);
+                        response.flushBuffer();
+                        sleep(100);
+                    }
+                }
+                else
+                {
+                    response.getWriter().print(content);
+                }
+            }
+        });
+        cacheHandler.setCollapseTimeout(TimeUnit.SECONDS.toMillis(30));
+
+        CountDownLatch aborted = new CountDownLatch(1);
+        client.newRequest("localhost", proxyConnector.getLocalPort())
+                .path("/aborted")
+                .onResponseHeaders(response -> response.abort(new Exception("explicitly_thrown_by_test")))
+                .send(result -> aborted.countDown());
+        assertTrue(aborted.await(5, TimeUnit.SECONDS));
+        // Wait for the proxy to complete the aborted request.
+        sleep(3000);
+
+        ContentResponse response = send("/aborted");
+        assertEquals(HttpStatus.OK_200, response.getStatus());
+        assertEquals(content, response.getContentAsString());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception
+    {
+        CountDownLatch revalidating = new CountDownLatch(1);
+        CountDownLatch revalidated = new CountDownLatch(1);
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=2, stale-while-revalidate=60");
+                if (requests.get() > 1)
+                {
+                    revalidating.countDown();
+                    await(revalidated);
+                }
+                response.getWriter().print("v" + requests.get());
+            }
+        });
+
+        assertEquals("v1", send("/swr").getContentAsString());
+        sleep(2500);
+
+        // The first request after expiration revalidates.
+        FutureResponseListener listener = new FutureResponseListener(client.newRequest("localhost", proxyConnector.getLocalPort()).path("/swr"));
+        listener.getRequest().send(listener);
+        assertTrue(revalidating.await(5, TimeUnit.SECONDS));
+
+        // Concurrent requests are served the stale response.
+        long begin = System.nanoTime();
+        ContentResponse response = send("/swr");
+        assertEquals("v1", response.getContentAsString());
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin), lessThan(1000L));
+        assertEquals(1, cacheHandler.getStaleHits());
+
+        revalidated.countDown();
+        assertEquals("v2", listener.get(5, TimeUnit.SECONDS).getContentAsString());
+        assertEquals("v2", send("/swr").getContentAsString());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testUnsafeMethodInvalidates() throws Exception
+    {
+        start(new HttpServlet()
+        {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                response.getWriter().print(request.getMethod());
+            }
+        });
+
+        send("/resource");
+        send("/resource");
+        assertEquals(1, requests.get());
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .method(HttpMethod.POST)
+                .path("/resource")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals("POST", response.getContentAsString());
+
+        assertEquals("GET", send("/resource").getContentAsString());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testVary() throws Exception
+    {
+        start(new HttpServlet()
+        {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Cache-Control", "max-age=60");
+                response.setHeader("Vary", "Accept-Language");
+                response.getWriter().print(request.getHeader("Accept-Language"));
+            }
+        });
+
+        for (int i = 0; i < 2; ++i)
+        {
+            ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                    .path("/vary")
+                    .header(HttpHeader.ACCEPT_LANGUAGE, "en")
+                    .timeout(5, TimeUnit.SECONDS)
+                    .send();
+            assertEquals("en", response.getContentAsString());
+        }
+        assertEquals(1, requests.get());
+
+        ContentResponse response = client.newRequest("localhost", proxyConnector.getLocalPort())
+                .path("/vary")
+                .header(HttpHeader.ACCEPT_LANGUAGE, "it")
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+        assertEquals("it", response.getContentAsString());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testMemoryStoreOverflowsToFileStore() throws Exception
+    {
+        Path directory = MavenTestingUtils.getTargetTestingPath(ProxyCacheHandlerTest.class.getSimpleName());
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for (Path file : files)
+                Files.delete(file);
+        }
+
+        FileProxyCacheStore fileStore = new FileProxyCacheStore(directory);
+        MemoryProxyCacheStore memoryStore = new MemoryProxyCacheStore(1024);
+        memoryStore.setDirectBuffers(true);
+        memoryStore.setOverflowStore(fileStore);
+        memoryStore.start();
+
+        byte[] content = new byte[600];
+        memoryStore.put(newEntry("/one", content));
+        memoryStore.put(newEntry("/two", content));
+        assertEquals(1, memoryStore.getEntryCount());
+        assertEquals(1, fileStore.getEntryCount());
+
+        ProxyCacheEntry entry = memoryStore.get("/one");
+        assertNotNull(entry);
+        assertTrue(entry.getContent().isDirect());
+        assertEquals(content.length, entry.getContent().remaining());
+        assertEquals("max-age=60", entry.getHttpFields().get(HttpHeader.CACHE_CONTROL));
+
+        // Entries on disk are reloaded after a restart.
+        memoryStore.stop();
+        fileStore = new FileProxyCacheStore(directory);
+        fileStore.start();
+        assertEquals(2, fileStore.getEntryCount());
+        assertNotNull(fileStore.get("/two"));
+
+        fileStore.clear();
+        assertNull(fileStore.get("/two"));
+        fileStore.stop();
+    }
+
+    private ProxyCacheEntry newEntry(String key, byte[] content)
+    {
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.CACHE_CONTROL, "max-age=60");
+        long now = System.currentTimeMillis();
+        return new ProxyCacheEntry(key, HttpStatus.OK_200, fields, Collections.emptyMap(), ByteBuffer.wrap(content), now, now);
+    }
+
+    private static void sleep(long ms)
+    {
+        try
+        {
+            Thread.sleep(ms);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+}
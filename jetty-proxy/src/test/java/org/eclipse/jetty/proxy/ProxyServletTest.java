@@ -112,10 +112,28 @@ public class ProxyServletTest
         return Stream.of(
                 ProxyServlet.class,
                 AsyncProxyServlet.class,
-                AsyncMiddleManServlet.class
+                AsyncMiddleManServlet.class,
+                ZeroCopyProxyServlet.class,
+                ZeroCopyAsyncProxyServlet.class
         ).map(Arguments::of);
     }
 
+    public static class ZeroCopyProxyServlet extends ProxyServlet
+    {
+        public ZeroCopyProxyServlet()
+        {
+            setZeroCopy(true);
+        }
+    }
+
+    public static class ZeroCopyAsyncProxyServlet extends AsyncProxyServlet
+    {
+        public ZeroCopyAsyncProxyServlet()
+        {
+            setZeroCopy(true);
+        }
+    }
+
     private HttpClient client;
     private Server proxy;
     private ServerConnector proxyConnector;
@@ -0,0 +1,96 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+
+package org.eclipse.jetty.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.Test;
+
+public class SubstitutionContentTransformerTest
+{
+    @Test
+    public void testSubstitutionAcrossChunks() throws Exception
+    {
+        Map<String, String> substitutions = new LinkedHashMap<>();
+        substitutions.put("http://backend:8080", "https://proxy");
+        substitutions.put("backend", "proxy");
+        SubstitutionContentTransformer transformer = new SubstitutionContentTransformer(substitutions, StandardCharsets.UTF_8);
+
+        String input = "<a href=\"http://backend:8080/path\">backend</a> http://backend";
+        // Feed one byte at a time, the worst case for occurrences spanning chunks.
+        StringBuilder result = new StringBuilder();
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; ++i)
+            result.append(transform(transformer, ByteBuffer.wrap(bytes, i, 1), i == bytes.length - 1));
+
+        assertEquals("<a href=\"https://proxy/path\">proxy</a> http://proxy", result.toString());
+    }
+
+    @Test
+    public void testPartialMatchAtEndIsEmitted() throws Exception
+    {
+        SubstitutionContentTransformer transformer = new SubstitutionContentTransformer("world", "jetty");
+
+        assertEquals("hello ", transform(transformer, BufferUtil.toBuffer("hello wor"), false));
+        assertEquals("wor", transform(transformer, BufferUtil.EMPTY_BUFFER, true));
+    }
+
+    @Test
+    public void testRetainedContentIsBounded() throws Exception
+    {
+        StreamingContentTransformer transformer = new StreamingContentTransformer()
+        {
+            @Override
+            protected void process(ByteBuffer input, boolean finished, List<ByteBuffer> output)
+            {
+                // Never consume the input until it is finished.
+                if (finished)
+                {
+                    output.add(input.slice());
+                    input.position(input.limit());
+                }
+            }
+        };
+        transformer.setMaxRetainedSize(16);
+
+        transform(transformer, BufferUtil.toBuffer("0123456789"), false);
+        assertThrows(IOException.class, () -> transform(transformer, BufferUtil.toBuffer("0123456789"), false));
+    }
+
+    private String transform(AsyncMiddleManServlet.ContentTransformer transformer, ByteBuffer input, boolean finished) throws IOException
+    {
+        List<ByteBuffer> output = new ArrayList<>();
+        transformer.transform(input, finished, output);
+        StringBuilder builder = new StringBuilder();
+        for (ByteBuffer buffer : output)
+            builder.append(BufferUtil.toString(buffer, StandardCharsets.UTF_8));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,30 @@
+DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Enable first level session cache in ConcurrentHashMap, with the
+inactivity timeouts of the sessions kept in a timing wheel rather
+than in a timer per session, for large numbers of sessions.
+
+[tags]
+session
+
+[provides]
+session-cache
+
+[depends]
+sessions
+
+[xml]
+etc/sessions/session-cache-wheel.xml
+
+[ini-template]
+#jetty.session.evictionPolicy=-1
+#jetty.session.saveOnInactiveEvict=false
+#jetty.session.saveOnCreate=false
+#jetty.session.removeUnloadableSessions=false
+
+## Duration in ms of a tick of the wheel, the precision of the timeouts
+#jetty.session.wheel.tickMs=1000
+
+## Number of buckets of the wheel
+#jetty.session.wheel.wheelSize=4096
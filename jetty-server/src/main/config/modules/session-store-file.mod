@@ -21,4 +21,5 @@ sessions/
 [ini-template]
 jetty.session.file.storeDir=${jetty.base}/sessions
 #jetty.session.file.deleteUnrestorableFiles=false
+#jetty.session.file.shards=0
 #jetty.session.savePeriod.seconds=0
\ No newline at end of file
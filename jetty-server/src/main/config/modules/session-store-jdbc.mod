@@ -27,6 +27,9 @@ db-connection-type?=datasource
 #jetty.session.gracePeriod.seconds=3600
 #jetty.session.savePeriod.seconds=0
 
+## Expired sessions fetched, and candidates checked, at a time
+#jetty.session.jdbc.expiryBatchSize=100
+
 #jetty.session.jdbc.blobType=
 #jetty.session.jdbc.longType=
 #jetty.session.jdbc.stringType=
@@ -54,6 +57,9 @@ db-connection-type=datasource
 #jetty.session.jdbc.schema.maxIntervalColumn=maxInterval
 #jetty.session.jdbc.schema.mapColumn=map
 #jetty.session.jdbc.schema.table=JettySessions
+#jetty.session.jdbc.schema.attributeTable=
+#jetty.session.jdbc.schema.attributeNameColumn=attributeName
+#jetty.session.jdbc.schema.attributeValueColumn=attributeValue
 
 
 
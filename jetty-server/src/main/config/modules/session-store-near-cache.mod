@@ -0,0 +1,17 @@
+DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Keeps a local copy of the SessionData of a clustered SessionDataStore 
+(Hazelcast or embedded Infinispan), discarded when another node changes the session.
+
+[tags]
+session
+
+[depend]
+session-store
+
+[xml]
+etc/sessions/near-cache/session-near-cache-store.xml
+
+[ini-template]
+#jetty.session.nearCache.maxEntries=0
@@ -0,0 +1,18 @@
+DO NOT EDIT - See: https://www.eclipse.org/jetty/documentation/current/startup-modules.html
+
+[description]
+Enables asynchronous, batched writes of SessionData to a SessionDataStore.
+
+[tags]
+session
+
+[depend]
+session-store
+
+[xml]
+etc/sessions/write-behind/session-write-behind-store.xml
+
+[ini-template]
+#jetty.session.writeBehind.flushIntervalMs=1000
+#jetty.session.writeBehind.maxBatchSize=100
+#jetty.session.writeBehind.maxWriteAttempts=5
@@ -22,3 +22,6 @@ etc/sessions/id-manager.xml
 
 ## Period between runs of the session scavenger (in seconds)
 #jetty.sessionScavengeInterval.seconds=600
+
+## Max number of contexts scavenged in parallel
+#jetty.sessionScavengeThreads=1
@@ -266,34 +266,7 @@ public class HttpInput extends ServletInputStream implements Runnable
         int l;
         synchronized (_inputQ)
         {
-            if (!isAsync())
-            {
-                // Setup blocking only if not async
-                if (_blockUntil == 0)
-                {
-                    long blockingTimeout = getBlockingTimeout();
-                    if (blockingTimeout > 0)
-                        _blockUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockingTimeout);
-                }
-            }
-
-            // Calculate minimum request rate for DOS protection
-            long minRequestDataRate = _channelState.getHttpChannel().getHttpConfiguration().getMinRequestDataRate();
-            if (minRequestDataRate > 0 && _firstByteTimeStamp != -1)
-            {
-                long period = System.nanoTime() - _firstByteTimeStamp;
-                if (period > 0)
-                {
-                    long minimum_data = minRequestDataRate * TimeUnit.NANOSECONDS.toMillis(period) / TimeUnit.SECONDS.toMillis(1);
-                    if (_contentArrived < minimum_data)
-                    {
-                        BadMessageException bad = new BadMessageException(HttpStatus.REQUEST_TIMEOUT_408,
-                            String.format("Request content data rate < %d B/s", minRequestDataRate));
-                        _channelState.getHttpChannel().abort(bad);
-                        throw bad;
-                    }
-                }
-            }
+            startRead();
 
             // Consume content looking for bytes to read
             while (true)
@@ -330,6 +303,94 @@ public class HttpInput extends ServletInputStream implements Runnable
         return l;
     }
 
+    /**
+     * <p>Reads the next chunk of content without copying its bytes, for
+     * applications that pass the content along, for example proxies.</p>
+     * <p>The returned {@link Content} is detached from this input, and the
+     * application takes ownership of its {@link Content#getByteBuffer() buffer}.
+     * The application must call {@link Content#succeeded()} when it has
+     * finished with the buffer, to release the underlying network buffer,
+     * and must not read again before that, because the network buffer
+     * cannot be refilled while it is referenced.</p>
+     * <p>Like {@link #read(byte[], int, int)}, this method blocks until content
+     * is available in blocking mode, and must be called only when
+     * {@link #isReady()} returns true in asynchronous mode.</p>
+     *
+     * @return the next chunk of content, or null if the content is finished
+     * (see {@link #isFinished()}) or, in asynchronous mode, if no content is available
+     * @throws IOException if the content cannot be read
+     */
+    public Content readContent() throws IOException
+    {
+        boolean wake = false;
+        Content result = null;
+        synchronized (_inputQ)
+        {
+            startRead();
+
+            while (true)
+            {
+                Content item = nextContent();
+                if (item != null)
+                {
+                    // Detach the content, so that it is not consumed by this input.
+                    if (item == _content)
+                        _content = null;
+                    else if (item == _intercepted)
+                        _intercepted = null;
+                    _contentConsumed += item.remaining();
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{} read content {}", this, item);
+                    result = item;
+                    break;
+                }
+
+                if (!_state.blockForContent(this))
+                {
+                    if (_state.noContent() < 0)
+                        wake = _channelState.onReadEof();
+                    break;
+                }
+            }
+        }
+
+        if (wake)
+            wake();
+        return result;
+    }
+
+    private void startRead()
+    {
+        if (!isAsync())
+        {
+            // Setup blocking only if not async
+            if (_blockUntil == 0)
+            {
+                long blockingTimeout = getBlockingTimeout();
+                if (blockingTimeout > 0)
+                    _blockUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockingTimeout);
+            }
+        }
+
+        // Calculate minimum request rate for DOS protection
+        long minRequestDataRate = _channelState.getHttpChannel().getHttpConfiguration().getMinRequestDataRate();
+        if (minRequestDataRate > 0 && _firstByteTimeStamp != -1)
+        {
+            long period = System.nanoTime() - _firstByteTimeStamp;
+            if (period > 0)
+            {
+                long minimum_data = minRequestDataRate * TimeUnit.NANOSECONDS.toMillis(period) / TimeUnit.SECONDS.toMillis(1);
+                if (_contentArrived < minimum_data)
+                {
+                    BadMessageException bad = new BadMessageException(HttpStatus.REQUEST_TIMEOUT_408,
+                        String.format("Request content data rate < %d B/s", minRequestDataRate));
+                    _channelState.getHttpChannel().abort(bad);
+                    throw bad;
+                }
+            }
+        }
+    }
+
     /**
      * Called when derived implementations should attempt to produce more Content and add it via {@link #addContent(Content)}. For protocols that are constantly
      * producing (eg HTTP2) this can be left as a noop;
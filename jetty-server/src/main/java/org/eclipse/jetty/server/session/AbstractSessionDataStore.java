@@ -20,10 +20,17 @@
 package org.eclipse.jetty.server.session;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.component.ContainerLifeCycle;
@@ -44,6 +51,7 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     protected int _gracePeriodSec = 60 * 60; //default of 1hr 
     protected long _lastExpiryCheckTime = 0; //last time in ms that getExpired was called
     protected int _savePeriodSec = 0; //time in sec between saves
+    protected SessionAttributeSerializer _serializer = new JavaSessionAttributeSerializer(); //converts session attributes to and from bytes
 
     /**
      * Store the session data persistently.
@@ -55,6 +63,34 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
      */
     public abstract void doStore(String id, SessionData data, long lastSaveTime) throws Exception;
     
+    /**
+     * Store the data of several sessions persistently.
+     * <p>
+     * By default each session is stored in turn with {@link #doStore(String, SessionData, long)}.
+     * Stores that can write several sessions in one operation should override this
+     * method, preferably storing either all or none of the sessions.
+     * 
+     * @param sessions the sessions to store, keyed by id
+     * @param lastSaveTimes the time of previous save of each session, or 0 if never saved
+     * @throws Exception if unable to store the data of some of the sessions
+     */
+    public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+    {
+        MultiException failures = new MultiException();
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            try
+            {
+                doStore(entry.getKey(), entry.getValue(), lastSaveTimes.get(entry.getKey()));
+            }
+            catch (Exception e)
+            {
+                failures.add(e);
+            }
+        }
+        failures.ifExceptionThrow();
+    }
+    
     /**
      * Load the session from persistent store.
      * 
@@ -129,13 +165,8 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
             public void run ()
             {
                 long lastSave = data.getLastSaved();
-                long savePeriodMs = (_savePeriodSec <=0? 0: TimeUnit.SECONDS.toMillis(_savePeriodSec));
-
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Store: id={}, dirty={}, lsave={}, period={}, elapsed={}", id,data.isDirty(), data.getLastSaved(), savePeriodMs, (System.currentTimeMillis()-lastSave));
 
-                //save session if attribute changed or never been saved or time between saves exceeds threshold
-                if (data.isDirty() || (lastSave <= 0) || ((System.currentTimeMillis()-lastSave) > savePeriodMs))
+                if (isSaveRequired(id, data))
                 {
                     //set the last saved time to now
                     data.setLastSaved(System.currentTimeMillis());
@@ -161,6 +192,78 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
     }
     
 
+    @Override
+    public void storeAll(Map<String,SessionData> sessions) throws Exception
+    {
+        if (sessions == null || sessions.isEmpty())
+            return;
+
+        final AtomicReference<Exception> exception = new AtomicReference<Exception>();
+
+        Runnable r = new Runnable()
+        {
+            @Override
+            public void run ()
+            {
+                long now = System.currentTimeMillis();
+                Map<String,SessionData> toStore = new LinkedHashMap<>();
+                Map<String,Long> lastSaveTimes = new HashMap<>();
+                for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+                {
+                    SessionData data = entry.getValue();
+                    if (data != null && isSaveRequired(entry.getKey(), data))
+                    {
+                        toStore.put(entry.getKey(), data);
+                        lastSaveTimes.put(entry.getKey(), data.getLastSaved());
+                        data.setLastSaved(now);
+                    }
+                }
+                
+                if (toStore.isEmpty())
+                    return;
+
+                try
+                {
+                    doStoreAll(toStore, lastSaveTimes);
+                    for (SessionData data : toStore.values())
+                        data.setDirty(false);
+                }
+                catch (Exception e)
+                {
+                    //reset last save times if the save failed
+                    for (Map.Entry<String,SessionData> entry : toStore.entrySet())
+                        entry.getValue().setLastSaved(lastSaveTimes.get(entry.getKey()));
+                    exception.set(e);
+                }
+            }
+        };
+
+        _context.run(r);
+        if (exception.get() != null)
+            throw exception.get();
+    }
+
+
+    /**
+     * Save session if attribute changed or never been saved or 
+     * time between saves exceeds threshold.
+     * 
+     * @param id the session id
+     * @param data the session data
+     * @return true if the session needs to be written out
+     */
+    private boolean isSaveRequired (String id, SessionData data)
+    {
+        long lastSave = data.getLastSaved();
+        long savePeriodMs = (_savePeriodSec <=0? 0: TimeUnit.SECONDS.toMillis(_savePeriodSec));
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Store: id={}, dirty={}, lsave={}, period={}, elapsed={}", id,data.isDirty(), data.getLastSaved(), savePeriodMs, (System.currentTimeMillis()-lastSave));
+
+        return data.isDirty() || (lastSave <= 0) || ((System.currentTimeMillis()-lastSave) > savePeriodMs);
+    }
+
+
     @Override
     public Set<String> getExpired(Set<String> candidates)
     {
@@ -240,6 +343,70 @@ public abstract class AbstractSessionDataStore extends ContainerLifeCycle implem
         _savePeriodSec = savePeriodSec;
     }
 
+    
+    /**
+     * @return the serializer used to convert the session attributes to and from bytes
+     */
+    @ManagedAttribute(value="session attribute serializer", readonly=true)
+    public SessionAttributeSerializer getSerializer()
+    {
+        return _serializer;
+    }
+
+
+    /**
+     * The serializer used by stores that persist the session
+     * attributes as bytes. By default a {@link JavaSessionAttributeSerializer},
+     * which writes the format of previous releases.
+     * <p>
+     * A {@link CompactSessionAttributeSerializer} writes smaller data, and can
+     * also read the format of previous releases, but it should only be configured
+     * once no node running a previous release shares the same store.
+     * 
+     * @param serializer the serializer to set
+     */
+    public void setSerializer(SessionAttributeSerializer serializer)
+    {
+        checkStarted();
+        if (serializer == null)
+            throw new IllegalArgumentException("Null serializer");
+        _serializer = serializer;
+    }
+
+    /**
+     * Serialize some of the attributes of a session, for stores
+     * that write the attributes individually rather than as a whole.
+     * 
+     * @param data the session
+     * @param attributes the attributes to serialize
+     * @return the serialized attributes
+     * @throws IOException if the attributes cannot be serialized
+     */
+    protected byte[] serializeAttributes(SessionData data, Map<String,Object> attributes) throws IOException
+    {
+        SessionData tmp = new SessionData(data.getId(), data.getContextPath(), data.getVhost(), 0, 0, 0, 0, new HashMap<>(attributes));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        getSerializer().serializeAttributes(tmp, baos);
+        return baos.toByteArray();
+    }
+    
+    
+    /**
+     * Deserialize attributes serialized with {@link #serializeAttributes(SessionData, Map)}.
+     * 
+     * @param data the session
+     * @param bytes the serialized attributes
+     * @return the attributes
+     * @throws IOException if the attributes cannot be deserialized
+     * @throws ClassNotFoundException if the class of an attribute cannot be found
+     */
+    protected Map<String,Object> deserializeAttributes(SessionData data, byte[] bytes) throws IOException, ClassNotFoundException
+    {
+        SessionData tmp = new SessionData(data.getId(), data.getContextPath(), data.getVhost(), 0, 0, 0, 0);
+        getSerializer().deserializeAttributes(tmp, new ByteArrayInputStream(bytes));
+        return tmp.getAllAttributes();
+    }
+
     @Override
     public String toString()
     {
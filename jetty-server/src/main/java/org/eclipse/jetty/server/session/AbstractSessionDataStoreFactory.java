@@ -29,6 +29,7 @@ public abstract class AbstractSessionDataStoreFactory implements SessionDataStor
 
     int _gracePeriodSec;
     int _savePeriodSec;
+    SessionAttributeSerializer _serializer;
     
     
     
@@ -66,6 +67,25 @@ public abstract class AbstractSessionDataStoreFactory implements SessionDataStor
     {
         _savePeriodSec = savePeriodSec;
     }
+
+
+    /**
+     * @return the serializer, or null to use the default of the store
+     */
+    public SessionAttributeSerializer getSerializer()
+    {
+        return _serializer;
+    }
+
+
+    /**
+     * @param serializer the serializer for the session attributes,
+     * or null to use the default of the store
+     */
+    public void setSerializer(SessionAttributeSerializer serializer)
+    {
+        _serializer = serializer;
+    }
    
 
 }
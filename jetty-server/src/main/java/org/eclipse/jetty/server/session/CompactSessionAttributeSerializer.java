@@ -0,0 +1,519 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.jetty.util.ByteArrayOutputStream2;
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * CompactSessionAttributeSerializer
+ *
+ * Serializes the attributes with a compact binary encoding for the common
+ * attribute types: String, the primitive wrappers, byte[], and ArrayList,
+ * HashMap and LinkedHashMap of those types. Other attribute values are
+ * serialized with java serialization, using the container or webapp
+ * classloader as appropriate.
+ * <p>
+ * Unlike java serialization, references shared between the compactly
+ * encoded collections of different attributes are not preserved.
+ * <p>
+ * The serialized attributes are optionally compressed when they are larger
+ * than the compression threshold.
+ * <p>
+ * Attributes serialized by {@link JavaSessionAttributeSerializer}, as done by
+ * previous releases, can also be deserialized.
+ * <p>
+ * This serializer must be configured explicitly, as nodes running previous
+ * releases cannot read its format: it should only be used once all the nodes
+ * that share the same store can read it.
+ */
+@ManagedObject
+public class CompactSessionAttributeSerializer implements SessionAttributeSerializer
+{
+    // Never the start of a java serialization stream, which is 0xACED.
+    private static final int MAGIC = 0x4A53;
+    private static final int VERSION = 1;
+    private static final int COMPRESSED = 0x01;
+    
+    private static final int END = 0;
+    private static final int ENTRY = 1;
+    
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int LONG_STRING = 2;
+    private static final int INTEGER = 3;
+    private static final int LONG = 4;
+    private static final int SHORT = 5;
+    private static final int BYTE = 6;
+    private static final int CHARACTER = 7;
+    private static final int BOOLEAN = 8;
+    private static final int FLOAT = 9;
+    private static final int DOUBLE = 10;
+    private static final int BYTES = 11;
+    private static final int ARRAY_LIST = 12;
+    private static final int HASH_MAP = 13;
+    private static final int LINKED_HASH_MAP = 14;
+    private static final int JAVA = 15;
+
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_UTF_CHARS = 65535 / 3;
+    
+    private final JavaSessionAttributeSerializer _legacy = new JavaSessionAttributeSerializer();
+    private int _compressionThreshold = -1;
+    private int _compressionLevel = Deflater.BEST_SPEED;
+
+    
+    /**
+     * @return the size in bytes above which the serialized attributes are compressed,
+     * or a negative value if they are never compressed
+     */
+    @ManagedAttribute(value="size in bytes above which the attributes are compressed", readonly=true)
+    public int getCompressionThreshold()
+    {
+        return _compressionThreshold;
+    }
+
+    /**
+     * @param compressionThreshold the size in bytes above which the serialized attributes
+     * are compressed, or a negative value to never compress them
+     */
+    public void setCompressionThreshold(int compressionThreshold)
+    {
+        _compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @return the deflate compression level
+     */
+    @ManagedAttribute(value="deflate compression level", readonly=true)
+    public int getCompressionLevel()
+    {
+        return _compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel the deflate compression level, from 0 to 9
+     * @see Deflater#setLevel(int)
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        _compressionLevel = compressionLevel;
+    }
+
+    @Override
+    public void serializeAttributes(SessionData data, OutputStream out) throws IOException
+    {
+        ByteArrayOutputStream2 payload = new ByteArrayOutputStream2(512);
+        DataOutputStream dout = new DataOutputStream(payload);
+
+        // Values that cannot be encoded compactly are written together
+        // in a single java serialization stream after the entries.
+        ByteArrayOutputStream2 javaPayload = null;
+        ObjectOutputStream oos = null;
+        for (Map.Entry<String, Object> entry : data.getAllAttributes().entrySet())
+        {
+            Object value = entry.getValue();
+            dout.writeByte(ENTRY);
+            dout.writeUTF(entry.getKey());
+            if (isCompact(value, 0))
+            {
+                writeValue(dout, value);
+            }
+            else
+            {
+                dout.writeByte(JAVA);
+                if (oos == null)
+                {
+                    javaPayload = new ByteArrayOutputStream2();
+                    oos = new ObjectOutputStream(javaPayload);
+                }
+                oos.writeBoolean(SessionData.isServerLoader(value));
+                oos.writeObject(value);
+            }
+        }
+        dout.writeByte(END);
+        if (oos != null)
+        {
+            oos.flush();
+            writeVarLong(dout, javaPayload.getCount());
+            dout.write(javaPayload.getBuf(), 0, javaPayload.getCount());
+        }
+        dout.flush();
+
+        int flags = 0;
+        if (_compressionThreshold >= 0 && payload.getCount() > _compressionThreshold)
+        {
+            ByteArrayOutputStream2 compressed = new ByteArrayOutputStream2(payload.getCount() / 2);
+            Deflater deflater = new Deflater(_compressionLevel);
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(compressed, deflater))
+            {
+                dos.write(payload.getBuf(), 0, payload.getCount());
+            }
+            finally
+            {
+                deflater.end();
+            }
+            if (compressed.getCount() < payload.getCount())
+            {
+                flags |= COMPRESSED;
+                payload = compressed;
+            }
+        }
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeShort(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(flags);
+        header.writeInt(payload.getCount());
+        header.write(payload.getBuf(), 0, payload.getCount());
+        header.flush();
+    }
+
+    @Override
+    public void deserializeAttributes(SessionData data, InputStream in) throws IOException, ClassNotFoundException
+    {
+        PushbackInputStream pin = new PushbackInputStream(in, 2);
+        int b1 = pin.read();
+        if (b1 < 0)
+            throw new EOFException();
+        int b2 = pin.read();
+        if (b2 < 0 || ((b1 << 8) | b2) != MAGIC)
+        {
+            // Not the compact format, try java serialization.
+            if (b2 >= 0)
+                pin.unread(b2);
+            pin.unread(b1);
+            _legacy.deserializeAttributes(data, pin);
+            return;
+        }
+
+        DataInputStream din = new DataInputStream(pin);
+        int version = din.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported version " + version);
+        int flags = din.readUnsignedByte();
+        int length = din.readInt();
+        if (length < 0)
+            throw new IOException("Invalid length " + length);
+        byte[] bytes = new byte[length];
+        din.readFully(bytes);
+        
+        InputStream payload = new ByteArrayInputStream(bytes);
+        if ((flags & COMPRESSED) != 0)
+            payload = new InflaterInputStream(payload);
+        din = new DataInputStream(payload);
+
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        List<String> javaNames = null;
+        while (true)
+        {
+            int marker = din.readUnsignedByte();
+            if (marker == END)
+                break;
+            if (marker != ENTRY)
+                throw new IOException("Invalid marker " + marker);
+            String name = din.readUTF();
+            int type = din.readUnsignedByte();
+            if (type == JAVA)
+            {
+                if (javaNames == null)
+                    javaNames = new ArrayList<>();
+                javaNames.add(name);
+            }
+            else
+            {
+                Object value = readValue(din, type, 0);
+                if (value != null)
+                    attributes.put(name, value);
+            }
+        }
+
+        if (javaNames != null)
+        {
+            byte[] javaBytes = new byte[(int)readVarLong(din)];
+            din.readFully(javaBytes);
+            try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(new ByteArrayInputStream(javaBytes)))
+            {
+                for (String name : javaNames)
+                {
+                    boolean isServerLoader = ois.readBoolean();
+                    attributes.put(name, ois.readObject(SessionData.getLoader(isServerLoader)));
+                }
+            }
+        }
+
+        data._attributes = attributes;
+    }
+
+    private boolean isCompact(Object value, int depth)
+    {
+        if (value == null)
+            return true;
+        Class<?> type = value.getClass();
+        if (type == String.class || type == Integer.class || type == Long.class ||
+            type == Boolean.class || type == Double.class || type == Float.class ||
+            type == Short.class || type == Byte.class || type == Character.class ||
+            type == byte[].class)
+            return true;
+        // Bounds the recursion, for example with self referencing collections.
+        if (depth >= MAX_DEPTH)
+            return false;
+        if (type == ArrayList.class)
+        {
+            for (Object element : (List<?>)value)
+            {
+                if (!isCompact(element, depth + 1))
+                    return false;
+            }
+            return true;
+        }
+        if (type == HashMap.class || type == LinkedHashMap.class)
+        {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+            {
+                if (!isCompact(entry.getKey(), depth + 1) || !isCompact(entry.getValue(), depth + 1))
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException
+    {
+        if (value == null)
+        {
+            out.writeByte(NULL);
+        }
+        else if (value instanceof String)
+        {
+            String string = (String)value;
+            if (string.length() <= MAX_UTF_CHARS)
+            {
+                out.writeByte(STRING);
+                out.writeUTF(string);
+            }
+            else
+            {
+                out.writeByte(LONG_STRING);
+                writeVarLong(out, string.length());
+                out.writeChars(string);
+            }
+        }
+        else if (value instanceof Integer)
+        {
+            out.writeByte(INTEGER);
+            writeVarLong(out, zigZag((Integer)value));
+        }
+        else if (value instanceof Long)
+        {
+            out.writeByte(LONG);
+            writeVarLong(out, zigZag((Long)value));
+        }
+        else if (value instanceof Short)
+        {
+            out.writeByte(SHORT);
+            out.writeShort((Short)value);
+        }
+        else if (value instanceof Byte)
+        {
+            out.writeByte(BYTE);
+            out.writeByte((Byte)value);
+        }
+        else if (value instanceof Character)
+        {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character)value);
+        }
+        else if (value instanceof Boolean)
+        {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        }
+        else if (value instanceof Float)
+        {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float)value);
+        }
+        else if (value instanceof Double)
+        {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else if (value instanceof byte[])
+        {
+            byte[] bytes = (byte[])value;
+            out.writeByte(BYTES);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+        else if (value instanceof List)
+        {
+            List<?> list = (List<?>)value;
+            out.writeByte(ARRAY_LIST);
+            writeVarLong(out, list.size());
+            for (Object element : list)
+                writeValue(out, element);
+        }
+        else
+        {
+            Map<?, ?> map = (Map<?, ?>)value;
+            out.writeByte(value instanceof LinkedHashMap ? LINKED_HASH_MAP : HASH_MAP);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    private Object readValue(DataInputStream in, int type, int depth) throws IOException
+    {
+        if (depth > MAX_DEPTH)
+            throw new IOException("Nesting too deep");
+        switch (type)
+        {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readUTF();
+            case LONG_STRING:
+            {
+                int length = readLength(in);
+                StringBuilder builder = new StringBuilder(length);
+                for (int i = 0; i < length; ++i)
+                    builder.append(in.readChar());
+                return builder.toString();
+            }
+            case INTEGER:
+                return (int)unZigZag(readVarLong(in));
+            case LONG:
+                return unZigZag(readVarLong(in));
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BOOLEAN:
+                return in.readBoolean();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case BYTES:
+            {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case ARRAY_LIST:
+            {
+                int size = readLength(in);
+                List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; ++i)
+                    list.add(readValue(in, in.readUnsignedByte(), depth + 1));
+                return list;
+            }
+            case HASH_MAP:
+            case LINKED_HASH_MAP:
+            {
+                int size = readLength(in);
+                Map<Object, Object> map = type == HASH_MAP ? new HashMap<>() : new LinkedHashMap<>();
+                for (int i = 0; i < size; ++i)
+                {
+                    Object key = readValue(in, in.readUnsignedByte(), depth + 1);
+                    map.put(key, readValue(in, in.readUnsignedByte(), depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Unknown type " + type);
+        }
+    }
+
+    private static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Invalid variable length value");
+    }
+
+    private static int readLength(DataInputStream in) throws IOException
+    {
+        long length = readVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE)
+            throw new IOException("Invalid length " + length);
+        return (int)length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[compressionThreshold=%d]", this.getClass().getSimpleName(), this.hashCode(), _compressionThreshold);
+    }
+}
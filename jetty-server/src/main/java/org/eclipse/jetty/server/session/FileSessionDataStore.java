@@ -26,18 +26,21 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.MultiException;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
@@ -49,6 +52,14 @@ import org.eclipse.jetty.util.log.Logger;
  * FileSessionDataStore
  *
  * A file-based store of session data.
+ * 
+ * The files are named after the expiry time, the context and the id of the
+ * session. They are held in the store dir, or, if shards is set, in as many
+ * subdirectories of the store dir, selected by the hash of the context and id.
+ * 
+ * The names of the files of the context are read once when the store starts,
+ * and an index of the sessions by expiry time is kept in memory, so finding the
+ * expired sessions only visits the expired sessions.
  */
 @ManagedObject
 public class FileSessionDataStore extends AbstractSessionDataStore
@@ -59,6 +70,8 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     protected Map<String,String> _sessionFileMap = new ConcurrentHashMap<>();
     protected String _contextString;
     protected long _lastSweepTime = 0L;
+    protected int _shards = 0; //number of subdirectories holding the files, or 0 to hold them in the store dir
+    private final ConcurrentSkipListSet<ExpiryEntry> _expiryIndex = new ConcurrentSkipListSet<>();
 
     @Override
     public void initialize(SessionContext context) throws Exception
@@ -78,6 +91,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     protected void doStop() throws Exception
     {
         _sessionFileMap.clear();
+        _expiryIndex.clear();
         _lastSweepTime = 0;
         super.doStop();
     }
@@ -105,6 +119,29 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         _deleteUnrestorableFiles = deleteUnrestorableFiles;
     }
 
+    @ManagedAttribute(value="subdirs of the store dir holding the files", readonly=true)
+    public int getShards()
+    {
+        return _shards;
+    }
+
+    /**
+     * Hold the session files in subdirectories of the store dir, named
+     * by the hex value of the hash of the context and id modulo the number
+     * of shards, rather than in the store dir. Files of the context found
+     * at startup in the store dir or in another subdirectory are moved
+     * to their subdirectory.
+     * 
+     * @param shards the number of subdirectories, or 0 for none
+     */
+    public void setShards(int shards)
+    {
+        checkStarted();
+        if (shards < 0)
+            throw new IllegalArgumentException("Shards must not be negative");
+        _shards = shards;
+    }
+
  
 
     /** 
@@ -118,7 +155,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         if (_storeDir != null)
         {
             //remove from our map
-            String filename = _sessionFileMap.remove(getIdWithContext(id));
+            String filename = removeSessionFile(getIdWithContext(id));
             if (filename == null)
                 return false;
             
@@ -144,7 +181,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     {
         if (filename == null)
             return false;
-        File file = new File(_storeDir, filename);
+        File file = getFile(filename);
         return Files.deleteIfExists(file.toPath());
     }
     
@@ -163,20 +200,9 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         final long now = System.currentTimeMillis();
         HashSet<String> expired = new HashSet<String>();
 
-        //iterate over the files and work out which have expired
-        for (String filename:_sessionFileMap.values())
-        {
-            try
-            {
-                long expiry = getExpiryFromFilename(filename);
-                if (expiry > 0 && expiry < now)
-                    expired.add(getIdFromFilename(filename));
-            }
-            catch (Exception e)
-            {
-                LOG.warn(e);
-            }
-        }
+        //the index holds the sessions that can expire, ordered by expiry
+        for (ExpiryEntry entry:_expiryIndex.headSet(new ExpiryEntry(now, ""), false))
+            expired.add(entry._id);
         
         //check candidates that were not found to be expired, perhaps 
         //because they no longer exist and they should be expired
@@ -216,7 +242,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         if (LOG.isDebugEnabled()) LOG.debug("Sweeping {} for old session files", _storeDir);
         try
         {
-            Files.walk(_storeDir.toPath(), 1, FileVisitOption.FOLLOW_LINKS)
+            Files.walk(_storeDir.toPath(), getMaxDepth(), FileVisitOption.FOLLOW_LINKS)
             .filter(p->!Files.isDirectory(p)).filter(p->!isOurContextSessionFilename(p.getFileName().toString()))
             .filter(p->isSessionFilename(p.getFileName().toString()))
             .forEach(p->{
@@ -286,7 +312,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
                 LOG.debug("Unknown file {}",idWithContext);
             return null;
         }
-        File file = new File (_storeDir, filename);
+        File file = getFile(filename);
         if (!file.exists())
         {
             if (LOG.isDebugEnabled())
@@ -302,7 +328,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         }
         catch (UnreadableSessionDataException e)
         {
-            if (isDeleteUnrestorableFiles() && file.exists() && file.getParentFile().equals(_storeDir))
+            if (isDeleteUnrestorableFiles() && file.exists() && file.getParentFile().equals(getSessionDir(idWithContext)))
             {
                 try
                 {
@@ -331,12 +357,12 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             //make a fresh file using the latest session expiry
             String filename = getIdWithContextAndExpiry(data);
             String idWithContext = getIdWithContext(id);
-            file = new File(_storeDir, filename);
+            file = getFile(filename);
 
             try(FileOutputStream fos = new FileOutputStream(file,false))
             {
                 save(fos, id, data);
-                _sessionFileMap.put(idWithContext, filename);
+                putSessionFile(idWithContext, filename);
             }
             catch (Exception e)
             { 
@@ -365,11 +391,16 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             throw new IllegalStateException("No file store specified");
 
         if (!_storeDir.exists())
+        {
             _storeDir.mkdirs();
+            createShards();
+        }
         else
         {
             if (!(_storeDir.isDirectory() &&_storeDir.canWrite() && _storeDir.canRead()))
                 throw new IllegalStateException(_storeDir.getAbsolutePath()+" must be readable/writeable dir");
+            
+            createShards();
 
             //iterate over files in _storeDir and build map of session id to filename.
             //if we come across files for sessions in other contexts, check if they're
@@ -377,71 +408,189 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             MultiException me = new MultiException();
             long now = System.currentTimeMillis();
             
-                Files.walk(_storeDir.toPath(), 1, FileVisitOption.FOLLOW_LINKS)
-                .filter(p->!Files.isDirectory(p)).filter(p->isSessionFilename(p.getFileName().toString()))
-                .forEach(p->{
-                    //first get rid of all ancient files, regardless of which
-                    //context they are for
-                    try
-                    {
-                        sweepFile(now, p);
-                    }
-                    catch (Exception x)
-                    {
-                        me.add(x);
-                    }
-                    
-                    String filename = p.getFileName().toString();
-                    String context = getContextFromFilename(filename);
-                    //now process it if it wasn't deleted, and it is for our context
-                    if (Files.exists(p) && _contextString.equals(context))
+            //list the files first, as files may be moved to their shard
+            List<Path> paths;
+            try (Stream<Path> stream = Files.walk(_storeDir.toPath(), getMaxDepth(), FileVisitOption.FOLLOW_LINKS))
+            {
+                paths = stream.filter(p->!Files.isDirectory(p)).filter(p->isSessionFilename(p.getFileName().toString()))
+                    .collect(Collectors.toList());
+            }
+            
+            for (Path p:paths)
+            {
+                //first get rid of all ancient files, regardless of which
+                //context they are for
+                try
+                {
+                    sweepFile(now, p);
+                }
+                catch (Exception x)
+                {
+                    me.add(x);
+                }
+
+                String filename = p.getFileName().toString();
+                String context = getContextFromFilename(filename);
+                //now process it if it wasn't deleted, and it is for our context
+                if (Files.exists(p) && _contextString.equals(context))
+                {
+                    //the session is for our context, populate the map with it
+                    String sessionIdWithContext = getIdWithContextFromFilename(filename);
+                    if (sessionIdWithContext != null)
                     {
-                        //the session is for our context, populate the map with it
-                        String sessionIdWithContext = getIdWithContextFromFilename(filename);
-                        if (sessionIdWithContext != null)
+                        try
                         {
-                            //handle multiple session files existing for the same session: remove all
-                            //but the file with the most recent expiry time
-                            String existing = _sessionFileMap.putIfAbsent(sessionIdWithContext, filename);
-                            if (existing != null)
+                            //move the file to its directory, if the layout changed
+                            Path path = getFile(filename).toPath();
+                            if (!path.equals(p))
                             {
-                                //if there was a prior filename, work out which has the most
-                                //recent modify time
-                                try
+                                Files.move(p, path, StandardCopyOption.REPLACE_EXISTING);
+                                if (LOG.isDebugEnabled()) LOG.debug("Moved {} to {}", p, path);
+                            }
+                        }
+                        catch (IOException e)
+                        {
+                            me.add(e);
+                            continue;
+                        }
+                        
+                        //handle multiple session files existing for the same session: remove all
+                        //but the file with the most recent expiry time
+                        String existing = _sessionFileMap.putIfAbsent(sessionIdWithContext, filename);
+                        if (existing == null)
+                            index(filename);
+                        else if (!existing.equals(filename))
+                        {
+                            //if there was a prior filename, work out which has the most
+                            //recent modify time
+                            try
+                            {
+                                long existingExpiry = getExpiryFromFilename(existing);
+                                long thisExpiry = getExpiryFromFilename(filename);
+
+                                if (thisExpiry > existingExpiry)
                                 {
-                                    long existingExpiry = getExpiryFromFilename(existing);
-                                    long thisExpiry = getExpiryFromFilename(filename);
-                                    
-                                    if (thisExpiry > existingExpiry)
-                                    {
-                                        //replace with more recent file
-                                        Path existingPath = _storeDir.toPath().resolve(existing);
-                                        //update the file we're keeping
-                                        _sessionFileMap.put(sessionIdWithContext, filename);
-                                        //delete the old file
-                                        Files.delete(existingPath);
-                                        if (LOG.isDebugEnabled()) LOG.debug("Replaced {} with {}", existing, filename);
-                                    }
-                                    else
-                                    {
-                                        //we found an older file, delete it
-                                        Files.delete(p);
-                                        if (LOG.isDebugEnabled()) LOG.debug("Deleted expired session file {}", filename);
-                                    }
+                                    //replace with more recent file
+                                    Path existingPath = getFile(existing).toPath();
+                                    //update the file we're keeping
+                                    putSessionFile(sessionIdWithContext, filename);
+                                    //delete the old file
+                                    Files.delete(existingPath);
+                                    if (LOG.isDebugEnabled()) LOG.debug("Replaced {} with {}", existing, filename);
                                 }
-                                catch (IOException e)
+                                else
                                 {
-                                    me.add(e);
+                                    //we found an older file, delete it
+                                    Files.delete(getFile(filename).toPath());
+                                    if (LOG.isDebugEnabled()) LOG.debug("Deleted expired session file {}", filename);
                                 }
                             }
+                            catch (IOException e)
+                            {
+                                me.add(e);
+                            }
                         }
                     }
-                });
+                }
+            }
                 me.ifExceptionThrow();
         }
     }
     
     
+    /**
+     * Create the subdirectories of the store dir, if shards is set.
+     */
+    protected void createShards ()
+    {
+        for (int i=0; i<_shards; i++)
+            new File(_storeDir, Integer.toHexString(i)).mkdirs();
+    }
+    
+    
+    /**
+     * The subdirectories are always scanned, even if shards is not set,
+     * so that the files written with a previous shards setting are found.
+     * 
+     * @return the depth of the directories holding session files
+     */
+    protected int getMaxDepth ()
+    {
+        return 2;
+    }
+    
+    
+    /**
+     * Get the directory holding the file of a session.
+     * 
+     * @param idWithContext the session id plus context
+     * @return the store dir, or its subdirectory for the session if shards is set
+     */
+    protected File getSessionDir (String idWithContext)
+    {
+        if (_shards <= 0)
+            return _storeDir;
+        return new File(_storeDir, Integer.toHexString(Math.floorMod(idWithContext.hashCode(), _shards)));
+    }
+    
+    
+    /**
+     * @param filename the name of a session file of this context
+     * @return the session file
+     */
+    protected File getFile (String filename)
+    {
+        return new File(getSessionDir(getIdWithContextFromFilename(filename)), filename);
+    }
+    
+    
+    /**
+     * Map a session to its file, and index its expiry.
+     * 
+     * @param idWithContext the session id plus context
+     * @param filename the name of the session file
+     */
+    private void putSessionFile (String idWithContext, String filename)
+    {
+        String old = _sessionFileMap.put(idWithContext, filename);
+        if (old != null)
+            unindex(old);
+        index(filename);
+    }
+    
+    
+    /**
+     * Remove the mapping of a session to its file, and its expiry from the index.
+     * 
+     * @param idWithContext the session id plus context
+     * @return the name of the session file, or null
+     */
+    private String removeSessionFile (String idWithContext)
+    {
+        String filename = _sessionFileMap.remove(idWithContext);
+        if (filename != null)
+            unindex(filename);
+        return filename;
+    }
+    
+    
+    private void index (String filename)
+    {
+        long expiry = getExpiryFromFilename(filename);
+        //files with 0 expiry never expire
+        if (expiry > 0)
+            _expiryIndex.add(new ExpiryEntry(expiry, getIdFromFilename(filename)));
+    }
+    
+    
+    private void unindex (String filename)
+    {
+        long expiry = getExpiryFromFilename(filename);
+        if (expiry > 0)
+            _expiryIndex.remove(new ExpiryEntry(expiry, getIdFromFilename(filename)));
+    }
+    
+    
     @Override
     @ManagedAttribute(value="are sessions serialized by this store", readonly=true)
     public boolean isPassivating()
@@ -491,8 +640,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
         out.writeLong(data.getExpiry());
         out.writeLong(data.getMaxInactiveMs());
         
-        ObjectOutputStream oos = new ObjectOutputStream(out);
-        SessionData.serializeAttributes(data, oos);
+        getSerializer().serializeAttributes(data, out);
     }
     
   
@@ -644,8 +792,7 @@ public class FileSessionDataStore extends AbstractSessionDataStore
             data.setMaxInactiveMs(maxIdle);
 
             // Attributes
-            ClassLoadingObjectInputStream ois =  new ClassLoadingObjectInputStream(is);
-            SessionData.deserializeAttributes(data, ois);
+            getSerializer().deserializeAttributes(data, is);
             return data;        
         }
         catch (Exception e)
@@ -658,6 +805,43 @@ public class FileSessionDataStore extends AbstractSessionDataStore
     @Override
     public String toString()
     {
-        return String.format("%s[dir=%s,deleteUnrestorableFiles=%b]",super.toString(),_storeDir,_deleteUnrestorableFiles);
+        return String.format("%s[dir=%s,deleteUnrestorableFiles=%b,shards=%d]",super.toString(),_storeDir,_deleteUnrestorableFiles,_shards);
+    }
+    
+    
+    /**
+     * A session in the index of expiry times, ordered by expiry time then id.
+     */
+    private static class ExpiryEntry implements Comparable<ExpiryEntry>
+    {
+        private final long _expiry;
+        private final String _id;
+
+        private ExpiryEntry(long expiry, String id)
+        {
+            _expiry = expiry;
+            _id = id;
+        }
+
+        @Override
+        public int compareTo(ExpiryEntry o)
+        {
+            int c = Long.compare(_expiry, o._expiry);
+            return (c != 0 ? c : _id.compareTo(o._id));
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof ExpiryEntry))
+                return false;
+            return compareTo((ExpiryEntry)o) == 0;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(_expiry) * 31 + _id.hashCode();
+        }
     }
 }
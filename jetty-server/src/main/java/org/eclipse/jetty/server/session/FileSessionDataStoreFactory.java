@@ -30,6 +30,7 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
 {
     boolean _deleteUnrestorableFiles;
     File _storeDir;
+    int _shards;
 
 
 
@@ -67,6 +68,24 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         _storeDir = storeDir;
     }
 
+
+    /**
+     * @return the number of subdirectories of the storeDir holding the files
+     */
+    public int getShards()
+    {
+        return _shards;
+    }
+
+
+    /**
+     * @param shards the number of subdirectories of the storeDir holding the files, or 0 for none
+     */
+    public void setShards(int shards)
+    {
+        _shards = shards;
+    }
+
     
     /** 
      * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
@@ -77,8 +96,11 @@ public class FileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         FileSessionDataStore fsds = new FileSessionDataStore();
         fsds.setDeleteUnrestorableFiles(isDeleteUnrestorableFiles());
         fsds.setStoreDir(getStoreDir());
+        fsds.setShards(getShards());
         fsds.setGracePeriodSec(getGracePeriodSec());
         fsds.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            fsds.setSerializer(getSerializer());
         return fsds;
     }
 
@@ -19,14 +19,24 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.SessionIdManager;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.statistic.SampleStatistic;
 import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
 import org.eclipse.jetty.util.thread.Scheduler;
 
@@ -34,6 +44,10 @@ import org.eclipse.jetty.util.thread.Scheduler;
  * HouseKeeper
  *
  * There is 1 session HouseKeeper per SessionIdManager instance.
+ * 
+ * Each scavenge cycle scavenges the SessionHandlers of the SessionIdManager,
+ * up to maxScavengeThreads of them in parallel, using the thread pool
+ * of the Server.
  *
  */
 @ManagedObject
@@ -48,6 +62,9 @@ public class HouseKeeper extends AbstractLifeCycle
     protected Runner _runner;
     protected boolean _ownScheduler = false;
     private long _intervalMs =  DEFAULT_PERIOD_MS;
+    private int _maxScavengeThreads = 1; //max number of SessionHandlers scavenged in parallel
+    private final SampleStatistic _scavengeTimeStats = new SampleStatistic(); //duration of the scavenge cycles in ms
+    private final AtomicLong _sessionsScavenged = new AtomicLong();
    
    
     
@@ -251,6 +268,86 @@ public class HouseKeeper extends AbstractLifeCycle
   
     
     
+    /**
+     * @return the max number of SessionHandlers scavenged in parallel
+     */
+    @ManagedAttribute(value="max SessionHandlers scavenged in parallel")
+    public int getMaxScavengeThreads()
+    {
+        return _maxScavengeThreads;
+    }
+
+
+    /**
+     * @param maxScavengeThreads the max number of SessionHandlers scavenged
+     * in parallel, or 1 to scavenge them one after the other
+     */
+    public void setMaxScavengeThreads(int maxScavengeThreads)
+    {
+        if (maxScavengeThreads <= 0)
+            throw new IllegalArgumentException("Scavenge threads must be positive");
+        _maxScavengeThreads = maxScavengeThreads;
+    }
+    
+    
+    /**
+     * @return the number of scavenge cycles
+     */
+    @ManagedAttribute(value="number of scavenge cycles", readonly=true)
+    public long getScavengeCount()
+    {
+        return _scavengeTimeStats.getCount();
+    }
+    
+    
+    /**
+     * @return the max duration in ms of a scavenge cycle
+     */
+    @ManagedAttribute(value="max ms of a scavenge cycle", readonly=true)
+    public long getScavengeTimeMax()
+    {
+        return _scavengeTimeStats.getMax();
+    }
+    
+    
+    /**
+     * @return the mean duration in ms of a scavenge cycle
+     */
+    @ManagedAttribute(value="mean ms of a scavenge cycle", readonly=true)
+    public double getScavengeTimeMean()
+    {
+        return _scavengeTimeStats.getMean();
+    }
+    
+    
+    /**
+     * @return the total duration in ms of the scavenge cycles
+     */
+    @ManagedAttribute(value="total ms of scavenge cycles", readonly=true)
+    public long getScavengeTimeTotal()
+    {
+        return _scavengeTimeStats.getTotal();
+    }
+    
+    
+    /**
+     * @return the number of sessions expired by the scavenge cycles
+     */
+    @ManagedAttribute(value="sessions expired by scavenge cycles", readonly=true)
+    public long getSessionsScavenged()
+    {
+        return _sessionsScavenged.get();
+    }
+    
+    
+    @ManagedOperation(value="reset statistics", impact="ACTION")
+    public void resetStats()
+    {
+        _scavengeTimeStats.reset();
+        _sessionsScavenged.set(0);
+    }
+    
+    
     /**
      * Periodically do session housekeeping
      */
@@ -263,21 +360,116 @@ public class HouseKeeper extends AbstractLifeCycle
         if (LOG.isDebugEnabled())
             LOG.debug("{} scavenging sessions", _sessionIdManager.getWorkerName());
         
+        long start = System.nanoTime();
+        
         //find the session managers
+        List<SessionHandler> managers = new ArrayList<>();
         for (SessionHandler manager:_sessionIdManager.getSessionHandlers())
         {
             if (manager != null)
+                managers.add(manager);
+        }
+        
+        Executor executor = findExecutor();
+        int threads = Math.min(_maxScavengeThreads, managers.size());
+        if (threads <= 1 || executor == null)
+        {
+            for (SessionHandler manager:managers)
+                scavenge(manager);
+        }
+        else
+        {
+            //the scavenging threads, including this one, take the managers from a queue
+            Queue<SessionHandler> queue = new ConcurrentLinkedQueue<>(managers);
+            CountDownLatch latch = new CountDownLatch(threads-1);
+            for (int i=1; i<threads; i++)
             {
                 try
                 {
-                    manager.scavenge();
+                    executor.execute(()->
+                    {
+                        try
+                        {
+                            scavenge(queue);
+                        }
+                        finally
+                        {
+                            latch.countDown();
+                        }
+                    });
                 }
                 catch (Exception e)
                 {
                     LOG.warn(e);
+                    latch.countDown();
                 }
             }
+            scavenge(queue);
+            
+            try
+            {
+                latch.await();
+            }
+            catch (InterruptedException e)
+            {
+                LOG.ignore(e);
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        _scavengeTimeStats.record(durationMs);
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} scavenged {} session handlers in {}ms", _sessionIdManager.getWorkerName(), managers.size(), durationMs);
+    }
+    
+    
+    /**
+     * Scavenge the session managers of a queue until it is empty.
+     * 
+     * @param queue the session managers to scavenge
+     */
+    private void scavenge (Queue<SessionHandler> queue)
+    {
+        SessionHandler manager;
+        while ((manager = queue.poll()) != null)
+            scavenge(manager);
+    }
+    
+    
+    /**
+     * Scavenge a session manager.
+     * 
+     * @param manager the session manager to scavenge
+     */
+    protected void scavenge (SessionHandler manager)
+    {
+        try
+        {
+            long scavenged = manager.getSessionsScavenged();
+            manager.scavenge();
+            _sessionsScavenged.addAndGet(manager.getSessionsScavenged() - scavenged);
+        }
+        catch (Exception e)
+        {
+            LOG.warn(e);
+        }
+    }
+    
+    
+    /**
+     * @return the executor to scavenge session managers in
+     * parallel, or null to scavenge them one after the other
+     */
+    protected Executor findExecutor()
+    {
+        if (_maxScavengeThreads > 1 && _sessionIdManager instanceof DefaultSessionIdManager)
+        {
+            Server server = ((DefaultSessionIdManager)_sessionIdManager).getServer();
+            if (server != null)
+                return server.getThreadPool();
         }
+        return null;
     }
 
 
@@ -287,7 +479,7 @@ public class HouseKeeper extends AbstractLifeCycle
     @Override
     public String toString()
     {
-        return super.toString()+"[interval="+_intervalMs+", ownscheduler="+_ownScheduler+"]";
+        return super.toString()+"[interval="+_intervalMs+", ownscheduler="+_ownScheduler+", maxScavengeThreads="+_maxScavengeThreads+"]";
     }
 
 }
@@ -21,18 +21,26 @@ package org.eclipse.jetty.server.session;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -58,6 +66,8 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     protected DatabaseAdaptor _dbAdaptor;
     protected SessionTableSchema _sessionTableSchema;
     protected boolean _schemaProvided;
+    protected int _expiryBatchSize = 100; //rows fetched at a time, and candidates checked at a time, when finding expired sessions
+    protected long _lastSweepTime = 0L; //last time in ms that long expired sessions of other contexts were deleted
 
 
     
@@ -84,6 +94,9 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         protected String _expiryTimeColumn = "expiryTime";
         protected String _maxIntervalColumn = "maxInterval";
         protected String _mapColumn = "map";
+        protected String _attributeTableName = null;
+        protected String _attributeNameColumn = "attributeName";
+        protected String _attributeValueColumn = "attributeValue";
 
         
         
@@ -225,6 +238,53 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             _mapColumn = mapColumn;
         }
         
+        /**
+         * @return the name of the table holding one row per session attribute,
+         * or null if the attributes are held in the map column of the session table
+         */
+        public String getAttributeTableName()
+        {
+            return _attributeTableName;
+        }
+        
+        /**
+         * Hold each attribute of a session in its own row of the given table,
+         * so that only the attributes that changed are written when a session
+         * is updated, rather than the whole attribute map.
+         * 
+         * @param attributeTableName the name of the attribute table, 
+         * or null to hold the attributes in the map column of the session table
+         */
+        public void setAttributeTableName(String attributeTableName)
+        {
+            _attributeTableName = (StringUtil.isBlank(attributeTableName)?null:attributeTableName);
+        }
+        
+        public String getAttributeNameColumn()
+        {
+            return _attributeNameColumn;
+        }
+        public void setAttributeNameColumn(String attributeNameColumn)
+        {
+            checkNotNull(attributeNameColumn);
+            _attributeNameColumn = attributeNameColumn;
+        }
+        
+        public String getAttributeValueColumn()
+        {
+            return _attributeValueColumn;
+        }
+        public void setAttributeValueColumn(String attributeValueColumn)
+        {
+            checkNotNull(attributeValueColumn);
+            _attributeValueColumn = attributeValueColumn;
+        }
+        
+        private String getSchemaAttributeTableName()
+        {
+            return (getSchemaName()!=null?getSchemaName()+".":"")+getAttributeTableName();
+        }
+        
         public String getCreateStatementAsString ()
         {
             if (_dbAdaptor == null)
@@ -241,6 +301,20 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                     _mapColumn+" "+blobType+", primary key("+_idColumn+", "+_contextPathColumn+","+_virtualHostColumn+"))";
         }
         
+        public String getCreateAttributeTableStatementAsString ()
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException ("No DBAdaptor");
+            
+            String blobType = _dbAdaptor.getBlobType();
+            String stringType = _dbAdaptor.getStringType();
+            
+            return "create table "+_attributeTableName+" ("+_idColumn+" "+stringType+"(120), "+
+                    _contextPathColumn+" "+stringType+"(60), "+_virtualHostColumn+" "+stringType+"(60), "+
+                    _attributeNameColumn+" "+stringType+"(120), "+_attributeValueColumn+" "+blobType+", "+
+                    "primary key("+_idColumn+", "+_contextPathColumn+","+_virtualHostColumn+","+_attributeNameColumn+"))";
+        }
+        
         public String getCreateIndexOverExpiryStatementAsString (String indexName)
         {
             return "create index "+indexName+" on "+getSchemaTableName()+" ("+getExpiryTimeColumn()+")";
@@ -277,6 +351,13 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         }
 
+        public String getInsertAttributeStatementAsString()
+        {
+            return "insert into "+getSchemaAttributeTableName()+
+                " ("+getIdColumn()+", "+getContextPathColumn()+", "+getVirtualHostColumn()+", "+
+                getAttributeNameColumn()+", "+getAttributeValueColumn()+") values (?, ?, ?, ?, ?)";
+        }
+
         public PreparedStatement getUpdateSessionStatement(Connection connection, String id, SessionContext context)
                 throws SQLException
         {
@@ -362,6 +443,97 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         }
      
      
+        /**
+         * @param connection the connection
+         * @param context the context
+         * @param count the number of session ids, to set as parameters 3 to count+2
+         * @return a statement selecting which of the session ids exist in the context
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getCheckSessionsExistStatement (Connection connection, SessionContext context, int count)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = context.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                    cp = NULL_CONTEXT_PATH;
+
+            StringBuilder ids = new StringBuilder();
+            for (int i=0; i<count; i++)
+                ids.append(i==0?"?":",?");
+            PreparedStatement statement = connection.prepareStatement("select "+getIdColumn()+
+                                                                      " from "+getSchemaTableName()+
+                                                                      " where "+getContextPathColumn()+" = ? and "+
+                                                                      getVirtualHostColumn()+" = ? and "+
+                                                                      getIdColumn()+" in ("+ids+")");
+            statement.setString(1, cp);
+            statement.setString(2, context.getVhost());
+            return statement;
+        }
+        
+        
+        /**
+         * @param connection the connection
+         * @param context the context whose sessions are not deleted
+         * @param expiry the time before which sessions expired
+         * @return a statement deleting the sessions of other contexts that expired before the time
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getDeleteAncientExpiredSessionsStatement (Connection connection, SessionContext context, long expiry)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = context.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                    cp = NULL_CONTEXT_PATH;
+
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaTableName()+
+                                                                      " where "+getExpiryTimeColumn()+" >0 and "+getExpiryTimeColumn()+" <= ?"+
+                                                                      " and not ("+getContextPathColumn()+" = ? and "+getVirtualHostColumn()+" = ?)");
+            statement.setLong(1, expiry);
+            statement.setString(2, cp);
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        
+        /**
+         * @param connection the connection
+         * @param context the context whose sessions are not deleted
+         * @param expiry the time before which sessions expired
+         * @return a statement deleting the attributes of the sessions of other contexts that expired before the time
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getDeleteAncientExpiredAttributesStatement (Connection connection, SessionContext context, long expiry)
+        throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = context.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                    cp = NULL_CONTEXT_PATH;
+
+            String a = getSchemaAttributeTableName();
+            String t = getSchemaTableName();
+            PreparedStatement statement = connection.prepareStatement("delete from "+a+
+                                                                      " where exists (select "+getIdColumn()+" from "+t+
+                                                                      " where "+t+"."+getIdColumn()+" = "+a+"."+getIdColumn()+
+                                                                      " and "+t+"."+getContextPathColumn()+" = "+a+"."+getContextPathColumn()+
+                                                                      " and "+t+"."+getVirtualHostColumn()+" = "+a+"."+getVirtualHostColumn()+
+                                                                      " and "+t+"."+getExpiryTimeColumn()+" >0 and "+t+"."+getExpiryTimeColumn()+" <= ?"+
+                                                                      " and not ("+t+"."+getContextPathColumn()+" = ? and "+t+"."+getVirtualHostColumn()+" = ?))");
+            statement.setLong(1, expiry);
+            statement.setString(2, cp);
+            statement.setString(3, context.getVhost());
+            return statement;
+        }
+        
+        
         public PreparedStatement getCheckSessionExistsStatement (Connection connection, SessionContext context)
         throws SQLException
         {
@@ -458,6 +630,78 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         }
 
         
+        public PreparedStatement getLoadAttributesStatement (Connection connection, String id, SessionContext contextId)
+        throws SQLException
+        { 
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = contextId.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull()&& StringUtil.isBlank(cp))
+                    cp = NULL_CONTEXT_PATH;
+
+            PreparedStatement statement = connection.prepareStatement("select "+getAttributeNameColumn()+", "+getAttributeValueColumn()+
+                                                                      " from "+getSchemaAttributeTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, cp);
+            statement.setString(3, contextId.getVhost());
+
+            return statement;
+        }
+        
+        
+        /**
+         * @param connection the connection
+         * @param id the session id
+         * @param contextId the context
+         * @return a statement deleting an attribute of the session, 
+         * whose name must be set as the 4th parameter
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getDeleteAttributeStatement (Connection connection, String id, SessionContext contextId)
+        throws SQLException
+        { 
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = contextId.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                    cp = NULL_CONTEXT_PATH;
+
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaAttributeTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ? and "+getAttributeNameColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, cp);
+            statement.setString(3, contextId.getVhost());
+
+            return statement;
+        }
+        
+        
+        public PreparedStatement getDeleteAttributesStatement (Connection connection, String id, SessionContext contextId)
+        throws SQLException
+        { 
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = contextId.getCanonicalContextPath();
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                    cp = NULL_CONTEXT_PATH;
+
+            PreparedStatement statement = connection.prepareStatement("delete from "+getSchemaAttributeTableName()+
+                                                                      " where "+getIdColumn()+" = ? and "+getContextPathColumn()+
+                                                                      " = ? and "+getVirtualHostColumn()+" = ?");
+            statement.setString(1, id);
+            statement.setString(2, cp);
+            statement.setString(3, contextId.getVhost());
+
+            return statement;
+        }
+
+        
         /**
          * Set up the tables in the database
          * @throws SQLException if unable to prepare tables
@@ -545,15 +789,27 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                     statement.executeUpdate(getCreateIndexOverExpiryStatementAsString(index1));
                 if (!index2Exists)
                     statement.executeUpdate(getCreateIndexOverSessionStatementAsString(index2));
+                
+                //make the attribute table if necessary
+                if (getAttributeTableName() != null)
+                {
+                    String attributeTableName = _dbAdaptor.convertIdentifier(getAttributeTableName());
+                    try (ResultSet result = metaData.getTables(null, schemaName, attributeTableName, null))
+                    {
+                        if (!result.next())
+                            statement.executeUpdate(getCreateAttributeTableStatementAsString());
+                    }
+                }
             }
         }
 
         @Override
         public String toString()
         {
-            return String.format("%s[%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s]",super.toString(),
+            return String.format("%s[%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s]",super.toString(),
                                  _schemaName,_tableName,_idColumn,_contextPathColumn,_virtualHostColumn,_cookieTimeColumn,_createTimeColumn,
-                                 _expiryTimeColumn,_accessTimeColumn,_lastAccessTimeColumn,_lastNodeColumn,_lastSavedTimeColumn,_maxIntervalColumn);
+                                 _expiryTimeColumn,_accessTimeColumn,_lastAccessTimeColumn,_lastNodeColumn,_lastSavedTimeColumn,_maxIntervalColumn,
+                                 _attributeTableName);
         }
         
         
@@ -639,10 +895,11 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                 data.setContextPath(_context.getCanonicalContextPath());          
                 data.setVhost(_context.getVhost());
 
-                try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn());
-                        ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is))
+                try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getMapColumn()))
                 {
-                    SessionData.deserializeAttributes(data, ois);
+                    getSerializer().deserializeAttributes(data, is);
+                    if (_sessionTableSchema.getAttributeTableName() != null)
+                        doLoadAttributes(connection, data);
                 }
                 catch (Exception e)
                 {
@@ -659,6 +916,37 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             return data;
         }
     }
+    
+    
+    /**
+     * Load the attributes of a session from the attribute table.
+     * 
+     * @param connection the connection
+     * @param data the session, with the attributes of the map column, if any
+     * @throws Exception if the attributes cannot be loaded
+     */
+    protected void doLoadAttributes (Connection connection, SessionData data)
+    throws Exception
+    {
+        //attributes in the map column were written before the attribute table was configured:
+        //write them all out at the next save to move them to the attribute table
+        if (!data.getAllAttributes().isEmpty())
+            data.setAllAttributesDirty();
+        
+        Map<String,Object> attributes = new HashMap<>();
+        try (PreparedStatement statement = _sessionTableSchema.getLoadAttributesStatement(connection, data.getId(), _context);
+             ResultSet result = statement.executeQuery())
+        {
+            while (result.next())
+            {
+                try (InputStream is = _dbAdaptor.getBlobInputStream(result, _sessionTableSchema.getAttributeValueColumn()))
+                {
+                    attributes.putAll(deserializeAttributes(data, IO.readBytes(is)));
+                }
+            }
+        }
+        data.putAllAttributes(attributes);
+    }
 
 
 
@@ -668,12 +956,37 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         try (Connection connection = _dbAdaptor.getConnection();
              PreparedStatement statement = _sessionTableSchema.getDeleteStatement(connection, id, _context))
         {
-            connection.setAutoCommit(true);
-            int rows = statement.executeUpdate();
-            if (LOG.isDebugEnabled())
-                LOG.debug("Deleted Session {}:{}",id,(rows>0));
-            
-            return rows > 0;
+            boolean attributeTable = _sessionTableSchema.getAttributeTableName() != null;
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(!attributeTable);
+            try
+            {
+                if (attributeTable)
+                {
+                    try (PreparedStatement deleteAttributes = _sessionTableSchema.getDeleteAttributesStatement(connection, id, _context))
+                    {
+                        deleteAttributes.executeUpdate();
+                    }
+                }
+                
+                int rows = statement.executeUpdate();
+                if (attributeTable)
+                    connection.commit();
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Deleted Session {}:{}",id,(rows>0));
+
+                return rows > 0;
+            }
+            catch (Exception e)
+            {
+                if (attributeTable)
+                    connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
+            }
         }
     }
 
@@ -704,38 +1017,32 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
         try (Connection connection = _dbAdaptor.getConnection())        
         {
-            connection.setAutoCommit(true);
+            boolean attributeTable = _sessionTableSchema.getAttributeTableName() != null;
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(!attributeTable);
             try  (PreparedStatement statement = connection.prepareStatement(s))
             {
-                statement.setString(1, id); //session id
-                
-                String cp = _context.getCanonicalContextPath();
-                if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
-                        cp = NULL_CONTEXT_PATH;
+                setInsertParameters(statement, id, data);
+                statement.executeUpdate();
                 
-                statement.setString(2, cp); //context path
-                      
-                statement.setString(3, _context.getVhost()); //first vhost
-                statement.setString(4, data.getLastNode());//my node id
-                statement.setLong(5, data.getAccessed());//accessTime
-                statement.setLong(6, data.getLastAccessed()); //lastAccessTime
-                statement.setLong(7, data.getCreated()); //time created
-                statement.setLong(8, data.getCookieSet());//time cookie was set
-                statement.setLong(9, data.getLastSaved()); //last saved time
-                statement.setLong(10, data.getExpiry());
-                statement.setLong(11, data.getMaxInactiveMs());
-
-                try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                     ObjectOutputStream oos = new ObjectOutputStream(baos))
+                if (attributeTable)
                 {
-                    SessionData.serializeAttributes(data, oos);
-                    byte[] bytes = baos.toByteArray();
-                    ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-                    statement.setBinaryStream(12, bais, bytes.length);//attribute map as blob
-                    statement.executeUpdate();
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("Inserted session "+data);
+                    doStoreAttributes(connection, id, data, true);
+                    connection.commit();
                 }
+                
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Inserted session "+data);
+            }
+            catch (Exception e)
+            {
+                if (attributeTable)
+                    connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
             }
         }
     }
@@ -746,32 +1053,242 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     {
         try (Connection connection = _dbAdaptor.getConnection())        
         {
-            connection.setAutoCommit(true);
+            boolean attributeTable = _sessionTableSchema.getAttributeTableName() != null;
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(!attributeTable);
             try (PreparedStatement statement = _sessionTableSchema.getUpdateSessionStatement(connection, data.getId(), _context))
             {
-                statement.setString(1, data.getLastNode());//should be my node id
-                statement.setLong(2, data.getAccessed());//accessTime
-                statement.setLong(3, data.getLastAccessed()); //lastAccessTime
-                statement.setLong(4, data.getLastSaved()); //last saved time
-                statement.setLong(5, data.getExpiry());
-                statement.setLong(6, data.getMaxInactiveMs());
-
-                try(ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    ObjectOutputStream oos = new ObjectOutputStream(baos))
+                setUpdateParameters(statement, data);
+                statement.executeUpdate();
+                
+                if (attributeTable)
                 {
-                    SessionData.serializeAttributes(data, oos);
-                    byte[] bytes = baos.toByteArray();
-                    try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes))
+                    //only write the attributes that changed
+                    doStoreAttributes(connection, id, data, data.isAllAttributesDirty());
+                    connection.commit();
+                }
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Updated session "+data);
+            }
+            catch (Exception e)
+            {
+                if (attributeTable)
+                    connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+    
+    
+    /**
+     * Write several sessions in a single transaction, using batch
+     * statements for the inserts and for the updates.
+     * 
+     * @see org.eclipse.jetty.server.session.AbstractSessionDataStore#doStoreAll(java.util.Map, java.util.Map)
+     */
+    @Override
+    public void doStoreAll(Map<String,SessionData> sessions, Map<String,Long> lastSaveTimes) throws Exception
+    {
+        Map<String,SessionData> inserts = new LinkedHashMap<>();
+        Map<String,SessionData> updates = new LinkedHashMap<>();
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            if (lastSaveTimes.get(entry.getKey()) <= 0)
+                inserts.put(entry.getKey(), entry.getValue());
+            else
+                updates.put(entry.getKey(), entry.getValue());
+        }
+
+        boolean attributeTable = _sessionTableSchema.getAttributeTableName() != null;
+        try (Connection connection = _dbAdaptor.getConnection())
+        {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try
+            {
+                if (!inserts.isEmpty())
+                {
+                    try (PreparedStatement statement = connection.prepareStatement(_sessionTableSchema.getInsertSessionStatementAsString()))
                     {
-                        statement.setBinaryStream(7, bais, bytes.length);//attribute map as blob
-                        statement.executeUpdate();
+                        for (Map.Entry<String,SessionData> entry : inserts.entrySet())
+                        {
+                            setInsertParameters(statement, entry.getKey(), entry.getValue());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
 
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("Updated session "+data);
+                if (!updates.isEmpty())
+                {
+                    //the id is the only parameter that differs between sessions of this context
+                    try (PreparedStatement statement = _sessionTableSchema.getUpdateSessionStatement(connection, null, _context))
+                    {
+                        for (SessionData data : updates.values())
+                        {
+                            setUpdateParameters(statement, data);
+                            statement.setString(8, data.getId());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
                     }
                 }
+
+                if (attributeTable)
+                {
+                    for (Map.Entry<String,SessionData> entry : inserts.entrySet())
+                        doStoreAttributes(connection, entry.getKey(), entry.getValue(), true);
+                    for (Map.Entry<String,SessionData> entry : updates.entrySet())
+                        doStoreAttributes(connection, entry.getKey(), entry.getValue(), entry.getValue().isAllAttributesDirty());
+                }
+
+                connection.commit();
+                
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Inserted {} and updated {} sessions", inserts.size(), updates.size());
+            }
+            catch (Exception e)
+            {
+                connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+    
+    
+    private void setInsertParameters (PreparedStatement statement, String id, SessionData data)
+    throws Exception
+    {
+        statement.setString(1, id); //session id
+
+        String cp = _context.getCanonicalContextPath();
+        if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+            cp = NULL_CONTEXT_PATH;
+
+        statement.setString(2, cp); //context path
+
+        statement.setString(3, _context.getVhost()); //first vhost
+        statement.setString(4, data.getLastNode());//my node id
+        statement.setLong(5, data.getAccessed());//accessTime
+        statement.setLong(6, data.getLastAccessed()); //lastAccessTime
+        statement.setLong(7, data.getCreated()); //time created
+        statement.setLong(8, data.getCookieSet());//time cookie was set
+        statement.setLong(9, data.getLastSaved()); //last saved time
+        statement.setLong(10, data.getExpiry());
+        statement.setLong(11, data.getMaxInactiveMs());
+
+        byte[] bytes = serializeMap(data);
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        statement.setBinaryStream(12, bais, bytes.length);//attribute map as blob
+    }
+    
+    
+    private void setUpdateParameters (PreparedStatement statement, SessionData data)
+    throws Exception
+    {
+        statement.setString(1, data.getLastNode());//should be my node id
+        statement.setLong(2, data.getAccessed());//accessTime
+        statement.setLong(3, data.getLastAccessed()); //lastAccessTime
+        statement.setLong(4, data.getLastSaved()); //last saved time
+        statement.setLong(5, data.getExpiry());
+        statement.setLong(6, data.getMaxInactiveMs());
+
+        byte[] bytes = serializeMap(data);
+        ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
+        statement.setBinaryStream(7, bais, bytes.length);//attribute map as blob
+    }
+    
+    
+    /**
+     * Write the attributes of a session to the attribute table.
+     * 
+     * @param connection the connection
+     * @param id the session id
+     * @param data the session
+     * @param all true to replace all the attributes of the session,
+     * false to only replace the dirty ones
+     * @throws Exception if the attributes cannot be written
+     */
+    protected void doStoreAttributes (Connection connection, String id, SessionData data, boolean all)
+    throws Exception
+    {
+        Set<String> names = new HashSet<>(all ? data.getKeys() : data.getDirtyAttributes());
+        
+        if (all)
+        {
+            try (PreparedStatement statement = _sessionTableSchema.getDeleteAttributesStatement(connection, id, _context))
+            {
+                statement.executeUpdate();
+            }
+        }
+        else if (!names.isEmpty())
+        {
+            try (PreparedStatement statement = _sessionTableSchema.getDeleteAttributeStatement(connection, id, _context))
+            {
+                for (String name : names)
+                {
+                    statement.setString(4, name);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
             }
         }
+        
+        String cp = _context.getCanonicalContextPath();
+        if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+            cp = NULL_CONTEXT_PATH;
+        
+        int inserts = 0;
+        try (PreparedStatement statement = connection.prepareStatement(_sessionTableSchema.getInsertAttributeStatementAsString()))
+        {
+            for (String name : names)
+            {
+                Object value = data.getAttribute(name);
+                if (value == null)
+                    continue; //attribute was removed
+                
+                byte[] bytes = serializeAttributes(data, Collections.singletonMap(name, value));
+                statement.setString(1, id);
+                statement.setString(2, cp);
+                statement.setString(3, _context.getVhost());
+                statement.setString(4, name);
+                statement.setBinaryStream(5, new ByteArrayInputStream(bytes), bytes.length);
+                statement.addBatch();
+                ++inserts;
+            }
+            if (inserts > 0)
+                statement.executeBatch();
+        }
+        
+        if (LOG.isDebugEnabled())
+            LOG.debug("Stored {} attributes of session {}, all={}", names.size(), id, all);
+    }
+    
+    
+    /**
+     * @param data the session
+     * @return the content of the map column: all the attributes,
+     * or none if they are held in the attribute table
+     * @throws IOException if the attributes cannot be serialized
+     */
+    private byte[] serializeMap (SessionData data)
+    throws IOException
+    {
+        if (_sessionTableSchema.getAttributeTableName() != null)
+            return serializeAttributes(data, Collections.emptyMap());
+        
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        getSerializer().serializeAttributes(data, baos);
+        return baos.toByteArray();
     }
 
 
@@ -797,6 +1314,8 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
             try (PreparedStatement statement = _sessionTableSchema.getExpiredSessionsStatement(connection, _context.getCanonicalContextPath(), _context.getVhost(), upperBound))
             {
+                //page through the expired sessions rather than reading them all at once
+                statement.setFetchSize(_expiryBatchSize);
                 try (ResultSet result = statement.executeQuery())
                 {
                     while (result.next())
@@ -824,6 +1343,7 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                 if (LOG.isDebugEnabled()) LOG.debug("{}- Pass 2: Searching for sessions expired before {}",_context.getWorkerName(), upperBound);
 
                 selectExpiredSessions.setLong(1, upperBound);
+                selectExpiredSessions.setFetchSize(_expiryBatchSize);
                 try (ResultSet result = selectExpiredSessions.executeQuery())
                 {
                     while (result.next())
@@ -851,29 +1371,48 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
 
             if (!notExpiredInDB.isEmpty())
             {
-                //we have some sessions to check
-                try (PreparedStatement checkSessionExists = _sessionTableSchema.getCheckSessionExistsStatement(connection, _context))
+                //we have some sessions to check, in batches: those that don't
+                //exist any more can be expired, the expiry time of the others has not been reached
+                List<String> batch = new ArrayList<>(_expiryBatchSize);
+                for (Iterator<String> i = notExpiredInDB.iterator(); i.hasNext();)
                 {
-                    for (String k: notExpiredInDB)
+                    batch.add(i.next());
+                    if (batch.size() == _expiryBatchSize || !i.hasNext())
                     {
-                        checkSessionExists.setString(1, k);
-                        try (ResultSet result = checkSessionExists.executeQuery())
-                        {        
-                            if (!result.next())
+                        try (PreparedStatement checkSessionsExist = _sessionTableSchema.getCheckSessionsExistStatement(connection, _context, batch.size()))
+                        {
+                            for (int b = 0; b < batch.size(); b++)
+                                checkSessionsExist.setString(b+3, batch.get(b));
+                            try (ResultSet result = checkSessionsExist.executeQuery())
                             {
-                                //session doesn't exist any more, can be expired
-                                expiredSessionKeys.add(k);
+                                Set<String> existing = new HashSet<>();
+                                while (result.next())
+                                    existing.add(result.getString(_sessionTableSchema.getIdColumn()));
+                                for (String k: batch)
+                                {
+                                    if (!existing.contains(k))
+                                        expiredSessionKeys.add(k);
+                                }
                             }
-                            //else its expiry time has not been reached
                         }
                         catch (Exception e)
                         {
-                            LOG.warn("{} Problem checking if potentially expired session {} exists in db", _context.getWorkerName(), k,e);
+                            LOG.warn("{} Problem checking if potentially expired sessions {} exist in db", _context.getWorkerName(), batch, e);
                         }
+                        batch.clear();
                     }
-
                 }
             }
+            
+            /*
+             * 3. Infrequently delete in bulk the sessions of other contexts that expired
+             * a long time ago, to clean up the sessions of defunct contexts.
+             */
+            if (_gracePeriodSec > 0 && (_lastSweepTime == 0 || (now - _lastSweepTime) >= (5*TimeUnit.SECONDS.toMillis(_gracePeriodSec))))
+            {
+                _lastSweepTime = now;
+                sweep(connection, now - (5*TimeUnit.SECONDS.toMillis(_gracePeriodSec)));
+            }
 
             return expiredSessionKeys;
         }
@@ -885,6 +1424,81 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     }
     
     
+    /**
+     * Delete in bulk the sessions of other contexts that expired before a time.
+     * 
+     * @param connection the connection
+     * @param upperBound the time before which the sessions expired
+     */
+    protected void sweep (Connection connection, long upperBound)
+    {
+        if (LOG.isDebugEnabled()) LOG.debug("{}- Deleting sessions of other contexts expired before {}",_context.getWorkerName(), upperBound);
+        try
+        {
+            boolean attributeTable = _sessionTableSchema.getAttributeTableName() != null;
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(!attributeTable);
+            try
+            {
+                if (attributeTable)
+                {
+                    try (PreparedStatement deleteAttributes = _sessionTableSchema.getDeleteAncientExpiredAttributesStatement(connection, _context, upperBound))
+                    {
+                        deleteAttributes.executeUpdate();
+                    }
+                }
+                
+                try (PreparedStatement deleteSessions = _sessionTableSchema.getDeleteAncientExpiredSessionsStatement(connection, _context, upperBound))
+                {
+                    int rows = deleteSessions.executeUpdate();
+                    if (LOG.isDebugEnabled()) LOG.debug("{}- Deleted {} sessions of other contexts",_context.getWorkerName(), rows);
+                }
+                
+                if (attributeTable)
+                    connection.commit();
+            }
+            catch (Exception e)
+            {
+                if (attributeTable)
+                    connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        catch (Exception e)
+        {
+            LOG.warn("{} Problem deleting expired sessions of other contexts", _context.getWorkerName(), e);
+        }
+    }
+    
+    
+    /**
+     * @return the number of rows fetched at a time, and of candidate
+     * sessions checked at a time, when finding the expired sessions
+     */
+    @ManagedAttribute(value="expired sessions fetched and candidates checked at a time", readonly=true)
+    public int getExpiryBatchSize()
+    {
+        return _expiryBatchSize;
+    }
+    
+    
+    /**
+     * @param expiryBatchSize the number of rows fetched at a time, and of candidate
+     * sessions checked at a time, when finding the expired sessions
+     */
+    public void setExpiryBatchSize(int expiryBatchSize)
+    {
+        checkStarted();
+        if (expiryBatchSize <= 0)
+            throw new IllegalArgumentException("Batch size must be positive");
+        _expiryBatchSize = expiryBatchSize;
+    }
+    
+    
     public void setDatabaseAdaptor (DatabaseAdaptor dbAdaptor)
     {
         checkStarted();
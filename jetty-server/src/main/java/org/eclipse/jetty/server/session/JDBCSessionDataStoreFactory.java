@@ -37,6 +37,11 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
      */
     JDBCSessionDataStore.SessionTableSchema _schema;
 
+    /**
+     * 
+     */
+    int _expiryBatchSize = 100;
+
 
     /** 
      * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
@@ -47,8 +52,11 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         JDBCSessionDataStore ds = new JDBCSessionDataStore();
         ds.setDatabaseAdaptor(_adaptor);
         ds.setSessionTableSchema(_schema);
+        ds.setExpiryBatchSize(_expiryBatchSize);
         ds.setGracePeriodSec(getGracePeriodSec());
         ds.setSavePeriodSec(getSavePeriodSec());
+        if (getSerializer() != null)
+            ds.setSerializer(getSerializer());
         return ds;
     }
 
@@ -69,4 +77,14 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
     {
         _schema = schema;
     }
+    
+    
+    /**
+     * @param expiryBatchSize the number of rows fetched at a time, and of 
+     * candidate sessions checked at a time, when finding expired sessions
+     */
+    public void setExpiryBatchSize (int expiryBatchSize)
+    {
+        _expiryBatchSize = expiryBatchSize;
+    }
 }
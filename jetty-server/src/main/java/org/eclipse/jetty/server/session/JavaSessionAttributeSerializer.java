@@ -0,0 +1,59 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+
+/**
+ * JavaSessionAttributeSerializer
+ *
+ * Serializes the attributes with java serialization, in the format
+ * of {@link SessionData#serializeAttributes(SessionData, ObjectOutputStream)}.
+ * 
+ * This is the format used by previous releases, which should be used while nodes of
+ * a cluster running previous releases share the same store.
+ */
+public class JavaSessionAttributeSerializer implements SessionAttributeSerializer
+{
+    @Override
+    public void serializeAttributes(SessionData data, OutputStream out) throws IOException
+    {
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        SessionData.serializeAttributes(data, oos);
+        oos.flush();
+    }
+
+    @Override
+    public void deserializeAttributes(SessionData data, InputStream in) throws IOException, ClassNotFoundException
+    {
+        ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(in);
+        SessionData.deserializeAttributes(data, ois);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x", this.getClass().getSimpleName(), this.hashCode());
+    }
+}
@@ -0,0 +1,350 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+
+/**
+ * NearCacheSessionDataStore
+ *
+ * A SessionDataStore that keeps a local copy of the session data loaded from,
+ * or stored to, a clustered SessionDataStore, so that a session that is
+ * used again on this node is not reloaded from the cluster.
+ * 
+ * Unlike {@link CachingSessionDataStore}, the local copies are kept consistent:
+ * the delegate store must implement {@link SessionDataNotifier}, and the local
+ * copy of a session is discarded whenever another node writes, deletes or evicts
+ * that session. The next load of the session then reads it from the delegate store.
+ * 
+ * All writes and deletes go through to the delegate store. The expiry of sessions
+ * is decided by the delegate store.
+ * 
+ * The attribute values of the local copies are shared with the sessions loaded from
+ * them, as they are for a session held in a SessionCache, so a change made to an
+ * attribute value without calling setAttribute is seen by the next load on this node,
+ * but not by the other nodes.
+ */
+@ManagedObject
+public class NearCacheSessionDataStore extends ContainerLifeCycle implements SessionDataStore, SessionDataNotifier.Listener
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    
+    
+    /**
+     * The actual store for the session data
+     */
+    protected SessionDataStore _store;
+    
+    protected int _maxEntries = 0; //max number of local copies, 0 or less for no limit
+    
+    private final ConcurrentMap<String, SessionData> _cache = new ConcurrentHashMap<>();
+    private final AtomicLong _invalidationSequence = new AtomicLong();
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _invalidations = new AtomicLong();
+    
+    
+    /**
+     * @param store the actual store for the session data, which must
+     * implement {@link SessionDataNotifier}
+     */
+    public NearCacheSessionDataStore (SessionDataStore store)
+    {
+        _store = store;
+        addBean(_store,true);
+    }
+    
+    
+    /**
+     * @return the delegate session store
+     */
+    public SessionDataStore getSessionStore()
+    {
+        return _store;
+    }
+
+
+    /**
+     * @return the max number of sessions held locally, 0 or less for no limit
+     */
+    @ManagedAttribute(value="max sessions held locally", readonly=true)
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+
+    /**
+     * @param maxEntries the max number of sessions held locally, 0 or less for no limit
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        _maxEntries = maxEntries;
+    }
+
+
+    /**
+     * @return the number of sessions held locally
+     */
+    @ManagedAttribute(value="sessions held locally", readonly=true)
+    public int getSize()
+    {
+        return _cache.size();
+    }
+
+
+    /**
+     * @return the number of loads served from the local copy
+     */
+    @ManagedAttribute(value="loads served locally", readonly=true)
+    public long getHits()
+    {
+        return _hits.get();
+    }
+
+
+    /**
+     * @return the number of loads passed to the delegate store
+     */
+    @ManagedAttribute(value="loads passed to the delegate store", readonly=true)
+    public long getMisses()
+    {
+        return _misses.get();
+    }
+
+
+    /**
+     * @return the number of change notifications received from the delegate store
+     */
+    @ManagedAttribute(value="change notifications from the cluster", readonly=true)
+    public long getInvalidations()
+    {
+        return _invalidations.get();
+    }
+
+
+    @ManagedOperation(value="reset statistics", impact="ACTION")
+    public void resetStats()
+    {
+        _hits.set(0);
+        _misses.set(0);
+        _invalidations.set(0);
+    }
+
+
+    /** 
+     * Discard the local copy of a session changed by another node.
+     * 
+     * @see org.eclipse.jetty.server.session.SessionDataNotifier.Listener#onSessionDataChanged(java.lang.String)
+     */
+    @Override
+    public void onSessionDataChanged(String id)
+    {
+        //a load or store in progress must not cache the data it has read or written
+        _invalidationSequence.incrementAndGet();
+        _invalidations.incrementAndGet();
+        if (_cache.remove(id) != null && LOG.isDebugEnabled())
+            LOG.debug("Session {} changed by another node, discarded local copy", id);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#initialize(org.eclipse.jetty.server.session.SessionContext)
+     */
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        _store.initialize(context);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#load(java.lang.String)
+     */
+    @Override
+    public SessionData load(String id) throws Exception
+    {
+        SessionData cached = _cache.get(id);
+        if (cached != null)
+        {
+            _hits.incrementAndGet();
+            return copyOf(cached);
+        }
+        
+        _misses.incrementAndGet();
+        long sequence = _invalidationSequence.get();
+        SessionData data = _store.load(id);
+        if (data != null)
+            cache(id, data, sequence);
+        return data;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#store(java.lang.String, org.eclipse.jetty.server.session.SessionData)
+     */
+    @Override
+    public void store(String id, SessionData data) throws Exception
+    {
+        if (data == null)
+            return;
+        
+        long sequence = _invalidationSequence.get();
+        try
+        {
+            _store.store(id, data);
+        }
+        catch (Exception e)
+        {
+            //the cluster may hold either the old or the new data
+            _cache.remove(id);
+            throw e;
+        }
+        cache(id, data, sequence);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#delete(java.lang.String)
+     */
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        _cache.remove(id);
+        return _store.delete(id);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#exists(java.lang.String)
+     */
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        SessionData cached = _cache.get(id);
+        if (cached != null && !cached.isExpiredAt(System.currentTimeMillis()))
+            return true;
+        return _store.exists(id);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#getExpired(java.util.Set)
+     */
+    @Override
+    public Set<String> getExpired(Set<String> candidates)
+    {
+        return _store.getExpired(candidates);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#newSessionData(java.lang.String, long, long, long, long)
+     */
+    @Override
+    public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs)
+    {
+        return _store.newSessionData(id, created, accessed, lastAccessed, maxInactiveMs);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#isPassivating()
+     */
+    @ManagedAttribute(value="does store serialize sessions", readonly=true)
+    @Override
+    public boolean isPassivating()
+    {
+        return _store.isPassivating();
+    }
+
+
+    private void cache(String id, SessionData data, long sequence)
+    {
+        _cache.put(id, copyOf(data));
+        
+        //another node changed the session while it was read or written, so
+        //the copy may be stale, or the change notification may have already
+        //removed the copy before it was cached
+        if (_invalidationSequence.get() != sequence)
+        {
+            _cache.remove(id);
+            return;
+        }
+        
+        if (_maxEntries > 0)
+        {
+            Iterator<String> ids = _cache.keySet().iterator();
+            while (_cache.size() > _maxEntries && ids.hasNext())
+            {
+                String victim = ids.next();
+                if (!victim.equals(id))
+                    ids.remove();
+            }
+        }
+    }
+
+
+    private SessionData copyOf(SessionData data)
+    {
+        SessionData copy = _store.newSessionData(data.getId(), data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+        copy.copy(data);
+        return copy;
+    }
+
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (!(_store instanceof SessionDataNotifier))
+            throw new IllegalStateException("Session store does not notify changes: "+_store);
+        
+        //register before the delegate store is started
+        ((SessionDataNotifier)_store).addSessionDataListener(this);
+        super.doStart();
+    }
+
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        ((SessionDataNotifier)_store).removeSessionDataListener(this);
+        _cache.clear();
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[size=%d,maxEntries=%d]", getClass().getSimpleName(), hashCode(), _cache.size(), _maxEntries);
+    }
+}
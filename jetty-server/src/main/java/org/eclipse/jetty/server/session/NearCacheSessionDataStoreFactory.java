@@ -0,0 +1,74 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+/**
+ * NearCacheSessionDataStoreFactory
+ *
+ *
+ */
+public class NearCacheSessionDataStoreFactory extends AbstractSessionDataStoreFactory
+{
+    /**
+     * The factory of the SessionDataStore that will store session data.
+     */
+    protected SessionDataStoreFactory _sessionStoreFactory;
+    
+    protected int _maxEntries = 0;
+    
+    
+    /**
+     * @param factory The factory for the actual SessionDataStore that the
+     * NearCacheSessionDataStore will delegate to
+     */
+    public void setSessionStoreFactory (SessionDataStoreFactory factory)
+    {
+        _sessionStoreFactory = factory;
+    }
+    
+
+    /**
+     * @return the max number of sessions held locally, 0 or less for no limit
+     */
+    public int getMaxEntries()
+    {
+        return _maxEntries;
+    }
+
+
+    /**
+     * @param maxEntries the max number of sessions held locally, 0 or less for no limit
+     */
+    public void setMaxEntries(int maxEntries)
+    {
+        _maxEntries = maxEntries;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionDataStore getSessionDataStore(SessionHandler handler) throws Exception
+    {
+        NearCacheSessionDataStore store = new NearCacheSessionDataStore(_sessionStoreFactory.getSessionDataStore(handler));
+        store.setMaxEntries(getMaxEntries());
+        return store;
+    }
+}
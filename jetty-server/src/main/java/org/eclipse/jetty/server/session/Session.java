@@ -124,25 +124,45 @@ public class Session implements SessionHandler.SessionIf
                 @Override
                 public void onTimeoutExpired()
                 {
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("Timer expired for session {}", getId());
-                    long now = System.currentTimeMillis();
-                    //handle what to do with the session after the timer expired
-                    getSessionHandler().sessionInactivityTimerExpired(Session.this, now);
-                    try (Lock lock = Session.this.lock())
-                    {
-                        //grab the lock and check what happened to the session: if it didn't get evicted and
-                        //it hasn't expired, we need to reset the timer
-                        if (Session.this.isResident() && Session.this.getRequests() <= 0 && Session.this.isValid() && !Session.this.isExpiredAt(now))
-                        {
-                            //session wasn't expired or evicted, we need to reset the timer
-                            SessionInactivityTimer.this.schedule(Session.this.calculateInactivityTimeout(now));
-                        }
-                    }
+                    SessionInactivityTimer.this.onTimeoutExpired();
                 }
 
             };
         }
+        
+        /**
+         * For subclasses that implement their own timing by overriding
+         * {@link #schedule(long)}, {@link #cancel()} and {@link #destroy()}.
+         * 
+         * @param timer the timer, may be null
+         */
+        protected SessionInactivityTimer(CyclicTimeout timer)
+        {
+            _timer = timer;
+        }
+        
+        /**
+         * Called when the timer expires: the session may be
+         * expired or evicted, otherwise the timer is reset.
+         */
+        protected void onTimeoutExpired()
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Timer expired for session {}", getId());
+            long now = System.currentTimeMillis();
+            //handle what to do with the session after the timer expired
+            getSessionHandler().sessionInactivityTimerExpired(Session.this, now);
+            try (Lock lock = Session.this.lock())
+            {
+                //grab the lock and check what happened to the session: if it didn't get evicted and
+                //it hasn't expired, we need to reset the timer
+                if (Session.this.isResident() && Session.this.getRequests() <= 0 && Session.this.isValid() && !Session.this.isExpiredAt(now))
+                {
+                    //session wasn't expired or evicted, we need to reset the timer
+                    SessionInactivityTimer.this.schedule(Session.this.calculateInactivityTimeout(now));
+                }
+            }
+        }
 
         /**
          * For backward api compatibility only. 
@@ -204,7 +224,7 @@ public class Session implements SessionHandler.SessionIf
         _sessionData.setDirty(true);
         _requests = 1; // access will not be called on this new session, but we
                        // are obviously in a request
-        _sessionInactivityTimer = new SessionInactivityTimer();
+        _sessionInactivityTimer = newSessionInactivityTimer();
     }
 
 
@@ -219,7 +239,21 @@ public class Session implements SessionHandler.SessionIf
     {
         _handler = handler;
         _sessionData = data;
-        _sessionInactivityTimer = new SessionInactivityTimer();
+        _sessionInactivityTimer = newSessionInactivityTimer();
+    }
+
+
+    /* ------------------------------------------------------------- */
+    /**
+     * Create the timer of the inactivity of this session. Called
+     * from the constructor, so implementations must not depend
+     * on the state of subclasses.
+     * 
+     * @return the inactivity timer of this session
+     */
+    protected SessionInactivityTimer newSessionInactivityTimer()
+    {
+        return new SessionInactivityTimer();
     }
 
 
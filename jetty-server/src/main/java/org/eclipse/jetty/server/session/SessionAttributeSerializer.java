@@ -0,0 +1,60 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * SessionAttributeSerializer
+ *
+ * Converts the attributes of a session to and from bytes, on behalf of
+ * the SessionDataStores that persist or transmit sessions.
+ * 
+ * Implementations must be thread safe, as they may be shared by
+ * several stores.
+ */
+public interface SessionAttributeSerializer
+{
+    /**
+     * Write the attributes of the session.
+     * 
+     * The stream is flushed but not closed.
+     * 
+     * @param data the SessionData whose attributes to serialize
+     * @param out the stream to which to serialize
+     * @throws IOException if the attributes cannot be serialized
+     */
+    public void serializeAttributes(SessionData data, OutputStream out) throws IOException;
+    
+    
+    /**
+     * Read the attributes of the session, replacing the
+     * existing ones.
+     * 
+     * The stream is not closed.
+     * 
+     * @param data the SessionData whose attributes to deserialize
+     * @param in the stream from which to deserialize
+     * @throws IOException if the attributes cannot be deserialized
+     * @throws ClassNotFoundException if the class of an attribute cannot be found
+     */
+    public void deserializeAttributes(SessionData data, InputStream in) throws IOException, ClassNotFoundException;
+}
@@ -57,6 +57,8 @@ public class SessionData implements Serializable
     protected long _maxInactiveMs;
     protected Map<String,Object> _attributes;
     protected boolean _dirty;
+    protected transient Set<String> _dirtyAttributes = ConcurrentHashMap.newKeySet(); //names of attributes changed since last save
+    protected transient boolean _allAttributesDirty; //whether all attributes must be saved
     protected long _lastSaved; //time in msec since last save
     
     
@@ -79,21 +81,39 @@ public class SessionData implements Serializable
         for (Entry<String,Object> entry: data._attributes.entrySet())
         {
             out.writeUTF(entry.getKey());     
-            ClassLoader loader = entry.getValue().getClass().getClassLoader();
-            boolean isServerLoader = false;
-
-            if (loader == Thread.currentThread().getContextClassLoader()) //is it the webapp classloader?
-                isServerLoader = false;
-            else if (loader == Thread.currentThread().getContextClassLoader().getParent() || loader == SessionData.class.getClassLoader() || loader == null) // is it the container loader?
-                isServerLoader = true;
-            else
-                throw new IOException ("Unknown loader"); // we don't know what loader to use
-            
-            out.writeBoolean(isServerLoader);
+            out.writeBoolean(isServerLoader(entry.getValue()));
             out.writeObject(entry.getValue());
         }
     }
     
+    /**
+     * Determine which classloader loaded the class of an attribute value.
+     * 
+     * @param value the attribute value
+     * @return true if the container classloader loaded the class of the value,
+     * false if the webapp classloader loaded it
+     * @throws IOException if the classloader is neither
+     */
+    static boolean isServerLoader (Object value)
+    throws IOException
+    {
+        ClassLoader loader = value.getClass().getClassLoader();
+        if (loader == Thread.currentThread().getContextClassLoader()) //is it the webapp classloader?
+            return false;
+        if (loader == Thread.currentThread().getContextClassLoader().getParent() || loader == SessionData.class.getClassLoader() || loader == null) // is it the container loader?
+            return true;
+        throw new IOException ("Unknown loader"); // we don't know what loader to use
+    }
+    
+    /**
+     * @param isServerLoader whether the container or the webapp classloader is required
+     * @return the classloader to use to load the class of an attribute value
+     */
+    static ClassLoader getLoader (boolean isServerLoader)
+    {
+        return isServerLoader?SessionData.class.getClassLoader():Thread.currentThread().getContextClassLoader();
+    }
+    
     /**
      * De-serialize the attribute map of a session.
      * 
@@ -123,7 +143,7 @@ public class SessionData implements Serializable
                 String name = in.readUTF(); //attribute name
                 boolean isServerClassLoader = in.readBoolean(); //use server or webapp classloader to load
 
-                Object value = ((ClassLoadingObjectInputStream)in).readObject(isServerClassLoader?SessionData.class.getClassLoader():Thread.currentThread().getContextClassLoader());
+                Object value = ((ClassLoadingObjectInputStream)in).readObject(getLoader(isServerClassLoader));
                 data._attributes.put(name, value);
             }
         }
@@ -212,6 +232,40 @@ public class SessionData implements Serializable
     public void setDirty(boolean dirty)
     {
         _dirty = dirty;
+        if (!dirty)
+        {
+            _dirtyAttributes.clear();
+            _allAttributesDirty = false;
+        }
+    }
+    
+    /**
+     * @return the names of the attributes that have been set or removed
+     * since the session was last written out
+     */
+    public Set<String> getDirtyAttributes()
+    {
+        return Collections.unmodifiableSet(_dirtyAttributes);
+    }
+    
+    /**
+     * @return true if all the attributes need to be written out,
+     * not only the dirty ones
+     */
+    public boolean isAllAttributesDirty()
+    {
+        return _allAttributesDirty;
+    }
+    
+    /**
+     * Ensure all the attributes are written out at the next save,
+     * for example because they were loaded from a format that
+     * cannot be partially updated.
+     */
+    public void setAllAttributesDirty()
+    {
+        _allAttributesDirty = true;
+        setDirty(true);
     }
     
     /**
@@ -244,6 +298,7 @@ public class SessionData implements Serializable
     public void setDirty (String name)
     {
         setDirty (true);
+        _dirtyAttributes.add(name);
     }
     
     public void putAllAttributes (Map<String,Object> attributes)
@@ -438,6 +493,7 @@ public class SessionData implements Serializable
         _lastNode = in.readUTF(); //last managing node
         _expiry = in.readLong(); 
         _maxInactiveMs = in.readLong();
+        _dirtyAttributes = ConcurrentHashMap.newKeySet();
         deserializeAttributes(this, in);
     }
     
@@ -0,0 +1,57 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.EventListener;
+
+/**
+ * SessionDataNotifier
+ *
+ * Implemented by SessionDataStores that can notify when the data of a session
+ * has been changed or removed by another node of the cluster, so that a copy
+ * of the data held locally (see {@link NearCacheSessionDataStore}) can be
+ * invalidated.
+ */
+public interface SessionDataNotifier
+{
+    /**
+     * Listener for changes made to session data by other nodes.
+     */
+    public interface Listener extends EventListener
+    {
+        /**
+         * The data of the session has been written, deleted or evicted by another node.
+         * 
+         * @param id the session id
+         */
+        public void onSessionDataChanged(String id);
+    }
+
+
+    /**
+     * @param listener the listener to add; it must be added before the store is started
+     */
+    public void addSessionDataListener(Listener listener);
+
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeSessionDataListener(Listener listener);
+}
@@ -19,8 +19,11 @@
 
 package org.eclipse.jetty.server.session;
 
+import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.jetty.util.MultiException;
+
 /**
  * SessionDataStore
  *
@@ -73,4 +76,36 @@ public interface SessionDataStore extends SessionDataMap
      */
     public boolean exists (String id) throws Exception;
     
+    
+    
+    /**
+     * Store the data of several sessions.
+     * <p>
+     * By default each session is stored in turn. Stores that can write
+     * several sessions in one operation (for example with a batch statement)
+     * should override this method.
+     * <p>
+     * After this method returns or throws, the sessions that were
+     * stored have an updated {@link SessionData#getLastSaved()}.
+     * 
+     * @param sessions the data of the sessions to store, keyed by session id
+     * @throws Exception if unable to write the data of some of the sessions
+     */
+    public default void storeAll (Map<String,SessionData> sessions) throws Exception
+    {
+        MultiException failures = new MultiException();
+        for (Map.Entry<String,SessionData> entry : sessions.entrySet())
+        {
+            try
+            {
+                store(entry.getKey(), entry.getValue());
+            }
+            catch (Exception e)
+            {
+                failures.add(e);
+            }
+        }
+        failures.ifExceptionThrow();
+    }
+    
 }
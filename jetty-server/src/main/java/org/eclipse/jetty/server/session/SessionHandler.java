@@ -248,6 +248,7 @@ public class SessionHandler extends ScopedHandler
     protected SessionCache _sessionCache;
     protected final SampleStatistic _sessionTimeStats = new SampleStatistic();
     protected final CounterStatistic _sessionsCreatedStats = new CounterStatistic();
+    protected final CounterStatistic _sessionsScavengedStats = new CounterStatistic();
     public Set<SessionTrackingMode> _sessionTrackingModes;
 
     protected boolean _usingURLs;
@@ -779,6 +780,13 @@ public class SessionHandler extends ScopedHandler
         return (int) _sessionsCreatedStats.getCurrent();
     }
 
+    /* ------------------------------------------------------------ */
+    @ManagedAttribute("number of sessions expired by scavenging")
+    public long getSessionsScavenged()
+    {
+        return _sessionsScavengedStats.getCurrent();
+    }
+
     /* ------------------------------------------------------------ */
     /**
      * @return the URL path parameter name for session id URL rewriting, by default "jsessionid".
@@ -905,6 +913,7 @@ public class SessionHandler extends ScopedHandler
     public void statsReset()
     {
         _sessionsCreatedStats.reset();
+        _sessionsScavengedStats.reset();
         _sessionTimeStats.reset();
     }
 
@@ -1359,6 +1368,7 @@ public class SessionHandler extends ScopedHandler
                 try
                 {
                     getSessionIdManager().expireAll(id);
+                    _sessionsScavengedStats.increment();
                 }
                 catch (Exception e)
                 {
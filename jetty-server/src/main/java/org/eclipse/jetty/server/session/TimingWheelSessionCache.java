@@ -0,0 +1,445 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * TimingWheelSessionCache
+ *
+ * A session cache that, instead of a timer on the Scheduler for each session,
+ * tracks the inactivity timeouts of all its sessions in a hashed timing wheel:
+ * an array of buckets, each holding the sessions that time out within one tick.
+ * 
+ * A single task runs every tick and only visits the bucket of that tick, so the
+ * cost of expiry and eviction is proportional to the number of sessions timing out,
+ * rather than to the number of sessions. Starting and stopping the timer of a session
+ * at each request is a field update in most cases: when a timeout is extended, the
+ * session stays in its earlier bucket and is moved when that bucket is visited.
+ * 
+ * Timeouts fire up to one tick late. Timeouts longer than tickMs * wheelSize are
+ * visited once per revolution of the wheel before they fire.
+ */
+@ManagedObject
+public class TimingWheelSessionCache extends DefaultSessionCache
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    
+    protected long _tickMs = 1000; //the duration of a bucket of the wheel
+    protected int _wheelSize = 4096; //the number of buckets of the wheel
+    
+    private Bucket[] _wheel;
+    private int _mask;
+    private volatile long _currentTick; //the last tick visited or being visited
+    private Scheduler.Task _task;
+    private final AtomicLong _timers = new AtomicLong();
+    private final AtomicLong _timeouts = new AtomicLong();
+    
+    
+    /**
+     * @param manager The SessionHandler related to this SessionCache
+     */
+    public TimingWheelSessionCache (SessionHandler manager)
+    {
+        super (manager);
+    }
+    
+    
+    /**
+     * @return the duration in ms of a tick of the wheel
+     */
+    @ManagedAttribute(value="ms per tick of the timing wheel", readonly=true)
+    public long getTickMs()
+    {
+        return _tickMs;
+    }
+
+
+    /**
+     * @param tickMs the duration in ms of a tick of the wheel, which 
+     * is also the precision of the session timeouts
+     */
+    public void setTickMs(long tickMs)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        if (tickMs <= 0)
+            throw new IllegalArgumentException("Tick must be positive");
+        _tickMs = tickMs;
+    }
+
+
+    /**
+     * @return the number of buckets of the wheel
+     */
+    @ManagedAttribute(value="buckets of the timing wheel", readonly=true)
+    public int getWheelSize()
+    {
+        return _wheelSize;
+    }
+
+
+    /**
+     * @param wheelSize the number of buckets of the wheel, rounded up to a power of 2;
+     * preferably larger than the max inactive interval of the sessions divided by the tick
+     */
+    public void setWheelSize(int wheelSize)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        if (wheelSize <= 0)
+            throw new IllegalArgumentException("Wheel size must be positive");
+        _wheelSize = wheelSize;
+    }
+    
+    
+    /**
+     * @return the number of session timers in the wheel
+     */
+    @ManagedAttribute(value="session timers in the timing wheel", readonly=true)
+    public long getTimers()
+    {
+        return _timers.get();
+    }
+    
+    
+    /**
+     * @return the number of session timers that fired
+     */
+    @ManagedAttribute(value="session timers fired", readonly=true)
+    public long getTimeouts()
+    {
+        return _timeouts.get();
+    }
+    
+    
+    @Override
+    public void resetStats()
+    {
+        super.resetStats();
+        _timeouts.set(0);
+    }
+    
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        int size = Integer.highestOneBit(_wheelSize);
+        if (size < _wheelSize)
+            size <<= 1;
+        _wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+            _wheel[i] = new Bucket();
+        _mask = size - 1;
+        _currentTick = System.currentTimeMillis() / _tickMs;
+        
+        super.doStart();
+        
+        scheduleTick();
+    }
+
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Scheduler.Task task = _task;
+        if (task != null)
+            task.cancel();
+        super.doStop();
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#newSession(javax.servlet.http.HttpServletRequest, org.eclipse.jetty.server.session.SessionData)
+     */
+    @Override
+    public Session newSession(HttpServletRequest request, SessionData data)
+    {
+        return new TimingWheelSession(getSessionHandler(), request, data);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.DefaultSessionCache#newSession(org.eclipse.jetty.server.session.SessionData)
+     */
+    @Override
+    public Session newSession(SessionData data)
+    {
+        return new TimingWheelSession(getSessionHandler(), data);
+    }
+    
+    
+    private void scheduleTick()
+    {
+        if (isRunning())
+            _task = getSessionHandler().getScheduler().schedule(this::tick, _tickMs, TimeUnit.MILLISECONDS);
+    }
+    
+    
+    /**
+     * Visit the buckets of the ticks elapsed since the last visit.
+     */
+    protected void tick()
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+            long tick = now / _tickMs;
+            //after a long pause, visit each bucket once
+            long from = Math.max(_currentTick + 1, tick - _wheel.length + 1);
+            for (long t = from; t <= tick; t++)
+            {
+                _currentTick = t;
+                visit(t);
+            }
+        }
+        catch (Throwable x)
+        {
+            LOG.warn(x);
+        }
+        finally
+        {
+            scheduleTick();
+        }
+    }
+    
+    
+    /**
+     * Fire the timers of a bucket that are due, and move
+     * those that were extended to their bucket.
+     * 
+     * @param tick the tick of the bucket
+     */
+    private void visit(long tick)
+    {
+        Bucket bucket = _wheel[(int)(tick & _mask)];
+        List<TimingWheelSession.WheelInactivityTimer> expired = null;
+        for (TimingWheelSession.WheelInactivityTimer timer : bucket._timers)
+        {
+            synchronized (timer)
+            {
+                if (timer._bucket != bucket)
+                    continue; //moved since
+                if (timer._tick > tick)
+                    continue; //due in a later revolution of the wheel
+                
+                if (timer._deadline < 0)
+                {
+                    //cancelled
+                    remove(timer);
+                    continue;
+                }
+                
+                long due = tickOf(timer._deadline);
+                if (due > tick)
+                {
+                    //extended
+                    remove(timer);
+                    add(timer, due);
+                    continue;
+                }
+                
+                remove(timer);
+                if (expired == null)
+                    expired = new ArrayList<>();
+                expired.add(timer);
+            }
+        }
+        
+        if (expired == null)
+            return;
+        
+        if (LOG.isDebugEnabled())
+            LOG.debug("{} session timers expired at tick {}", expired.size(), tick);
+        
+        //fire outside of the lock of the timer, as it takes the lock of the session
+        for (TimingWheelSession.WheelInactivityTimer timer : expired)
+        {
+            _timeouts.incrementAndGet();
+            try
+            {
+                timer.onTimeoutExpired();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+        }
+    }
+    
+    
+    /**
+     * @param time a time in ms since the epoch
+     * @return the first tick at or after the time
+     */
+    private long tickOf (long time)
+    {
+        return (time + _tickMs - 1) / _tickMs;
+    }
+    
+    
+    private void add (TimingWheelSession.WheelInactivityTimer timer, long tick)
+    {
+        Bucket bucket = _wheel[(int)(tick & _mask)];
+        timer._bucket = bucket;
+        timer._tick = tick;
+        bucket._timers.add(timer);
+        _timers.incrementAndGet();
+    }
+    
+    
+    private void remove (TimingWheelSession.WheelInactivityTimer timer)
+    {
+        timer._bucket._timers.remove(timer);
+        timer._bucket = null;
+        _timers.decrementAndGet();
+    }
+    
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[evict=%d,removeUnloadable=%b,saveOnCreate=%b,saveOnInactiveEvict=%b,tickMs=%d,wheelSize=%d]",
+                             this.getClass().getName(),this.hashCode(),_evictionPolicy,_removeUnloadableSessions,_saveOnCreate,_saveOnInactiveEviction,_tickMs,_wheelSize);
+    }
+    
+    
+    /**
+     * A bucket of the wheel
+     */
+    private static class Bucket
+    {
+        final Set<TimingWheelSession.WheelInactivityTimer> _timers = ConcurrentHashMap.newKeySet();
+    }
+    
+    
+    /**
+     * TimingWheelSession
+     *
+     * A session with an inactivity timer in the timing wheel of the cache.
+     */
+    public class TimingWheelSession extends Session
+    {
+        public TimingWheelSession(SessionHandler handler, HttpServletRequest request, SessionData data)
+        {
+            super(handler, request, data);
+        }
+
+        public TimingWheelSession(SessionHandler handler, SessionData data)
+        {
+            super(handler, data);
+        }
+
+        @Override
+        protected SessionInactivityTimer newSessionInactivityTimer()
+        {
+            return new WheelInactivityTimer();
+        }
+        
+        
+        /**
+         * The timer of the session in the wheel, guarded by itself
+         */
+        protected class WheelInactivityTimer extends SessionInactivityTimer
+        {
+            private long _deadline = -1; //time of expiry, or -1 if cancelled
+            private long _tick; //tick of the bucket holding this timer
+            private Bucket _bucket; //the bucket holding this timer, or null
+
+            public WheelInactivityTimer()
+            {
+                super(null);
+            }
+
+            @Override
+            public void schedule(long time)
+            {
+                if (time < 0)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Not starting timer for session {}", getId());
+                    return;
+                }
+                
+                long deadline = System.currentTimeMillis() + time;
+                //a bucket being visited may miss the timer
+                long tick = Math.max(tickOf(deadline), _currentTick + 1);
+                synchronized (this)
+                {
+                    _deadline = deadline;
+                    //if in an earlier bucket, it is moved when the bucket is visited
+                    if (_bucket != null && _tick <= tick)
+                        return;
+                    if (_bucket != null)
+                        remove(this);
+                    add(this, tick);
+                    //the bucket may have been visited since _currentTick was
+                    //read, in which case the timer is moved to the next one
+                    long current;
+                    while (tick <= (current = _currentTick))
+                    {
+                        remove(this);
+                        tick = current + 1;
+                        add(this, tick);
+                    }
+                }
+                if (LOG.isDebugEnabled())
+                    LOG.debug("(Re)starting timer for session {} at {}ms", getId(), time);
+            }
+
+            @Override
+            public void cancel()
+            {
+                //left in its bucket, as it is likely to be scheduled again soon
+                synchronized (this)
+                {
+                    _deadline = -1;
+                }
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Cancelled timer for session {}", getId());
+            }
+
+            @Override
+            public void destroy()
+            {
+                synchronized (this)
+                {
+                    _deadline = -1;
+                    if (_bucket != null)
+                        remove(this);
+                }
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Destroyed timer for session {}", getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+/**
+ * TimingWheelSessionCacheFactory
+ *
+ * Factory for creating new TimingWheelSessionCaches.
+ */
+public class TimingWheelSessionCacheFactory extends DefaultSessionCacheFactory
+{
+    long _tickMs = 1000;
+    int _wheelSize = 4096;
+    
+    
+    /**
+     * @return the duration in ms of a tick of the wheel
+     */
+    public long getTickMs()
+    {
+        return _tickMs;
+    }
+
+
+    /**
+     * @param tickMs the duration in ms of a tick of the wheel
+     */
+    public void setTickMs(long tickMs)
+    {
+        _tickMs = tickMs;
+    }
+
+
+    /**
+     * @return the number of buckets of the wheel
+     */
+    public int getWheelSize()
+    {
+        return _wheelSize;
+    }
+
+
+    /**
+     * @param wheelSize the number of buckets of the wheel
+     */
+    public void setWheelSize(int wheelSize)
+    {
+        _wheelSize = wheelSize;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionCacheFactory#getSessionCache(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionCache getSessionCache (SessionHandler handler)
+    {
+        TimingWheelSessionCache cache = new TimingWheelSessionCache(handler);
+        cache.setEvictionPolicy(getEvictionPolicy());
+        cache.setSaveOnInactiveEviction(isSaveOnInactiveEvict());
+        cache.setSaveOnCreate(isSaveOnCreate());
+        cache.setRemoveUnloadableSessions(isRemoveUnloadableSessions());
+        cache.setTickMs(getTickMs());
+        cache.setWheelSize(getWheelSize());
+        return cache;
+    }
+}
@@ -0,0 +1,699 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+
+/**
+ * WriteBehindSessionDataStore
+ *
+ * A SessionDataStore that delegates to a pluggable SessionDataStore, but
+ * writes the session data asynchronously, so that the request that releases
+ * a session does not wait for the write to the delegate store.
+ * 
+ * A store of the session data queues a copy of the data. Repeated stores of the
+ * same session within the flush interval are coalesced into a single write. The
+ * queued writes are passed to the delegate store in batches of at most maxBatchSize
+ * sessions, with {@link SessionDataStore#storeAll(Map)}, which some stores implement
+ * with a single operation (for example a JDBC batch statement).
+ * 
+ * Reads (load, exists, getExpired) see the queued data. Deleting a session, for
+ * example when it is invalidated, discards its queued write and waits for any write
+ * of it in progress, so that a queued write can never resurrect a deleted session.
+ * All the queued writes are flushed when this store is stopped. When a batch fails,
+ * its sessions are written one by one, so that a single failing session does not
+ * fail the others. A write that fails is retried at the next flush, unless this
+ * store is stopping, and is dropped after maxWriteAttempts failures.
+ * 
+ * As the data is written after the request has completed, a failure of the node
+ * loses the writes queued within the flush interval.
+ */
+@ManagedObject
+public class WriteBehindSessionDataStore extends ContainerLifeCycle implements SessionDataStore
+{
+    private  final static Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    
+    
+    /**
+     * The actual store for the session data
+     */
+    protected SessionDataStore _store;
+    
+    protected long _flushIntervalMs = 1000; //time in ms that writes are held to be coalesced
+    protected int _maxBatchSize = 100; //max sessions written in a batch
+    protected int _maxWriteAttempts = 5; //max failed writes of a session before it is dropped
+    protected Scheduler _scheduler;
+    
+    private final Map<String, PendingWrite> _pending = new HashMap<>(); //queued writes, guarded by itself
+    private final Set<String> _writing = new HashSet<>(); //ids being written to the delegate store, guarded by _pending
+    private final Object _flushLock = new Object(); //held while flushing, so that flushes do not overlap
+    private boolean _flushScheduled;
+    private boolean _immediateFlushScheduled;
+    private final AtomicLong _writes = new AtomicLong();
+    private final AtomicLong _coalescedWrites = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _failedWrites = new AtomicLong();
+    private final AtomicLong _droppedWrites = new AtomicLong();
+    
+    
+    /**
+     * @param store the actual store for the session data
+     */
+    public WriteBehindSessionDataStore (SessionDataStore store)
+    {
+        _store = store;
+        addBean(_store,true);
+    }
+    
+    
+    /**
+     * @return the delegate session store
+     */
+    public SessionDataStore getSessionStore()
+    {
+        return _store;
+    }
+    
+    
+    /**
+     * @return the time in milliseconds that a write is held before being flushed
+     */
+    @ManagedAttribute(value="ms writes are held before being flushed", readonly=true)
+    public long getFlushIntervalMs()
+    {
+        return _flushIntervalMs;
+    }
+
+
+    /**
+     * The time in milliseconds that a write is held, so that further
+     * writes of the same session can be coalesced with it.
+     * 
+     * @param flushIntervalMs the flush interval in milliseconds
+     */
+    public void setFlushIntervalMs(long flushIntervalMs)
+    {
+        _flushIntervalMs = flushIntervalMs;
+    }
+
+
+    /**
+     * @return the max number of sessions written to the delegate store at once
+     */
+    @ManagedAttribute(value="max sessions written in a batch", readonly=true)
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+
+    /**
+     * The max number of sessions written to the delegate store at once.
+     * When that many writes are queued, they are flushed without
+     * waiting for the flush interval. 
+     * 
+     * @param maxBatchSize the max batch size, or 0 or less for no limit
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        _maxBatchSize = maxBatchSize;
+    }
+
+
+    /**
+     * @return the max number of failed writes of a session before the write is dropped
+     */
+    @ManagedAttribute(value="max failed writes of a session before it is dropped", readonly=true)
+    public int getMaxWriteAttempts()
+    {
+        return _maxWriteAttempts;
+    }
+
+
+    /**
+     * The max number of times that the write of a session is attempted.
+     * When it has failed that many times, it is logged and dropped, so
+     * that a session that can never be written is not retried forever.
+     * 
+     * @param maxWriteAttempts the max write attempts, or 0 or less for no limit
+     */
+    public void setMaxWriteAttempts(int maxWriteAttempts)
+    {
+        _maxWriteAttempts = maxWriteAttempts;
+    }
+
+
+    /**
+     * @return the scheduler used to flush the writes
+     */
+    public Scheduler getScheduler()
+    {
+        return _scheduler;
+    }
+
+
+    /**
+     * @param scheduler the scheduler used to flush the writes; it
+     * must not be shared with tasks that cannot be delayed by
+     * the writes to the delegate store
+     */
+    public void setScheduler(Scheduler scheduler)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Already started");
+        updateBean(_scheduler, scheduler);
+        _scheduler = scheduler;
+    }
+
+
+    /**
+     * @return the number of sessions waiting to be written
+     */
+    @ManagedAttribute(value="sessions waiting to be written", readonly=true)
+    public int getPendingWrites()
+    {
+        synchronized (_pending)
+        {
+            return _pending.size();
+        }
+    }
+
+
+    /**
+     * @return the number of sessions written to the delegate store
+     */
+    @ManagedAttribute(value="sessions written", readonly=true)
+    public long getWrites()
+    {
+        return _writes.get();
+    }
+
+
+    /**
+     * @return the number of writes avoided by coalescing writes of the same session
+     */
+    @ManagedAttribute(value="writes coalesced", readonly=true)
+    public long getCoalescedWrites()
+    {
+        return _coalescedWrites.get();
+    }
+
+
+    /**
+     * @return the number of batches written to the delegate store
+     */
+    @ManagedAttribute(value="batches written", readonly=true)
+    public long getBatches()
+    {
+        return _batches.get();
+    }
+
+
+    /**
+     * @return the number of sessions that could not be written
+     */
+    @ManagedAttribute(value="failed session writes", readonly=true)
+    public long getFailedWrites()
+    {
+        return _failedWrites.get();
+    }
+    
+
+    /**
+     * @return the number of session writes dropped after too many failed attempts
+     */
+    @ManagedAttribute(value="session writes dropped", readonly=true)
+    public long getDroppedWrites()
+    {
+        return _droppedWrites.get();
+    }
+    
+
+    @ManagedOperation(value="reset statistics", impact="ACTION")
+    public void resetStats()
+    {
+        _writes.set(0);
+        _coalescedWrites.set(0);
+        _batches.set(0);
+        _failedWrites.set(0);
+        _droppedWrites.set(0);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#load(java.lang.String)
+     */
+    @Override
+    public SessionData load(String id) throws Exception
+    {
+        SessionData data = null;
+        synchronized (_pending)
+        {
+            PendingWrite pending = _pending.get(id);
+            if (pending != null)
+            {
+                data = copyOf(pending._data);
+                //the queued write will persist the data
+                data.setLastSaved(pending._original.getLastSaved());
+            }
+        }
+        
+        if (data != null)
+            return data;
+        
+        return _store.load(id);
+    }
+
+
+    /** 
+     * Discard any queued write of the session, wait for any write
+     * of it in progress, then delete it from the delegate store.
+     * 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#delete(java.lang.String)
+     */
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        boolean pending;
+        synchronized (_pending)
+        {
+            pending = _pending.remove(id) != null;
+            //only wait for the write of this session, not for the whole flush
+            while (_writing.contains(id))
+                _pending.wait();
+        }
+        
+        boolean deleted = _store.delete(id);
+        return deleted || pending;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#getExpired(java.util.Set)
+     */
+    @Override
+    public Set<String> getExpired(Set<String> candidates)
+    {
+        Set<String> expired = _store.getExpired(candidates);
+        if (expired == null || expired.isEmpty())
+            return expired;
+        
+        //a queued write may extend the expiry of a session
+        long now = System.currentTimeMillis();
+        synchronized (_pending)
+        {
+            expired.removeIf(id -> 
+            {
+                PendingWrite pending = _pending.get(id);
+                return pending != null && !pending._data.isExpiredAt(now);
+            });
+        }
+        return expired;
+    }
+
+
+    /** 
+     * Queue a write of a copy of the session data.
+     * 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#store(java.lang.String, org.eclipse.jetty.server.session.SessionData)
+     */
+    @Override
+    public void store(String id, SessionData data) throws Exception
+    {
+        if (data == null)
+            return;
+        
+        if (!isRunning())
+        {
+            //write any queued data first, then write through
+            flush();
+            _store.store(id, data);
+            return;
+        }
+        
+        SessionData copy = copyOf(data);
+        
+        synchronized (_pending)
+        {
+            PendingWrite previous = _pending.get(id);
+            if (previous != null && !previous._flushing)
+            {
+                //coalesce with the write not yet flushed
+                merge(previous._data, copy);
+                _coalescedWrites.incrementAndGet();
+            }
+            
+            _pending.put(id, new PendingWrite(id, data, copy));
+            
+            //the data is now considered saved, so that further
+            //writes of a new session are updates
+            if (data.getLastSaved() <= 0)
+                data.setLastSaved(System.currentTimeMillis());
+            data.setDirty(false);
+            
+            if (_maxBatchSize > 0 && _pending.size() >= _maxBatchSize && !_immediateFlushScheduled)
+            {
+                _immediateFlushScheduled = true;
+                _scheduler.schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+            }
+            else
+                scheduleFlush();
+        }
+    }
+
+
+    /**
+     * Write all the queued session data to the delegate store.
+     */
+    @ManagedOperation(value="flush queued writes", impact="ACTION")
+    public void flush()
+    {
+        synchronized (_flushLock)
+        {
+            List<PendingWrite> candidates;
+            synchronized (_pending)
+            {
+                _flushScheduled = false;
+                _immediateFlushScheduled = false;
+                candidates = new ArrayList<>(_pending.values());
+            }
+            
+            int batchSize = _maxBatchSize <= 0 ? candidates.size() : _maxBatchSize;
+            for (int i = 0; i < candidates.size(); i += batchSize)
+                write(candidates.subList(i, Math.min(candidates.size(), i + batchSize)));
+            
+            //retry failed writes later
+            synchronized (_pending)
+            {
+                if (!_pending.isEmpty())
+                    scheduleFlush();
+            }
+        }
+    }
+
+
+    /**
+     * Write a batch of queued writes to the delegate store.
+     * 
+     * @param candidates the queued writes
+     */
+    private void write(List<PendingWrite> candidates)
+    {
+        Map<String,SessionData> sessions = new LinkedHashMap<>();
+        Map<String,Long> lastSaveTimes = new HashMap<>();
+        List<PendingWrite> batch = new ArrayList<>();
+        synchronized (_pending)
+        {
+            for (PendingWrite pending : candidates)
+            {
+                //skip writes that were deleted or coalesced since
+                if (_pending.get(pending._id) != pending)
+                    continue;
+                pending._flushing = true;
+                _writing.add(pending._id);
+                batch.add(pending);
+                sessions.put(pending._id, pending._data);
+                lastSaveTimes.put(pending._id, pending._data.getLastSaved());
+            }
+        }
+        
+        if (batch.isEmpty())
+            return;
+
+        Map<String,Exception> failures = new HashMap<>();
+        try
+        {
+            _store.storeAll(sessions);
+            _batches.incrementAndGet();
+        }
+        catch (Exception e)
+        {
+            if (batch.size() == 1)
+            {
+                failures.put(batch.get(0)._id, e);
+            }
+            else
+            {
+                //the batch may fail because of a single session, so
+                //write the sessions one by one to find the failing ones
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Write of {} sessions failed, writing them one by one", batch.size(), e);
+                for (PendingWrite pending : batch)
+                {
+                    try
+                    {
+                        _store.store(pending._id, pending._data);
+                    }
+                    catch (Exception x)
+                    {
+                        failures.put(pending._id, x);
+                    }
+                }
+            }
+        }
+        
+        int failed = 0;
+        Exception failure = null;
+        synchronized (_pending)
+        {
+            for (PendingWrite pending : batch)
+            {
+                pending._flushing = false;
+                _writing.remove(pending._id);
+                long lastSaved = pending._data.getLastSaved();
+                PendingWrite current = _pending.get(pending._id);
+                
+                Exception x = failures.get(pending._id);
+                if (x == null || lastSaved != lastSaveTimes.get(pending._id))
+                {
+                    //written, or did not need to be
+                    _writes.incrementAndGet();
+                    if (lastSaved > pending._original.getLastSaved())
+                        pending._original.setLastSaved(lastSaved);
+                    if (current == pending)
+                        _pending.remove(pending._id);
+                }
+                else
+                {
+                    ++failed;
+                    failure = x;
+                    _failedWrites.incrementAndGet();
+                    int attempts = pending._attempts + 1;
+                    if (_maxWriteAttempts > 0 && attempts >= _maxWriteAttempts)
+                    {
+                        //give up, so that the session does not fail the other writes forever
+                        _droppedWrites.incrementAndGet();
+                        LOG.warn("Dropping write of session {} after {} failed attempts", pending._id, attempts, x);
+                        if (current == pending)
+                            _pending.remove(pending._id);
+                    }
+                    else if (current == pending)
+                    {
+                        pending._attempts = attempts;
+                    }
+                    else if (current != null)
+                    {
+                        //write it again with the next write of the session
+                        merge(pending._data, current._data);
+                        current._attempts = attempts;
+                    }
+                }
+            }
+            //wake up the deletes waiting for these writes
+            _pending.notifyAll();
+        }
+        
+        if (failure != null)
+        {
+            if (isRunning())
+                LOG.warn("Write of {} sessions failed, will retry", failed, failure);
+            else
+                LOG.warn("Write of {} sessions failed", failed, failure);
+        }
+        else if (LOG.isDebugEnabled())
+            LOG.debug("Wrote {} sessions", batch.size());
+    }
+
+
+    /**
+     * Merge the state of a write that was not done into a later
+     * write of the same session.
+     * 
+     * @param from the data that was not written
+     * @param to the data of the later write
+     */
+    private void merge(SessionData from, SessionData to)
+    {
+        //the later write must do what the earlier write would have done
+        to.setLastSaved(from.getLastSaved());
+        if (from.isAllAttributesDirty())
+            to.setAllAttributesDirty();
+        for (String name : from.getDirtyAttributes())
+            to.setDirty(name);
+        if (from.isDirty())
+            to.setDirty(true);
+    }
+
+
+    /**
+     * @param data the session data to copy
+     * @return a copy of the session data, including what is dirty
+     */
+    private SessionData copyOf(SessionData data)
+    {
+        SessionData copy = _store.newSessionData(data.getId(), data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+        copy.copy(data);
+        copy.setDirty(data.isDirty());
+        for (String name : data.getDirtyAttributes())
+            copy.setDirty(name);
+        if (data.isAllAttributesDirty())
+            copy.setAllAttributesDirty();
+        return copy;
+    }
+
+
+    private void scheduleFlush()
+    {
+        if (!_flushScheduled && isRunning())
+        {
+            _flushScheduled = true;
+            _scheduler.schedule(this::flush, _flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_scheduler == null)
+        {
+            _scheduler = new ScheduledExecutorScheduler(String.format("WriteBehindSessionDataStore-%x",hashCode()), true);
+            addBean(_scheduler,true);
+        }
+        super.doStart();
+    }
+
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        flush();
+        
+        synchronized (_pending)
+        {
+            if (!_pending.isEmpty())
+                LOG.warn("{} session writes lost on stop", _pending.size());
+            _pending.clear();
+        }
+        super.doStop();
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#isPassivating()
+     */
+    @Override
+    public boolean isPassivating()
+    {
+       return _store.isPassivating();
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#exists(java.lang.String)
+     */
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        synchronized (_pending)
+        {
+            PendingWrite pending = _pending.get(id);
+            if (pending != null)
+                return !pending._data.isExpiredAt(System.currentTimeMillis());
+        }
+        
+        return _store.exists(id);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataMap#initialize(org.eclipse.jetty.server.session.SessionContext)
+     */
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        //pass through
+        _store.initialize(context);
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStore#newSessionData(java.lang.String, long, long, long, long)
+     */
+    @Override
+    public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs)
+    {
+        return _store.newSessionData(id, created, accessed, lastAccessed, maxInactiveMs);
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[flushIntervalMs=%d,maxBatchSize=%d,maxWriteAttempts=%d,store=%s]", this.getClass().getName(), this.hashCode(), _flushIntervalMs, _maxBatchSize, _maxWriteAttempts, _store);
+    }
+
+
+    /**
+     * A queued write of a session
+     */
+    private static class PendingWrite
+    {
+        final String _id;
+        final SessionData _original; //the data of the session
+        final SessionData _data; //the copy of the data to write
+        boolean _flushing; //true while being written, guarded by _pending
+        int _attempts; //number of failed writes, guarded by _pending
+
+        PendingWrite(String id, SessionData original, SessionData data)
+        {
+            _id = id;
+            _original = original;
+            _data = data;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+/**
+ * WriteBehindSessionDataStoreFactory
+ *
+ *
+ */
+public class WriteBehindSessionDataStoreFactory extends AbstractSessionDataStoreFactory
+{
+    /**
+     * The factory of the SessionDataStore that will store session data.
+     */
+    protected SessionDataStoreFactory _sessionStoreFactory;
+    
+    protected long _flushIntervalMs = 1000;
+    
+    protected int _maxBatchSize = 100;
+    
+    protected int _maxWriteAttempts = 5;
+    
+    
+    /**
+     * @param factory The factory for the actual SessionDataStore that the
+     * WriteBehindSessionDataStore will delegate to
+     */
+    public void setSessionStoreFactory (SessionDataStoreFactory factory)
+    {
+        _sessionStoreFactory = factory;
+    }
+    
+
+    /**
+     * @return the time in milliseconds that a write is held before being flushed
+     */
+    public long getFlushIntervalMs()
+    {
+        return _flushIntervalMs;
+    }
+
+
+    /**
+     * @param flushIntervalMs the time in milliseconds that a write is held before being flushed
+     */
+    public void setFlushIntervalMs(long flushIntervalMs)
+    {
+        _flushIntervalMs = flushIntervalMs;
+    }
+
+
+    /**
+     * @return the max number of sessions written at once
+     */
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+
+    /**
+     * @param maxBatchSize the max number of sessions written at once
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        _maxBatchSize = maxBatchSize;
+    }
+
+
+    /**
+     * @return the max number of failed writes of a session before it is dropped
+     */
+    public int getMaxWriteAttempts()
+    {
+        return _maxWriteAttempts;
+    }
+
+
+    /**
+     * @param maxWriteAttempts the max number of failed writes of a session before it is dropped, or 0 or less for no limit
+     */
+    public void setMaxWriteAttempts(int maxWriteAttempts)
+    {
+        _maxWriteAttempts = maxWriteAttempts;
+    }
+
+
+    /** 
+     * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionDataStore getSessionDataStore(SessionHandler handler) throws Exception
+    {
+        WriteBehindSessionDataStore store = new WriteBehindSessionDataStore(_sessionStoreFactory.getSessionDataStore(handler));
+        store.setFlushIntervalMs(getFlushIntervalMs());
+        store.setMaxBatchSize(getMaxBatchSize());
+        store.setMaxWriteAttempts(getMaxWriteAttempts());
+        return store;
+    }
+}
@@ -0,0 +1,204 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * SessionAttributeSerializerTest
+ */
+public class SessionAttributeSerializerTest
+{
+    @Test
+    public void testCompactRoundTrip() throws Exception
+    {
+        SessionData data = newSessionData();
+        data.setAttribute("string", "value");
+        data.setAttribute("int", -42);
+        data.setAttribute("long", Long.MAX_VALUE);
+        data.setAttribute("short", (short)7);
+        data.setAttribute("byte", (byte)-1);
+        data.setAttribute("char", 'x');
+        data.setAttribute("boolean", Boolean.TRUE);
+        data.setAttribute("float", 1.5F);
+        data.setAttribute("double", Math.PI);
+        data.setAttribute("bytes", new byte[]{1, 2, 3});
+        char[] chars = new char[70000];
+        Arrays.fill(chars, '€');
+        data.setAttribute("longString", new String(chars));
+        List<Object> list = new ArrayList<>();
+        list.add("a");
+        list.add(null);
+        list.add(1L);
+        data.setAttribute("list", list);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("z", 1);
+        map.put("a", new HashMap<>(newDoubleMap()));
+        data.setAttribute("map", map);
+
+        SessionData copy = roundTrip(new CompactSessionAttributeSerializer(), new CompactSessionAttributeSerializer(), data);
+
+        assertEquals(data.getKeys(), copy.getKeys());
+        for (String name : data.getKeys())
+        {
+            if (name.equals("bytes"))
+                assertArrayEquals((byte[])data.getAttribute(name), (byte[])copy.getAttribute(name));
+            else
+                assertEquals(data.getAttribute(name), copy.getAttribute(name));
+        }
+        assertTrue(copy.getAttribute("map") instanceof LinkedHashMap);
+        assertEquals(Arrays.asList("z", "a"), new ArrayList<>(((Map<?, ?>)copy.getAttribute("map")).keySet()));
+    }
+
+    @Test
+    public void testJavaFallback() throws Exception
+    {
+        SessionData data = newSessionData();
+        TreeMap<String, String> tree = new TreeMap<>();
+        tree.put("b", "2");
+        tree.put("a", "1");
+        data.setAttribute("tree", tree);
+        List<Object> list = new ArrayList<>();
+        list.add(new StringBuilder("not compact"));
+        data.setAttribute("list", list);
+        data.setAttribute("string", "compact");
+
+        SessionData copy = roundTrip(new CompactSessionAttributeSerializer(), new CompactSessionAttributeSerializer(), data);
+
+        assertEquals(tree, copy.getAttribute("tree"));
+        assertTrue(copy.getAttribute("tree") instanceof TreeMap);
+        assertEquals("not compact", ((List<?>)copy.getAttribute("list")).get(0).toString());
+        assertEquals("compact", copy.getAttribute("string"));
+    }
+
+    @Test
+    public void testCompactReadsJavaFormat() throws Exception
+    {
+        SessionData data = newSessionData();
+        data.setAttribute("string", "value");
+        data.setAttribute("int", 42);
+        data.setAttribute("tree", new TreeMap<>(newDoubleMap()));
+
+        SessionData copy = roundTrip(new JavaSessionAttributeSerializer(), new CompactSessionAttributeSerializer(), data);
+
+        assertEquals(data.getAllAttributes(), copy.getAllAttributes());
+    }
+
+    @Test
+    public void testEmptyAttributes() throws Exception
+    {
+        SessionData copy = roundTrip(new CompactSessionAttributeSerializer(), new CompactSessionAttributeSerializer(), newSessionData());
+        assertTrue(copy.getKeys().isEmpty());
+
+        copy = roundTrip(new JavaSessionAttributeSerializer(), new CompactSessionAttributeSerializer(), newSessionData());
+        assertTrue(copy.getKeys().isEmpty());
+    }
+
+    @Test
+    public void testCompactIsSmaller() throws Exception
+    {
+        SessionData data = newSessionData();
+        data.setAttribute("user", "someone@example.com");
+        data.setAttribute("loginTime", System.currentTimeMillis());
+        data.setAttribute("visits", 3);
+        data.setAttribute("admin", Boolean.FALSE);
+
+        int javaSize = serialize(new JavaSessionAttributeSerializer(), data).length;
+        int compactSize = serialize(new CompactSessionAttributeSerializer(), data).length;
+        assertTrue(compactSize < javaSize / 2, compactSize + " vs " + javaSize);
+    }
+
+    @Test
+    public void testCompression() throws Exception
+    {
+        SessionData data = newSessionData();
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+            list.add("repeated value " + (i % 10));
+        data.setAttribute("list", list);
+
+        CompactSessionAttributeSerializer compressing = new CompactSessionAttributeSerializer();
+        compressing.setCompressionThreshold(256);
+        int size = serialize(new CompactSessionAttributeSerializer(), data).length;
+        int compressedSize = serialize(compressing, data).length;
+        assertTrue(compressedSize < size / 2, compressedSize + " vs " + size);
+
+        // Decompression does not depend on the configuration.
+        SessionData copy = roundTrip(compressing, new CompactSessionAttributeSerializer(), data);
+        assertEquals(list, copy.getAttribute("list"));
+    }
+
+    @Test
+    public void testTrailingBytesNotConsumed() throws Exception
+    {
+        SessionData data = newSessionData();
+        data.setAttribute("string", "value");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompactSessionAttributeSerializer().serializeAttributes(data, out);
+        out.write(0x7F);
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        SessionData copy = newSessionData();
+        new CompactSessionAttributeSerializer().deserializeAttributes(copy, in);
+        assertEquals("value", copy.getAttribute("string"));
+        assertEquals(0x7F, in.read());
+    }
+
+    private static Map<String, Object> newDoubleMap()
+    {
+        Map<String, Object> map = new HashMap<>();
+        map.put("key", 1.0D);
+        return map;
+    }
+
+    private SessionData newSessionData()
+    {
+        return new SessionData("1234", "/test", "0.0.0.0", 100, 101, 100, 1800);
+    }
+
+    private byte[] serialize(SessionAttributeSerializer serializer, SessionData data) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serializeAttributes(data, out);
+        return out.toByteArray();
+    }
+
+    private SessionData roundTrip(SessionAttributeSerializer writer, SessionAttributeSerializer reader, SessionData data) throws Exception
+    {
+        byte[] bytes = serialize(writer, data);
+        SessionData copy = newSessionData();
+        reader.deserializeAttributes(copy, new ByteArrayInputStream(bytes));
+        return copy;
+    }
+}
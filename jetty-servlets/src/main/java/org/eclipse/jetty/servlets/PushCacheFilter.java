@@ -20,6 +20,7 @@ package org.eclipse.jetty.servlets;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -30,8 +31,11 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -45,10 +49,15 @@ import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpScheme;
+import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpURI;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.io.Connection;
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.HttpChannel;
 import org.eclipse.jetty.server.PushBuilder;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
@@ -74,19 +83,52 @@ import org.eclipse.jetty.util.log.Logger;
  * cache.</p>
  * <p>If the init param useQueryInKey is set, then the query string is used as
  * as part of the key to identify a resource</p>
+ * <p>Each resource is pushed at most once per connection, tracked with a small
+ * per connection Bloom filter of {@code pushFilterSize} bits (0 disables it):
+ * the browser has pushed resources in its cache already, so pushing them again
+ * only wastes bandwidth. Pushes are tracked per connection rather than per HTTP
+ * session, as this filter must not create sessions and a browser typically uses
+ * a single HTTP/2 connection per origin. The filter is reset when it holds
+ * {@code pushFilterSize / 8} resources, to keep its false positives rare, and
+ * when the push cache is renewed or cleared.</p>
+ * <p>The bytes of the pushes in progress on a connection may be limited with
+ * {@code maxPushBytes} (by default negative, meaning no limit), for example to
+ * the HTTP/2 initial flow control window, as pushing more than the client can
+ * accept only competes with the primary resource for the connection's window.
+ * A resource is always pushed if no other push is in progress, even if it is
+ * larger than the limit. The size of a resource is learned when it is served.</p>
  */
 @ManagedObject("Push cache based on the HTTP 'Referer' header")
 public class PushCacheFilter implements Filter
 {
     private static final Logger LOG = Log.getLogger(PushCacheFilter.class);
+    private static final String CANCELLED_ATTRIBUTE = PushCacheFilter.class.getName() + ".cancelled";
 
     private final Set<Integer> _ports = new HashSet<>();
     private final Set<String> _hosts = new HashSet<>();
     private final ConcurrentMap<String, PrimaryResource> _cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Connection, PushedResources> _pushed = new ConcurrentHashMap<>();
+    private final AtomicLong _pushes = new AtomicLong();
+    private final AtomicLong _pushedBytes = new AtomicLong();
+    private final AtomicLong _pushesCancelled = new AtomicLong();
+    private final AtomicLong _pushesSkippedPushed = new AtomicLong();
+    private final AtomicLong _pushesSkippedBudget = new AtomicLong();
     private long _associatePeriod = 4000L;
     private int _maxAssociations = 16;
     private long _renew = System.nanoTime();
     private boolean _useQueryInKey;
+    private long _maxPushBytes = -1;
+    private int _pushFilterSize = 4096;
+    private final HttpChannel.Listener _pushedListener = new HttpChannel.Listener()
+    {
+        @Override
+        public void onResponseFailure(Request request, Throwable failure)
+        {
+            // Also notified when the pushed response fails after this filter
+            // returned, for example when the client resets the pushed stream.
+            pushedCancelled(request, failure);
+        }
+    };
 
     @Override
     public void init(FilterConfig config) throws ServletException
@@ -109,12 +151,20 @@ public class PushCacheFilter implements Filter
                 _ports.add(Integer.parseInt(p));
 
         _useQueryInKey = Boolean.parseBoolean(config.getInitParameter("useQueryInKey"));
-        
+
+        String maxPushBytes = config.getInitParameter("maxPushBytes");
+        if (maxPushBytes != null)
+            _maxPushBytes = Long.parseLong(maxPushBytes);
+
+        String pushFilterSize = config.getInitParameter("pushFilterSize");
+        if (pushFilterSize != null)
+            _pushFilterSize = Integer.parseInt(pushFilterSize);
+
         // Expose for JMX.
         config.getServletContext().setAttribute(config.getFilterName(), this);
 
         if (LOG.isDebugEnabled())
-            LOG.debug("period={} max={} hosts={} ports={}", _associatePeriod, _maxAssociations, _hosts, _ports);
+            LOG.debug("period={} max={} hosts={} ports={} maxPushBytes={} pushFilterSize={}", _associatePeriod, _maxAssociations, _hosts, _ports, _maxPushBytes, _pushFilterSize);
     }
 
     @Override
@@ -123,6 +173,12 @@ public class PushCacheFilter implements Filter
         HttpServletRequest request = (HttpServletRequest)req;
         Request jettyRequest = Request.getBaseRequest(request);
 
+        if (jettyRequest.isPush())
+        {
+            doFilterPushed(jettyRequest, req, resp, chain);
+            return;
+        }
+
         if (HttpVersion.fromString(request.getProtocol()).getVersion() < 20 ||
                 !HttpMethod.GET.is(request.getMethod()) ||
                 !jettyRequest.isPushSupported())
@@ -275,6 +331,7 @@ public class PushCacheFilter implements Filter
         if (!conditional && !primaryResource._associated.isEmpty())
         {
             PushBuilder pushBuilder = jettyRequest.getPushBuilder();
+            PushedResources pushed = getPushedResources(jettyRequest);
 
             // Breadth-first push of associated resources.
             Queue<PrimaryResource> queue = new ArrayDeque<>();
@@ -285,17 +342,152 @@ public class PushCacheFilter implements Filter
                 for (String childPath : parent._associated)
                 {
                     PrimaryResource child = _cache.get(childPath);
+                    long size = child == null ? 0 : Math.max(0, child._size.get());
+
+                    if (pushed != null)
+                    {
+                        if (pushed.contains(childPath))
+                        {
+                            _pushesSkippedPushed.incrementAndGet();
+                            if (LOG.isDebugEnabled())
+                                LOG.debug("Not pushing {} for {}, already pushed", childPath, path);
+                            continue;
+                        }
+
+                        if (!pushed.reserve(childPath, size, _maxPushBytes))
+                        {
+                            _pushesSkippedBudget.incrementAndGet();
+                            if (LOG.isDebugEnabled())
+                                LOG.debug("Not pushing {} for {}, size {} exceeds push budget {}", childPath, path, size, pushed);
+                            continue;
+                        }
+                    }
+
                     if (child != null)
                         queue.offer(child);
 
                     if (LOG.isDebugEnabled())
                         LOG.debug("Pushing {} for {}", childPath, path);
+                    _pushes.incrementAndGet();
+                    _pushedBytes.addAndGet(size);
                     pushBuilder.path(childPath).push();
                 }
             }
         }
 
         chain.doFilter(request, resp);
+
+        learnSize(jettyRequest, primaryResource);
+    }
+
+    private void doFilterPushed(Request jettyRequest, ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException, ServletException
+    {
+        String path = jettyRequest.getRequestURI();
+        String query = jettyRequest.getQueryString();
+        if (_useQueryInKey && query != null)
+            path += "?" + query;
+
+        jettyRequest.setAttribute(CANCELLED_ATTRIBUTE, new AtomicBoolean());
+        // Channels are recycled, so make sure the listener is added only once.
+        HttpChannel channel = jettyRequest.getHttpChannel();
+        channel.removeListener(_pushedListener);
+        channel.addListener(_pushedListener);
+        try
+        {
+            chain.doFilter(req, resp);
+        }
+        catch (IOException x)
+        {
+            // Typically the client has reset the pushed stream because
+            // it already had the resource, or did not want it.
+            pushedCancelled(jettyRequest, x);
+            throw x;
+        }
+        finally
+        {
+            // An asynchronous pushed resource is still being served, so
+            // wait for its completion to learn its size and release it.
+            if (req.isAsyncStarted())
+                req.getAsyncContext().addListener(new PushedListener(jettyRequest, path));
+            else
+                pushedComplete(jettyRequest, path);
+        }
+    }
+
+    private void pushedCancelled(Request jettyRequest, Throwable failure)
+    {
+        Object cancelled = jettyRequest.getAttribute(CANCELLED_ATTRIBUTE);
+        if (cancelled instanceof AtomicBoolean && ((AtomicBoolean)cancelled).compareAndSet(false, true))
+        {
+            _pushesCancelled.incrementAndGet();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Pushed resource " + jettyRequest.getRequestURI() + " cancelled", failure);
+        }
+    }
+
+    private void pushedComplete(Request jettyRequest, String path)
+    {
+        Object cancelled = jettyRequest.getAttribute(CANCELLED_ATTRIBUTE);
+        if (!(cancelled instanceof AtomicBoolean && ((AtomicBoolean)cancelled).get()))
+        {
+            PrimaryResource resource = _cache.get(path);
+            if (resource != null)
+                learnSize(jettyRequest, resource);
+        }
+
+        Connection connection = getConnection(jettyRequest);
+        PushedResources pushed = connection == null ? null : _pushed.get(connection);
+        if (pushed != null)
+            pushed.release(path);
+    }
+
+    private void learnSize(Request jettyRequest, PrimaryResource resource)
+    {
+        // Learn the size of the resource, to limit the bytes pushed.
+        Response response = jettyRequest.getResponse();
+        if (response.getStatus() != HttpStatus.OK_200)
+            return;
+        long size = response.getLongContentLength();
+        if (size < 0 && !jettyRequest.isAsyncStarted())
+            size = response.getContentCount();
+        if (size >= 0)
+            resource._size.set(size);
+    }
+
+    private Connection getConnection(Request jettyRequest)
+    {
+        EndPoint endPoint = jettyRequest.getHttpChannel().getEndPoint();
+        return endPoint == null ? null : endPoint.getConnection();
+    }
+
+    private PushedResources getPushedResources(Request jettyRequest)
+    {
+        Connection connection = getConnection(jettyRequest);
+        if (connection == null)
+            return null;
+
+        PushedResources pushed = _pushed.get(connection);
+        if (pushed == null)
+        {
+            PushedResources p = new PushedResources(_pushFilterSize);
+            pushed = _pushed.putIfAbsent(connection, p);
+            if (pushed == null)
+            {
+                pushed = p;
+                connection.addListener(new Connection.Listener.Adapter()
+                {
+                    @Override
+                    public void onClosed(Connection connection)
+                    {
+                        _pushed.remove(connection);
+                    }
+                });
+                // The connection may have been closed before the listener was added.
+                if (!connection.getEndPoint().isOpen())
+                    _pushed.remove(connection);
+            }
+        }
+        return pushed;
     }
 
     @Override
@@ -317,21 +509,228 @@ public class PushCacheFilter implements Filter
         return result;
     }
 
+    @ManagedAttribute("The max bytes of the pushes in progress on a connection, negative for no limit")
+    public long getMaxPushBytes()
+    {
+        return _maxPushBytes;
+    }
+
+    public void setMaxPushBytes(long maxPushBytes)
+    {
+        _maxPushBytes = maxPushBytes;
+    }
+
+    @ManagedAttribute(value = "The number of pushed resources", readonly = true)
+    public long getPushes()
+    {
+        return _pushes.get();
+    }
+
+    @ManagedAttribute(value = "The estimated number of pushed bytes", readonly = true)
+    public long getPushedBytes()
+    {
+        return _pushedBytes.get();
+    }
+
+    @ManagedAttribute(value = "The number of pushed resources that failed to be sent, typically because cancelled by the client", readonly = true)
+    public long getPushesCancelled()
+    {
+        return _pushesCancelled.get();
+    }
+
+    @ManagedAttribute(value = "The number of resources not pushed because already pushed on the same connection", readonly = true)
+    public long getPushesSkippedPushed()
+    {
+        return _pushesSkippedPushed.get();
+    }
+
+    @ManagedAttribute(value = "The number of resources not pushed because exceeding the push budget", readonly = true)
+    public long getPushesSkippedBudget()
+    {
+        return _pushesSkippedBudget.get();
+    }
+
+    @ManagedAttribute(value = "The ratio of pushed resources not cancelled by the client", readonly = true)
+    public double getPushHitRate()
+    {
+        long pushes = getPushes();
+        if (pushes == 0)
+            return 0;
+        return (double)Math.max(0, pushes - getPushesCancelled()) / pushes;
+    }
+
+    @ManagedOperation(value = "Resets the push statistics", impact = "ACTION")
+    public void resetPushStatistics()
+    {
+        _pushes.set(0);
+        _pushedBytes.set(0);
+        _pushesCancelled.set(0);
+        _pushesSkippedPushed.set(0);
+        _pushesSkippedBudget.set(0);
+    }
+
     @ManagedOperation(value = "Renews the push cache contents", impact = "ACTION")
     public void renewPushCache()
     {
         _renew = System.nanoTime();
+        clearPushed();
     }
 
     @ManagedOperation(value = "Clears the push cache contents", impact = "ACTION")
     public void clearPushCache()
     {
         _cache.clear();
+        clearPushed();
+    }
+
+    private void clearPushed()
+    {
+        // The resources may have changed, so they may be pushed again.
+        for (PushedResources pushed : _pushed.values())
+            pushed.clear();
     }
 
     private static class PrimaryResource
     {
         private final Set<String> _associated = Collections.newSetFromMap(new ConcurrentHashMap<>());
         private final AtomicLong _timestamp = new AtomicLong();
+        private final AtomicLong _size = new AtomicLong(-1);
+    }
+
+    private class PushedListener implements AsyncListener
+    {
+        private final Request _request;
+        private final String _path;
+
+        private PushedListener(Request request, String path)
+        {
+            _request = request;
+            _path = path;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            pushedComplete(_request, _path);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+            pushedCancelled(_request, event.getThrowable());
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            pushedCancelled(_request, event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+            // A new asynchronous cycle has started, keep listening.
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * <p>The resources pushed on a connection.</p>
+     * <p>Pushed paths are recorded in a Bloom filter, whose false positives
+     * only cause a resource not to be pushed, while the sizes of the pushes
+     * that have not completed yet are accounted against the push budget.</p>
+     * <p>The Bloom filter is reset when it holds 1 path every 8 bits, so that
+     * its false positive rate stays around 3%.</p>
+     */
+    private static class PushedResources
+    {
+        private static final int HASHES = 3;
+        private final Map<String, Long> _inFlight = new HashMap<>();
+        private final long[] _bits;
+        private long _inFlightBytes;
+        private int _paths;
+
+        private PushedResources(int size)
+        {
+            _bits = size > 0 ? new long[(size + 63) / 64] : null;
+        }
+
+        private synchronized boolean contains(String path)
+        {
+            if (_bits == null)
+                return false;
+            int hash1 = path.hashCode();
+            int hash2 = hash2(hash1);
+            for (int i = 0; i < HASHES; ++i)
+            {
+                int bit = index(hash1 + i * hash2);
+                if ((_bits[bit >>> 6] & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private synchronized boolean reserve(String path, long size, long budget)
+        {
+            // Always allow one push, so that large resources can be pushed.
+            if (budget >= 0 && _inFlightBytes > 0 && _inFlightBytes + size > budget)
+                return false;
+            _inFlightBytes += size;
+            Long previous = _inFlight.put(path, size);
+            if (previous != null)
+                _inFlightBytes -= previous;
+            if (_bits != null)
+            {
+                if (++_paths > _bits.length * 8)
+                {
+                    Arrays.fill(_bits, 0);
+                    _paths = 1;
+                }
+                int hash1 = path.hashCode();
+                int hash2 = hash2(hash1);
+                for (int i = 0; i < HASHES; ++i)
+                {
+                    int bit = index(hash1 + i * hash2);
+                    _bits[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return true;
+        }
+
+        private synchronized void clear()
+        {
+            if (_bits != null)
+                Arrays.fill(_bits, 0);
+            _paths = 0;
+        }
+
+        private synchronized void release(String path)
+        {
+            Long size = _inFlight.remove(path);
+            if (size != null)
+                _inFlightBytes -= size;
+        }
+
+        private int hash2(int hash)
+        {
+            // Murmur3 finalizer, to derive a second independent hash.
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            hash ^= hash >>> 16;
+            return hash | 1;
+        }
+
+        private int index(int hash)
+        {
+            return (hash & Integer.MAX_VALUE) % (_bits.length * 64);
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return String.format("%s@%x[inFlight=%d/%dB]", getClass().getSimpleName(), hashCode(), _inFlight.size(), _inFlightBytes);
+        }
     }
 }
@@ -63,6 +63,13 @@ public class HttpClientTransportOverUnixSockets
         this._unixSocket = unixSocket;
     }
 
+    @Override
+    protected boolean isShareSelectors()
+    {
+        // Unix sockets need their own native selectors.
+        return false;
+    }
+
     @Override
     protected SelectorManager newSelectorManager(HttpClient client)
     {
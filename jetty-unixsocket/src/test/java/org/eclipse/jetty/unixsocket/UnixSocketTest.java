@@ -40,6 +40,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.io.ClientResources;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
@@ -146,6 +147,42 @@ public class UnixSocketTest
         assertThat(contentResponse.getContentAsString(), containsString( "Hello World" ));
     }
 
+    @Test
+    public void testUnixSocketWithClientResources() throws Exception
+    {
+        server = new Server();
+
+        UnixSocketConnector connector = new UnixSocketConnector( server, new HttpConnectionFactory() );
+        connector.setUnixSocket( sockFile.toString() );
+        server.addConnector( connector );
+
+        server.setHandler( new AbstractHandler.ErrorDispatchHandler()
+        {
+            @Override
+            protected void doNonErrorHandle( String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response )
+                            throws IOException, ServletException
+            {
+                baseRequest.setHandled( true );
+                response.setStatus( 200 );
+                response.getWriter().write( "Hello World\r\n" );
+            }
+        } );
+
+        server.start();
+
+        // The transport must use its own native selectors, not the shared ones.
+        httpClient = new HttpClient( new HttpClientTransportOverUnixSockets( sockFile.toString() ), null );
+        httpClient.setClientResources( new ClientResources() );
+        httpClient.start();
+
+        ContentResponse contentResponse = httpClient
+                .newRequest( "http://localhost" )
+                .send();
+
+        assertThat(contentResponse.getContentAsString(), containsString( "Hello World" ));
+    }
+
     @Test
     public void testNotLocal() throws Exception
     {        
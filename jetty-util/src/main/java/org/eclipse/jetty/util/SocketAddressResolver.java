@@ -22,15 +22,21 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.security.Security;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.thread.Scheduler;
@@ -194,4 +200,248 @@ public interface SocketAddressResolver
             });
         }
     }
+
+    /**
+     * <p>Caches the results of another {@link SocketAddressResolver}.</p>
+     * <p>Successful resolutions are cached for the {@link #getTimeToLive() time to live},
+     * and failed resolutions for the {@link #getNegativeTimeToLive() negative time to live};
+     * by default these are the values of the {@code networkaddress.cache.ttl} and
+     * {@code networkaddress.cache.negative.ttl} security properties, or 30 and 10 seconds.</p>
+     * <p>Concurrent resolutions of the same host are coalesced into a single resolution.
+     * When a cached entry is used within the {@link #getRefreshAhead() refresh ahead} time
+     * from its expiration, it is resolved again in background, while the cached addresses
+     * keep being used until the new resolution completes.</p>
+     * <p>Example usage:</p>
+     * <pre>
+     * SocketAddressResolver resolver = new SocketAddressResolver.Caching(new SocketAddressResolver.Async(executor, scheduler, timeout));
+     * </pre>
+     */
+    @ManagedObject("The caching address resolver")
+    public static class Caching implements SocketAddressResolver
+    {
+        private static final Logger LOG = Log.getLogger(SocketAddressResolver.class);
+
+        private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final SocketAddressResolver resolver;
+        private long timeToLive = securityTimeToLive("networkaddress.cache.ttl", 30);
+        private long negativeTimeToLive = securityTimeToLive("networkaddress.cache.negative.ttl", 10);
+        private long refreshAhead = 5000;
+
+        /**
+         * @param resolver the resolver that performs the resolutions that are cached
+         */
+        public Caching(SocketAddressResolver resolver)
+        {
+            this.resolver = resolver;
+        }
+
+        public SocketAddressResolver getSocketAddressResolver()
+        {
+            return resolver;
+        }
+
+        @ManagedAttribute("The time, in milliseconds, successful resolutions are cached")
+        public long getTimeToLive()
+        {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(long timeToLive)
+        {
+            this.timeToLive = timeToLive;
+        }
+
+        @ManagedAttribute("The time, in milliseconds, failed resolutions are cached")
+        public long getNegativeTimeToLive()
+        {
+            return negativeTimeToLive;
+        }
+
+        public void setNegativeTimeToLive(long negativeTimeToLive)
+        {
+            this.negativeTimeToLive = negativeTimeToLive;
+        }
+
+        @ManagedAttribute("The time, in milliseconds, before expiration when cached resolutions are refreshed")
+        public long getRefreshAhead()
+        {
+            return refreshAhead;
+        }
+
+        /**
+         * @param refreshAhead the time, in milliseconds, before expiration when cached
+         * resolutions are refreshed in background when used, or 0 to disable refreshes
+         */
+        public void setRefreshAhead(long refreshAhead)
+        {
+            this.refreshAhead = refreshAhead;
+        }
+
+        @ManagedAttribute(value = "The number of resolutions served from the cache", readonly = true)
+        public long getHitCount()
+        {
+            return hits.longValue();
+        }
+
+        @ManagedAttribute(value = "The number of resolutions not served from the cache", readonly = true)
+        public long getMissCount()
+        {
+            return misses.longValue();
+        }
+
+        @ManagedAttribute(value = "The number of cached hosts", readonly = true)
+        public int getSize()
+        {
+            return cache.size();
+        }
+
+        @ManagedOperation(value = "Clears the cache", impact = "ACTION")
+        public void clear()
+        {
+            cache.clear();
+        }
+
+        @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+        public void resetStats()
+        {
+            hits.reset();
+            misses.reset();
+        }
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            Entry entry;
+            while (true)
+            {
+                long now = System.nanoTime();
+                entry = cache.get(host);
+                if (entry != null && !entry.isExpired(now))
+                {
+                    hits.increment();
+                    if (entry.isRefreshable(now))
+                        refresh(host, entry);
+                    break;
+                }
+
+                Entry newEntry = new Entry();
+                boolean added = entry == null ? cache.putIfAbsent(host, newEntry) == null : cache.replace(host, entry, newEntry);
+                if (added)
+                {
+                    misses.increment();
+                    entry = newEntry;
+                    resolve(host, entry);
+                    break;
+                }
+            }
+
+            entry.future.whenComplete((addresses, failure) ->
+            {
+                if (failure != null)
+                {
+                    promise.failed(failure);
+                }
+                else
+                {
+                    List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+                    for (InetAddress address : addresses)
+                        result.add(new InetSocketAddress(address, port));
+                    promise.succeeded(result);
+                }
+            });
+        }
+
+        private void refresh(String host, Entry entry)
+        {
+            if (entry.refreshing.compareAndSet(false, true))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Refreshing {}", host);
+                Entry newEntry = new Entry();
+                resolve(host, newEntry);
+                newEntry.future.whenComplete((addresses, failure) ->
+                {
+                    // Keep using the addresses resolved previously until they expire.
+                    if (failure == null)
+                        cache.replace(host, entry, newEntry);
+                });
+            }
+        }
+
+        private void resolve(String host, Entry entry)
+        {
+            resolver.resolve(host, 0, new Promise<List<InetSocketAddress>>()
+            {
+                @Override
+                public void succeeded(List<InetSocketAddress> result)
+                {
+                    List<InetAddress> addresses = new ArrayList<>(result.size());
+                    for (InetSocketAddress socketAddress : result)
+                        addresses.add(socketAddress.getAddress());
+                    entry.complete(addresses, null, timeToLive, refreshAhead);
+                }
+
+                @Override
+                public void failed(Throwable x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Could not resolve " + host, x);
+                    entry.complete(null, x, negativeTimeToLive, 0);
+                }
+            });
+        }
+
+        private static long securityTimeToLive(String property, long defaultSeconds)
+        {
+            try
+            {
+                String value = Security.getProperty(property);
+                if (value != null)
+                {
+                    long seconds = Long.parseLong(value.trim());
+                    // A negative value means forever.
+                    return seconds < 0 ? Long.MAX_VALUE : TimeUnit.SECONDS.toMillis(seconds);
+                }
+            }
+            catch (Throwable x)
+            {
+                LOG.ignore(x);
+            }
+            return TimeUnit.SECONDS.toMillis(defaultSeconds);
+        }
+
+        private static class Entry
+        {
+            private final CompletableFuture<List<InetAddress>> future = new CompletableFuture<>();
+            private final AtomicBoolean refreshing = new AtomicBoolean();
+            private volatile long expireNanoTime;
+            private volatile long refreshNanoTime;
+
+            private void complete(List<InetAddress> addresses, Throwable failure, long timeToLive, long refreshAhead)
+            {
+                long now = System.nanoTime();
+                // Avoid overflows for very long times to live.
+                long ttl = Math.min(TimeUnit.MILLISECONDS.toNanos(timeToLive), Long.MAX_VALUE / 2);
+                expireNanoTime = now + ttl;
+                refreshNanoTime = refreshAhead > 0 ? expireNanoTime - Math.min(ttl, TimeUnit.MILLISECONDS.toNanos(refreshAhead)) : Long.MAX_VALUE;
+                if (failure == null)
+                    future.complete(addresses);
+                else
+                    future.completeExceptionally(failure);
+            }
+
+            private boolean isExpired(long now)
+            {
+                // Entries being resolved are never expired.
+                return future.isDone() && now - expireNanoTime >= 0;
+            }
+
+            private boolean isRefreshable(long now)
+            {
+                return future.isDone() && !future.isCompletedExceptionally() && refreshNanoTime != Long.MAX_VALUE && now - refreshNanoTime >= 0;
+            }
+        }
+    }
 }
@@ -0,0 +1,163 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class SocketAddressResolverCachingTest
+{
+    @Test
+    public void testSuccessfulResolutionIsCached() throws Exception
+    {
+        CountingResolver resolver = new CountingResolver();
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(resolver);
+        caching.setRefreshAhead(0);
+
+        List<InetSocketAddress> result1 = resolve(caching, "host", 8080);
+        assertEquals(1, result1.size());
+        assertEquals(8080, result1.get(0).getPort());
+        List<InetSocketAddress> result2 = resolve(caching, "host", 8443);
+        assertEquals(8443, result2.get(0).getPort());
+        assertSame(result1.get(0).getAddress(), result2.get(0).getAddress());
+
+        assertEquals(1, resolver.resolutions.get());
+        assertEquals(1, caching.getMissCount());
+        assertEquals(1, caching.getHitCount());
+        assertEquals(1, caching.getSize());
+    }
+
+    @Test
+    public void testFailedResolutionIsCached() throws Exception
+    {
+        CountingResolver resolver = new CountingResolver();
+        resolver.fail = true;
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(resolver);
+        caching.setNegativeTimeToLive(60000);
+
+        for (int i = 0; i < 2; ++i)
+        {
+            FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+            caching.resolve("host", 80, promise);
+            ExecutionException x = assertThrows(ExecutionException.class, () -> promise.get(5, TimeUnit.SECONDS));
+            assertTrue(x.getCause() instanceof UnknownHostException);
+        }
+
+        assertEquals(1, resolver.resolutions.get());
+    }
+
+    @Test
+    public void testExpiredResolutionIsResolvedAgain() throws Exception
+    {
+        CountingResolver resolver = new CountingResolver();
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(resolver);
+        caching.setTimeToLive(100);
+        caching.setRefreshAhead(0);
+
+        resolve(caching, "host", 80);
+        Thread.sleep(200);
+        resolve(caching, "host", 80);
+
+        assertEquals(2, resolver.resolutions.get());
+        assertEquals(2, caching.getMissCount());
+    }
+
+    @Test
+    public void testResolutionIsRefreshedAhead() throws Exception
+    {
+        CountingResolver resolver = new CountingResolver();
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching(resolver);
+        caching.setTimeToLive(60000);
+        caching.setRefreshAhead(60000);
+
+        resolve(caching, "host", 80);
+        // The cached result is returned, and the resolution is refreshed.
+        resolve(caching, "host", 80);
+        assertEquals(2, resolver.resolutions.get());
+        assertEquals(1, caching.getHitCount());
+        assertEquals(1, caching.getMissCount());
+    }
+
+    @Test
+    public void testConcurrentResolutionsAreCoalesced() throws Exception
+    {
+        List<Promise<List<InetSocketAddress>>> pending = Collections.synchronizedList(new ArrayList<>());
+        SocketAddressResolver.Caching caching = new SocketAddressResolver.Caching((host, port, promise) -> pending.add(promise));
+
+        FuturePromise<List<InetSocketAddress>> promise1 = new FuturePromise<>();
+        caching.resolve("host", 80, promise1);
+        FuturePromise<List<InetSocketAddress>> promise2 = new FuturePromise<>();
+        caching.resolve("host", 443, promise2);
+        assertEquals(1, pending.size());
+
+        InetAddress address = InetAddress.getByAddress("host", new byte[]{10, 0, 0, 1});
+        pending.get(0).succeeded(Collections.singletonList(new InetSocketAddress(address, 0)));
+
+        assertEquals(80, promise1.get(5, TimeUnit.SECONDS).get(0).getPort());
+        assertEquals(443, promise2.get(5, TimeUnit.SECONDS).get(0).getPort());
+        assertEquals(address, promise2.get().get(0).getAddress());
+    }
+
+    private List<InetSocketAddress> resolve(SocketAddressResolver resolver, String host, int port) throws Exception
+    {
+        FuturePromise<List<InetSocketAddress>> promise = new FuturePromise<>();
+        resolver.resolve(host, port, promise);
+        return promise.get(5, TimeUnit.SECONDS);
+    }
+
+    private static class CountingResolver implements SocketAddressResolver
+    {
+        private final AtomicInteger resolutions = new AtomicInteger();
+        private volatile boolean fail;
+
+        @Override
+        public void resolve(String host, int port, Promise<List<InetSocketAddress>> promise)
+        {
+            int count = resolutions.incrementAndGet();
+            if (fail)
+            {
+                promise.failed(new UnknownHostException(host));
+                return;
+            }
+            try
+            {
+                InetAddress address = InetAddress.getByAddress(host, new byte[]{10, 0, 0, (byte)count});
+                promise.succeeded(Collections.singletonList(new InetSocketAddress(address, port)));
+            }
+            catch (UnknownHostException x)
+            {
+                promise.failed(x);
+            }
+        }
+    }
+}
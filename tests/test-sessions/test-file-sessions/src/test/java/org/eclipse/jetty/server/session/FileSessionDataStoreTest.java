@@ -19,8 +19,16 @@
 
 package org.eclipse.jetty.server.session;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 
 /**
  * FileSessionDataStoreTest
@@ -79,5 +87,40 @@ public class FileSessionDataStoreTest extends AbstractSessionDataStoreTest
     {
         return FileTestHelper.checkSessionPersisted(data);
     }
-
+    
+    
+    @Test
+    public void testExpiryIndex() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+        
+        //store a session that has expired
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now-2000, now-2000, 1000);
+        data.setLastNode(sessionContext.getWorkerName());
+        data.setExpiry(now-1000);
+        store.store("1234", data);
+        assertTrue(store.getExpired(Collections.emptySet()).contains("1234"));
+        
+        //the session is accessed, and its expiry updated
+        data.setExpiry(now+TimeUnit.MINUTES.toMillis(10));
+        data.setDirty(true);
+        store.store("1234", data);
+        assertFalse(store.getExpired(Collections.emptySet()).contains("1234"));
+        
+        //the session expires again and is deleted
+        data.setExpiry(now-1000);
+        data.setDirty(true);
+        store.store("1234", data);
+        assertTrue(store.getExpired(Collections.emptySet()).contains("1234"));
+        store.delete("1234");
+        assertFalse(store.getExpired(Collections.emptySet()).contains("1234"));
+    }
 }
@@ -85,20 +85,45 @@ public class FileTestHelper
     {
         assertNotNull(_tmpDir);
         assertTrue(_tmpDir.exists());
-        String[] files = _tmpDir.list();
+        return getFile(_tmpDir, sessionId);
+    }
+    
+    
+    /**
+     * @param filename the name of a session file
+     * @return the file in one of the shards of the store dir or in the store dir, or null
+     */
+    public static File findFile (String filename)
+    {
+        File[] dirs = _tmpDir.listFiles(File::isDirectory);
+        assertNotNull(dirs);
+        for (File dir:dirs)
+        {
+            File file = new File(dir, filename);
+            if (file.exists())
+                return file;
+        }
+        File file = new File(_tmpDir, filename);
+        return (file.exists() ? file : null);
+    }
+    
+    
+    private static File getFile (File dir, String sessionId)
+    {
+        File[] files = dir.listFiles();
         assertNotNull(files);
-        String fname = null;
-        for (String name:files)
+        for (File file:files)
         {
-            if (name.contains(sessionId))
+            //look in the shards of the store dir too
+            if (file.isDirectory() && dir.equals(_tmpDir))
             {
-                fname=name;
-                break;
+                File f = getFile(file, sessionId);
+                if (f != null)
+                    return f;
             }
+            else if (file.getName().contains(sessionId))
+                return file;
         }
-        
-        if (fname != null)
-            return new File (_tmpDir, fname);
         return null;
     }
 
@@ -174,6 +199,7 @@ public class FileTestHelper
             if (attributes != null)
             {
                 SessionData tmp = new SessionData(id,contextPath, vhost, created, accessed, lastAccessed, maxIdle);
+                tmp.putAllAttributes(attributes);
                 ObjectOutputStream oos = new ObjectOutputStream(out);
                 SessionData.serializeAttributes(tmp, oos);
             }
@@ -185,8 +211,8 @@ public class FileTestHelper
     throws Exception
     {
         String filename = ""+data.getExpiry()+"_"+data.getContextPath()+"_"+data.getVhost()+"_"+data.getId();
-        File file = new File(_tmpDir, filename);
-        assertTrue(file.exists());
+        File file = findFile(filename);
+        assertNotNull(file);
         
         try (FileInputStream in = new FileInputStream(file); DataInputStream di = new DataInputStream(in))
         {
@@ -0,0 +1,113 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ShardedFileSessionDataStoreTest
+ *
+ * Runs the FileSessionDataStore tests with the files held in subdirectories
+ * of the store dir: the session files created by the tests in the store dir
+ * are moved to their subdirectory when the store starts.
+ */
+public class ShardedFileSessionDataStoreTest extends FileSessionDataStoreTest
+{
+    @Override
+    public SessionDataStoreFactory createSessionDataStoreFactory()
+    {
+        FileSessionDataStoreFactory factory = FileTestHelper.newSessionDataStoreFactory();
+        factory.setShards(4);
+        return factory;
+    }
+    
+    
+    @Test
+    public void testMoveToShard() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        
+        //a session in the store dir, written before the store was sharded
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now, now-1, -1);
+        data.setLastNode(sessionContext.getWorkerName());
+        data.setAttribute("a", "b");
+        persistSession(data);
+        assertEquals(FileTestHelper._tmpDir, FileTestHelper.getFile("1234").getParentFile());
+        
+        store.start();
+        
+        File file = FileTestHelper.getFile("1234");
+        assertNotNull(file);
+        String shard = Integer.toHexString(Math.floorMod(("_test_0.0.0.0_1234").hashCode(), 4));
+        assertEquals(new File(FileTestHelper._tmpDir, shard), file.getParentFile());
+        
+        SessionData loaded = store.load("1234");
+        assertNotNull(loaded);
+        assertEquals("b", loaded.getAttribute("a"));
+    }
+    
+    
+    @Test
+    public void testMoveFromShard() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        FileSessionDataStoreFactory factory = FileTestHelper.newSessionDataStoreFactory();
+        factory.setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        
+        //a session in a subdirectory, written before the store was unsharded
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now, now-1, -1);
+        data.setLastNode(sessionContext.getWorkerName());
+        data.setAttribute("a", "b");
+        persistSession(data);
+        File file = FileTestHelper.getFile("1234");
+        File shard = new File(FileTestHelper._tmpDir, "2");
+        assertTrue(shard.mkdirs());
+        Files.move(file.toPath(), new File(shard, file.getName()).toPath());
+        
+        store.start();
+        
+        file = FileTestHelper.getFile("1234");
+        assertNotNull(file);
+        assertEquals(FileTestHelper._tmpDir, file.getParentFile());
+        
+        SessionData loaded = store.load("1234");
+        assertNotNull(loaded);
+        assertEquals("b", loaded.getAttribute("a"));
+    }
+}
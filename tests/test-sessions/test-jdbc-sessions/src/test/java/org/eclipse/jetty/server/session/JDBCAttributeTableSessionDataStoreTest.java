@@ -0,0 +1,190 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * JDBCAttributeTableSessionDataStoreTest
+ *
+ * Runs the store tests with the attributes held in an attribute table,
+ * and checks that only the changed attributes are written.
+ */
+public class JDBCAttributeTableSessionDataStoreTest extends JDBCSessionDataStoreTest
+{
+    public static final String ATTRIBUTE_TABLE = "myattributes";
+    
+    
+    @Override
+    public SessionDataStoreFactory createSessionDataStoreFactory()
+    {
+        DatabaseAdaptor da = new DatabaseAdaptor();
+        da.setDriverInfo(JdbcTestHelper.DRIVER_CLASS, JdbcTestHelper.DEFAULT_CONNECTION_URL);
+        JDBCSessionDataStoreFactory factory = new JDBCSessionDataStoreFactory();
+        factory.setDatabaseAdaptor(da);
+        JDBCSessionDataStore.SessionTableSchema sessionTableSchema = JdbcTestHelper.newSessionTableSchema();
+        sessionTableSchema.setAttributeTableName(ATTRIBUTE_TABLE);
+        factory.setSessionTableSchema(sessionTableSchema);
+        return factory;
+    }
+
+    
+    @Override
+    public boolean checkSessionPersisted(SessionData data) throws Exception
+    {
+        assertTrue(JdbcTestHelper.existsInSessionTable(data.getId(), false));
+        
+        Map<String,Object> attributes = loadAttributes(data.getId());
+        assertEquals(data.getAllAttributes(), attributes);
+        return true;
+    }
+    
+    
+    @Test
+    public void testStoreOnlyDirtyAttributes() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+        
+        //create a session with some attributes
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now, now-1, -1);//never expires
+        data.setAttribute("a", "a1");
+        data.setAttribute("b", "b1");
+        data.setAttribute("c", "c1");
+        data.setLastNode(sessionContext.getWorkerName());
+        store.store("1234", data);
+        assertTrue(data.getDirtyAttributes().isEmpty());
+        assertTrue(checkSessionPersisted(data));
+        
+        //change the value of an attribute in the db behind the back of the store:
+        //as the attribute is not dirty, it must not be overwritten
+        try (Connection connection = DriverManager.getConnection(JdbcTestHelper.DEFAULT_CONNECTION_URL);
+             PreparedStatement statement = connection.prepareStatement("delete from "+ATTRIBUTE_TABLE+" where attributeName = ?"))
+        {
+            statement.setString(1, "c");
+            assertEquals(1, statement.executeUpdate());
+        }
+        
+        //change one attribute, remove another
+        data.setAttribute("a", "a2");
+        data.setAttribute("b", null);
+        assertEquals(2, data.getDirtyAttributes().size());
+        store.store("1234", data);
+        assertTrue(data.getDirtyAttributes().isEmpty());
+        
+        Map<String,Object> attributes = loadAttributes("1234");
+        assertEquals(1, attributes.size());
+        assertEquals("a2", attributes.get("a"));
+        
+        //a fresh store loads the attributes from the attribute table
+        SessionDataStore store2 = factory.getSessionDataStore(context.getSessionHandler());
+        store2.initialize(sessionContext);
+        store2.start();
+        SessionData loaded = store2.load("1234");
+        assertEquals(attributes, loaded.getAllAttributes());
+        
+        //deleting the session deletes its attributes
+        assertTrue(store2.delete("1234"));
+        assertTrue(loadAttributes("1234").isEmpty());
+    }
+    
+    
+    @Test
+    public void testMigrateMapColumn() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        store.start();
+        
+        //a session written with the attributes in the map column
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", 100, now, now-1, -1);//never expires
+        data.setAttribute("a", "a1");
+        data.setAttribute("b", "b1");
+        data.setLastNode(sessionContext.getWorkerName());
+        data.setLastSaved(now);
+        persistSession(data);
+        
+        //loading it marks all the attributes for writing
+        SessionData loaded = store.load("1234");
+        assertEquals(data.getAllAttributes(), loaded.getAllAttributes());
+        assertTrue(loaded.isAllAttributesDirty());
+        
+        //removing an attribute must not resurrect it from the map column
+        loaded.setAttribute("b", null);
+        store.store("1234", loaded);
+        assertEquals(loaded.getAllAttributes(), loadAttributes("1234"));
+        
+        SessionData reloaded = store.load("1234");
+        assertEquals(1, reloaded.getAllAttributes().size());
+        assertEquals("a1", reloaded.getAttribute("a"));
+    }
+    
+    
+    private Map<String,Object> loadAttributes(String id) throws Exception
+    {
+        Map<String,Object> attributes = new HashMap<>();
+        try (Connection connection = DriverManager.getConnection(JdbcTestHelper.DEFAULT_CONNECTION_URL);
+             PreparedStatement statement = connection.prepareStatement("select * from "+ATTRIBUTE_TABLE+" where "+JdbcTestHelper.ID_COL+" = ?"))
+        {
+            statement.setString(1, id);
+            try (ResultSet result = statement.executeQuery())
+            {
+                while (result.next())
+                {
+                    SessionData tmp = new SessionData(id, "", "", 0, 0, 0, 0);
+                    try (InputStream is = result.getBlob("attributeValue").getBinaryStream();
+                         ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(is))
+                    {
+                        SessionData.deserializeAttributes(tmp, ois);
+                    }
+                    assertEquals(1, tmp.getAllAttributes().size());
+                    assertTrue(tmp.getAllAttributes().containsKey(result.getString("attributeName")));
+                    attributes.putAll(tmp.getAllAttributes());
+                }
+            }
+        }
+        return attributes;
+    }
+}
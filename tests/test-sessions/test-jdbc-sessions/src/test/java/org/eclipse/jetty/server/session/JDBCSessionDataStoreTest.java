@@ -19,8 +19,20 @@
 
 package org.eclipse.jetty.server.session;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 
 /**
  * JDBCSessionDataStoreTest
@@ -92,4 +104,67 @@ public class JDBCSessionDataStoreTest extends AbstractSessionDataStoreTest
         return JdbcTestHelper.checkSessionPersisted(data);
     }
     
+    
+    @Test
+    public void testGetExpiredCandidatesInBatches() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        ((JDBCSessionDataStoreFactory)factory).setExpiryBatchSize(2);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        
+        //persist some sessions that are not expired
+        long now = System.currentTimeMillis();
+        for (String id : Arrays.asList("a", "b"))
+        {
+            SessionData data = store.newSessionData(id, 100, now, now-1, TimeUnit.MINUTES.toMillis(60));
+            data.setLastNode(sessionContext.getWorkerName());
+            persistSession(data);
+        }
+        
+        store.start();
+        
+        //the candidates that do not exist are expired
+        Set<String> candidates = new HashSet<>(Arrays.asList("a", "b", "c", "d", "e"));
+        Set<String> expiredIds = store.getExpired(candidates);
+        assertThat(expiredIds, containsInAnyOrder("c", "d", "e"));
+    }
+    
+    
+    @Test
+    public void testSweepAncientExpiredSessions() throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");       
+        SessionDataStoreFactory factory = createSessionDataStoreFactory();
+        ((AbstractSessionDataStoreFactory)factory).setGracePeriodSec(GRACE_PERIOD_SEC);
+        SessionDataStore store = factory.getSessionDataStore(context.getSessionHandler());
+        SessionContext sessionContext = new SessionContext("foo", context.getServletContext());
+        store.initialize(sessionContext);
+        
+        //sessions of another context that expired long ago, and recently
+        long recent = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(GRACE_PERIOD_SEC);
+        JdbcTestHelper.insertSession("other1", "_other", "0.0.0.0", "other", 1, 1, 1, 100, ANCIENT_TIMESTAMP, 1, 0, null);
+        JdbcTestHelper.insertSession("other2", "_other", "0.0.0.0", "other", 1, 1, 1, 100, recent, 1, 0, null);
+        
+        //a session of this context that expired long ago
+        SessionData data = store.newSessionData("mine", 1, 1, 1, 100);
+        data.setExpiry(ANCIENT_TIMESTAMP);
+        data.setLastNode(sessionContext.getWorkerName());
+        persistSession(data);
+        
+        store.start();
+        
+        Set<String> expiredIds = store.getExpired(new HashSet<>());
+        assertTrue(expiredIds.contains("mine"));
+        
+        //only the session of the other context that expired long ago is deleted
+        assertFalse(JdbcTestHelper.existsInSessionTable("other1", false));
+        assertTrue(JdbcTestHelper.existsInSessionTable("other2", false));
+        assertTrue(JdbcTestHelper.existsInSessionTable("mine", false));
+    }
 }
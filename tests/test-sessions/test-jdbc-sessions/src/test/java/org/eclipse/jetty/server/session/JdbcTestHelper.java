@@ -306,6 +306,7 @@ public class JdbcTestHelper
             if (attributes != null)
             {
                 SessionData tmp = new SessionData (id, contextPath, vhost, created, accessed, lastAccessed, maxIdle);
+                tmp.putAllAttributes(attributes);
                 try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
                      ObjectOutputStream oos = new ObjectOutputStream(baos);)
                 {
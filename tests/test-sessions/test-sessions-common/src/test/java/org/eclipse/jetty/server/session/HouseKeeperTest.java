@@ -0,0 +1,153 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.ContextHandlerCollection;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HouseKeeperTest
+ *
+ *
+ */
+public class HouseKeeperTest
+{
+    private Server _server;
+    
+    
+    @AfterEach
+    public void stop() throws Exception
+    {
+        if (_server != null)
+            _server.stop();
+    }
+    
+    
+    @Test
+    public void testParallelScavenge() throws Exception
+    {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        HouseKeeper houseKeeper = new HouseKeeper()
+        {
+            @Override
+            protected void scavenge(SessionHandler manager)
+            {
+                threads.add(Thread.currentThread().getName());
+                super.scavenge(manager);
+                try
+                {
+                    //make sure the session handlers are scavenged concurrently
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        houseKeeper.setMaxScavengeThreads(3);
+        
+        _server = new Server();
+        DefaultSessionIdManager sessionIdManager = new DefaultSessionIdManager(_server);
+        sessionIdManager.setSessionHouseKeeper(houseKeeper);
+        _server.setSessionIdManager(sessionIdManager);
+        ContextHandlerCollection contexts = new ContextHandlerCollection();
+        _server.setHandler(contexts);
+        List<ServletContextHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            ServletContextHandler context = new ServletContextHandler(contexts, "/ctx" + i, ServletContextHandler.SESSIONS);
+            context.getSessionHandler().setMaxInactiveInterval(1);
+            handlers.add(context);
+        }
+        _server.start();
+        
+        List<Session> sessions = new ArrayList<>();
+        for (ServletContextHandler context : handlers)
+        {
+            Session session = (Session)context.getSessionHandler().newHttpSession(null);
+            context.getSessionHandler().complete(session);
+            sessions.add(session);
+        }
+        
+        //wait for the sessions to become candidates for expiry
+        Thread.sleep(1500);
+        houseKeeper.scavenge();
+        
+        for (Session session : sessions)
+            assertFalse(session.isValid());
+        assertEquals(4, houseKeeper.getSessionsScavenged());
+        assertEquals(1, houseKeeper.getScavengeCount());
+        assertTrue(houseKeeper.getScavengeTimeMax() >= 200);
+        assertTrue(houseKeeper.getScavengeTimeMax() < 800);
+        assertTrue(threads.size() > 1);
+        
+        houseKeeper.resetStats();
+        assertEquals(0, houseKeeper.getSessionsScavenged());
+        assertEquals(0, houseKeeper.getScavengeCount());
+    }
+    
+    
+    @Test
+    public void testSequentialScavenge() throws Exception
+    {
+        HouseKeeper houseKeeper = new HouseKeeper();
+        
+        _server = new Server();
+        DefaultSessionIdManager sessionIdManager = new DefaultSessionIdManager(_server);
+        sessionIdManager.setSessionHouseKeeper(houseKeeper);
+        _server.setSessionIdManager(sessionIdManager);
+        ContextHandlerCollection contexts = new ContextHandlerCollection();
+        _server.setHandler(contexts);
+        List<ServletContextHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+        {
+            ServletContextHandler context = new ServletContextHandler(contexts, "/ctx" + i, ServletContextHandler.SESSIONS);
+            context.getSessionHandler().setMaxInactiveInterval(1);
+            handlers.add(context);
+        }
+        _server.start();
+        
+        for (ServletContextHandler context : handlers)
+        {
+            Session session = (Session)context.getSessionHandler().newHttpSession(null);
+            context.getSessionHandler().complete(session);
+        }
+        
+        Thread.sleep(1500);
+        houseKeeper.scavenge();
+        
+        assertEquals(2, houseKeeper.getSessionsScavenged());
+        assertEquals(1, houseKeeper.getScavengeCount());
+        for (ServletContextHandler context : handlers)
+            assertEquals(1, context.getSessionHandler().getSessionsScavenged());
+    }
+}
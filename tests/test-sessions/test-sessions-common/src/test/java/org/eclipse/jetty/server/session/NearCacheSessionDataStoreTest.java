@@ -0,0 +1,233 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.Test;
+
+/**
+ * NearCacheSessionDataStoreTest
+ *
+ *
+ */
+public class NearCacheSessionDataStoreTest
+{
+    /**
+     * A store that simulates the changes made by other nodes of the cluster.
+     */
+    public static class NotifyingSessionDataStore extends TestSessionDataStore implements SessionDataNotifier
+    {
+        public List<SessionDataNotifier.Listener> _listeners = new CopyOnWriteArrayList<>();
+        public AtomicInteger _numLoads = new AtomicInteger();
+        public Runnable _onLoad;
+
+        @Override
+        public void addSessionDataListener(SessionDataNotifier.Listener listener)
+        {
+            _listeners.add(listener);
+        }
+
+        @Override
+        public void removeSessionDataListener(SessionDataNotifier.Listener listener)
+        {
+            _listeners.remove(listener);
+        }
+
+        @Override
+        public SessionData doLoad(String id) throws Exception
+        {
+            _numLoads.incrementAndGet();
+            SessionData data = super.doLoad(id);
+            if (_onLoad != null)
+                _onLoad.run();
+            return data;
+        }
+
+        public void changedByOtherNode(String id, String name, Object value)
+        {
+            SessionData data = _map.get(id);
+            SessionData changed = newSessionData(id, data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+            changed.copy(data);
+            changed.setAttribute(name, value);
+            _map.put(id, changed);
+            for (SessionDataNotifier.Listener listener : _listeners)
+                listener.onSessionDataChanged(id);
+        }
+    }
+
+
+    public NearCacheSessionDataStore newSessionDataStore (SessionDataStore delegate) throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        NearCacheSessionDataStore store = new NearCacheSessionDataStore(delegate);
+        store.initialize(new SessionContext("foo", context.getServletContext()));
+        store.start();
+        return store;
+    }
+
+
+    public SessionData storeSession (SessionDataStore store, String id) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData(id, now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setAttribute("a", "local");
+        store.store(id, data);
+        return data;
+    }
+
+
+    @Test
+    public void testLoadIsServedLocally() throws Exception
+    {
+        NotifyingSessionDataStore delegate = new NotifyingSessionDataStore();
+        NearCacheSessionDataStore store = newSessionDataStore(delegate);
+
+        SessionData data = storeSession(store, "1234");
+        assertEquals(1, delegate._numSaves.get());
+        assertEquals(1, store.getSize());
+
+        SessionData loaded = store.load("1234");
+        assertNotNull(loaded);
+        assertNotSame(data, loaded);
+        assertEquals("local", loaded.getAttribute("a"));
+        assertEquals(data.getLastSaved(), loaded.getLastSaved());
+        assertFalse(loaded.isDirty());
+
+        //every load returns its own copy
+        assertNotSame(loaded, store.load("1234"));
+        assertEquals(0, delegate._numLoads.get());
+        assertEquals(2, store.getHits());
+        assertEquals(0, store.getMisses());
+        assertTrue(store.exists("1234"));
+
+        store.stop();
+        assertEquals(0, store.getSize());
+    }
+
+
+    @Test
+    public void testChangeByOtherNodeIsReloaded() throws Exception
+    {
+        NotifyingSessionDataStore delegate = new NotifyingSessionDataStore();
+        NearCacheSessionDataStore store = newSessionDataStore(delegate);
+
+        storeSession(store, "1234");
+        delegate.changedByOtherNode("1234", "a", "remote");
+        assertEquals(1, store.getInvalidations());
+        assertEquals(0, store.getSize());
+
+        assertEquals("remote", store.load("1234").getAttribute("a"));
+        assertEquals(1, delegate._numLoads.get());
+        assertEquals(1, store.getMisses());
+
+        //the reloaded data is cached again
+        assertEquals("remote", store.load("1234").getAttribute("a"));
+        assertEquals(1, delegate._numLoads.get());
+        assertEquals(1, store.getHits());
+
+        store.stop();
+    }
+
+
+    @Test
+    public void testChangeDuringLoadIsNotCached() throws Exception
+    {
+        NotifyingSessionDataStore delegate = new NotifyingSessionDataStore();
+        NearCacheSessionDataStore store = newSessionDataStore(delegate);
+        storeSession(delegate, "1234");
+
+        //another node changes the session after the data has been read
+        delegate._onLoad = () -> 
+        {
+            delegate._onLoad = null;
+            delegate.changedByOtherNode("1234", "a", "remote");
+        };
+        assertEquals("local", store.load("1234").getAttribute("a"));
+        assertEquals(0, store.getSize());
+
+        assertEquals("remote", store.load("1234").getAttribute("a"));
+        assertEquals(2, delegate._numLoads.get());
+
+        store.stop();
+    }
+
+
+    @Test
+    public void testDelete() throws Exception
+    {
+        NotifyingSessionDataStore delegate = new NotifyingSessionDataStore();
+        NearCacheSessionDataStore store = newSessionDataStore(delegate);
+
+        storeSession(store, "1234");
+        assertTrue(store.delete("1234"));
+        assertEquals(0, store.getSize());
+        assertFalse(store.exists("1234"));
+        assertNull(store.load("1234"));
+        assertNull(delegate.load("1234"));
+
+        store.stop();
+    }
+
+
+    @Test
+    public void testMaxEntries() throws Exception
+    {
+        NotifyingSessionDataStore delegate = new NotifyingSessionDataStore();
+        NearCacheSessionDataStore store = newSessionDataStore(delegate);
+        store.setMaxEntries(2);
+
+        for (int i = 0; i < 5; i++)
+            storeSession(store, "id"+i);
+        assertEquals(2, store.getSize());
+
+        //the last stored session is always kept
+        store.load("id4");
+        assertEquals(1, store.getHits());
+        assertEquals(0, delegate._numLoads.get());
+
+        //the others are loaded from the delegate store
+        for (int i = 0; i < 5; i++)
+            assertNotNull(store.load("id"+i));
+        assertTrue(delegate._numLoads.get() >= 3);
+
+        store.stop();
+    }
+
+
+    @Test
+    public void testStoreMustNotifyChanges() throws Exception
+    {
+        NearCacheSessionDataStore store = new NearCacheSessionDataStore(new TestSessionDataStore());
+        assertThrows(IllegalStateException.class, () -> store.start());
+    }
+}
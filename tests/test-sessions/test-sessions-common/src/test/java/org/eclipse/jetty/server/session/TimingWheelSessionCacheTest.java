@@ -0,0 +1,178 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.SessionIdManager;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * TimingWheelSessionCacheTest
+ *
+ *
+ */
+public class TimingWheelSessionCacheTest
+{
+    private Server _server;
+    private ServletContextHandler _context;
+    private TimingWheelSessionCache _cache;
+    private TestSessionDataStore _store;
+    
+    
+    public void start(int evictionSec, int maxInactiveSec) throws Exception
+    {
+        _server = new Server();
+        SessionIdManager sessionIdManager = new DefaultSessionIdManager(_server);
+        _server.setSessionIdManager(sessionIdManager);
+        _context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        _context.setContextPath("/test");
+        _context.setServer(_server);
+        _context.getSessionHandler().setMaxInactiveInterval(maxInactiveSec);
+        _context.getSessionHandler().setSessionIdManager(sessionIdManager);
+        
+        TimingWheelSessionCacheFactory cacheFactory = new TimingWheelSessionCacheFactory();
+        cacheFactory.setEvictionPolicy(evictionSec);
+        cacheFactory.setSaveOnInactiveEvict(true);
+        cacheFactory.setTickMs(100);
+        cacheFactory.setWheelSize(8); //smaller than the timeouts, to test revolutions of the wheel
+        _cache = (TimingWheelSessionCache)cacheFactory.getSessionCache(_context.getSessionHandler());
+        
+        _store = new TestSessionDataStore();
+        _cache.setSessionDataStore(_store);
+        _context.getSessionHandler().setSessionCache(_cache);
+        _server.setHandler(_context);
+        _server.start();
+    }
+    
+    
+    @AfterEach
+    public void stop() throws Exception
+    {
+        if (_server != null)
+            _server.stop();
+    }
+    
+    
+    @Test
+    public void testEvictInactiveSession() throws Exception
+    {
+        start(1, (int)TimeUnit.DAYS.toSeconds(1));
+        
+        Session session = (Session)_context.getSessionHandler().newHttpSession(null);
+        String id = session.getId();
+        _context.getSessionHandler().complete(session);
+        assertTrue(_cache.contains(id));
+        assertEquals(1, _cache.getTimers());
+        
+        //wait for the eviction
+        Thread.sleep(1500);
+        assertFalse(_cache.contains(id));
+        assertTrue(_store.exists(id));
+        assertEquals(1, _cache.getTimeouts());
+        assertEquals(0, _cache.getTimers());
+    }
+    
+    
+    @Test
+    public void testAccessKeepsSessionResident() throws Exception
+    {
+        start(1, (int)TimeUnit.DAYS.toSeconds(1));
+        
+        Session session = (Session)_context.getSessionHandler().newHttpSession(null);
+        String id = session.getId();
+        _context.getSessionHandler().complete(session);
+        
+        //access the session more often than the eviction period,
+        //for longer than a revolution of the wheel
+        for (int i = 0; i < 8; i++)
+        {
+            Thread.sleep(250);
+            Session s = _context.getSessionHandler().getSession(id);
+            _context.getSessionHandler().access(s, false);
+            _context.getSessionHandler().complete(s);
+            assertTrue(_cache.contains(id));
+        }
+        assertEquals(1, _cache.getTimers());
+        
+        //stop accessing it, and it gets evicted
+        Thread.sleep(1500);
+        assertFalse(_cache.contains(id));
+        assertEquals(0, _cache.getTimers());
+    }
+    
+    
+    @Test
+    public void testNoEvictionDuringRequest() throws Exception
+    {
+        start(1, (int)TimeUnit.DAYS.toSeconds(1));
+        
+        //the session stays in a request for longer than the eviction period
+        Session session = (Session)_context.getSessionHandler().newHttpSession(null);
+        String id = session.getId();
+        Thread.sleep(1500);
+        assertTrue(_cache.contains(id));
+        
+        _context.getSessionHandler().complete(session);
+        Thread.sleep(1500);
+        assertFalse(_cache.contains(id));
+    }
+    
+    
+    @Test
+    public void testExpireSession() throws Exception
+    {
+        start(SessionCache.NEVER_EVICT, 1);
+        
+        Session session = (Session)_context.getSessionHandler().newHttpSession(null);
+        String id = session.getId();
+        _context.getSessionHandler().complete(session);
+        
+        //the timer makes the session a candidate for scavenging
+        Thread.sleep(1500);
+        assertEquals(1, _cache.getTimeouts());
+        assertTrue(_cache.contains(id));
+        _context.getSessionHandler().scavenge();
+        assertFalse(_cache.contains(id));
+        assertFalse(session.isValid());
+    }
+    
+    
+    @Test
+    public void testInvalidateRemovesTimer() throws Exception
+    {
+        start(1, (int)TimeUnit.DAYS.toSeconds(1));
+        
+        Session session = (Session)_context.getSessionHandler().newHttpSession(null);
+        _context.getSessionHandler().complete(session);
+        assertEquals(1, _cache.getTimers());
+        
+        session.invalidate();
+        assertEquals(0, _cache.getTimers());
+        Thread.sleep(1500);
+        assertEquals(0, _cache.getTimeouts());
+    }
+}
@@ -0,0 +1,316 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2019 Mort Bay Consulting Pty. Ltd.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.jupiter.api.Test;
+
+/**
+ * WriteBehindSessionDataStoreTest
+ *
+ *
+ */
+public class WriteBehindSessionDataStoreTest
+{
+    public static class BatchingSessionDataStore extends TestSessionDataStore
+    {
+        public AtomicInteger _numBatches = new AtomicInteger();
+        public AtomicBoolean _fail = new AtomicBoolean();
+        
+        @Override
+        public void doStoreAll(Map<String, SessionData> sessions, Map<String, Long> lastSaveTimes) throws Exception
+        {
+            if (_fail.get())
+                throw new Exception("Expected failure");
+            _numBatches.incrementAndGet();
+            super.doStoreAll(sessions, lastSaveTimes);
+        }
+    }
+    
+    
+    public WriteBehindSessionDataStore newSessionDataStore (SessionDataStore delegate) throws Exception
+    {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        context.setContextPath("/test");
+        WriteBehindSessionDataStore store = new WriteBehindSessionDataStore(delegate);
+        store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1)); //only flush when asked to
+        store.initialize(new SessionContext("foo", context.getServletContext()));
+        store.start();
+        return store;
+    }
+    
+    
+    @Test
+    public void testWritesAreCoalesced() throws Exception
+    {
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore();
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        for (int i = 0; i < 3; i++)
+        {
+            data.setAttribute("count", i);
+            store.store("1234", data);
+        }
+        assertEquals(0, delegate._numSaves.get());
+        assertEquals(1, store.getPendingWrites());
+        assertEquals(2, store.getCoalescedWrites());
+        assertTrue(data.getLastSaved() > 0);
+        assertFalse(data.isDirty());
+        
+        //the queued write is seen before it is flushed
+        assertTrue(store.exists("1234"));
+        SessionData loaded = store.load("1234");
+        assertNotNull(loaded);
+        assertEquals(2, loaded.getAttribute("count"));
+        
+        store.flush();
+        assertEquals(1, delegate._numSaves.get());
+        assertEquals(0, store.getPendingWrites());
+        assertEquals(2, delegate.load("1234").getAttribute("count"));
+        
+        store.stop();
+    }
+    
+    
+    @Test
+    public void testWritesAreBatched() throws Exception
+    {
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore();
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        store.setMaxBatchSize(2);
+        
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++)
+        {
+            SessionData data = store.newSessionData("id"+i, now, now, now, TimeUnit.MINUTES.toMillis(10));
+            data.setAttribute("a", i);
+            store.store("id"+i, data);
+        }
+        
+        store.flush();
+        assertEquals(5, delegate._numSaves.get());
+        assertEquals(3, delegate._numBatches.get());
+        for (int i = 0; i < 5; i++)
+            assertTrue(delegate.exists("id"+i));
+        
+        store.stop();
+    }
+    
+    
+    @Test
+    public void testDeleteDiscardsQueuedWrite() throws Exception
+    {
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore();
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        store.store("1234", data);
+        assertTrue(store.delete("1234"));
+        
+        store.flush();
+        assertEquals(0, delegate._numSaves.get());
+        assertFalse(store.exists("1234"));
+        assertNull(store.load("1234"));
+        
+        store.stop();
+    }
+    
+    
+    @Test
+    public void testDeleteOnlyWaitsForItsWrite() throws Exception
+    {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        AtomicReference<String> written = new AtomicReference<>();
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore()
+        {
+            @Override
+            public void doStoreAll(Map<String, SessionData> sessions, Map<String, Long> lastSaveTimes) throws Exception
+            {
+                //block the first batch
+                if (written.compareAndSet(null, sessions.keySet().iterator().next()))
+                {
+                    writing.countDown();
+                    proceed.await(10, TimeUnit.SECONDS);
+                }
+                super.doStoreAll(sessions, lastSaveTimes);
+            }
+        };
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        store.setMaxBatchSize(1);
+        
+        long now = System.currentTimeMillis();
+        for (String id : new String[]{"a", "b"})
+            store.store(id, store.newSessionData(id, now, now, now, TimeUnit.MINUTES.toMillis(10)));
+        
+        Thread flusher = new Thread(store::flush);
+        flusher.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        
+        //the delete of the session not being written does not wait for the flush
+        String other = "a".equals(written.get()) ? "b" : "a";
+        assertTrue(assertTimeoutPreemptively(Duration.ofSeconds(5), () -> store.delete(other)));
+        
+        proceed.countDown();
+        flusher.join(5000);
+        assertFalse(delegate.exists(other));
+        assertTrue(delegate.exists(written.get()));
+        
+        store.stop();
+    }
+    
+    
+    @Test
+    public void testFailedWriteIsRetried() throws Exception
+    {
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore();
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        data.setAttribute("a", "a1");
+        store.store("1234", data);
+        
+        delegate._fail.set(true);
+        store.flush();
+        assertEquals(1, store.getFailedWrites());
+        assertEquals(1, store.getPendingWrites());
+        
+        //a later write of the session carries the failed one
+        data.setAttribute("b", "b1");
+        store.store("1234", data);
+        
+        delegate._fail.set(false);
+        store.flush();
+        assertEquals(0, store.getPendingWrites());
+        SessionData stored = delegate.load("1234");
+        assertEquals("a1", stored.getAttribute("a"));
+        assertEquals("b1", stored.getAttribute("b"));
+        
+        store.stop();
+    }
+    
+    
+    @Test
+    public void testFailingSessionIsWrittenAloneAndDropped() throws Exception
+    {
+        //a store that can never write the session "bad"
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore()
+        {
+            @Override
+            public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+            {
+                if ("bad".equals(id))
+                    throw new Exception("Expected failure");
+                super.doStore(id, data, lastSaveTime);
+            }
+
+            @Override
+            public void doStoreAll(Map<String, SessionData> sessions, Map<String, Long> lastSaveTimes) throws Exception
+            {
+                if (sessions.containsKey("bad"))
+                    throw new Exception("Expected failure");
+                super.doStoreAll(sessions, lastSaveTimes);
+            }
+        };
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        store.setMaxWriteAttempts(2);
+        
+        long now = System.currentTimeMillis();
+        store.store("good", store.newSessionData("good", now, now, now, TimeUnit.MINUTES.toMillis(10)));
+        store.store("bad", store.newSessionData("bad", now, now, now, TimeUnit.MINUTES.toMillis(10)));
+        
+        //the failed batch is written one by one, so the good session is stored
+        store.flush();
+        assertNotNull(delegate.load("good"));
+        assertEquals(1, store.getFailedWrites());
+        assertEquals(1, store.getPendingWrites());
+        
+        //the bad session is dropped once it has failed max times
+        store.flush();
+        assertEquals(2, store.getFailedWrites());
+        assertEquals(1, store.getDroppedWrites());
+        assertEquals(0, store.getPendingWrites());
+        assertNull(delegate.load("bad"));
+        
+        store.stop();
+    }
+    
+    
+    @Test
+    public void testFlushOnStop() throws Exception
+    {
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore();
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now, now, now, TimeUnit.MINUTES.toMillis(10));
+        store.store("1234", data);
+        assertEquals(0, delegate._numSaves.get());
+        
+        store.stop();
+        assertEquals(1, delegate._numSaves.get());
+        assertTrue(delegate._map.containsKey("1234"));
+    }
+    
+    
+    @Test
+    public void testQueuedWriteExtendsExpiry() throws Exception
+    {
+        BatchingSessionDataStore delegate = new BatchingSessionDataStore();
+        WriteBehindSessionDataStore store = newSessionDataStore(delegate);
+        
+        //a session that has expired in the delegate store
+        long now = System.currentTimeMillis();
+        SessionData data = store.newSessionData("1234", now-20000, now-20000, now-20000, 10000);
+        data.setExpiry(now-10000);
+        store.store("1234", data);
+        store.flush();
+        assertEquals(Collections.singleton("1234"), delegate.getExpired(Collections.singleton("1234")));
+        
+        //has been accessed since
+        data.setAccessed(now);
+        data.calcAndSetExpiry(now);
+        store.store("1234", data);
+        Set<String> expired = store.getExpired(Collections.singleton("1234"));
+        assertTrue(expired.isEmpty());
+        
+        store.stop();
+    }
+}